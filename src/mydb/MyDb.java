@@ -1,5 +1,6 @@
 package mydb;
 
+import mydb.common.Config;
 import mydb.common.DbException;
 import mydb.common.Type;
 import mydb.storage.*;
@@ -7,10 +8,52 @@ import mydb.transaction.TransactionException;
 import mydb.transaction.TransactionId;
 
 import java.io.*;
+import java.util.*;
 
 public class MyDb {
+
+    /**
+     * 命令行启动参数与配置项的对应关系，启动参数格式为--name=value，需放在命令之前
+     * 例：java mydb.MyDb --pages=10000 --page-size=8192 --evict=2q parser catalog.txt
+     */
+    private static final Map<String, String> OPTIONS = Map.of(
+            "--config", Config.CONFIG_FILE,
+            "--pages", Config.PAGES_NUM,
+            "--partitions", Config.PARTITIONS_NUM,
+            "--page-size", Config.PAGE_SIZE,
+            "--evict", Config.EVICT_POLICY,
+            "--off-heap", Config.OFF_HEAP,
+            "--mmap", Config.MMAP,
+            "--read-ahead", Config.READ_AHEAD_PAGES
+    );
+
+    /**
+     * 解析命令之前的启动参数，将其设置为系统属性（需在数据库初始化之前设置）
+     * @param args 命令行参数
+     * @return 返回去除启动参数后的命令行参数，启动参数有误时返回null
+     */
+    private static String[] parseOptions(String[] args) {
+        int index = 0;
+        while (index < args.length && args[index].startsWith("--")) {
+            String arg = args[index];
+            int eq = arg.indexOf('=');
+            String key = eq < 0 ? null : OPTIONS.get(arg.substring(0, eq));
+            if (key == null) {
+                System.err.println("Unknown option " + arg);
+                return null;
+            }
+            System.setProperty(key, arg.substring(eq + 1));
+            index++;
+        }
+        return Arrays.copyOfRange(args, index, args.length);
+    }
+
     public static void main(String[] args)
             throws DbException, TransactionException {
+        args = parseOptions(args);
+        if (args == null || args.length == 0) {
+            System.exit(1);
+        }
         switch (args[0]) {
             case "convert" -> {
                 // 用于将txt文件转化成二进制文件
@@ -51,8 +94,12 @@ public class MyDb {
                             fieldSeparator = args[4].charAt(0);
                         }
                     }
-                    HeapFileEncoder.convert(sourceTxtFile, targetDatFile,
-                            BufferPool.getPageSize(), attributesNum, types, fieldSeparator);
+                    // 并行解析输入文件，页面批量顺序写入
+                    long start = System.currentTimeMillis();
+                    long tuplesNum = new HeapFileLoader(types, BufferPool.getPageSize(), fieldSeparator)
+                            .load(sourceTxtFile, targetDatFile);
+                    System.out.println("Converted " + tuplesNum + " tuples to " + targetDatFile
+                            + " in " + (System.currentTimeMillis() - start) + " ms");
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
@@ -17,7 +17,6 @@ import mydb.storage.IntField;
 import mydb.storage.StringField;
 import mydb.storage.Tuple;
 import mydb.storage.TupleDesc;
-import mydb.storage.lock.LockManager;
 import mydb.transaction.Transaction;
 import mydb.transaction.TransactionException;
 import mydb.transaction.TransactionId;
@@ -184,7 +183,7 @@ public class Parser {
         Database.getCatalog().loadSchema(argv[0]);
         TableStats.computeStats(); // 计算统计信息，用于查询优化
         // 计算完毕后需要释放所有页面对应事务的锁
-        Database.getBufferPool().lockManager = new LockManager();
+        Database.getBufferPool().resetLocks();
 
         String queryFile = null;
 
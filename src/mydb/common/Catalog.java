@@ -1,12 +1,21 @@
 package mydb.common;
 
+import mydb.index.BTreeFile;
+import mydb.index.BTreeIndex;
+import mydb.index.HashIndex;
+import mydb.index.Index;
 import mydb.storage.DbFile;
 import mydb.storage.HeapFile;
+import mydb.storage.PaxFile;
+import mydb.storage.SlottedFile;
 import mydb.storage.TupleDesc;
 import mydb.storage.Table;
+import mydb.transaction.Transaction;
+import mydb.transaction.TransactionException;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.io.*;
 
 /**
@@ -24,24 +33,107 @@ public class Catalog {
      */
     private Map<String, Integer> tableName2Id;
 
+    /**
+     * 表ID作为key获得该表的索引
+     */
+    private Map<Integer, List<Index>> indexes;
+
+    /**
+     * 非聚簇索引的文件，通过DbFile的getId()作为key，缓冲池读取索引页面时通过getDbFile获得
+     */
+    private Map<Integer, DbFile> indexFiles;
+
     /**
      * Catalog构造函数，创建一个空的目录对象
      */
     public Catalog() {
         tables = new ConcurrentHashMap<>();
         tableName2Id = new ConcurrentHashMap<>();
+        indexes = new ConcurrentHashMap<>();
+        indexFiles = new ConcurrentHashMap<>();
     }
 
     /**
-     * 添加一个新表到catalog中
+     * 添加一个新表到catalog中。指定了主键的堆文件表会在主键上建立唯一的B+树索引（见addPrimaryKeyIndex），
+     * 索引文件为空而表中已有元组时会先为已有元组建立条目
      * @param dbFile 数据库文件
      * @param tableName 表的名称
-     * @param primaryKeyName 主键（primary key）名称
+     * @param primaryKeyName 主键（primary key）名称，没有主键时为空字符串
+     * @throws IllegalStateException 为已有元组建立主键索引失败（如主键重复）时抛出
      */
     public void addTable(DbFile dbFile, String tableName, String primaryKeyName) {
+        try {
+            addTable(dbFile, tableName, primaryKeyName, new int[0]);
+        } catch (IOException | DbException | TransactionException e) {
+            throw new IllegalStateException("failed to build the primary key index of table " + tableName, e);
+        }
+    }
+
+    /**
+     * 添加一个新表到catalog中，并建立主键上的索引
+     * @param primaryKeyIncluded 主键索引的包含列
+     */
+    private void addTable(DbFile dbFile, String tableName, String primaryKeyName, int[] primaryKeyIncluded)
+            throws IOException, DbException, TransactionException {
         Table table = new Table(dbFile, tableName, primaryKeyName);
         tables.put(dbFile.getId(), table);
         tableName2Id.put(tableName, dbFile.getId());
+        indexes.remove(dbFile.getId());
+        if (dbFile instanceof BTreeFile btreeFile) {
+            // 以B+树存放的表本身就是索引字段上的聚簇索引，索引字段为主键时索引键不能重复
+            boolean unique = dbFile.getTupleDesc().getFieldName(btreeFile.keyField()).equals(primaryKeyName);
+            addIndex(new BTreeIndex(btreeFile, unique));
+        } else if (dbFile instanceof HeapFile heapFile && !primaryKeyName.isEmpty()) {
+            addPrimaryKeyIndex(heapFile, primaryKeyName, primaryKeyIncluded);
+        }
+    }
+
+    /**
+     * 在堆文件表的主键上建立唯一的B+树索引，插入元组时通过索引检查主键是否重复。
+     * 索引文件与表文件放在一起，文件名为“表文件名（去掉扩展名）.主键名.idx”
+     * @param heapFile 表文件
+     * @param primaryKeyName 主键名称
+     * @param included 索引的包含列
+     * @throws NoSuchElementException 表中没有该字段时抛出
+     */
+    private void addPrimaryKeyIndex(HeapFile heapFile, String primaryKeyName, int[] included)
+            throws IOException, DbException, TransactionException {
+        TupleDesc tupleDesc = heapFile.getTupleDesc();
+        int column = tupleDesc.fieldNameToIndex(primaryKeyName);
+        List<String> names = new ArrayList<>();
+        for (int i=0; i<tupleDesc.getFieldsNum(); i++) {
+            names.add(tupleDesc.getFieldName(i));
+        }
+        File indexFile = indexFile(heapFile.getFile(), indexColumnsName(names, column, included), ".idx");
+        boolean building = indexFile.length() == 0 && heapFile.getPagesNum() > 0;
+        addSchemaIndex(new BTreeIndex(indexFile, heapFile.getId(), column, true, included), building);
+    }
+
+    /**
+     * 为表添加一个索引，之后BufferPool插入和删除元组时同时维护该索引
+     * 索引文件中已有的条目需要与表中的元组一致，新建的索引可以通过BufferPool.buildIndex建立条目
+     * @param index 表上的索引
+     * @throws NoSuchElementException 如果表不存在
+     * @throws IllegalArgumentException 非聚簇索引所在的表不是HeapFile时抛出，其它表中元组的RecordId会改变
+     */
+    public void addIndex(Index index) throws NoSuchElementException {
+        DbFile dbFile = getDbFile(index.getTableId());
+        if (!index.isClustered()) {
+            if (!(dbFile instanceof HeapFile)) {
+                throw new IllegalArgumentException("secondary index on table "
+                        + getTableName(index.getTableId()) + " requires a heap file");
+            }
+            indexFiles.put(index.getFile().getId(), index.getFile());
+        }
+        indexes.computeIfAbsent(index.getTableId(), k -> new CopyOnWriteArrayList<>()).add(index);
+    }
+
+    /**
+     * @param tableId 表的ID
+     * @return 返回表的所有索引，没有索引时返回空列表
+     */
+    public List<Index> getIndexes(int tableId) {
+        return indexes.getOrDefault(tableId, Collections.emptyList());
     }
 
     public void addTable(DbFile dbFile, String tableName) {
@@ -80,6 +172,9 @@ public class Catalog {
     public DbFile getDbFile(int tableId) throws NoSuchElementException {
         if (tables.containsKey(tableId))
             return tables.get(tableId).getDbFile();
+        DbFile indexFile = indexFiles.get(tableId);
+        if (indexFile != null)
+            return indexFile;
         throw new NoSuchElementException("Table " + tableId + " is not found");
     }
 
@@ -106,11 +201,14 @@ public class Catalog {
     }
 
     /**
-     * 删除该目录（catalog）的所有表
+     * 删除该目录（catalog）的所有表，并关闭这些表的文件通道
      */
     public void clear() {
         tables.clear();
         tableName2Id.clear();
+        indexes.clear();
+        indexFiles.clear();
+        Database.getFileChannelPool().closeAll();
     }
 
     /**
@@ -123,13 +221,23 @@ public class Catalog {
         try {
             BufferedReader br = new BufferedReader(new FileReader(catalogFile));
             while ((line = br.readLine()) != null) {
-                // line字符串的格式：tableName(field type, field type, ...)
+                // line字符串的格式：tableName(field type [pk] [dict] [index] [hash] [include:f1;f2], field type, ...) [storage] [compressed]
+                // pk表示该字段为主键，主键上自动建立唯一的B+树索引（btree存储格式的表本身就是主键索引），
+                // dict表示该字符串字段使用字典编码，index表示在该字段上建立B+树索引（文件为tableName.field.idx），
+                // hash表示在该字段上建立只支持等值查找的哈希索引（文件为tableName.field.hidx），
+                // include表示该字段上的索引还保存列f1、f2（文件为tableName.field+f1+f2.idx），只用到这些列的查询只读取索引
+                // storage为可选的存储格式：heap（默认，定长槽）、slotted（变长记录）、pax（按列存放字段）
+                // 或btree（按主键存放在B+树中），compressed表示新文件压缩存储页面
                 String tableName = line.substring(0, line.indexOf("(")).trim();
                 String res = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
                 String[] fields = res.split(",");
                 ArrayList<String> names = new ArrayList<>();
                 ArrayList<Type> types = new ArrayList<>();
                 String primaryKeyName = "";
+                ArrayList<Integer> dictionaryColumns = new ArrayList<>();
+                ArrayList<Integer> indexColumns = new ArrayList<>();
+                ArrayList<Integer> hashColumns = new ArrayList<>();
+                Map<Integer, String[]> includedNames = new HashMap<>();
                 for (String field: fields) {
                     String[] nameType = field.trim().split(" ");
                     names.add(nameType[0].trim());
@@ -142,26 +250,105 @@ public class Catalog {
                         System.out.println("Unknown field type " + type);
                         System.exit(0);
                     }
-                    if (nameType.length == 3) {
-                        // primary key
-                        if (nameType[2].trim().equals("pk")) {
+                    for (int i=2; i<nameType.length; i++) {
+                        if (nameType[i].trim().equals("pk")) {
                             // 该字段为主键
                             primaryKeyName = nameType[0].trim();
+                        } else if (nameType[i].trim().equals("dict") && types.get(types.size() - 1) == Type.STRING_TYPE) {
+                            // 该字符串字段使用字典编码
+                            dictionaryColumns.add(names.size() - 1);
+                        } else if (nameType[i].trim().equals("index")) {
+                            // 该字段上建立B+树索引
+                            indexColumns.add(names.size() - 1);
+                        } else if (nameType[i].trim().equals("hash")) {
+                            // 该字段上建立哈希索引
+                            hashColumns.add(names.size() - 1);
+                        } else if (nameType[i].trim().startsWith("include:")) {
+                            // 该字段上的索引包含的其它列，所有字段读完后再解析
+                            includedNames.put(names.size() - 1, nameType[i].trim().substring("include:".length()).split(";"));
                         } else {
-                            System.out.println("Unknown annotation " + nameType[2]);
+                            System.out.println("Unknown annotation " + nameType[i]);
                             System.exit(0);
                         }
                     }
                 }
+                Map<Integer, int[]> includedColumns = new HashMap<>();
+                for (Map.Entry<Integer, String[]> entry: includedNames.entrySet()) {
+                    int column = entry.getKey();
+                    if (!indexColumns.contains(column) && !hashColumns.contains(column)
+                            && !names.get(column).equals(primaryKeyName)) {
+                        System.out.println("Annotation include requires index or hash: " + names.get(column));
+                        System.exit(0);
+                    }
+                    int[] included = new int[entry.getValue().length];
+                    for (int i=0; i<included.length; i++) {
+                        included[i] = names.indexOf(entry.getValue()[i].trim());
+                        if (included[i] < 0 || included[i] == column) {
+                            System.out.println("Unknown included field " + entry.getValue()[i] + " of " + names.get(column));
+                            System.exit(0);
+                        }
+                    }
+                    includedColumns.put(column, included);
+                }
                 Type[] typeArr = types.toArray(new Type[0]);
                 String[] nameArr = names.toArray(new String[0]);
                 TupleDesc tupleDesc = new TupleDesc(typeArr, nameArr);
                 String tablePath = baseFolder + "\\" + tableName + ".dat";
-                HeapFile heapFile = new HeapFile(new File(tablePath), tupleDesc);
-                addTable(heapFile, tableName, primaryKeyName);
+                String storage = null;
+                boolean compressed = false;
+                for (String option: line.substring(line.indexOf(")") + 1).trim().split("\\s+")) {
+                    if (option.equalsIgnoreCase("heap") || option.equalsIgnoreCase("slotted")
+                            || option.equalsIgnoreCase("pax") || option.equalsIgnoreCase("btree")) {
+                        if (storage != null && !storage.equalsIgnoreCase(option)) {
+                            System.out.println("Conflicting storage " + storage + " and " + option);
+                            System.exit(0);
+                        }
+                        storage = option;
+                    } else if (option.equalsIgnoreCase("compressed")) {
+                        compressed = true;
+                    } else if (!option.isEmpty()) {
+                        System.out.println("Unknown storage " + option);
+                        System.exit(0);
+                    }
+                }
+                int[] dictionaryArr = dictionaryColumns.stream().mapToInt(Integer::intValue).toArray();
+                DbFile dbFile;
+                if ("btree".equalsIgnoreCase(storage)) {
+                    if (primaryKeyName.isEmpty() || compressed || !dictionaryColumns.isEmpty()
+                            || !indexColumns.isEmpty() || !hashColumns.isEmpty() || !includedColumns.isEmpty()) {
+                        System.out.println("Storage btree requires pk and no compressed, dict or index: " + tableName);
+                        System.exit(0);
+                    }
+                    dbFile = new BTreeFile(new File(tablePath), tupleDesc, names.indexOf(primaryKeyName));
+                } else if ("slotted".equalsIgnoreCase(storage)) {
+                    dbFile = new SlottedFile(new File(tablePath), tupleDesc, compressed, dictionaryArr);
+                } else if ("pax".equalsIgnoreCase(storage)) {
+                    dbFile = new PaxFile(new File(tablePath), tupleDesc, compressed, dictionaryArr);
+                } else {
+                    dbFile = new HeapFile(new File(tablePath), tupleDesc, compressed, dictionaryArr);
+                }
+                // 主键上的唯一索引由addTable建立，同时标注了index的主键共用该索引
+                int primaryKeyColumn = names.indexOf(primaryKeyName);
+                addTable(dbFile, tableName, primaryKeyName,
+                        includedColumns.getOrDefault(primaryKeyColumn, new int[0]));
+                for (int column: indexColumns) {
+                    if (column == primaryKeyColumn) {
+                        continue;
+                    }
+                    int[] included = includedColumns.getOrDefault(column, new int[0]);
+                    File indexFile = indexFile(new File(tablePath), indexColumnsName(names, column, included), ".idx");
+                    boolean building = indexFile.length() == 0 && new File(tablePath).length() > 0;
+                    addSchemaIndex(new BTreeIndex(indexFile, dbFile.getId(), column, false, included), building);
+                }
+                for (int column: hashColumns) {
+                    int[] included = includedColumns.getOrDefault(column, new int[0]);
+                    File indexFile = indexFile(new File(tablePath), indexColumnsName(names, column, included), ".hidx");
+                    boolean building = indexFile.length() == 0 && new File(tablePath).length() > 0;
+                    addSchemaIndex(new HashIndex(indexFile, dbFile.getId(), column, included), building);
+                }
                 System.out.println("Added table: " + tableName + " with schema " + tupleDesc);
             }
-        } catch (IOException e) {
+        } catch (IOException | DbException | TransactionException e) {
             e.printStackTrace();
             System.exit(0);
         } catch (IndexOutOfBoundsException e) {
@@ -169,4 +356,49 @@ public class Catalog {
             System.exit(0);
         }
     }
+
+    /**
+     * 索引文件名中的列名，包含列的条目格式不同，使用不同的文件
+     * @param names 表的所有列名
+     * @param column 索引键的列索引
+     * @param included 包含列的列索引
+     * @return 返回如“b”或“b+a+c”的列名
+     */
+    private static String indexColumnsName(List<String> names, int column, int[] included) {
+        StringBuilder name = new StringBuilder(names.get(column));
+        for (int field: included) {
+            name.append('+').append(names.get(field));
+        }
+        return name.toString();
+    }
+
+    /**
+     * @param tableFile 表文件
+     * @param columnsName 索引文件名中的列名（见indexColumnsName）
+     * @param extension 索引文件的扩展名
+     * @return 返回与表文件放在一起的索引文件，如表文件t.dat上的“b”列索引为t.b.idx
+     */
+    private static File indexFile(File tableFile, String columnsName, String extension) {
+        String path = tableFile.getPath();
+        int dot = path.lastIndexOf('.');
+        if (dot > Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'))) {
+            path = path.substring(0, dot);
+        }
+        return new File(path + "." + columnsName + extension);
+    }
+
+    /**
+     * 添加schema文件中声明的索引
+     * @param index 表上的索引
+     * @param building 是否需要为表中已有的元组建立条目（已有数据的表上新建的索引）
+     */
+    private void addSchemaIndex(Index index, boolean building) throws IOException, DbException, TransactionException {
+        addIndex(index);
+        if (building) {
+            Transaction transaction = new Transaction();
+            transaction.start();
+            Database.getBufferPool().buildIndex(transaction.getId(), index);
+            transaction.commit();
+        }
+    }
 }
@@ -0,0 +1,177 @@
+package mydb.common;
+
+import java.io.*;
+import java.util.Properties;
+
+/**
+ * 数据库启动配置
+ * 配置依次从默认值、配置文件和系统属性（-Dmydb.xxx=...）中读取，后读取的配置会覆盖先读取的配置。
+ * 配置文件默认为工作目录下的mydb.properties，可以通过系统属性mydb.config指定其它文件
+ * 配置项：
+ * mydb.pages       缓冲池最多可以缓存的页面数量
+ * mydb.partitions  缓冲池分区数量，0表示根据页面数量和CPU核数自动选择
+ * mydb.pageSize    新建HeapFile的页面大小（字节），范围4096~65536且为2的幂
+ * mydb.evict       缓冲池驱逐策略（lru、clock、2q）
+ * mydb.offHeap     为true时缓冲池将页面数据存放在堆外内存中
+ * mydb.mmap        为true时HeapFile通过内存映射（mmap）读取页面
+ * mydb.readAhead   顺序扫描时最多预读的页面数量，0表示不预读
+ * mydb.indexFillFactor  批量建立B+树索引时结点的填充率，范围0.5~1.0
+ * mydb.sortBuffer  外部排序在内存中排序的数据量（MB），超过时写入临时文件
+ */
+public class Config {
+
+    public static final String CONFIG_FILE = "mydb.config";
+    public static final String DEFAULT_CONFIG_FILE = "mydb.properties";
+
+    public static final String PAGES_NUM = "mydb.pages";
+    public static final String PARTITIONS_NUM = "mydb.partitions";
+    public static final String PAGE_SIZE = "mydb.pageSize";
+    public static final String EVICT_POLICY = "mydb.evict";
+    public static final String OFF_HEAP = "mydb.offHeap";
+    public static final String MMAP = "mydb.mmap";
+    public static final String READ_AHEAD_PAGES = "mydb.readAhead";
+    public static final String INDEX_FILL_FACTOR = "mydb.indexFillFactor";
+    public static final String SORT_BUFFER = "mydb.sortBuffer";
+
+    private static final int DEFAULT_PAGES_NUM = 50;
+    private static final int DEFAULT_PARTITIONS_NUM = 0;
+    private static final int DEFAULT_PAGE_SIZE = 4096;
+    private static final String DEFAULT_EVICT_POLICY = "lru";
+    private static final int DEFAULT_READ_AHEAD_PAGES = 32;
+    private static final double DEFAULT_INDEX_FILL_FACTOR = 0.9;
+    private static final int DEFAULT_SORT_BUFFER = 64;
+
+    private static Config instance;
+
+    private final Properties properties;
+
+    private Config(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * @return 返回数据库的配置，第一次调用时读取配置文件和系统属性
+     */
+    public static synchronized Config get() {
+        if (instance == null) {
+            instance = load();
+        }
+        return instance;
+    }
+
+    /**
+     * 读取配置文件和系统属性
+     */
+    private static Config load() {
+        Properties properties = new Properties();
+        String fileName = System.getProperty(CONFIG_FILE, DEFAULT_CONFIG_FILE);
+        File file = new File(fileName);
+        if (file.isFile()) {
+            try (Reader reader = new BufferedReader(new FileReader(file))) {
+                properties.load(reader);
+            } catch (IOException e) {
+                System.err.println("Failed to read config file " + fileName);
+                e.printStackTrace();
+            }
+        } else if (System.getProperty(CONFIG_FILE) != null) {
+            // 显式指定的配置文件不存在
+            System.err.println("Config file " + fileName + " is not found");
+        }
+        // 系统属性覆盖配置文件中的配置
+        for (String key: new String[] {PAGES_NUM, PARTITIONS_NUM, PAGE_SIZE, EVICT_POLICY, OFF_HEAP, MMAP, READ_AHEAD_PAGES,
+                INDEX_FILL_FACTOR, SORT_BUFFER}) {
+            String value = System.getProperty(key);
+            if (value != null) {
+                properties.setProperty(key, value);
+            }
+        }
+        return new Config(properties);
+    }
+
+    private int getInt(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value of " + key + ": " + value);
+        }
+    }
+
+    private double getDouble(String key, double defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value of " + key + ": " + value);
+        }
+    }
+
+    /**
+     * @return 返回缓冲池最多可以缓存的页面数量
+     */
+    public int getPagesNum() {
+        return getInt(PAGES_NUM, DEFAULT_PAGES_NUM);
+    }
+
+    /**
+     * @return 返回缓冲池分区数量，0表示自动选择
+     */
+    public int getPartitionsNum() {
+        return getInt(PARTITIONS_NUM, DEFAULT_PARTITIONS_NUM);
+    }
+
+    /**
+     * @return 返回新建HeapFile使用的页面大小
+     */
+    public int getPageSize() {
+        return getInt(PAGE_SIZE, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * @return 返回缓冲池驱逐策略的名称
+     */
+    public String getEvictPolicy() {
+        return properties.getProperty(EVICT_POLICY, DEFAULT_EVICT_POLICY).trim();
+    }
+
+    /**
+     * @return 缓冲池使用堆外内存存放页面则返回true，默认为false
+     */
+    public boolean isOffHeap() {
+        return Boolean.parseBoolean(properties.getProperty(OFF_HEAP, "false").trim());
+    }
+
+    /**
+     * @return 返回顺序扫描时最多预读的页面数量
+     */
+    public int getReadAheadPages() {
+        return getInt(READ_AHEAD_PAGES, DEFAULT_READ_AHEAD_PAGES);
+    }
+
+    /**
+     * @return HeapFile通过内存映射读取页面则返回true，默认为false
+     */
+    public boolean isMmap() {
+        return Boolean.parseBoolean(properties.getProperty(MMAP, "false").trim());
+    }
+
+    /**
+     * @return 返回批量建立B+树索引时结点的填充率
+     */
+    public double getIndexFillFactor() {
+        return getDouble(INDEX_FILL_FACTOR, DEFAULT_INDEX_FILL_FACTOR);
+    }
+
+    /**
+     * @return 返回外部排序在内存中排序的字节数
+     */
+    public long getSortBufferBytes() {
+        return (long) getInt(SORT_BUFFER, DEFAULT_SORT_BUFFER) << 20;
+    }
+}
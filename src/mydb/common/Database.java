@@ -1,6 +1,7 @@
 package mydb.common;
 
 import mydb.storage.BufferPool;
+import mydb.storage.FileChannelPool;
 import mydb.storage.LogFile;
 
 import java.io.*;
@@ -19,12 +20,22 @@ public class Database {
 
     private final BufferPool bufferPool;
 
+    private final FileChannelPool fileChannelPool;
+
     private final static String LOG_FILE_NAME = "log";
     private final LogFile logFile;
 
     private Database() {
         catalog = new Catalog();
-        bufferPool = new BufferPool(BufferPool.DEFAULT_PAGES_NUM);
+        fileChannelPool = new FileChannelPool();
+        // 根据启动配置创建缓冲池
+        Config config = Config.get();
+        int pagesNum = config.getPagesNum();
+        int partitionsNum = config.getPartitionsNum();
+        if (partitionsNum <= 0) {
+            partitionsNum = BufferPool.defaultPartitionsNum(pagesNum);
+        }
+        bufferPool = new BufferPool(pagesNum, partitionsNum, config.getEvictPolicy(), config.isOffHeap());
         LogFile file = null;
         try {
             file = new LogFile(new File(LOG_FILE_NAME));
@@ -49,6 +60,13 @@ public class Database {
         return instance.get().bufferPool;
     }
 
+    /**
+     * @return 返回数据库文件的通道缓存
+     */
+    public static FileChannelPool getFileChannelPool() {
+        return instance.get().fileChannelPool;
+    }
+
     /**
      * @return 返回该数据库系统的日志文件
      */
@@ -4,6 +4,8 @@ import mydb.storage.Field;
 import mydb.storage.IntField;
 import mydb.storage.StringField;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.io.*;
 
@@ -29,6 +31,11 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(ByteBuffer buffer, int offset) {
+            return new IntField(buffer.getInt(offset));
+        }
+
         @Override
         public String toString() {
             return "int";
@@ -52,6 +59,14 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(ByteBuffer buffer, int offset) {
+            int strLen = Math.min(buffer.getInt(offset), STRING_LEN);
+            byte[] bytes = new byte[strLen];
+            buffer.get(offset + 4, bytes);
+            return new StringField(new String(bytes, StandardCharsets.ISO_8859_1), STRING_LEN);
+        }
+
         @Override
         public String toString() {
             return "str";
@@ -71,4 +86,12 @@ public enum Type implements Serializable {
      */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+    /**
+     * 直接从页面的字节缓冲区中解析字段，不会改变缓冲区的position
+     * @param buffer 存放页面数据的字节缓冲区
+     * @param offset 字段在缓冲区中的起始位置
+     * @return 返回与该对象类型相同的Field对象
+     */
+    public abstract Field parse(ByteBuffer buffer, int offset);
+
 }
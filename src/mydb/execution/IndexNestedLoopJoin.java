@@ -0,0 +1,171 @@
+package mydb.execution;
+
+import mydb.common.DbException;
+import mydb.index.IndexPredicate;
+import mydb.storage.Field;
+import mydb.storage.Tuple;
+import mydb.storage.TupleDesc;
+import mydb.transaction.TransactionException;
+
+import java.io.Serial;
+import java.util.*;
+
+/**
+ * 索引嵌套循环连接：对外表（左孩子）的每个元组，通过内表连接字段上的索引查找匹配的元组，
+ * 而不是像Join一样每次重新扫描整个内表。外表较小且内表的连接字段上有索引时，
+ * 只需要读取与外表元组匹配的内表页面
+ * 内表（右孩子）是以IndexScan为叶子的子查询计划（如IndexScan上的Filter），
+ * 每个外表元组替换IndexScan的谓词后重新执行内表计划
+ */
+public class IndexNestedLoopJoin extends Operator {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate joinPredicate;
+
+    private OpIterator[] children;
+
+    /**
+     * 内表计划中查找内表的IndexScan
+     */
+    private final IndexScan probe;
+
+    /**
+     * 内表的索引键与外表字段比较的操作符，即交换了左右两边的连接谓词操作符
+     */
+    private final Predicate.Op probeOp;
+
+    /**
+     * 当前正在连接的外表元组
+     */
+    transient private Tuple outerTuple;
+
+    /**
+     * 内表计划是否已经打开，打开之后通过rewind重新查找
+     */
+    transient private boolean innerOpened;
+
+    /**
+     * @param joinPredicate 连接谓词，字段1为外表的字段，字段2为内表的索引键
+     * @param outer 外表的操作符迭代器
+     * @param inner 内表的操作符迭代器，其叶子结点为probe
+     * @param probe 内表计划中通过连接字段上的索引查找内表的IndexScan
+     * @throws IllegalArgumentException 索引不支持该连接谓词时抛出
+     */
+    public IndexNestedLoopJoin(JoinPredicate joinPredicate, OpIterator outer, OpIterator inner, IndexScan probe) {
+        this.joinPredicate = joinPredicate;
+        this.children = new OpIterator[] {outer, inner};
+        this.probe = probe;
+        this.probeOp = mirror(joinPredicate.getOp());
+        if (!probe.getIndex().supports(probeOp)) {
+            throw new IllegalArgumentException("index " + probe.getIndex() + " does not support " + probeOp);
+        }
+    }
+
+    /**
+     * @return 返回交换比较的左右两边之后的操作符，如a < b等价于b > a
+     */
+    public static Predicate.Op mirror(Predicate.Op op) {
+        return switch (op) {
+            case GREATER_THAN -> Predicate.Op.LESS_THAN;
+            case GREATER_THAN_OR_EQ -> Predicate.Op.LESS_THAN_OR_EQ;
+            case LESS_THAN -> Predicate.Op.GREATER_THAN;
+            case LESS_THAN_OR_EQ -> Predicate.Op.GREATER_THAN_OR_EQ;
+            default -> op;
+        };
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return joinPredicate;
+    }
+
+    public IndexScan getProbe() {
+        return probe;
+    }
+
+    @Override
+    public void open() throws DbException, NoSuchElementException, TransactionException {
+        children[0].open();
+        outerTuple = null;
+        innerOpened = false;
+        super.open();
+    }
+
+    @Override
+    public void close() {
+        for (OpIterator child: children) {
+            child.close();
+        }
+        outerTuple = null;
+        innerOpened = false;
+        super.close();
+    }
+
+    @Override
+    public void rewind() throws DbException, TransactionException {
+        children[0].rewind();
+        outerTuple = null;
+    }
+
+    /**
+     * 以外表元组的连接字段查找内表
+     */
+    private void probeInner(Tuple outer) throws DbException, TransactionException {
+        Field key = outer.getField(joinPredicate.getFieldIndex1());
+        probe.setPredicate(new IndexPredicate(probeOp, key));
+        if (innerOpened) {
+            children[1].rewind();
+        } else {
+            children[1].open();
+            innerOpened = true;
+        }
+    }
+
+    @Override
+    protected Tuple fetchNext() throws DbException, NoSuchElementException, TransactionException {
+        while (true) {
+            if (outerTuple == null) {
+                if (!children[0].hasNext()) {
+                    return null;
+                }
+                outerTuple = children[0].next();
+                probeInner(outerTuple);
+            }
+            while (children[1].hasNext()) {
+                Tuple innerTuple = children[1].next();
+                // 内表计划中的其它谓词已由Filter检查，这里检查完整的连接谓词
+                if (joinPredicate.filter(outerTuple, innerTuple)) {
+                    TupleDesc tupleDesc = getTupleDesc();
+                    Tuple newTuple = new Tuple(tupleDesc);
+                    int i = 0;
+                    Iterator<Field> fields1 = outerTuple.fields();
+                    while (fields1.hasNext() && i < tupleDesc.getFieldsNum()) {
+                        newTuple.setField(i++, fields1.next());
+                    }
+                    Iterator<Field> fields2 = innerTuple.fields();
+                    while (fields2.hasNext() && i < tupleDesc.getFieldsNum()) {
+                        newTuple.setField(i++, fields2.next());
+                    }
+                    return newTuple;
+                }
+            }
+            outerTuple = null;
+        }
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return TupleDesc.merge(children[0].getTupleDesc(), children[1].getTupleDesc());
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return children;
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.children = children;
+    }
+}
@@ -0,0 +1,160 @@
+package mydb.execution;
+
+import java.io.Serial;
+import mydb.common.Database;
+import mydb.common.DbException;
+import mydb.index.Index;
+import mydb.index.IndexPredicate;
+import mydb.storage.DbFileIterator;
+import mydb.storage.HeapFile;
+import mydb.storage.Tuple;
+import mydb.transaction.TransactionException;
+import mydb.transaction.TransactionId;
+
+import java.util.*;
+
+/**
+ * 通过索引查找满足谓词的元组，只读取索引中满足谓词的条目和这些条目对应的表页面，而不是扫描整个表
+ * 聚簇索引的条目就是表中的元组，非聚簇索引的条目通过RecordId从HeapFile中读取元组。
+ * 返回的元组与SeqScan相同，只是按索引键的顺序返回满足谓词的部分。
+ * 仅索引扫描（index-only scan）直接由条目中的索引键和包含列构造元组，不读取表页面，其它列为null，
+ * 只能用于查询引用的所有列都被索引覆盖的情况
+ * @see mydb.index.Index
+ */
+public class IndexScan extends SeqScan {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final TransactionId tid;
+
+    private final Index index;
+
+    private IndexPredicate predicate;
+
+    private final boolean indexOnly;
+
+    private DbFileIterator entries;
+
+    private Tuple next;
+
+    /**
+     * @param tid 事务ID
+     * @param index 需要进行扫描的表上的索引
+     * @param tableAlias 表的别名，返回的tupleDesc字段为：tableAlias.filedName
+     * @param predicate 索引键需要满足的谓词，操作符需要被索引支持
+     */
+    public IndexScan(TransactionId tid, Index index, String tableAlias, IndexPredicate predicate) {
+        this(tid, index, tableAlias, predicate, false);
+    }
+
+    /**
+     * @param tid 事务ID
+     * @param index 需要进行扫描的表上的索引
+     * @param tableAlias 表的别名，返回的tupleDesc字段为：tableAlias.filedName
+     * @param predicate 索引键需要满足的谓词，操作符需要被索引支持
+     * @param indexOnly 为true时只读取索引，返回的元组中没有被索引覆盖的列为null
+     */
+    public IndexScan(TransactionId tid, Index index, String tableAlias, IndexPredicate predicate, boolean indexOnly) {
+        super(tid, index.getTableId(), tableAlias);
+        if (!index.supports(predicate.getOp())) {
+            throw new IllegalArgumentException("index " + index + " does not support " + predicate.getOp());
+        }
+        this.tid = tid;
+        this.index = index;
+        this.predicate = predicate;
+        this.indexOnly = indexOnly;
+    }
+
+    public Index getIndex() {
+        return index;
+    }
+
+    public IndexPredicate getPredicate() {
+        return predicate;
+    }
+
+    public boolean isIndexOnly() {
+        return indexOnly;
+    }
+
+    /**
+     * 替换查找使用的谓词，之后的open或rewind使用新的谓词查找，
+     * 用于索引嵌套循环连接为外表的每个元组查找内表中匹配的元组
+     * @param predicate 索引键需要满足的谓词，操作符需要被索引支持
+     */
+    public void setPredicate(IndexPredicate predicate) {
+        if (!index.supports(predicate.getOp())) {
+            throw new IllegalArgumentException("index " + index + " does not support " + predicate.getOp());
+        }
+        this.predicate = predicate;
+    }
+
+    @Override
+    public void open() throws DbException, TransactionException {
+        next = null;
+        entries = index.lookup(tid, predicate);
+        entries.open();
+    }
+
+    @Override
+    public void close() {
+        if (entries != null) {
+            try {
+                entries.close();
+            } catch (DbException e) {
+                e.printStackTrace();
+            }
+        }
+        entries = null;
+        next = null;
+    }
+
+    /**
+     * @return 返回下一个满足谓词的元组，没有时返回null
+     */
+    private Tuple readNext() throws DbException, TransactionException {
+        while (entries.hasNext()) {
+            Tuple entry = entries.next();
+            if (index.isClustered()) {
+                return entry;
+            }
+            if (indexOnly) {
+                return index.getCoveredTuple(entry);
+            }
+            HeapFile heapFile = (HeapFile) Database.getCatalog().getDbFile(index.getTableId());
+            Tuple tuple = heapFile.getTuple(tid, index.getRecordId(entry));
+            if (tuple != null) {
+                return tuple;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean hasNext() throws DbException, TransactionException {
+        if (entries == null) {
+            return false;
+        }
+        if (next == null) {
+            next = readNext();
+        }
+        return next != null;
+    }
+
+    @Override
+    public Tuple next() throws DbException, NoSuchElementException, TransactionException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No next tuple");
+        }
+        Tuple tuple = next;
+        next = null;
+        return tuple;
+    }
+
+    @Override
+    public void rewind() throws DbException, TransactionException {
+        close();
+        open();
+    }
+}
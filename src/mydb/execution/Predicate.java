@@ -1,7 +1,10 @@
 package mydb.execution;
 
 import java.io.Serial;
+import mydb.storage.DictionaryField;
 import mydb.storage.Field;
+import mydb.storage.StringDictionary;
+import mydb.storage.StringField;
 import mydb.storage.Tuple;
 
 import java.io.Serializable;
@@ -62,6 +65,14 @@ public class Predicate implements Serializable {
      */
     private final Field operand;
 
+    /**
+     * 字典编码列的等值比较中，操作数所在的字典和操作数在该字典中的编码（不存在为-1），第一次比较时查找。
+     * 字典只会追加，编码找到后不再变化；不存在时记录查找时字典的大小，字典变大后重新查找
+     */
+    private transient StringDictionary dictionary;
+    private transient int operandCode;
+    private transient int dictionarySize;
+
     /**
      * Predicate谓词构造函数
      * @param fieldIndex 要进行比较的字段索引号（field number）
@@ -102,6 +113,25 @@ public class Predicate implements Serializable {
             return false;
         }
         Field field = tuple.getField(this.fieldIndex);
+        if (field instanceof DictionaryField dictionaryField
+                && (op == Op.EQUALS || op == Op.NOT_EQUALS) && operand instanceof StringField stringField) {
+            // 字典编码的列只需要比较编码，操作数只在字典变化或字典追加了新字符串时重新查找
+            StringDictionary current = dictionaryField.getDictionary();
+            if (current != dictionary || (operandCode == -1 && current != null && current.size() != dictionarySize)) {
+                dictionary = current;
+                if (dictionary == null) {
+                    operandCode = -1;
+                } else {
+                    // 先读大小再查找，查找期间追加的字符串会在下一次比较时重新查找
+                    dictionarySize = dictionary.size();
+                    operandCode = dictionary.lookup(stringField.getValue());
+                }
+            }
+            if (dictionary != null) {
+                boolean equals = dictionaryField.getCode() == operandCode;
+                return (op == Op.EQUALS) == equals;
+            }
+        }
         return field.compare(this.op, this.operand);
     }
 
@@ -0,0 +1,81 @@
+package mydb.execution;
+
+import java.io.Serial;
+import mydb.common.DbException;
+import mydb.storage.Tuple;
+import mydb.storage.TupleDesc;
+import mydb.transaction.TransactionException;
+import mydb.transaction.TransactionId;
+
+import java.util.*;
+
+/**
+ * 只返回表中部分列的顺序扫描，用于查询只引用了表中少数列的情况
+ * 页面中的元组字段在访问时才解析，因此只有被投影的列会被解析，其它列的字节不会被访问。
+ * 对按列存放字段的PaxPage，被投影的列在页面中是连续的区域
+ * @see mydb.storage.PaxFile
+ */
+public class ProjectedScan extends SeqScan {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 被投影的列在表中的索引，按输出的顺序排列
+     */
+    private final int[] columns;
+
+    private TupleDesc tupleDesc;
+
+    /**
+     * @param tid 事务ID
+     * @param tableId 需要进行扫描的表的ID
+     * @param tableAlias 表的别名，返回的tupleDesc字段为：tableAlias.filedName
+     * @param columns 需要返回的列在表中的索引
+     */
+    public ProjectedScan(TransactionId tid, int tableId, String tableAlias, int[] columns) {
+        super(tid, tableId, tableAlias);
+        this.columns = columns.clone();
+        this.tupleDesc = getProjectedTupleDesc();
+    }
+
+    private TupleDesc getProjectedTupleDesc() {
+        List<TupleDesc.TupleDescItem> items = super.getTupleDesc().getTupleDescItems();
+        List<TupleDesc.TupleDescItem> newItems = new ArrayList<>();
+        for (int column: columns) {
+            newItems.add(items.get(column));
+        }
+        TupleDesc newTupleDesc = new TupleDesc();
+        newTupleDesc.setTupleDescItems(newItems);
+        return newTupleDesc;
+    }
+
+    /**
+     * @return 返回被投影的列在表中的索引
+     */
+    public int[] getColumns() {
+        return columns.clone();
+    }
+
+    @Override
+    public void resetTable(int tableId, String tableAlias) {
+        super.resetTable(tableId, tableAlias);
+        this.tupleDesc = getProjectedTupleDesc();
+    }
+
+    @Override
+    public Tuple next() throws DbException, NoSuchElementException, TransactionException {
+        Tuple tuple = super.next();
+        Tuple projected = new Tuple(tupleDesc);
+        for (int i=0; i<columns.length; i++) {
+            projected.setField(i, tuple.getField(columns[i]));
+        }
+        projected.setRecordId(tuple.getRecordId());
+        return projected;
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+}
@@ -0,0 +1,429 @@
+package mydb.index;
+
+import mydb.common.Config;
+import mydb.common.Database;
+import mydb.common.DbException;
+import mydb.storage.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 从元组批量建立B+树，用于在已有数据的表上新建索引
+ * 元组先按索引键排序（超过内存中排序的数据量时写入临时文件，最后多路归并），
+ * 然后按填充率依次装满叶子结点、逐层生成内部结点，整个文件只顺序写一遍，不经过缓冲池和日志。
+ * 因为不写日志，先写到临时文件并强制刷盘，再重命名替换索引文件。
+ * 只能用于空的BTreeFile，写完后缓冲池中不能有该文件的页面：
+ * <pre>
+ * BTreeBulkLoader loader = new BTreeBulkLoader(btreeFile, false);
+ * loader.add(tuple);
+ * int tuplesNum = loader.finish();
+ * </pre>
+ * 节点不装满可以为之后的插入预留空间，避免建好的B+树在插入时立即分裂
+ */
+public class BTreeBulkLoader {
+
+    /**
+     * 一次写入文件的页面数量
+     */
+    private static final int BATCH_PAGES = 64;
+
+    private final BTreeFile file;
+
+    private final TupleDesc tupleDesc;
+
+    private final int keyField;
+
+    private final double fillFactor;
+
+    private final boolean unique;
+
+    private final Comparator<Tuple> keyComparator;
+
+    /**
+     * 内存中最多排序的元组数量，超过时写成一个有序的临时文件
+     */
+    private final int runTuples;
+
+    private final List<Tuple> buffer = new ArrayList<>();
+
+    /**
+     * 已写入临时文件的有序段
+     */
+    private final List<File> runs = new ArrayList<>();
+
+    private boolean finished;
+
+    /**
+     * 使用配置中的填充率和排序内存
+     * @param file 空的BTreeFile
+     * @param unique 索引键是否不能重复
+     */
+    public BTreeBulkLoader(BTreeFile file, boolean unique) {
+        this(file, Config.get().getIndexFillFactor(), Config.get().getSortBufferBytes(), unique);
+    }
+
+    /**
+     * @param file 空的BTreeFile
+     * @param fillFactor 结点的填充率，范围0.5~1.0
+     * @param sortBufferBytes 内存中排序的字节数
+     * @param unique 索引键是否不能重复
+     * @throws IllegalArgumentException 填充率不在范围内时抛出
+     * @throws IllegalStateException 文件不为空时抛出
+     */
+    public BTreeBulkLoader(BTreeFile file, double fillFactor, long sortBufferBytes, boolean unique) {
+        if (fillFactor < 0.5 || fillFactor > 1.0) {
+            throw new IllegalArgumentException("fill factor should be in [0.5, 1.0]: " + fillFactor);
+        }
+        if (file.getFile().length() > 0) {
+            throw new IllegalStateException("bulk loading requires an empty B+ tree file: " + file.getFile());
+        }
+        this.file = file;
+        this.tupleDesc = file.getTupleDesc();
+        this.keyField = file.keyField();
+        this.fillFactor = fillFactor;
+        this.unique = unique;
+        this.keyComparator = (a, b) -> BTreeNodePage.compareKeys(a.getField(keyField), b.getField(keyField));
+        // 内存中的元组对象除了字段的值还有对象头和引用的开销
+        long tupleBytes = tupleDesc.getSize() + 32L * tupleDesc.getFieldsNum() + 32;
+        this.runTuples = (int) Math.max(1024, Math.min(Integer.MAX_VALUE - 8, sortBufferBytes / tupleBytes));
+    }
+
+    /**
+     * 添加一个元组，元组不需要有序
+     * @param tuple 与BTreeFile的元组描述相同的元组
+     */
+    public void add(Tuple tuple) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("bulk loader has finished");
+        }
+        buffer.add(tuple);
+        if (buffer.size() >= runTuples) {
+            spill();
+        }
+    }
+
+    /**
+     * 将内存中的元组排序后写入临时文件
+     */
+    private void spill() throws IOException {
+        buffer.sort(keyComparator);
+        File run = File.createTempFile("mydb-sort-", ".run", file.getFile().getAbsoluteFile().getParentFile());
+        run.deleteOnExit();
+        runs.add(run);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16))) {
+            for (Tuple tuple: buffer) {
+                for (int i=0; i<tupleDesc.getFieldsNum(); i++) {
+                    tuple.getField(i).serialize(out);
+                }
+            }
+        }
+        buffer.clear();
+    }
+
+    /**
+     * 排序所有元组并写出B+树
+     * @return 返回B+树中的元组数量
+     * @throws DbException 唯一索引中有重复的索引键时抛出，此时索引文件保持为空
+     */
+    public int finish() throws DbException, IOException {
+        if (finished) {
+            throw new IllegalStateException("bulk loader has finished");
+        }
+        finished = true;
+        SortedInput input;
+        if (runs.isEmpty()) {
+            buffer.sort(keyComparator);
+            input = new BufferInput(buffer);
+        } else {
+            if (!buffer.isEmpty()) {
+                spill();
+            }
+            input = new MergeInput(runs);
+        }
+        // 先写到临时文件并刷到磁盘，再原子地替换索引文件，中途失败或崩溃时索引文件仍然为空
+        File target = file.getFile();
+        File tmp = new File(target.getPath() + ".tmp");
+        try {
+            int tuplesNum;
+            try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                tuplesNum = write(input, channel);
+                channel.force(true);
+            }
+            // 通道池中缓存的是旧文件的通道，替换之前关闭
+            Database.getFileChannelPool().close(target);
+            Files.move(tmp.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return tuplesNum;
+        } finally {
+            input.close();
+            tmp.delete();
+            for (File run: runs) {
+                run.delete();
+            }
+        }
+    }
+
+    /**
+     * @return 返回n个元素平均分到m个结点时，第i个结点的第一个元素的位置
+     */
+    private static long startOf(long i, long n, long m) {
+        return i * n / m;
+    }
+
+    /**
+     * 依次写出根指针页面、所有叶子结点和每一层内部结点，根结点是最后一个页面
+     */
+    private int write(SortedInput input, FileChannel channel) throws DbException, IOException {
+        int pageSize = file.getPageSize();
+        int tableId = file.getId();
+        long tuplesNum = input.size();
+        int perLeaf = Math.max(1, (int) (BTreeLeafPage.getMaxTuples(pageSize, tupleDesc) * fillFactor));
+        int perNode = Math.max(2, (int) ((BTreeInternalPage.getMaxKeys(pageSize, tupleDesc.getFieldType(keyField)) + 1) * fillFactor));
+        // 每一层的结点数量，第0层为叶子结点
+        List<Long> levels = new ArrayList<>();
+        levels.add(Math.max(1, (tuplesNum + perLeaf - 1) / perLeaf));
+        while (levels.get(levels.size() - 1) > 1) {
+            levels.add((levels.get(levels.size() - 1) + perNode - 1) / perNode);
+        }
+        // 每一层第一个结点的页面编号
+        long[] firstPageNo = new long[levels.size()];
+        firstPageNo[0] = 1;
+        for (int level=1; level<levels.size(); level++) {
+            firstPageNo[level] = firstPageNo[level - 1] + levels.get(level - 1);
+        }
+        int rootLevel = levels.size() - 1;
+        if (firstPageNo[rootLevel] > Integer.MAX_VALUE) {
+            throw new DbException("too many tuples for a B+ tree file: " + tuplesNum);
+        }
+
+        ByteBuffer batch = ByteBuffer.allocate(BATCH_PAGES * pageSize);
+        long position = 0;
+        byte[] header = new byte[BTreeFile.HEADER_SIZE];
+        BTreeRootPtrPage rootPtr = new BTreeRootPtrPage(file.getRootPtrId(),
+                BTreeRootPtrPage.createEmptyPageData(pageSize, keyField));
+        rootPtr.setRootId(new BTreePageId(tableId, (int) firstPageNo[rootLevel],
+                rootLevel == 0 ? BTreePageId.LEAF : BTreePageId.INTERNAL));
+        System.arraycopy(rootPtr.getPageData(), 0, header, 0, BTreeRootPtrPage.PAGE_SIZE);
+        FileChannelPool.writeFully(channel, ByteBuffer.wrap(header), position);
+        position += header.length;
+
+        // 叶子结点，每个结点（最后一个除外）的最后一个索引键是父结点中的分隔键
+        long leavesNum = levels.get(0);
+        List<Field> separators = new ArrayList<>();
+        Field previous = null;
+        for (long i=0; i<leavesNum; i++) {
+            int pageNo = (int) (firstPageNo[0] + i);
+            BTreeLeafPage leaf = new BTreeLeafPage(new BTreePageId(tableId, pageNo, BTreePageId.LEAF),
+                    new byte[pageSize], tupleDesc, keyField);
+            long size = startOf(i + 1, tuplesNum, leavesNum) - startOf(i, tuplesNum, leavesNum);
+            for (long j=0; j<size; j++) {
+                Tuple tuple = input.next();
+                Field key = tuple.getField(keyField);
+                if (unique && previous != null && BTreeNodePage.compareKeys(previous, key) == 0) {
+                    throw new DbException("duplicate key " + key + " for unique index on " + file.getFile().getName());
+                }
+                previous = key;
+                leaf.tuples.add(tuple);
+            }
+            leaf.leftPageNo = (i > 0) ? pageNo - 1 : 0;
+            leaf.rightPageNo = (i < leavesNum - 1) ? pageNo + 1 : 0;
+            leaf.parentPageNo = parentPageNo(i, levels, firstPageNo, 0);
+            if (i < leavesNum - 1) {
+                separators.add(previous);
+            }
+            position = append(channel, batch, leaf.getPageData(), position);
+        }
+
+        // 内部结点，子结点i和i+1之间的分隔键为子结点i中最大的索引键
+        for (int level=1; level<levels.size(); level++) {
+            long childrenNum = levels.get(level - 1);
+            long nodesNum = levels.get(level);
+            int childCategory = (level == 1) ? BTreePageId.LEAF : BTreePageId.INTERNAL;
+            List<Field> upper = new ArrayList<>();
+            for (long i=0; i<nodesNum; i++) {
+                int pageNo = (int) (firstPageNo[level] + i);
+                BTreeInternalPage node = new BTreeInternalPage(new BTreePageId(tableId, pageNo, BTreePageId.INTERNAL),
+                        new byte[pageSize], tupleDesc, keyField);
+                node.childCategory = childCategory;
+                long start = startOf(i, childrenNum, nodesNum);
+                long end = startOf(i + 1, childrenNum, nodesNum);
+                for (long child=start; child<end; child++) {
+                    node.children.add((int) (firstPageNo[level - 1] + child));
+                    if (child < end - 1) {
+                        node.keys.add(separators.get((int) child));
+                    }
+                }
+                if (i < nodesNum - 1) {
+                    upper.add(separators.get((int) (end - 1)));
+                }
+                node.parentPageNo = parentPageNo(i, levels, firstPageNo, level);
+                position = append(channel, batch, node.getPageData(), position);
+            }
+            separators = upper;
+        }
+        flush(channel, batch, position);
+        return (int) tuplesNum;
+    }
+
+    /**
+     * @return 返回第level层的第i个结点的父结点的页面编号，根结点返回0
+     */
+    private static int parentPageNo(long i, List<Long> levels, long[] firstPageNo, int level) {
+        if (level == levels.size() - 1) {
+            return 0;
+        }
+        long childrenNum = levels.get(level);
+        long parentsNum = levels.get(level + 1);
+        // 父结点j包含的子结点为[startOf(j), startOf(j + 1))
+        long parent = ((i + 1) * parentsNum - 1) / childrenNum;
+        while (startOf(parent, childrenNum, parentsNum) > i) {
+            parent--;
+        }
+        while (startOf(parent + 1, childrenNum, parentsNum) <= i) {
+            parent++;
+        }
+        return (int) (firstPageNo[level + 1] + parent);
+    }
+
+    /**
+     * 将页面放入批量写入的缓冲区，缓冲区满时写入文件
+     * @return 返回下一个页面在文件中的偏移量
+     */
+    private static long append(FileChannel channel, ByteBuffer batch, byte[] page, long position) throws IOException {
+        batch.put(page);
+        if (!batch.hasRemaining()) {
+            flush(channel, batch, position + page.length);
+        }
+        return position + page.length;
+    }
+
+    /**
+     * 将缓冲区中的页面写入文件
+     * @param end 缓冲区中最后一个页面的结束位置
+     */
+    private static void flush(FileChannel channel, ByteBuffer batch, long end) throws IOException {
+        if (batch.position() == 0) {
+            return;
+        }
+        batch.flip();
+        FileChannelPool.writeFully(channel, batch, end - batch.remaining());
+        batch.clear();
+    }
+
+    /**
+     * 按索引键有序的元组
+     */
+    private interface SortedInput extends Closeable {
+        long size();
+
+        Tuple next() throws IOException;
+    }
+
+    /**
+     * 全部在内存中排序的元组
+     */
+    private static class BufferInput implements SortedInput {
+        private final List<Tuple> tuples;
+        private int index;
+
+        BufferInput(List<Tuple> tuples) {
+            this.tuples = tuples;
+        }
+
+        @Override
+        public long size() {
+            return tuples.size();
+        }
+
+        @Override
+        public Tuple next() {
+            return tuples.get(index++);
+        }
+
+        @Override
+        public void close() {
+            tuples.clear();
+        }
+    }
+
+    /**
+     * 多个有序临时文件的归并，索引键相同时按临时文件的顺序输出，与元组添加的顺序一致
+     */
+    private class MergeInput implements SortedInput {
+        private final DataInputStream[] inputs;
+        private final long[] remaining;
+        private final PriorityQueue<Object[]> heap;
+        private final byte[] record = new byte[tupleDesc.getSize()];
+        private long size;
+
+        MergeInput(List<File> runs) throws IOException {
+            this.inputs = new DataInputStream[runs.size()];
+            this.remaining = new long[runs.size()];
+            // 堆中的元素为{元组, 临时文件的下标}
+            this.heap = new PriorityQueue<>(Math.max(1, runs.size()), (a, b) -> {
+                int cmp = keyComparator.compare((Tuple) a[0], (Tuple) b[0]);
+                return (cmp != 0) ? cmp : Integer.compare((Integer) a[1], (Integer) b[1]);
+            });
+            for (int i=0; i<runs.size(); i++) {
+                File run = runs.get(i);
+                inputs[i] = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+                remaining[i] = run.length() / record.length;
+                size += remaining[i];
+                advance(i);
+            }
+        }
+
+        /**
+         * 从第i个临时文件中读取下一个元组放入堆中
+         */
+        private void advance(int i) throws IOException {
+            if (remaining[i] == 0) {
+                return;
+            }
+            remaining[i]--;
+            inputs[i].readFully(record);
+            ByteBuffer data = ByteBuffer.wrap(record);
+            Tuple tuple = new Tuple(tupleDesc);
+            int offset = 0;
+            for (int j=0; j<tupleDesc.getFieldsNum(); j++) {
+                tuple.setField(j, tupleDesc.getFieldType(j).parse(data, offset));
+                offset += tupleDesc.getFieldType(j).getLen();
+            }
+            heap.add(new Object[]{tuple, i});
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public Tuple next() throws IOException {
+            Object[] top = heap.poll();
+            if (top == null) {
+                throw new EOFException("sorted runs are exhausted");
+            }
+            advance((Integer) top[1]);
+            return (Tuple) top[0];
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (DataInputStream input: inputs) {
+                if (input != null) {
+                    input.close();
+                }
+            }
+        }
+    }
+}
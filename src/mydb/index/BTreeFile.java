@@ -0,0 +1,783 @@
+package mydb.index;
+
+import mydb.common.Database;
+import mydb.common.DbException;
+import mydb.common.Permissions;
+import mydb.execution.Predicate;
+import mydb.storage.*;
+import mydb.transaction.TransactionException;
+import mydb.transaction.TransactionId;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * BTreeFile（B+树文件）实现了DbFile接口，元组按索引字段有序地存放在B+树的叶子结点中，
+ * 等值查找和范围查找只需要从根结点向下读取O(log n)个页面，而不是扫描所有页面
+ * 文件格式：根指针页面（BTreeRootPtrPage，占用HEADER_SIZE字节，记录魔数、版本、页面大小、索引字段、
+ * 根结点和第一个header页面的位置），之后依次存放编号从1开始的内部结点、叶子结点和header页面。
+ * 被释放的页面记录在header页面中，之后分裂结点时重新使用
+ * 页面通过BufferPool获取并加锁，插入和删除时需要修改的页面都在同一个事务中加排他锁（页面级的严格两阶段锁），
+ * 因此不需要额外的latch crabbing，同一时间只有一个事务可以修改同一个结点
+ * @see BTreeLeafPage
+ * @see BTreeInternalPage
+ */
+public class BTreeFile implements DbFile {
+
+    /**
+     * 文件头的魔数（"MYBT"）
+     */
+    static final int FILE_MAGIC = 0x4D594254;
+
+    static final int FILE_VERSION = 1;
+
+    /**
+     * 文件开头为根指针页面保留的字节数，之后为编号从1开始的页面
+     */
+    public static final int HEADER_SIZE = HeapFile.HEADER_SIZE;
+
+    private final File file;
+
+    private final TupleDesc tupleDesc;
+
+    /**
+     * 索引字段在元组中的下标
+     */
+    private final int keyField;
+
+    /**
+     * 除根指针页面外的页面大小，已存在的文件使用文件头中记录的页面大小
+     */
+    private final int pageSize;
+
+    /**
+     * 该文件的通道由数据库的FileChannelPool统一缓存和关闭
+     */
+    private final FileChannelPool channelPool;
+
+    /**
+     * @param file 磁盘中的文件，用于存放BTreeFile
+     * @param tupleDesc 元组描述
+     * @param keyField 索引字段在元组中的下标
+     * @throws IllegalStateException 已存在的文件不是B+树文件或索引字段不同时抛出
+     * @throws IllegalArgumentException 页面太小，无法存放至少两个元组或两个索引键时抛出
+     */
+    public BTreeFile(File file, TupleDesc tupleDesc, int keyField) {
+        this.file = file;
+        this.tupleDesc = tupleDesc;
+        this.keyField = keyField;
+        this.channelPool = Database.getFileChannelPool();
+        int size = BufferPool.getPageSize();
+        if (file.length() > 0) {
+            // 读取已存在文件的根指针页面
+            try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+                if (file.length() < BTreeRootPtrPage.PAGE_SIZE || dis.readInt() != FILE_MAGIC) {
+                    throw new IllegalStateException("file " + file.getPath() + " is not a B+ tree file");
+                }
+                dis.readInt(); // 版本号
+                size = BufferPool.checkPageSize(dis.readInt());
+                int field = dis.readInt();
+                if (field != keyField) {
+                    throw new IllegalStateException(String.format("file %s is indexed on field %d, expected %d",
+                            file.getPath(), field, keyField));
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        this.pageSize = size;
+        if (BTreeLeafPage.getMaxTuples(size, tupleDesc) < 2
+                || BTreeInternalPage.getMaxKeys(size, tupleDesc.getFieldType(keyField)) < 2) {
+            throw new IllegalArgumentException("page size " + size + " is too small for the B+ tree");
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public int getId() {
+        return file.getAbsolutePath().hashCode();
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+
+    /**
+     * @return 返回索引字段在元组中的下标
+     */
+    public int keyField() {
+        return keyField;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return 返回根指针页面的ID
+     */
+    public BTreePageId getRootPtrId() {
+        return new BTreePageId(getId(), 0, BTreePageId.ROOT_PTR);
+    }
+
+    /**
+     * @return 返回除根指针页面外的页面数量，包括已释放的页面
+     */
+    public int getPagesNum() {
+        long fileLength = file.length() - HEADER_SIZE;
+        if (fileLength <= 0) {
+            return 0;
+        }
+        return (int) (fileLength / pageSize);
+    }
+
+    /**
+     * 根据页面数量和内部结点的最大扇出估计B+树的高度，用于估计查找的代价
+     * @return 返回从根结点到叶子结点需要读取的页面数量
+     */
+    public int estimateHeight() {
+        int pagesNum = getPagesNum();
+        if (pagesNum <= 1) {
+            return 1;
+        }
+        int fanout = BTreeInternalPage.getMaxKeys(pageSize, tupleDesc.getFieldType(keyField)) + 1;
+        return 1 + (int) Math.ceil(Math.log(pagesNum) / Math.log(fanout));
+    }
+
+    private long offsetOf(int pageNo) {
+        return HEADER_SIZE + (long) pageSize * (pageNo - 1);
+    }
+
+    @Override
+    public Page readPage(PageId pid) {
+        BTreePageId id = (BTreePageId) pid;
+        try {
+            FileChannel channel = channelPool.get(file);
+            if (id.getPageIndex() == 0) {
+                byte[] data = BTreeRootPtrPage.createEmptyPageData(pageSize, keyField);
+                if (channel.size() >= BTreeRootPtrPage.PAGE_SIZE) {
+                    FileChannelPool.readFully(channel, ByteBuffer.wrap(data), 0);
+                }
+                return new BTreeRootPtrPage(id, data);
+            }
+            byte[] data = new byte[pageSize];
+            FileChannelPool.readFully(channel, ByteBuffer.wrap(data), offsetOf(id.getPageIndex()));
+            return createPage(id, data);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 根据页面中记录的页面类型创建页面，全0的页面（新追加的页面）使用页面ID中的类型
+     * @param id 页面ID
+     * @param data 页面的字节
+     */
+    BTreePage createPage(BTreePageId id, byte[] data) throws IOException {
+        int category = (data[0] == 0) ? id.getCategory() : data[0];
+        BTreePageId pid = new BTreePageId(id.getTableId(), id.getPageIndex(), category);
+        return switch (category) {
+            case BTreePageId.INTERNAL -> new BTreeInternalPage(pid, data, tupleDesc, keyField);
+            case BTreePageId.LEAF -> new BTreeLeafPage(pid, data, tupleDesc, keyField);
+            case BTreePageId.HEADER -> new BTreeHeaderPage(pid, data);
+            default -> throw new IOException("unknown page category " + category + " of page " + id);
+        };
+    }
+
+    @Override
+    public void writePage(Page page) throws IOException {
+        int pageNo = page.getId().getPageIndex();
+        long offset = (pageNo == 0) ? 0 : offsetOf(pageNo);
+        FileChannelPool.writeFully(channelPool.get(file), ByteBuffer.wrap(page.getPageData()), offset);
+    }
+
+    /**
+     * 在文件末尾添加一个全0的页面，新文件会先写入根指针页面
+     * 多个事务同时扩展文件时需要互斥，保证每个事务得到不同的新页面
+     * @return 返回新页面的编号
+     */
+    private synchronized int appendEmptyPage() throws IOException {
+        FileChannel channel = channelPool.get(file);
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            byte[] header = new byte[HEADER_SIZE];
+            if (size >= BTreeRootPtrPage.PAGE_SIZE) {
+                FileChannelPool.readFully(channel, ByteBuffer.wrap(header, 0, BTreeRootPtrPage.PAGE_SIZE), 0);
+            } else {
+                byte[] rootPtr = BTreeRootPtrPage.createEmptyPageData(pageSize, keyField);
+                System.arraycopy(rootPtr, 0, header, 0, rootPtr.length);
+            }
+            FileChannelPool.writeFully(channel, ByteBuffer.wrap(header), 0);
+            size = HEADER_SIZE;
+        }
+        int pageNo = (int) ((size - HEADER_SIZE) / pageSize) + 1;
+        FileChannelPool.writeFully(channel, ByteBuffer.wrap(new byte[pageSize]), offsetOf(pageNo));
+        return pageNo;
+    }
+
+    /**
+     * 获取页面，优先返回该操作中已经修改过的页面，以READ_WRITE权限获取的页面会被记录为修改过的页面
+     * @param tid 事务ID
+     * @param dirtyPages 该操作修改过的页面
+     * @param pid 页面ID
+     * @param perm 操作权限
+     */
+    BTreePage getPage(TransactionId tid, Map<PageId, Page> dirtyPages, BTreePageId pid, Permissions perm)
+            throws DbException, TransactionException {
+        Page page = dirtyPages.get(pid);
+        if (page != null) {
+            return (BTreePage) page;
+        }
+        page = Database.getBufferPool().getPage(tid, pid, perm);
+        if (perm == Permissions.READ_WRITE) {
+            dirtyPages.put(pid, page);
+        }
+        return (BTreePage) page;
+    }
+
+    /**
+     * 从pid开始向下查找可能包含key的最左边的叶子结点，内部结点以READ_ONLY权限获取
+     * @param pid 开始查找的结点
+     * @param perm 叶子结点的操作权限
+     * @param key 需要查找的键，为null时返回最左边的叶子结点
+     */
+    BTreeLeafPage findLeafPage(TransactionId tid, Map<PageId, Page> dirtyPages, BTreePageId pid,
+                               Permissions perm, Field key) throws DbException, TransactionException {
+        while (pid.getCategory() == BTreePageId.INTERNAL) {
+            BTreeInternalPage page = (BTreeInternalPage) getPage(tid, dirtyPages, pid, Permissions.READ_ONLY);
+            pid = page.getChildId(page.findChildIndex(key));
+        }
+        return (BTreeLeafPage) getPage(tid, dirtyPages, pid, perm);
+    }
+
+    /**
+     * 插入元组，叶子结点已满时分裂叶子结点，必要时递归分裂父结点
+     * @param tid 进行插入操作的事务ID
+     * @param tuple 需要插入的元组
+     * @return 返回修改了的页面列表
+     */
+    @Override
+    public List<Page> insertTuple(TransactionId tid, Tuple tuple)
+            throws DbException, IOException, TransactionException {
+        if (!tuple.getTupleDesc().equals(tupleDesc)) {
+            throw new DbException("the tupleDesc is not matched");
+        }
+        Map<PageId, Page> dirtyPages = new LinkedHashMap<>();
+        BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) getPage(tid, dirtyPages, getRootPtrId(), Permissions.READ_ONLY);
+        BTreePageId rootId = rootPtr.getRootId();
+        if (rootId == null) {
+            // 空树，创建第一个叶子结点作为根结点
+            rootPtr = (BTreeRootPtrPage) getPage(tid, dirtyPages, getRootPtrId(), Permissions.READ_WRITE);
+            rootId = rootPtr.getRootId();
+            if (rootId == null) {
+                BTreePage leaf = getEmptyPage(tid, dirtyPages, BTreePageId.LEAF);
+                rootId = leaf.getId();
+                rootPtr.setRootId(rootId);
+            }
+        }
+        Field key = tuple.getField(keyField);
+        BTreeLeafPage leaf = findLeafPage(tid, dirtyPages, rootId, Permissions.READ_WRITE, key);
+        if (leaf.getEmptySlotsNum() == 0) {
+            leaf = splitLeafPage(tid, dirtyPages, leaf, key);
+        }
+        leaf.insertTuple(tuple);
+        return new ArrayList<>(dirtyPages.values());
+    }
+
+    /**
+     * 将叶子结点的后一半元组移动到新的右兄弟结点中，并在父结点中插入两者之间的索引键
+     * @param key 需要插入的元组的索引键
+     * @return 返回应该插入该元组的叶子结点
+     */
+    private BTreeLeafPage splitLeafPage(TransactionId tid, Map<PageId, Page> dirtyPages, BTreeLeafPage leaf, Field key)
+            throws DbException, IOException, TransactionException {
+        // 先保证父结点有空间，父结点分裂后该结点的父结点可能改变
+        BTreeInternalPage parent = getParentWithEmptySlots(tid, dirtyPages, leaf);
+        BTreeLeafPage right = (BTreeLeafPage) getEmptyPage(tid, dirtyPages, BTreePageId.LEAF);
+        int half = leaf.tuples.size() / 2;
+        List<Tuple> moved = leaf.tuples.subList(half, leaf.tuples.size());
+        right.tuples.addAll(moved);
+        moved.clear();
+        // 维护叶子结点之间的兄弟指针
+        BTreePageId oldRightId = leaf.getRightSiblingId();
+        if (oldRightId != null) {
+            BTreeLeafPage oldRight = (BTreeLeafPage) getPage(tid, dirtyPages, oldRightId, Permissions.READ_WRITE);
+            oldRight.setLeftSiblingId(right.getId());
+        }
+        right.setRightSiblingId(oldRightId);
+        right.setLeftSiblingId(leaf.getId());
+        leaf.setRightSiblingId(right.getId());
+        // 左结点的最大键作为分隔键，左结点中的键都不大于它，右结点中的键都不小于它
+        Field splitKey = leaf.getKey(leaf.tuples.size() - 1);
+        parent.insertEntry(parent.indexOfChild(leaf.getId().getPageIndex()), splitKey, right.getId());
+        right.setParentId(parent.getId());
+        return (BTreeNodePage.compareKeys(key, splitKey) > 0) ? right : leaf;
+    }
+
+    /**
+     * 将内部结点的后一半索引键和子结点移动到新的右兄弟结点中，中间的索引键移动到父结点
+     */
+    private void splitInternalPage(TransactionId tid, Map<PageId, Page> dirtyPages, BTreeInternalPage page)
+            throws DbException, IOException, TransactionException {
+        BTreeInternalPage parent = getParentWithEmptySlots(tid, dirtyPages, page);
+        BTreeInternalPage right = (BTreeInternalPage) getEmptyPage(tid, dirtyPages, BTreePageId.INTERNAL);
+        right.childCategory = page.childCategory;
+        int mid = page.keys.size() / 2;
+        Field upKey = page.keys.get(mid);
+        List<Field> movedKeys = page.keys.subList(mid + 1, page.keys.size());
+        List<Integer> movedChildren = page.children.subList(mid + 1, page.children.size());
+        right.keys.addAll(movedKeys);
+        right.children.addAll(movedChildren);
+        movedKeys.clear();
+        movedChildren.clear();
+        page.keys.remove(mid);
+        parent.insertEntry(parent.indexOfChild(page.getId().getPageIndex()), upKey, right.getId());
+        right.setParentId(parent.getId());
+        updateParentPointers(tid, dirtyPages, right, 0);
+    }
+
+    /**
+     * 返回结点的父结点，父结点已满时先分裂父结点，结点为根结点时创建新的根结点
+     * @param child 需要在父结点中插入索引键的结点
+     */
+    private BTreeInternalPage getParentWithEmptySlots(TransactionId tid, Map<PageId, Page> dirtyPages,
+                                                      BTreeNodePage child)
+            throws DbException, IOException, TransactionException {
+        BTreePageId parentId = child.getParentId();
+        if (parentId.getCategory() == BTreePageId.ROOT_PTR) {
+            BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) getPage(tid, dirtyPages, parentId, Permissions.READ_WRITE);
+            BTreeInternalPage root = (BTreeInternalPage) getEmptyPage(tid, dirtyPages, BTreePageId.INTERNAL);
+            root.childCategory = child.getId().getCategory();
+            root.children.add(child.getId().getPageIndex());
+            rootPtr.setRootId(root.getId());
+            child.setParentId(root.getId());
+            return root;
+        }
+        BTreeInternalPage parent = (BTreeInternalPage) getPage(tid, dirtyPages, parentId, Permissions.READ_WRITE);
+        if (parent.getEmptySlotsNum() == 0) {
+            splitInternalPage(tid, dirtyPages, parent);
+            // 分裂后该结点可能被移动到新的内部结点中
+            parent = (BTreeInternalPage) getPage(tid, dirtyPages, child.getParentId(), Permissions.READ_WRITE);
+        }
+        return parent;
+    }
+
+    /**
+     * 将内部结点从第from个子结点开始的所有子结点的父结点设置为该结点
+     */
+    private void updateParentPointers(TransactionId tid, Map<PageId, Page> dirtyPages, BTreeInternalPage page, int from)
+            throws DbException, TransactionException {
+        for (int i=from; i<page.getChildrenNum(); i++) {
+            updateParent(tid, dirtyPages, page.getChildId(i), page.getId());
+        }
+    }
+
+    private void updateParent(TransactionId tid, Map<PageId, Page> dirtyPages, BTreePageId childId, BTreePageId parentId)
+            throws DbException, TransactionException {
+        BTreeNodePage child = (BTreeNodePage) getPage(tid, dirtyPages, childId, Permissions.READ_ONLY);
+        if (!child.getParentId().equals(parentId)) {
+            child = (BTreeNodePage) getPage(tid, dirtyPages, childId, Permissions.READ_WRITE);
+            child.setParentId(parentId);
+        }
+    }
+
+    /**
+     * 删除元组，叶子结点少于半满时与兄弟结点合并或从兄弟结点移动元组，必要时递归处理父结点
+     * @param tid 事务ID
+     * @param tuple 需要进行删除的元组，RecordId过时时根据字段值查找
+     * @return 返回修改了的页面列表
+     */
+    @Override
+    public List<Page> deleteTuple(TransactionId tid, Tuple tuple)
+            throws DbException, IOException, TransactionException {
+        Map<PageId, Page> dirtyPages = new LinkedHashMap<>();
+        RecordId rid = tuple.getRecordId();
+        BTreeLeafPage leaf = null;
+        int index = -1;
+        if (rid != null && rid.getPageId() instanceof BTreePageId pid
+                && pid.getTableId() == getId() && pid.getPageIndex() > 0) {
+            BTreePage page = getPage(tid, dirtyPages, pid, Permissions.READ_WRITE);
+            if (page instanceof BTreeLeafPage) {
+                leaf = (BTreeLeafPage) page;
+                index = leaf.findTuple(tuple, rid.getTupleNo());
+            }
+        }
+        if (index < 0) {
+            // RecordId已过时，从根结点开始查找，相同的键可能分布在多个叶子结点中
+            BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) getPage(tid, dirtyPages, getRootPtrId(), Permissions.READ_ONLY);
+            if (rootPtr.getRootId() == null) {
+                throw new DbException("tuple is not in this page");
+            }
+            Field key = tuple.getField(keyField);
+            leaf = findLeafPage(tid, dirtyPages, rootPtr.getRootId(), Permissions.READ_WRITE, key);
+            index = leaf.findTuple(tuple, -1);
+            while (index < 0) {
+                BTreePageId rightId = leaf.getRightSiblingId();
+                if (rightId == null || (leaf.getTuplesNum() > 0
+                        && BTreeNodePage.compareKeys(leaf.getKey(leaf.getTuplesNum() - 1), key) > 0)) {
+                    throw new DbException("tuple is not in this page");
+                }
+                leaf = (BTreeLeafPage) getPage(tid, dirtyPages, rightId, Permissions.READ_WRITE);
+                index = leaf.findTuple(tuple, -1);
+            }
+        }
+        leaf.deleteTuple(index);
+        if (leaf.getTuplesNum() < leaf.maxTuples / 2) {
+            handleMinOccupancyLeaf(tid, dirtyPages, leaf);
+        }
+        return new ArrayList<>(dirtyPages.values());
+    }
+
+    /**
+     * 叶子结点少于半满时，与左兄弟（没有左兄弟时为右兄弟）合并，合并后放不下时在两者之间平均分配元组
+     * 只处理同一个父结点下的兄弟结点，根结点允许少于半满
+     */
+    private void handleMinOccupancyLeaf(TransactionId tid, Map<PageId, Page> dirtyPages, BTreeLeafPage leaf)
+            throws DbException, IOException, TransactionException {
+        BTreePageId parentId = leaf.getParentId();
+        if (parentId.getCategory() == BTreePageId.ROOT_PTR) {
+            return;
+        }
+        BTreeInternalPage parent = (BTreeInternalPage) getPage(tid, dirtyPages, parentId, Permissions.READ_WRITE);
+        int index = parent.indexOfChild(leaf.getId().getPageIndex());
+        BTreeLeafPage left;
+        BTreeLeafPage right;
+        int keyIndex;
+        if (index > 0) {
+            left = (BTreeLeafPage) getPage(tid, dirtyPages, parent.getChildId(index - 1), Permissions.READ_WRITE);
+            right = leaf;
+            keyIndex = index - 1;
+        } else {
+            left = leaf;
+            right = (BTreeLeafPage) getPage(tid, dirtyPages, parent.getChildId(index + 1), Permissions.READ_WRITE);
+            keyIndex = index;
+        }
+        if (left.getTuplesNum() + right.getTuplesNum() <= leaf.maxTuples) {
+            mergeLeafPages(tid, dirtyPages, left, right, parent, keyIndex);
+        } else {
+            // 在两个叶子结点之间平均分配元组
+            List<Tuple> all = new ArrayList<>(left.tuples);
+            all.addAll(right.tuples);
+            int half = all.size() / 2;
+            left.tuples.clear();
+            left.tuples.addAll(all.subList(0, half));
+            right.tuples.clear();
+            right.tuples.addAll(all.subList(half, all.size()));
+            parent.setKey(keyIndex, left.getKey(left.getTuplesNum() - 1));
+        }
+    }
+
+    /**
+     * 将右边的叶子结点合并到左边的叶子结点中，删除父结点中两者之间的索引键并释放右边的结点
+     */
+    private void mergeLeafPages(TransactionId tid, Map<PageId, Page> dirtyPages, BTreeLeafPage left,
+                                BTreeLeafPage right, BTreeInternalPage parent, int keyIndex)
+            throws DbException, IOException, TransactionException {
+        left.tuples.addAll(right.tuples);
+        right.tuples.clear();
+        BTreePageId rightRightId = right.getRightSiblingId();
+        if (rightRightId != null) {
+            BTreeLeafPage rightRight = (BTreeLeafPage) getPage(tid, dirtyPages, rightRightId, Permissions.READ_WRITE);
+            rightRight.setLeftSiblingId(left.getId());
+        }
+        left.setRightSiblingId(rightRightId);
+        right.setLeftSiblingId(null);
+        right.setRightSiblingId(null);
+        parent.removeKeyAndRightChild(keyIndex);
+        setEmptyPage(tid, dirtyPages, right.getId().getPageIndex());
+        handleMinOccupancyInternal(tid, dirtyPages, parent);
+    }
+
+    /**
+     * 内部结点少于半满时，与兄弟结点合并或从兄弟结点移动索引键和子结点
+     * 根结点没有索引键时（只有一个子结点）删除根结点，将唯一的子结点作为新的根结点
+     */
+    private void handleMinOccupancyInternal(TransactionId tid, Map<PageId, Page> dirtyPages, BTreeInternalPage page)
+            throws DbException, IOException, TransactionException {
+        BTreePageId parentId = page.getParentId();
+        if (parentId.getCategory() == BTreePageId.ROOT_PTR) {
+            if (page.getKeysNum() == 0) {
+                BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) getPage(tid, dirtyPages, parentId, Permissions.READ_WRITE);
+                BTreePageId childId = page.getChildId(0);
+                BTreeNodePage child = (BTreeNodePage) getPage(tid, dirtyPages, childId, Permissions.READ_WRITE);
+                child.setParentId(parentId);
+                rootPtr.setRootId(childId);
+                page.children.clear();
+                setEmptyPage(tid, dirtyPages, page.getId().getPageIndex());
+            }
+            return;
+        }
+        if (page.getKeysNum() >= page.maxKeys / 2) {
+            return;
+        }
+        BTreeInternalPage parent = (BTreeInternalPage) getPage(tid, dirtyPages, parentId, Permissions.READ_WRITE);
+        int index = parent.indexOfChild(page.getId().getPageIndex());
+        BTreeInternalPage left;
+        BTreeInternalPage right;
+        int keyIndex;
+        if (index > 0) {
+            left = (BTreeInternalPage) getPage(tid, dirtyPages, parent.getChildId(index - 1), Permissions.READ_WRITE);
+            right = page;
+            keyIndex = index - 1;
+        } else {
+            left = page;
+            right = (BTreeInternalPage) getPage(tid, dirtyPages, parent.getChildId(index + 1), Permissions.READ_WRITE);
+            keyIndex = index;
+        }
+        if (left.getKeysNum() + right.getKeysNum() + 1 <= page.maxKeys) {
+            // 父结点中的分隔键下移，右结点的索引键和子结点全部移动到左结点
+            int from = left.getChildrenNum();
+            left.keys.add(parent.getKey(keyIndex));
+            left.keys.addAll(right.keys);
+            left.children.addAll(right.children);
+            right.keys.clear();
+            right.children.clear();
+            updateParentPointers(tid, dirtyPages, left, from);
+            parent.removeKeyAndRightChild(keyIndex);
+            setEmptyPage(tid, dirtyPages, right.getId().getPageIndex());
+            handleMinOccupancyInternal(tid, dirtyPages, parent);
+        } else if (left.getKeysNum() > right.getKeysNum()) {
+            // 经过父结点将左结点末尾的索引键和子结点旋转到右结点
+            while (left.getKeysNum() > right.getKeysNum() + 1) {
+                right.keys.add(0, parent.getKey(keyIndex));
+                right.children.add(0, left.children.remove(left.children.size() - 1));
+                parent.setKey(keyIndex, left.keys.remove(left.keys.size() - 1));
+                updateParent(tid, dirtyPages, right.getChildId(0), right.getId());
+            }
+        } else {
+            // 经过父结点将右结点开头的索引键和子结点旋转到左结点
+            while (right.getKeysNum() > left.getKeysNum() + 1) {
+                left.keys.add(parent.getKey(keyIndex));
+                left.children.add(right.children.remove(0));
+                parent.setKey(keyIndex, right.keys.remove(0));
+                updateParent(tid, dirtyPages, left.getChildId(left.getChildrenNum() - 1), left.getId());
+            }
+        }
+    }
+
+    /**
+     * 获取一个空页面用于新的结点，优先重新使用header页面中记录的已释放页面，否则在文件末尾追加页面
+     * 页面通过BufferPool加排他锁，返回的是新创建的页面对象，修改后替换缓冲池中的旧页面
+     * @param category 新页面的类型
+     */
+    BTreePage getEmptyPage(TransactionId tid, Map<PageId, Page> dirtyPages, int category)
+            throws DbException, IOException, TransactionException {
+        int pageNo = takeFreePage(tid, dirtyPages);
+        if (pageNo < 0) {
+            pageNo = appendEmptyPage();
+        }
+        BTreePageId pid = new BTreePageId(getId(), pageNo, category);
+        Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+        byte[] data = new byte[pageSize];
+        data[0] = (byte) category;
+        BTreePage page = createPage(pid, data);
+        dirtyPages.put(pid, page);
+        return page;
+    }
+
+    /**
+     * 在header页面中查找一个已释放的页面并将其标记为已使用
+     * @return 返回页面编号，没有已释放的页面时返回-1
+     */
+    private int takeFreePage(TransactionId tid, Map<PageId, Page> dirtyPages)
+            throws DbException, TransactionException {
+        BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) getPage(tid, dirtyPages, getRootPtrId(), Permissions.READ_ONLY);
+        BTreePageId headerId = rootPtr.getHeaderId();
+        int slotsNum = BTreeHeaderPage.getSlotsNum(pageSize);
+        int headerIndex = 0;
+        while (headerId != null) {
+            BTreeHeaderPage header = (BTreeHeaderPage) getPage(tid, dirtyPages, headerId, Permissions.READ_ONLY);
+            int slot = header.nextFreeSlot();
+            if (slot >= 0) {
+                header = (BTreeHeaderPage) getPage(tid, dirtyPages, headerId, Permissions.READ_WRITE);
+                header.setFree(slot, false);
+                return headerIndex * slotsNum + slot + 1;
+            }
+            headerId = header.getNextId();
+            headerIndex++;
+        }
+        return -1;
+    }
+
+    /**
+     * 将页面标记为已释放，header页面不够时在文件末尾追加新的header页面
+     * @param pageNo 被释放的页面编号
+     */
+    private void setEmptyPage(TransactionId tid, Map<PageId, Page> dirtyPages, int pageNo)
+            throws DbException, IOException, TransactionException {
+        int slotsNum = BTreeHeaderPage.getSlotsNum(pageSize);
+        int headerIndex = (pageNo - 1) / slotsNum;
+        BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) getPage(tid, dirtyPages, getRootPtrId(), Permissions.READ_ONLY);
+        BTreePageId headerId = rootPtr.getHeaderId();
+        if (headerId == null) {
+            rootPtr = (BTreeRootPtrPage) getPage(tid, dirtyPages, getRootPtrId(), Permissions.READ_WRITE);
+            headerId = newHeaderPage(tid, dirtyPages).getId();
+            rootPtr.setHeaderId(headerId);
+        }
+        BTreeHeaderPage header = (BTreeHeaderPage) getPage(tid, dirtyPages, headerId, Permissions.READ_ONLY);
+        for (int i=0; i<headerIndex; i++) {
+            BTreePageId nextId = header.getNextId();
+            if (nextId == null) {
+                header = (BTreeHeaderPage) getPage(tid, dirtyPages, header.getId(), Permissions.READ_WRITE);
+                BTreeHeaderPage next = newHeaderPage(tid, dirtyPages);
+                header.setNextId(next.getId());
+                header = next;
+            } else {
+                header = (BTreeHeaderPage) getPage(tid, dirtyPages, nextId, Permissions.READ_ONLY);
+            }
+        }
+        header = (BTreeHeaderPage) getPage(tid, dirtyPages, header.getId(), Permissions.READ_WRITE);
+        header.setFree((pageNo - 1) % slotsNum, true);
+    }
+
+    /**
+     * header页面总是在文件末尾追加，不重新使用已释放的页面
+     */
+    private BTreeHeaderPage newHeaderPage(TransactionId tid, Map<PageId, Page> dirtyPages)
+            throws DbException, IOException, TransactionException {
+        BTreePageId pid = new BTreePageId(getId(), appendEmptyPage(), BTreePageId.HEADER);
+        Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+        byte[] data = new byte[pageSize];
+        data[0] = (byte) BTreePageId.HEADER;
+        BTreeHeaderPage page = new BTreeHeaderPage(pid, data);
+        dirtyPages.put(pid, page);
+        return page;
+    }
+
+    /**
+     * @return 返回按索引键顺序遍历所有元组的迭代器
+     */
+    @Override
+    public DbFileIterator iterator(TransactionId tid) {
+        return new BTreeFileIterator(this, tid, null);
+    }
+
+    /**
+     * @param predicate 索引键需要满足的谓词
+     * @return 返回按索引键顺序遍历满足谓词的元组的迭代器，只读取可能包含满足谓词的元组的叶子结点
+     */
+    public DbFileIterator indexIterator(TransactionId tid, IndexPredicate predicate) {
+        return new BTreeFileIterator(this, tid, predicate);
+    }
+
+    /**
+     * BTreeFileIterator从最左边的（或可能包含满足谓词的元组的第一个）叶子结点开始，沿右兄弟指针遍历叶子结点
+     */
+    public static class BTreeFileIterator implements DbFileIterator {
+
+        private final BTreeFile btreeFile;
+        private final TransactionId tid;
+        private final IndexPredicate predicate;
+        private Iterator<Tuple> iterator;
+        private BTreePageId nextLeafId;
+        private Tuple next;
+
+        public BTreeFileIterator(BTreeFile btreeFile, TransactionId tid, IndexPredicate predicate) {
+            this.btreeFile = btreeFile;
+            this.tid = tid;
+            this.predicate = predicate;
+        }
+
+        private BTreePage getPage(BTreePageId pid) throws DbException, TransactionException {
+            return (BTreePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+        }
+
+        @Override
+        public void open() throws DbException, TransactionException {
+            next = null;
+            iterator = null;
+            nextLeafId = null;
+            BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) getPage(btreeFile.getRootPtrId());
+            BTreePageId pid = rootPtr.getRootId();
+            if (pid == null) {
+                return;
+            }
+            // 小于（等于）谓词从最左边的叶子结点开始
+            Field key = null;
+            if (predicate != null && (predicate.getOp() == Predicate.Op.EQUALS
+                    || predicate.getOp() == Predicate.Op.GREATER_THAN
+                    || predicate.getOp() == Predicate.Op.GREATER_THAN_OR_EQ)) {
+                key = predicate.getField();
+            }
+            while (pid.getCategory() == BTreePageId.INTERNAL) {
+                BTreeInternalPage page = (BTreeInternalPage) getPage(pid);
+                pid = page.getChildId(page.findChildIndex(key));
+            }
+            BTreeLeafPage leaf = (BTreeLeafPage) getPage(pid);
+            iterator = leaf.iterator();
+            nextLeafId = leaf.getRightSiblingId();
+        }
+
+        @Override
+        public void close() throws DbException {
+            iterator = null;
+            nextLeafId = null;
+            next = null;
+        }
+
+        /**
+         * @return 返回下一个满足谓词的元组，之后不会再有满足谓词的元组时返回null
+         */
+        private Tuple readNext() throws DbException, TransactionException {
+            while (iterator != null) {
+                while (iterator.hasNext()) {
+                    Tuple tuple = iterator.next();
+                    if (predicate == null) {
+                        return tuple;
+                    }
+                    Field key = tuple.getField(btreeFile.keyField());
+                    if (predicate.matches(key)) {
+                        return tuple;
+                    }
+                    // 元组按索引键有序，等于和小于（等于）谓词第一次不满足之后的元组都不满足
+                    Predicate.Op op = predicate.getOp();
+                    if ((op == Predicate.Op.EQUALS
+                            && BTreeNodePage.compareKeys(key, predicate.getField()) > 0)
+                            || op == Predicate.Op.LESS_THAN || op == Predicate.Op.LESS_THAN_OR_EQ) {
+                        iterator = null;
+                        return null;
+                    }
+                }
+                if (nextLeafId == null) {
+                    iterator = null;
+                } else {
+                    BTreeLeafPage leaf = (BTreeLeafPage) getPage(nextLeafId);
+                    iterator = leaf.iterator();
+                    nextLeafId = leaf.getRightSiblingId();
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() throws DbException, TransactionException {
+            if (next == null) {
+                next = readNext();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Tuple next() throws DbException, NoSuchElementException, TransactionException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Tuple tuple = next;
+            next = null;
+            return tuple;
+        }
+
+        @Override
+        public void rewind() throws DbException, TransactionException {
+            close();
+            open();
+        }
+    }
+}
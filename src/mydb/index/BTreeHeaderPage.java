@@ -0,0 +1,78 @@
+package mydb.index;
+
+import java.nio.ByteBuffer;
+
+/**
+ * BTreeFile的header页面，记录哪些页面已被释放可以重新使用
+ * header页面组成一个链表，第k个header页面的第i位对应页面编号k*getSlotsNum(pageSize)+i+1，
+ * 为1表示该页面已被释放。新追加到文件末尾的页面默认为已使用
+ * 页面格式：页面类型（1字节）、下一个header页面的编号（4字节）、位图
+ */
+public class BTreeHeaderPage extends BTreePage {
+
+    private static final int HEADER_BYTES = 5;
+
+    private int nextPageNo;
+
+    private final byte[] bitmap;
+
+    public BTreeHeaderPage(BTreePageId id, byte[] data) {
+        super(id, data);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        this.nextPageNo = buffer.getInt(1);
+        this.bitmap = new byte[data.length - HEADER_BYTES];
+        buffer.get(HEADER_BYTES, bitmap);
+    }
+
+    /**
+     * @return 返回一个header页面可以记录的页面数量
+     */
+    public static int getSlotsNum(int pageSize) {
+        return (pageSize - HEADER_BYTES) * 8;
+    }
+
+    @Override
+    BTreePage copyOf(byte[] data) {
+        return new BTreeHeaderPage(pid, data);
+    }
+
+    @Override
+    public synchronized byte[] getPageData() {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + bitmap.length);
+        buffer.put((byte) BTreePageId.HEADER);
+        buffer.putInt(nextPageNo);
+        buffer.put(bitmap);
+        return buffer.array();
+    }
+
+    /**
+     * @return 返回第一个已释放页面对应的位，没有已释放的页面时返回-1
+     */
+    public synchronized int nextFreeSlot() {
+        for (int i=0; i<bitmap.length; i++) {
+            if (bitmap[i] != 0) {
+                return i * 8 + Integer.numberOfTrailingZeros(bitmap[i] & 0xFF);
+            }
+        }
+        return -1;
+    }
+
+    public synchronized void setFree(int slot, boolean free) {
+        if (free) {
+            bitmap[slot / 8] |= (byte) (1 << (slot % 8));
+        } else {
+            bitmap[slot / 8] &= (byte) ~(1 << (slot % 8));
+        }
+    }
+
+    /**
+     * @return 返回下一个header页面的ID，不存在时返回null
+     */
+    public synchronized BTreePageId getNextId() {
+        return (nextPageNo == 0) ? null : new BTreePageId(pid.getTableId(), nextPageNo, BTreePageId.HEADER);
+    }
+
+    public synchronized void setNextId(BTreePageId nextId) {
+        this.nextPageNo = nextId.getPageIndex();
+    }
+}
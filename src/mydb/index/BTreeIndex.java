@@ -0,0 +1,223 @@
+package mydb.index;
+
+import mydb.common.Database;
+import mydb.common.DbException;
+import mydb.execution.Predicate;
+import mydb.storage.*;
+import mydb.transaction.TransactionException;
+import mydb.transaction.TransactionId;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于B+树的索引，支持等值查找和范围查找
+ * 非聚簇索引的条目存放在单独的BTreeFile中，条目的字段为：索引键、包含列、元组所在的页面编号、元组所在的槽，
+ * 相同的索引键按RecordId区分。聚簇索引直接使用以BTreeFile存放的表
+ */
+public class BTreeIndex implements Index {
+
+    private final int tableId;
+
+    private final int keyField;
+
+    private final int[] includedFields;
+
+    private final BTreeFile file;
+
+    private final boolean clustered;
+
+    private final boolean unique;
+
+    /**
+     * 创建HeapFile表上的非聚簇索引
+     * @param file 存放索引条目的文件
+     * @param tableId 被索引的表的ID
+     * @param keyField 索引键在表中的列索引
+     */
+    public BTreeIndex(File file, int tableId, int keyField) {
+        this(file, tableId, keyField, false);
+    }
+
+    /**
+     * 创建HeapFile表上的非聚簇索引
+     * @param file 存放索引条目的文件
+     * @param tableId 被索引的表的ID
+     * @param keyField 索引键在表中的列索引
+     * @param unique 索引键是否不能重复
+     */
+    public BTreeIndex(File file, int tableId, int keyField, boolean unique) {
+        this(file, tableId, keyField, unique, new int[0]);
+    }
+
+    /**
+     * 创建HeapFile表上带有包含列的非聚簇索引
+     * @param file 存放索引条目的文件
+     * @param tableId 被索引的表的ID
+     * @param keyField 索引键在表中的列索引
+     * @param unique 索引键是否不能重复
+     * @param includedFields 保存在条目中的其它列，只用到这些列和索引键的查询不需要读取表页面
+     */
+    public BTreeIndex(File file, int tableId, int keyField, boolean unique, int[] includedFields) {
+        this.tableId = tableId;
+        this.keyField = keyField;
+        this.includedFields = includedFields.clone();
+        TupleDesc entryDesc = IndexEntries.entryDesc(Database.getCatalog().getTupleDesc(tableId), keyField, includedFields);
+        this.file = new BTreeFile(file, entryDesc, 0);
+        this.clustered = false;
+        this.unique = unique;
+    }
+
+    /**
+     * 以BTreeFile存放的表本身就是其索引键上的聚簇索引
+     * @param table 以BTreeFile存放的表
+     */
+    public BTreeIndex(BTreeFile table) {
+        this(table, false);
+    }
+
+    /**
+     * 以BTreeFile存放的表本身就是其索引键上的聚簇索引
+     * @param table 以BTreeFile存放的表
+     * @param unique 索引键是否不能重复
+     */
+    public BTreeIndex(BTreeFile table, boolean unique) {
+        this.tableId = table.getId();
+        this.keyField = table.keyField();
+        this.includedFields = new int[0];
+        this.file = table;
+        this.clustered = true;
+        this.unique = unique;
+    }
+
+    @Override
+    public int getTableId() {
+        return tableId;
+    }
+
+    @Override
+    public int getKeyField() {
+        return keyField;
+    }
+
+    /**
+     * @return 返回包含列在表中的列索引，聚簇索引没有包含列
+     */
+    public int[] getIncludedFields() {
+        return includedFields.clone();
+    }
+
+    @Override
+    public BTreeFile getFile() {
+        return file;
+    }
+
+    @Override
+    public boolean isClustered() {
+        return clustered;
+    }
+
+    @Override
+    public boolean isUnique() {
+        return unique;
+    }
+
+    @Override
+    public boolean supports(Predicate.Op op) {
+        return op != Predicate.Op.NOT_EQUALS && op != Predicate.Op.LIKE;
+    }
+
+    @Override
+    public DbFileIterator lookup(TransactionId tid, IndexPredicate predicate) {
+        return file.indexIterator(tid, predicate);
+    }
+
+    @Override
+    public RecordId getRecordId(Tuple entry) {
+        if (clustered) {
+            return entry.getRecordId();
+        }
+        return IndexEntries.recordIdOf(tableId, entry);
+    }
+
+    @Override
+    public boolean covers(int field) {
+        return clustered || IndexEntries.covers(keyField, includedFields, field);
+    }
+
+    @Override
+    public Tuple getCoveredTuple(Tuple entry) {
+        if (clustered) {
+            return entry;
+        }
+        return IndexEntries.coveredTupleOf(tableId, Database.getCatalog().getTupleDesc(tableId), entry, keyField, includedFields);
+    }
+
+    /**
+     * @return 返回元组对应的条目
+     */
+    private Tuple entryOf(Tuple tuple) {
+        return IndexEntries.entryOf(file.getTupleDesc(), tuple, keyField, includedFields);
+    }
+
+    @Override
+    public List<Page> insertEntry(TransactionId tid, Tuple tuple)
+            throws DbException, IOException, TransactionException {
+        if (clustered) {
+            return new ArrayList<>();
+        }
+        return file.insertTuple(tid, entryOf(tuple));
+    }
+
+    @Override
+    public List<Page> deleteEntry(TransactionId tid, Tuple tuple)
+            throws DbException, IOException, TransactionException {
+        if (clustered) {
+            return new ArrayList<>();
+        }
+        // 条目没有RecordId，BTreeFile根据索引键和字段值查找
+        return file.deleteTuple(tid, entryOf(tuple));
+    }
+
+    /**
+     * @return 返回是否可以用bulkLoad建立该索引，只有索引文件为空的非聚簇索引可以
+     */
+    public boolean canBulkLoad() {
+        return !clustered && file.getFile().length() == 0;
+    }
+
+    /**
+     * 扫描表中的所有元组，将条目排序后按配置的填充率批量写出B+树
+     * 写出的页面不经过缓冲池和日志，调用者需要丢弃缓冲池中该索引文件的所有页面
+     * @param tid 事务ID
+     * @return 返回条目数量
+     * @throws DbException 唯一索引中有重复的索引键时抛出，此时索引文件保持为空
+     * @see BTreeBulkLoader
+     */
+    public int bulkLoad(TransactionId tid) throws DbException, IOException, TransactionException {
+        if (!canBulkLoad()) {
+            throw new IllegalStateException("index " + this + " is not empty");
+        }
+        BTreeBulkLoader loader = new BTreeBulkLoader(file, unique);
+        DbFileIterator iterator = Database.getCatalog().getDbFile(tableId).iterator(tid);
+        iterator.open();
+        while (iterator.hasNext()) {
+            loader.add(entryOf(iterator.next()));
+        }
+        iterator.close();
+        return loader.finish();
+    }
+
+    @Override
+    public double estimateLookupPages(double selectivity) {
+        return file.estimateHeight() + selectivity * file.getPagesNum();
+    }
+
+    @Override
+    public String toString() {
+        return "btree(" + Database.getCatalog().getTableName(tableId) + "."
+                + IndexEntries.columnsOf(Database.getCatalog().getTupleDesc(tableId), keyField, includedFields) + ")";
+    }
+}
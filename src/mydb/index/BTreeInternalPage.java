@@ -0,0 +1,177 @@
+package mydb.index;
+
+import mydb.common.Database;
+import mydb.common.Type;
+import mydb.storage.Field;
+import mydb.storage.TupleDesc;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * B+树的内部结点，保存n个索引键和n+1个子结点
+ * 第i个子结点中所有的键都不大于keys[i]，第i+1个子结点中所有的键都不小于keys[i]，
+ * 存在重复键时相同的键可能分布在相邻的多个子结点中。同一个内部结点的子结点类型相同
+ * 页面格式：页面类型（1字节）、子结点类型（1字节）、子结点数量（4字节）、父结点编号（4字节）、
+ * maxKeys+1个子结点编号、maxKeys个索引键
+ */
+public class BTreeInternalPage extends BTreeNodePage {
+
+    private static final int HEADER_BYTES = 10;
+
+    final int maxKeys;
+
+    /**
+     * 子结点的页面类型，内部结点或叶子结点
+     */
+    int childCategory;
+
+    final List<Field> keys;
+
+    /**
+     * 子结点的页面编号
+     */
+    final List<Integer> children;
+
+    public BTreeInternalPage(BTreePageId id, byte[] data) {
+        this(id, data, (BTreeFile) Database.getCatalog().getDbFile(id.getTableId()));
+    }
+
+    private BTreeInternalPage(BTreePageId id, byte[] data, BTreeFile file) {
+        this(id, data, file.getTupleDesc(), file.keyField());
+    }
+
+    BTreeInternalPage(BTreePageId id, byte[] data, TupleDesc tupleDesc, int keyField) {
+        super(id, data, tupleDesc, keyField);
+        Type keyType = tupleDesc.getFieldType(keyField);
+        this.maxKeys = getMaxKeys(data.length, keyType);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        this.childCategory = (data[1] == 0) ? BTreePageId.LEAF : data[1];
+        int childrenNum = buffer.getInt(2);
+        this.parentPageNo = buffer.getInt(6);
+        this.children = new ArrayList<>(maxKeys + 1);
+        this.keys = new ArrayList<>(maxKeys);
+        for (int i=0; i<childrenNum; i++) {
+            children.add(buffer.getInt(HEADER_BYTES + i * 4));
+        }
+        int keysOffset = HEADER_BYTES + (maxKeys + 1) * 4;
+        for (int i=0; i<childrenNum-1; i++) {
+            keys.add(keyType.parse(buffer, keysOffset + i * keyType.getLen()));
+        }
+    }
+
+    /**
+     * @return 返回一个内部结点最多可以保存的索引键数量
+     */
+    static int getMaxKeys(int pageSize, Type keyType) {
+        return (pageSize - HEADER_BYTES - 4) / (4 + keyType.getLen());
+    }
+
+    @Override
+    BTreePage copyOf(byte[] data) {
+        return new BTreeInternalPage(pid, data, tupleDesc, keyField);
+    }
+
+    @Override
+    public synchronized byte[] getPageData() {
+        Type keyType = tupleDesc.getFieldType(keyField);
+        byte[] data = new byte[pageSize];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.put((byte) BTreePageId.INTERNAL);
+        buffer.put((byte) childCategory);
+        buffer.putInt(children.size());
+        buffer.putInt(parentPageNo);
+        for (int i=0; i<children.size(); i++) {
+            buffer.putInt(HEADER_BYTES + i * 4, children.get(i));
+        }
+        int keysOffset = HEADER_BYTES + (maxKeys + 1) * 4;
+        for (int i=0; i<keys.size(); i++) {
+            keys.get(i).serialize(buffer, keysOffset + i * keyType.getLen());
+        }
+        return data;
+    }
+
+    public synchronized int getKeysNum() {
+        return keys.size();
+    }
+
+    /**
+     * @return 返回还可以插入的索引键数量
+     */
+    public synchronized int getEmptySlotsNum() {
+        return maxKeys - keys.size();
+    }
+
+    public synchronized Field getKey(int index) {
+        return keys.get(index);
+    }
+
+    public synchronized void setKey(int index, Field key) {
+        keys.set(index, key);
+    }
+
+    /**
+     * @return 返回第index个子结点的页面ID
+     */
+    public synchronized BTreePageId getChildId(int index) {
+        return new BTreePageId(pid.getTableId(), children.get(index), childCategory);
+    }
+
+    public synchronized int getChildrenNum() {
+        return children.size();
+    }
+
+    /**
+     * 查找可能包含key的最左边的子结点，即第一个不小于key的索引键对应的子结点
+     * @param key 需要查找的键，为null时返回最左边的子结点
+     * @return 返回子结点的下标
+     */
+    public synchronized int findChildIndex(Field key) {
+        if (key == null) {
+            return 0;
+        }
+        int low = 0;
+        int high = keys.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareKeys(keys.get(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param pageNo 子结点的页面编号
+     * @return 返回子结点的下标，不存在时返回-1
+     */
+    public synchronized int indexOfChild(int pageNo) {
+        return children.indexOf(pageNo);
+    }
+
+    /**
+     * 第childIndex个子结点分裂后，在其右边插入新的子结点，两者之间的索引键为key
+     * @param childIndex 被分裂的子结点的下标
+     * @param key 两个子结点之间的索引键
+     * @param right 新的子结点
+     */
+    public synchronized void insertEntry(int childIndex, Field key, BTreePageId right) {
+        if (keys.size() >= maxKeys) {
+            throw new IllegalStateException("this page is full");
+        }
+        keys.add(childIndex, key);
+        children.add(childIndex + 1, right.getPageIndex());
+    }
+
+    /**
+     * 合并子结点后删除第keyIndex个索引键和它右边的子结点
+     * @param keyIndex 索引键的下标
+     */
+    public synchronized void removeKeyAndRightChild(int keyIndex) {
+        keys.remove(keyIndex);
+        children.remove(keyIndex + 1);
+    }
+}
@@ -0,0 +1,223 @@
+package mydb.index;
+
+import mydb.common.Database;
+import mydb.common.DbException;
+import mydb.execution.Predicate;
+import mydb.storage.Field;
+import mydb.storage.RecordId;
+import mydb.storage.Tuple;
+import mydb.storage.TupleDesc;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * B+树的叶子结点，按索引键有序地保存元组，相邻的叶子结点通过左右兄弟指针连接
+ * 元组在页面中紧密排列，插入或删除元组会移动之后的元组，因此元组的RecordId（页面ID和下标）
+ * 只作为删除时的查找提示，RecordId过时的元组根据索引键和字段值查找
+ * 页面格式：页面类型（1字节）、元组数量（4字节）、父结点编号（4字节）、左兄弟编号（4字节）、
+ * 右兄弟编号（4字节）、按索引键排列的元组
+ */
+public class BTreeLeafPage extends BTreeNodePage {
+
+    private static final int HEADER_BYTES = 17;
+
+    final int maxTuples;
+
+    /**
+     * 左右兄弟结点的页面编号，0表示不存在
+     */
+    int leftPageNo;
+    int rightPageNo;
+
+    /**
+     * 按索引键有序排列的元组，相同的键按插入顺序排列
+     */
+    final List<Tuple> tuples;
+
+    public BTreeLeafPage(BTreePageId id, byte[] data) {
+        this(id, data, (BTreeFile) Database.getCatalog().getDbFile(id.getTableId()));
+    }
+
+    private BTreeLeafPage(BTreePageId id, byte[] data, BTreeFile file) {
+        this(id, data, file.getTupleDesc(), file.keyField());
+    }
+
+    BTreeLeafPage(BTreePageId id, byte[] data, TupleDesc tupleDesc, int keyField) {
+        super(id, data, tupleDesc, keyField);
+        this.maxTuples = getMaxTuples(data.length, tupleDesc);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int tuplesNum = buffer.getInt(1);
+        this.parentPageNo = buffer.getInt(5);
+        this.leftPageNo = buffer.getInt(9);
+        this.rightPageNo = buffer.getInt(13);
+        this.tuples = new ArrayList<>(maxTuples);
+        int offset = HEADER_BYTES;
+        for (int i=0; i<tuplesNum; i++) {
+            Tuple tuple = new Tuple(tupleDesc);
+            for (int j=0; j<tupleDesc.getFieldsNum(); j++) {
+                tuple.setField(j, tupleDesc.getFieldType(j).parse(buffer, offset));
+                offset += tupleDesc.getFieldType(j).getLen();
+            }
+            tuples.add(tuple);
+        }
+    }
+
+    /**
+     * @return 返回一个叶子结点最多可以保存的元组数量
+     */
+    static int getMaxTuples(int pageSize, TupleDesc tupleDesc) {
+        return (pageSize - HEADER_BYTES) / tupleDesc.getSize();
+    }
+
+    @Override
+    BTreePage copyOf(byte[] data) {
+        return new BTreeLeafPage(pid, data, tupleDesc, keyField);
+    }
+
+    @Override
+    public synchronized byte[] getPageData() {
+        byte[] data = new byte[pageSize];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.put((byte) BTreePageId.LEAF);
+        buffer.putInt(tuples.size());
+        buffer.putInt(parentPageNo);
+        buffer.putInt(leftPageNo);
+        buffer.putInt(rightPageNo);
+        int offset = HEADER_BYTES;
+        for (Tuple tuple: tuples) {
+            for (int j=0; j<tupleDesc.getFieldsNum(); j++) {
+                tuple.getField(j).serialize(buffer, offset);
+                offset += tupleDesc.getFieldType(j).getLen();
+            }
+        }
+        return data;
+    }
+
+    public synchronized int getTuplesNum() {
+        return tuples.size();
+    }
+
+    /**
+     * @return 返回还可以插入的元组数量
+     */
+    public synchronized int getEmptySlotsNum() {
+        return maxTuples - tuples.size();
+    }
+
+    /**
+     * @return 返回第index个元组的索引键
+     */
+    public synchronized Field getKey(int index) {
+        return tuples.get(index).getField(keyField);
+    }
+
+    /**
+     * 将元组插入到相同索引键的元组之后，并设置元组的RecordId
+     * @param tuple 需要插入的元组
+     */
+    public synchronized void insertTuple(Tuple tuple) throws DbException {
+        if (tuples.size() >= maxTuples) {
+            throw new DbException("this page is full");
+        }
+        if (!tuple.getTupleDesc().equals(tupleDesc)) {
+            throw new DbException("the tupleDesc is not matched");
+        }
+        Field key = tuple.getField(keyField);
+        int low = 0;
+        int high = tuples.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareKeys(tuples.get(mid).getField(keyField), key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        Tuple stored = new Tuple(tupleDesc);
+        for (int j=0; j<tupleDesc.getFieldsNum(); j++) {
+            stored.setField(j, tuple.getField(j));
+        }
+        tuples.add(low, stored);
+        tuple.setRecordId(new RecordId(pid, low));
+    }
+
+    /**
+     * 查找与元组字段值相同的元组
+     * @param tuple 需要查找的元组
+     * @param hint 元组可能的下标，优先检查该位置
+     * @return 返回元组的下标，不存在时返回-1
+     */
+    public synchronized int findTuple(Tuple tuple, int hint) {
+        if (hint >= 0 && hint < tuples.size() && sameFields(tuples.get(hint), tuple)) {
+            return hint;
+        }
+        Field key = tuple.getField(keyField);
+        for (int i=0; i<tuples.size(); i++) {
+            int cmp = compareKeys(tuples.get(i).getField(keyField), key);
+            if (cmp > 0) {
+                break;
+            }
+            if (cmp == 0 && sameFields(tuples.get(i), tuple)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean sameFields(Tuple a, Tuple b) {
+        for (int j=0; j<tupleDesc.getFieldsNum(); j++) {
+            if (!a.getField(j).compare(Predicate.Op.EQUALS, b.getField(j))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 删除第index个元组，之后的元组向前移动
+     */
+    public synchronized void deleteTuple(int index) {
+        tuples.remove(index);
+    }
+
+    /**
+     * @return 返回左兄弟结点的页面ID，不存在时返回null
+     */
+    public synchronized BTreePageId getLeftSiblingId() {
+        return (leftPageNo == 0) ? null : new BTreePageId(pid.getTableId(), leftPageNo, BTreePageId.LEAF);
+    }
+
+    /**
+     * @return 返回右兄弟结点的页面ID，不存在时返回null
+     */
+    public synchronized BTreePageId getRightSiblingId() {
+        return (rightPageNo == 0) ? null : new BTreePageId(pid.getTableId(), rightPageNo, BTreePageId.LEAF);
+    }
+
+    public synchronized void setLeftSiblingId(BTreePageId id) {
+        this.leftPageNo = (id == null) ? 0 : id.getPageIndex();
+    }
+
+    public synchronized void setRightSiblingId(BTreePageId id) {
+        this.rightPageNo = (id == null) ? 0 : id.getPageIndex();
+    }
+
+    /**
+     * @return 返回页面中元组的拷贝的迭代器，元组的RecordId为当前的页面ID和下标
+     */
+    public synchronized Iterator<Tuple> iterator() {
+        List<Tuple> copies = new ArrayList<>(tuples.size());
+        for (int i=0; i<tuples.size(); i++) {
+            Tuple tuple = new Tuple(tupleDesc);
+            for (int j=0; j<tupleDesc.getFieldsNum(); j++) {
+                tuple.setField(j, tuples.get(i).getField(j));
+            }
+            tuple.setRecordId(new RecordId(pid, i));
+            copies.add(tuple);
+        }
+        return copies.iterator();
+    }
+}
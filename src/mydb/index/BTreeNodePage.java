@@ -0,0 +1,61 @@
+package mydb.index;
+
+import mydb.execution.Predicate;
+import mydb.storage.Field;
+import mydb.storage.TupleDesc;
+
+/**
+ * B+树的结点页面（内部结点和叶子结点）的父类，记录父结点的页面编号
+ * 父结点编号为0表示该结点是根结点，其父结点为根指针页面
+ */
+public abstract class BTreeNodePage extends BTreePage {
+
+    final TupleDesc tupleDesc;
+
+    /**
+     * 索引字段在元组中的下标
+     */
+    final int keyField;
+
+    final int pageSize;
+
+    /**
+     * 父结点的页面编号，0表示根指针页面
+     */
+    int parentPageNo;
+
+    BTreeNodePage(BTreePageId id, byte[] data, TupleDesc tupleDesc, int keyField) {
+        super(id, data);
+        this.tupleDesc = tupleDesc;
+        this.keyField = keyField;
+        this.pageSize = data.length;
+    }
+
+    /**
+     * @return 返回父结点的页面ID，根结点返回根指针页面的ID
+     */
+    public synchronized BTreePageId getParentId() {
+        if (parentPageNo == 0) {
+            return new BTreePageId(pid.getTableId(), 0, BTreePageId.ROOT_PTR);
+        }
+        return new BTreePageId(pid.getTableId(), parentPageNo, BTreePageId.INTERNAL);
+    }
+
+    /**
+     * @param parentId 父结点的页面ID，需要为内部结点或根指针页面
+     */
+    public synchronized void setParentId(BTreePageId parentId) {
+        this.parentPageNo = parentId.getPageIndex();
+    }
+
+    /**
+     * 比较两个索引字段的大小
+     * @return a小于b时返回负数，相等返回0，大于返回正数
+     */
+    static int compareKeys(Field a, Field b) {
+        if (a.compare(Predicate.Op.EQUALS, b)) {
+            return 0;
+        }
+        return a.compare(Predicate.Op.LESS_THAN, b) ? -1 : 1;
+    }
+}
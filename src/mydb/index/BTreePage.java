@@ -0,0 +1,75 @@
+package mydb.index;
+
+import mydb.storage.Page;
+import mydb.transaction.TransactionId;
+
+import java.io.IOException;
+
+/**
+ * BTreeFile中所有页面的父类，负责页面的dirty状态和修改前镜像
+ * 页面的内容在构造时从字节中解析，修改后通过getPageData重新序列化
+ */
+public abstract class BTreePage implements Page {
+
+    final BTreePageId pid;
+
+    /**
+     * 修改前镜像的字节，构造时为读入的页面字节，setBeforeImage时更新为当前内容
+     */
+    private byte[] oldData;
+
+    private boolean dirty;
+
+    private TransactionId tid;
+
+    /**
+     * @param id 页面ID
+     * @param data 页面的字节，页面不会修改该数组，用作修改前的镜像
+     */
+    BTreePage(BTreePageId id, byte[] data) {
+        this.pid = id;
+        this.oldData = data;
+    }
+
+    @Override
+    public BTreePageId getId() {
+        return pid;
+    }
+
+    @Override
+    public TransactionId isDirty() {
+        return dirty ? tid : null;
+    }
+
+    @Override
+    public void setDirty(boolean dirty, TransactionId tid) {
+        this.dirty = dirty;
+        this.tid = tid;
+    }
+
+    @Override
+    public BTreePage getBeforeImage() {
+        try {
+            byte[] data;
+            synchronized (this) {
+                data = oldData;
+            }
+            return copyOf(data);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        return null;
+    }
+
+    /**
+     * 使用相同的页面ID和页面格式创建一个新页面，用于生成修改前镜像
+     * @param data 新页面的字节
+     */
+    abstract BTreePage copyOf(byte[] data) throws IOException;
+
+    @Override
+    public synchronized void setBeforeImage() {
+        oldData = getPageData();
+    }
+}
@@ -0,0 +1,93 @@
+package mydb.index;
+
+import mydb.storage.PageId;
+
+import java.util.Objects;
+
+/**
+ * BTreeFile中页面的唯一ID，由表ID、页面编号和页面类型（category）组成
+ * 页面编号0为根指针页面，其它页面的编号从1开始。页面被释放后可能以其它类型重新使用，
+ * 因此页面类型只用于读取页面时的提示，判断两个ID是否相同时只比较表ID和页面编号
+ */
+public class BTreePageId implements PageId {
+
+    /**
+     * 页面类型：根指针页面、内部结点、叶子结点、header页面
+     */
+    public static final int ROOT_PTR = 0;
+    public static final int INTERNAL = 1;
+    public static final int LEAF = 2;
+    public static final int HEADER = 3;
+
+    private final int tableId;
+
+    private final int pageNo;
+
+    private final int category;
+
+    /**
+     * 日志恢复时通过serialize()的结果调用该构造函数，因此只有这一个构造函数
+     * @param tableId 所引用的表的ID
+     * @param pageNo 页面编号
+     * @param category 页面类型
+     */
+    public BTreePageId(int tableId, int pageNo, int category) {
+        this.tableId = tableId;
+        this.pageNo = pageNo;
+        this.category = category;
+    }
+
+    @Override
+    public int getTableId() {
+        return tableId;
+    }
+
+    /**
+     * @return 返回页面编号，根指针页面为0
+     */
+    @Override
+    public int getPageIndex() {
+        return pageNo;
+    }
+
+    /**
+     * @return 返回页面类型
+     */
+    public int getCategory() {
+        return category;
+    }
+
+    public static String categoryToString(int category) {
+        return switch (category) {
+            case ROOT_PTR -> "ROOT_PTR";
+            case INTERNAL -> "INTERNAL";
+            case LEAF -> "LEAF";
+            case HEADER -> "HEADER";
+            default -> "UNKNOWN";
+        };
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(tableId, pageNo);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PageId)) {
+            return false;
+        }
+        PageId pid = (PageId) o;
+        return tableId == pid.getTableId() && pageNo == pid.getPageIndex();
+    }
+
+    @Override
+    public String toString() {
+        return "(" + tableId + ", " + pageNo + ", " + categoryToString(category) + ")";
+    }
+
+    @Override
+    public int[] serialize() {
+        return new int[] {tableId, pageNo, category};
+    }
+}
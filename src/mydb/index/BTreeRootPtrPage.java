@@ -0,0 +1,98 @@
+package mydb.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * BTreeFile的根指针页面（页面编号0），位于文件开头，记录文件的魔数、版本、页面大小、索引字段，
+ * 以及根结点和第一个header页面的位置。B+树的根结点改变时只需要修改该页面
+ */
+public class BTreeRootPtrPage extends BTreePage {
+
+    /**
+     * 根指针页面的字节数，文件中为其保留BTreeFile.HEADER_SIZE字节
+     */
+    public static final int PAGE_SIZE = 32;
+
+    private final int filePageSize;
+
+    private final int keyField;
+
+    /**
+     * 根结点的页面编号和类型，空树的根结点编号为0
+     */
+    private int rootPageNo;
+    private int rootCategory;
+
+    /**
+     * 第一个header页面的编号，没有header页面时为0
+     */
+    private int headerPageNo;
+
+    public BTreeRootPtrPage(BTreePageId id, byte[] data) throws IOException {
+        super(id, data);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (buffer.getInt(0) != BTreeFile.FILE_MAGIC) {
+            throw new IOException("page " + id + " is not a B+ tree root pointer page");
+        }
+        this.filePageSize = buffer.getInt(8);
+        this.keyField = buffer.getInt(12);
+        this.rootPageNo = buffer.getInt(16);
+        this.rootCategory = buffer.getInt(20);
+        this.headerPageNo = buffer.getInt(24);
+    }
+
+    /**
+     * @param filePageSize 文件中其它页面的大小
+     * @param keyField 索引字段
+     * @return 返回空树的根指针页面的字节
+     */
+    static byte[] createEmptyPageData(int filePageSize, int keyField) {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        buffer.putInt(BTreeFile.FILE_MAGIC);
+        buffer.putInt(BTreeFile.FILE_VERSION);
+        buffer.putInt(filePageSize);
+        buffer.putInt(keyField);
+        return buffer.array();
+    }
+
+    @Override
+    BTreePage copyOf(byte[] data) throws IOException {
+        return new BTreeRootPtrPage(pid, data);
+    }
+
+    @Override
+    public synchronized byte[] getPageData() {
+        ByteBuffer buffer = ByteBuffer.wrap(createEmptyPageData(filePageSize, keyField));
+        buffer.putInt(16, rootPageNo);
+        buffer.putInt(20, rootCategory);
+        buffer.putInt(24, headerPageNo);
+        return buffer.array();
+    }
+
+    /**
+     * @return 返回根结点的页面ID，空树返回null
+     */
+    public synchronized BTreePageId getRootId() {
+        return (rootPageNo == 0) ? null : new BTreePageId(pid.getTableId(), rootPageNo, rootCategory);
+    }
+
+    /**
+     * @param rootId 新的根结点，需要为内部结点或叶子结点
+     */
+    public synchronized void setRootId(BTreePageId rootId) {
+        this.rootPageNo = rootId.getPageIndex();
+        this.rootCategory = rootId.getCategory();
+    }
+
+    /**
+     * @return 返回第一个header页面的ID，没有header页面时返回null
+     */
+    public synchronized BTreePageId getHeaderId() {
+        return (headerPageNo == 0) ? null : new BTreePageId(pid.getTableId(), headerPageNo, BTreePageId.HEADER);
+    }
+
+    public synchronized void setHeaderId(BTreePageId headerId) {
+        this.headerPageNo = headerId.getPageIndex();
+    }
+}
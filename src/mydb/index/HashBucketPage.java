@@ -0,0 +1,185 @@
+package mydb.index;
+
+import mydb.common.Database;
+import mydb.common.DbException;
+import mydb.execution.Predicate;
+import mydb.storage.Field;
+import mydb.storage.RecordId;
+import mydb.storage.Tuple;
+import mydb.storage.TupleDesc;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 哈希索引的桶页面和溢出页面，两者格式相同，桶中放不下的条目存放在桶后面链接的溢出页面中
+ * 页面格式：条目数量（4字节）、下一个溢出页面的编号加1（4字节，0表示没有下一个溢出页面）、紧密排列的条目
+ */
+public class HashBucketPage extends HashPage {
+
+    private static final int HEADER_BYTES = 8;
+
+    private final TupleDesc tupleDesc;
+
+    private final int pageSize;
+
+    final int maxEntries;
+
+    /**
+     * 下一个溢出页面的编号加1，0表示没有下一个溢出页面
+     */
+    private int nextOverflow;
+
+    /**
+     * 页面中的条目，没有顺序
+     */
+    final List<Tuple> entries;
+
+    public HashBucketPage(HashPageId id, byte[] data) {
+        this(id, data, Database.getCatalog().getDbFile(id.getTableId()).getTupleDesc());
+    }
+
+    HashBucketPage(HashPageId id, byte[] data, TupleDesc tupleDesc) {
+        super(id, data);
+        this.tupleDesc = tupleDesc;
+        this.pageSize = data.length;
+        this.maxEntries = getMaxEntries(pageSize, tupleDesc);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int entriesNum = buffer.getInt(0);
+        this.nextOverflow = buffer.getInt(4);
+        this.entries = new ArrayList<>(maxEntries);
+        int offset = HEADER_BYTES;
+        for (int i=0; i<entriesNum; i++) {
+            Tuple entry = new Tuple(tupleDesc);
+            for (int j=0; j<tupleDesc.getFieldsNum(); j++) {
+                entry.setField(j, tupleDesc.getFieldType(j).parse(buffer, offset));
+                offset += tupleDesc.getFieldType(j).getLen();
+            }
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * @return 返回一个页面最多可以保存的条目数量
+     */
+    static int getMaxEntries(int pageSize, TupleDesc tupleDesc) {
+        return (pageSize - HEADER_BYTES) / tupleDesc.getSize();
+    }
+
+    @Override
+    HashPage copyOf(byte[] data) {
+        return new HashBucketPage(pid, data, tupleDesc);
+    }
+
+    @Override
+    public synchronized byte[] getPageData() {
+        byte[] data = new byte[pageSize];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.putInt(entries.size());
+        buffer.putInt(nextOverflow);
+        int offset = HEADER_BYTES;
+        for (Tuple entry: entries) {
+            for (int j=0; j<tupleDesc.getFieldsNum(); j++) {
+                entry.getField(j).serialize(buffer, offset);
+                offset += tupleDesc.getFieldType(j).getLen();
+            }
+        }
+        return data;
+    }
+
+    public synchronized int getEntriesNum() {
+        return entries.size();
+    }
+
+    /**
+     * @return 返回还可以插入的条目数量
+     */
+    public synchronized int getEmptySlotsNum() {
+        return maxEntries - entries.size();
+    }
+
+    /**
+     * 插入条目并设置条目的RecordId
+     * @param entry 需要插入的条目
+     */
+    public synchronized void insertEntry(Tuple entry) throws DbException {
+        if (entries.size() >= maxEntries) {
+            throw new DbException("this page is full");
+        }
+        if (!entry.getTupleDesc().equals(tupleDesc)) {
+            throw new DbException("the tupleDesc is not matched");
+        }
+        Tuple stored = new Tuple(tupleDesc);
+        for (int j=0; j<tupleDesc.getFieldsNum(); j++) {
+            stored.setField(j, entry.getField(j));
+        }
+        entries.add(stored);
+        entry.setRecordId(new RecordId(pid, entries.size() - 1));
+    }
+
+    /**
+     * @param entry 需要查找的条目
+     * @return 返回与条目字段值相同的条目的下标，不存在时返回-1
+     */
+    public synchronized int findEntry(Tuple entry) {
+        for (int i=0; i<entries.size(); i++) {
+            if (sameFields(entries.get(i), entry)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean sameFields(Tuple a, Tuple b) {
+        for (int j=0; j<tupleDesc.getFieldsNum(); j++) {
+            if (!a.getField(j).compare(Predicate.Op.EQUALS, b.getField(j))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 删除第index个条目，最后一个条目移动到该位置
+     */
+    public synchronized void deleteEntry(int index) {
+        Tuple last = entries.remove(entries.size() - 1);
+        if (index < entries.size()) {
+            entries.set(index, last);
+        }
+    }
+
+    /**
+     * @return 返回下一个溢出页面的ID，不存在时返回null
+     */
+    public synchronized HashPageId getNextId() {
+        return (nextOverflow == 0) ? null : new HashPageId(pid.getTableId(), nextOverflow - 1, HashPageId.OVERFLOW);
+    }
+
+    public synchronized void setNextId(HashPageId id) {
+        this.nextOverflow = (id == null) ? 0 : id.getPageIndex() + 1;
+    }
+
+    /**
+     * @param key 需要查找的索引键，为null时返回所有条目
+     * @param keyField 索引键在条目中的下标
+     * @return 返回索引键相同的条目的拷贝的迭代器，条目的RecordId为当前的页面ID和下标
+     */
+    public synchronized Iterator<Tuple> iterator(Field key, int keyField) {
+        List<Tuple> copies = new ArrayList<>();
+        for (int i=0; i<entries.size(); i++) {
+            if (key != null && !entries.get(i).getField(keyField).compare(Predicate.Op.EQUALS, key)) {
+                continue;
+            }
+            Tuple entry = new Tuple(tupleDesc);
+            for (int j=0; j<tupleDesc.getFieldsNum(); j++) {
+                entry.setField(j, entries.get(i).getField(j));
+            }
+            entry.setRecordId(new RecordId(pid, i));
+            copies.add(entry);
+        }
+        return copies.iterator();
+    }
+}
@@ -0,0 +1,597 @@
+package mydb.index;
+
+import mydb.common.Database;
+import mydb.common.DbException;
+import mydb.common.Permissions;
+import mydb.storage.*;
+import mydb.transaction.TransactionException;
+import mydb.transaction.TransactionId;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * HashFile（线性哈希文件）实现了DbFile接口，条目按索引键的哈希值存放在桶中，
+ * 等值查找只需要读取元数据页面和一个桶（及其溢出页面），与表的大小无关，但不支持范围查找
+ * 文件格式：元数据页面（HashMetaPage，占用HEADER_SIZE字节），之后依次存放编号从0开始的桶页面，
+ * 桶中放不下的条目存放在溢出文件（与索引文件同名，后缀为.ovf）的溢出页面中
+ * 线性哈希每次只分裂一个桶：每分配一个溢出页面就需要按顺序分裂下一个桶，
+ * 将其中的条目重新分配到原来的桶和新桶中，桶的数量随条目数量逐渐增长，不需要一次性重建整个哈希表
+ * 桶页面和溢出页面通过BufferPool获取并加锁（两段锁）。元数据页面只由分裂修改，查找和插入不对其加事务锁，
+ * 只通过页面自身的监视器（短期闩锁）读取，因此打开的读者不会阻止分裂；读到的可能是未提交的分裂结果，
+ * 加锁桶页面之后重新读取元数据页面确认索引键所在的桶，桶改变（分裂完成或回滚）时改为获取新的桶。
+ * 分裂需要元数据页面和相关桶的排他锁，不能立即加锁时推迟分裂，不会因为分裂导致插入失败或等待。
+ * 溢出文件只增长，桶的数量落后于溢出页面数量时之后的插入会补上推迟的分裂。
+ * 删除条目后不会合并桶
+ * @see HashMetaPage
+ * @see HashBucketPage
+ */
+public class HashFile implements DbFile {
+
+    /**
+     * 文件头的魔数（"MYHX"）
+     */
+    static final int FILE_MAGIC = 0x4D594858;
+
+    static final int FILE_VERSION = 1;
+
+    /**
+     * 桶的数量落后较多时，一次插入最多分裂的桶数量
+     */
+    private static final int MAX_SPLITS_PER_INSERT = 4;
+
+    /**
+     * 文件开头为元数据页面保留的字节数，之后为编号从0开始的桶页面
+     */
+    public static final int HEADER_SIZE = HeapFile.HEADER_SIZE;
+
+    private final File file;
+
+    /**
+     * 存放溢出页面的文件
+     */
+    private final File overflowFile;
+
+    private final TupleDesc tupleDesc;
+
+    /**
+     * 索引字段在条目中的下标
+     */
+    private final int keyField;
+
+    /**
+     * 桶页面和溢出页面的大小，已存在的文件使用文件头中记录的页面大小
+     */
+    private final int pageSize;
+
+    /**
+     * 该文件的通道由数据库的FileChannelPool统一缓存和关闭
+     */
+    private final FileChannelPool channelPool;
+
+    /**
+     * @param file 磁盘中的文件，用于存放HashFile
+     * @param tupleDesc 条目的元组描述
+     * @param keyField 索引字段在条目中的下标
+     * @throws IllegalStateException 已存在的文件不是哈希文件或索引字段不同时抛出
+     * @throws IllegalArgumentException 页面太小，无法存放至少两个条目时抛出
+     */
+    public HashFile(File file, TupleDesc tupleDesc, int keyField) {
+        this.file = file;
+        this.overflowFile = new File(file.getPath() + ".ovf");
+        this.tupleDesc = tupleDesc;
+        this.keyField = keyField;
+        this.channelPool = Database.getFileChannelPool();
+        int size = BufferPool.getPageSize();
+        if (file.length() > 0) {
+            // 读取已存在文件的元数据页面
+            try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+                if (file.length() < HashMetaPage.PAGE_SIZE || dis.readInt() != FILE_MAGIC) {
+                    throw new IllegalStateException("file " + file.getPath() + " is not a hash file");
+                }
+                dis.readInt(); // 版本号
+                size = BufferPool.checkPageSize(dis.readInt());
+                int field = dis.readInt();
+                if (field != keyField) {
+                    throw new IllegalStateException(String.format("file %s is indexed on field %d, expected %d",
+                            file.getPath(), field, keyField));
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        this.pageSize = size;
+        if (HashBucketPage.getMaxEntries(size, tupleDesc) < 2) {
+            throw new IllegalArgumentException("page size " + size + " is too small for the hash file");
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public int getId() {
+        return file.getAbsolutePath().hashCode();
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+
+    /**
+     * @return 返回索引字段在条目中的下标
+     */
+    public int keyField() {
+        return keyField;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return 返回元数据页面的ID
+     */
+    public HashPageId getMetaId() {
+        return new HashPageId(getId(), 0, HashPageId.META);
+    }
+
+    /**
+     * @return 返回磁盘中的桶页面数量，新分裂出的桶在写回磁盘之前不计算在内
+     */
+    public int getBucketPagesNum() {
+        long fileLength = file.length() - HEADER_SIZE;
+        return (fileLength <= 0) ? 0 : (int) ((fileLength + pageSize - 1) / pageSize);
+    }
+
+    /**
+     * @return 返回磁盘中的溢出页面数量
+     */
+    public int getOverflowPagesNum() {
+        return (int) (overflowFile.length() / pageSize);
+    }
+
+    /**
+     * @return 返回桶页面和溢出页面的数量
+     */
+    public int getPagesNum() {
+        return getBucketPagesNum() + getOverflowPagesNum();
+    }
+
+    /**
+     * 计算索引键的哈希值，对字段的hashCode进行扰动，避免连续的整数键只使用哈希值的低位
+     * @return 返回不小于0的哈希值
+     */
+    static int hashOf(Field key) {
+        int hash = key.hashCode() * 0x9E3779B1;
+        hash ^= hash >>> 16;
+        return hash & Integer.MAX_VALUE;
+    }
+
+    @Override
+    public Page readPage(PageId pid) {
+        HashPageId id = (HashPageId) pid;
+        try {
+            switch (id.getKind()) {
+                case HashPageId.META -> {
+                    FileChannel channel = channelPool.get(file);
+                    byte[] data = HashMetaPage.createEmptyPageData(pageSize, keyField);
+                    if (channel.size() >= HashMetaPage.PAGE_SIZE) {
+                        FileChannelPool.readFully(channel, ByteBuffer.wrap(data), 0);
+                    }
+                    return new HashMetaPage(id, data);
+                }
+                case HashPageId.BUCKET -> {
+                    // 还没有写回磁盘的桶读取为空桶
+                    byte[] data = new byte[pageSize];
+                    FileChannelPool.readFully(channelPool.get(file), ByteBuffer.wrap(data), offsetOf(id));
+                    return new HashBucketPage(id, data, tupleDesc);
+                }
+                case HashPageId.OVERFLOW -> {
+                    byte[] data = new byte[pageSize];
+                    FileChannelPool.readFully(channelPool.get(overflowFile), ByteBuffer.wrap(data), offsetOf(id));
+                    return new HashBucketPage(id, data, tupleDesc);
+                }
+                default -> throw new IOException("unknown page kind of page " + id);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private long offsetOf(HashPageId id) {
+        return switch (id.getKind()) {
+            case HashPageId.BUCKET -> HEADER_SIZE + (long) pageSize * id.getPageIndex();
+            case HashPageId.OVERFLOW -> (long) pageSize * id.getPageIndex();
+            default -> 0;
+        };
+    }
+
+    @Override
+    public void writePage(Page page) throws IOException {
+        HashPageId id = (HashPageId) page.getId();
+        if (id.getKind() == HashPageId.OVERFLOW) {
+            FileChannelPool.writeFully(channelPool.get(overflowFile), ByteBuffer.wrap(page.getPageData()), offsetOf(id));
+            return;
+        }
+        if (id.getKind() == HashPageId.BUCKET) {
+            writeHeaderIfAbsent();
+        }
+        FileChannelPool.writeFully(channelPool.get(file), ByteBuffer.wrap(page.getPageData()), offsetOf(id));
+    }
+
+    /**
+     * 元数据页面没有被修改过时不会写回磁盘，写入桶页面之前先保证文件开头有元数据页面，
+     * 否则重新打开文件时无法识别文件格式
+     */
+    private synchronized void writeHeaderIfAbsent() throws IOException {
+        FileChannel channel = channelPool.get(file);
+        if (channel.size() < HashMetaPage.PAGE_SIZE) {
+            byte[] meta = HashMetaPage.createEmptyPageData(pageSize, keyField);
+            FileChannelPool.writeFully(channel, ByteBuffer.wrap(meta), 0);
+        }
+    }
+
+    /**
+     * 在溢出文件末尾添加一个全0的页面
+     * 多个事务同时扩展文件时需要互斥，保证每个事务得到不同的新页面
+     * @return 返回新页面的编号
+     */
+    private synchronized int appendOverflowPage() throws IOException {
+        FileChannel channel = channelPool.get(overflowFile);
+        int pageNo = (int) ((channel.size() + pageSize - 1) / pageSize);
+        FileChannelPool.writeFully(channel, ByteBuffer.wrap(new byte[pageSize]), (long) pageSize * pageNo);
+        return pageNo;
+    }
+
+    /**
+     * 获取页面，优先返回该操作中已经修改过的页面，以READ_WRITE权限获取的页面会被记录为修改过的页面
+     * @param tid 事务ID
+     * @param dirtyPages 该操作修改过的页面
+     * @param pid 页面ID
+     * @param perm 操作权限
+     */
+    HashPage getPage(TransactionId tid, Map<PageId, Page> dirtyPages, HashPageId pid, Permissions perm)
+            throws DbException, TransactionException {
+        Page page = dirtyPages.get(pid);
+        if (page != null) {
+            return (HashPage) page;
+        }
+        page = Database.getBufferPool().getPage(tid, pid, perm);
+        if (perm == Permissions.READ_WRITE) {
+            dirtyPages.put(pid, page);
+        }
+        return (HashPage) page;
+    }
+
+    private HashPageId bucketId(int bucket) {
+        return new HashPageId(getId(), bucket, HashPageId.BUCKET);
+    }
+
+    /**
+     * 不加事务锁地读取元数据页面，本操作中已经加了排他锁的元数据页面直接返回
+     * @param dirtyPages 该操作修改过的页面
+     */
+    private HashMetaPage readMeta(Map<PageId, Page> dirtyPages) throws DbException {
+        Page page = dirtyPages.get(getMetaId());
+        if (page == null) {
+            page = Database.getBufferPool().getPageWithoutLock(getMetaId());
+        }
+        return (HashMetaPage) page;
+    }
+
+    /**
+     * 获取索引键的哈希值所在的桶页面。等待桶的锁期间其它事务可能完成或回滚了分裂，
+     * 所以加锁之后重新读取元数据页面，哈希值不再映射到该桶时改为获取新的桶
+     * @param hash 索引键的哈希值
+     * @return 返回加锁之后仍然对应该哈希值的桶页面
+     */
+    private HashBucketPage getBucket(TransactionId tid, Map<PageId, Page> dirtyPages, int hash, Permissions perm)
+            throws DbException, TransactionException {
+        int bucket = readMeta(dirtyPages).bucketOf(hash);
+        while (true) {
+            HashBucketPage page = (HashBucketPage) getPage(tid, dirtyPages, bucketId(bucket), perm);
+            int current = readMeta(dirtyPages).bucketOf(hash);
+            if (current == bucket) {
+                return page;
+            }
+            bucket = current;
+        }
+    }
+
+    /**
+     * 分配一个新的溢出页面并以READ_WRITE权限获取
+     */
+    private HashBucketPage newOverflowPage(TransactionId tid, Map<PageId, Page> dirtyPages)
+            throws DbException, IOException, TransactionException {
+        HashPageId pid = new HashPageId(getId(), appendOverflowPage(), HashPageId.OVERFLOW);
+        return (HashBucketPage) getPage(tid, dirtyPages, pid, Permissions.READ_WRITE);
+    }
+
+    /**
+     * 以READ_WRITE权限获取桶及其所有溢出页面
+     * @param bucket 桶的编号
+     * @return 返回按链接顺序排列的页面
+     */
+    private List<HashBucketPage> getChain(TransactionId tid, Map<PageId, Page> dirtyPages, int bucket)
+            throws DbException, TransactionException {
+        List<HashBucketPage> chain = new ArrayList<>();
+        HashPageId pid = bucketId(bucket);
+        while (pid != null) {
+            HashBucketPage page = (HashBucketPage) getPage(tid, dirtyPages, pid, Permissions.READ_WRITE);
+            chain.add(page);
+            pid = page.getNextId();
+        }
+        return chain;
+    }
+
+    /**
+     * 将条目插入到桶中，桶和已有的溢出页面都已满时在桶的末尾链接新的溢出页面
+     * @param tid 进行插入操作的事务ID
+     * @param tuple 需要插入的条目
+     * @return 返回修改了的页面列表
+     */
+    @Override
+    public List<Page> insertTuple(TransactionId tid, Tuple tuple)
+            throws DbException, IOException, TransactionException {
+        if (!tuple.getTupleDesc().equals(tupleDesc)) {
+            throw new DbException("the tupleDesc is not matched");
+        }
+        Map<PageId, Page> dirtyPages = new LinkedHashMap<>();
+        HashBucketPage page = getBucket(tid, dirtyPages, hashOf(tuple.getField(keyField)), Permissions.READ_WRITE);
+        while (page.getEmptySlotsNum() == 0) {
+            HashPageId nextId = page.getNextId();
+            if (nextId == null) {
+                HashBucketPage overflow = newOverflowPage(tid, dirtyPages);
+                page.setNextId(overflow.getId());
+                page = overflow;
+            } else {
+                page = (HashBucketPage) getPage(tid, dirtyPages, nextId, Permissions.READ_WRITE);
+            }
+        }
+        page.insertEntry(tuple);
+        // 每个溢出页面对应一次分裂，目标桶数量根据溢出文件的大小计算，推迟的分裂不会丢失
+        int targetBucketsNum = HashMetaPage.INITIAL_BUCKETS + getOverflowPagesNum();
+        for (int i=0; i<MAX_SPLITS_PER_INSERT && readMeta(dirtyPages).getBucketsNum() < targetBucketsNum; i++) {
+            if (!trySplit(tid, dirtyPages)) {
+                break;
+            }
+        }
+        return new ArrayList<>(dirtyPages.values());
+    }
+
+    /**
+     * 分裂下一个需要分裂的桶，不等待地锁定被分裂的桶的整条链和新桶，最后才锁定元数据页面，
+     * 某个页面被其它事务锁定时放弃本次分裂并释放本次新加的锁，之后的插入会再次尝试
+     * @return 分裂成功返回true
+     */
+    private boolean trySplit(TransactionId tid, Map<PageId, Page> dirtyPages) throws DbException {
+        // 没有加锁时读到的状态，锁定元数据页面之后需要确认没有被其它事务的分裂改变
+        HashMetaPage meta = readMeta(dirtyPages);
+        int oldBucket = meta.getNextSplit();
+        int newBucketNo = meta.getBucketsNum();
+        List<PageId> acquired = new ArrayList<>();
+        List<HashBucketPage> oldChain = new ArrayList<>();
+        HashPageId pid = bucketId(oldBucket);
+        while (pid != null) {
+            HashBucketPage page = (HashBucketPage) tryGetPage(tid, dirtyPages, pid, acquired);
+            if (page == null) {
+                return abandonSplit(tid, acquired);
+            }
+            oldChain.add(page);
+            pid = page.getNextId();
+        }
+        // 分裂产生的新桶的编号等于当前的桶数量
+        HashBucketPage newBucket = (HashBucketPage) tryGetPage(tid, dirtyPages, bucketId(newBucketNo), acquired);
+        HashMetaPage lockedMeta = (newBucket == null) ? null
+                : (HashMetaPage) tryGetPage(tid, dirtyPages, getMetaId(), acquired);
+        if (lockedMeta == null || lockedMeta.getNextSplit() != oldBucket || lockedMeta.getBucketsNum() != newBucketNo) {
+            return abandonSplit(tid, acquired);
+        }
+        meta = lockedMeta;
+        dirtyPages.put(meta.getId(), meta);
+        dirtyPages.put(newBucket.getId(), newBucket);
+        List<Tuple> entries = new ArrayList<>();
+        for (HashBucketPage page: oldChain) {
+            dirtyPages.put(page.getId(), page);
+            entries.addAll(page.entries);
+            page.entries.clear();
+        }
+        // 新桶还没有被使用，清除回滚的分裂可能残留在磁盘中的内容
+        newBucket.entries.clear();
+        meta.advanceSplit();
+        List<Tuple> staying = new ArrayList<>();
+        List<Tuple> moving = new ArrayList<>();
+        for (Tuple entry: entries) {
+            int bucket = meta.bucketOf(hashOf(entry.getField(keyField)));
+            ((bucket == oldBucket) ? staying : moving).add(entry);
+        }
+        // 原来的链只保留放得下留下的条目的页面，多余的溢出页面链接到新桶之后，两条链的容量一定足够
+        int maxEntries = HashBucketPage.getMaxEntries(pageSize, tupleDesc);
+        int keptPages = Math.max(1, (staying.size() + maxEntries - 1) / maxEntries);
+        List<HashBucketPage> newChain = new ArrayList<>();
+        newChain.add(newBucket);
+        newChain.addAll(oldChain.subList(keptPages, oldChain.size()));
+        fillChain(oldChain.subList(0, keptPages), staying);
+        fillChain(newChain, moving);
+        return true;
+    }
+
+    /**
+     * 以READ_WRITE权限不等待地获取页面，不会把页面记录为修改过的页面
+     * @param acquired 记录事务原来没有加锁、本次新加锁的页面
+     * @return 返回页面，其它事务持有冲突的锁时返回null
+     */
+    private HashPage tryGetPage(TransactionId tid, Map<PageId, Page> dirtyPages, HashPageId pid, List<PageId> acquired)
+            throws DbException {
+        Page page = dirtyPages.get(pid);
+        if (page != null) {
+            return (HashPage) page;
+        }
+        boolean held = Database.getBufferPool().holdsLock(tid, pid);
+        page = Database.getBufferPool().tryGetPage(tid, pid, Permissions.READ_WRITE);
+        if (page != null && !held) {
+            acquired.add(pid);
+        }
+        return (HashPage) page;
+    }
+
+    /**
+     * 放弃分裂，释放本次新加的锁，这些页面没有被修改，读到的内容也没有被使用
+     * @return 返回false
+     */
+    private boolean abandonSplit(TransactionId tid, List<PageId> acquired) {
+        for (PageId pid: acquired) {
+            Database.getBufferPool().releasePage(tid, pid);
+        }
+        return false;
+    }
+
+    /**
+     * 将条目依次放入链中的页面，并重新链接这些页面
+     */
+    private static void fillChain(List<HashBucketPage> chain, List<Tuple> entries) throws DbException {
+        Iterator<Tuple> iterator = entries.iterator();
+        for (int i=0; i<chain.size(); i++) {
+            HashBucketPage page = chain.get(i);
+            page.setNextId((i + 1 < chain.size()) ? chain.get(i + 1).getId() : null);
+            while (iterator.hasNext() && page.getEmptySlotsNum() > 0) {
+                page.insertEntry(iterator.next());
+            }
+        }
+    }
+
+    /**
+     * 删除与条目字段值相同的一个条目，条目的RecordId只作为查找提示
+     * @param tid 进行删除操作的事务ID
+     * @param tuple 需要删除的条目
+     * @return 返回修改了的页面列表
+     */
+    @Override
+    public List<Page> deleteTuple(TransactionId tid, Tuple tuple)
+            throws DbException, IOException, TransactionException {
+        Map<PageId, Page> dirtyPages = new LinkedHashMap<>();
+        HashBucketPage bucket = getBucket(tid, dirtyPages, hashOf(tuple.getField(keyField)), Permissions.READ_WRITE);
+        HashPageId pid = bucket.getId();
+        while (pid != null) {
+            HashBucketPage page = (HashBucketPage) getPage(tid, dirtyPages, pid, Permissions.READ_WRITE);
+            int index = page.findEntry(tuple);
+            if (index >= 0) {
+                page.deleteEntry(index);
+                return new ArrayList<>(dirtyPages.values());
+            }
+            pid = page.getNextId();
+        }
+        throw new DbException("tuple is not in this hash file");
+    }
+
+    @Override
+    public DbFileIterator iterator(TransactionId tid) {
+        return new HashFileIterator(this, tid, null);
+    }
+
+    /**
+     * @param key 需要查找的索引键
+     * @return 返回索引键等于key的条目的迭代器，只读取key所在的桶
+     */
+    public DbFileIterator lookupIterator(TransactionId tid, Field key) {
+        return new HashFileIterator(this, tid, key);
+    }
+
+    /**
+     * 按桶的顺序遍历条目，指定索引键时只遍历索引键所在的桶
+     * 遍历所有桶时，还没有访问的桶可能被分裂到新的桶中，遍历到最后一个桶时重新读取桶的数量；
+     * 已经访问的桶持有共享锁，不会被分裂，所以每个条目只会被返回一次
+     */
+    public static class HashFileIterator implements DbFileIterator {
+
+        private final HashFile hashFile;
+        private final TransactionId tid;
+        private final Field key;
+        private Iterator<Tuple> iterator;
+        private HashPageId nextPageId;
+        private int nextBucket;
+        private int lastBucket;
+
+        public HashFileIterator(HashFile hashFile, TransactionId tid, Field key) {
+            this.hashFile = hashFile;
+            this.tid = tid;
+            this.key = key;
+        }
+
+        @Override
+        public void open() throws DbException, TransactionException {
+            if (key == null) {
+                nextBucket = 0;
+                lastBucket = hashFile.readMeta(Collections.emptyMap()).getBucketsNum() - 1;
+            } else {
+                // 只读取一个桶，桶的编号在第一次读取时确定
+                nextBucket = -1;
+                lastBucket = -1;
+            }
+            iterator = Collections.emptyIterator();
+            nextPageId = null;
+        }
+
+        @Override
+        public void close() throws DbException {
+            iterator = null;
+            nextPageId = null;
+        }
+
+        @Override
+        public boolean hasNext() throws DbException, TransactionException {
+            if (iterator == null) {
+                return false;
+            }
+            while (!iterator.hasNext()) {
+                HashBucketPage page;
+                if (nextPageId != null) {
+                    page = (HashBucketPage) Database.getBufferPool().getPage(tid, nextPageId, Permissions.READ_ONLY);
+                } else if (key != null) {
+                    if (nextBucket >= 0) {
+                        return false;
+                    }
+                    page = hashFile.getBucket(tid, Collections.emptyMap(), hashOf(key), Permissions.READ_ONLY);
+                    nextBucket = page.getId().getPageIndex();
+                } else {
+                    if (nextBucket > lastBucket) {
+                        // 遍历期间完成的分裂可能增加了桶
+                        lastBucket = hashFile.readMeta(Collections.emptyMap()).getBucketsNum() - 1;
+                        if (nextBucket > lastBucket) {
+                            return false;
+                        }
+                    }
+                    page = (HashBucketPage) Database.getBufferPool()
+                            .getPage(tid, hashFile.bucketId(nextBucket++), Permissions.READ_ONLY);
+                    if (page.getId().getPageIndex() >= hashFile.readMeta(Collections.emptyMap()).getBucketsNum()) {
+                        // 等待锁期间创建该桶的分裂被回滚，该桶中没有条目
+                        continue;
+                    }
+                }
+                iterator = page.iterator(key, hashFile.keyField());
+                nextPageId = page.getNextId();
+            }
+            return true;
+        }
+
+        @Override
+        public Tuple next() throws DbException, NoSuchElementException, TransactionException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return iterator.next();
+        }
+
+        @Override
+        public void rewind() throws DbException, TransactionException {
+            close();
+            open();
+        }
+    }
+}
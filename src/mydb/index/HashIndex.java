@@ -0,0 +1,140 @@
+package mydb.index;
+
+import mydb.common.Database;
+import mydb.common.DbException;
+import mydb.execution.Predicate;
+import mydb.storage.*;
+import mydb.transaction.TransactionException;
+import mydb.transaction.TransactionId;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 基于线性哈希的非聚簇索引，只支持等值查找
+ * 条目的格式与BTreeIndex的非聚簇索引相同，存放在单独的HashFile中。等值查找只需要读取索引键所在的桶，
+ * 不需要像B+树一样从根结点向下查找，但无法用于范围查找和有序输出
+ */
+public class HashIndex implements Index {
+
+    private final int tableId;
+
+    private final int keyField;
+
+    private final int[] includedFields;
+
+    private final HashFile file;
+
+    /**
+     * 创建HeapFile表上的哈希索引
+     * @param file 存放索引条目的文件
+     * @param tableId 被索引的表的ID
+     * @param keyField 索引键在表中的列索引
+     */
+    public HashIndex(File file, int tableId, int keyField) {
+        this(file, tableId, keyField, new int[0]);
+    }
+
+    /**
+     * 创建HeapFile表上带有包含列的哈希索引
+     * @param file 存放索引条目的文件
+     * @param tableId 被索引的表的ID
+     * @param keyField 索引键在表中的列索引
+     * @param includedFields 保存在条目中的其它列，只用到这些列和索引键的查询不需要读取表页面
+     */
+    public HashIndex(File file, int tableId, int keyField, int[] includedFields) {
+        this.tableId = tableId;
+        this.keyField = keyField;
+        this.includedFields = includedFields.clone();
+        TupleDesc entryDesc = IndexEntries.entryDesc(Database.getCatalog().getTupleDesc(tableId), keyField, includedFields);
+        this.file = new HashFile(file, entryDesc, 0);
+    }
+
+    @Override
+    public int getTableId() {
+        return tableId;
+    }
+
+    @Override
+    public int getKeyField() {
+        return keyField;
+    }
+
+    /**
+     * @return 返回包含列在表中的列索引
+     */
+    public int[] getIncludedFields() {
+        return includedFields.clone();
+    }
+
+    @Override
+    public HashFile getFile() {
+        return file;
+    }
+
+    @Override
+    public boolean isClustered() {
+        return false;
+    }
+
+    @Override
+    public boolean isUnique() {
+        return false;
+    }
+
+    @Override
+    public boolean supports(Predicate.Op op) {
+        return op == Predicate.Op.EQUALS;
+    }
+
+    @Override
+    public DbFileIterator lookup(TransactionId tid, IndexPredicate predicate) {
+        return file.lookupIterator(tid, predicate.getField());
+    }
+
+    @Override
+    public RecordId getRecordId(Tuple entry) {
+        return IndexEntries.recordIdOf(tableId, entry);
+    }
+
+    @Override
+    public boolean covers(int field) {
+        return IndexEntries.covers(keyField, includedFields, field);
+    }
+
+    @Override
+    public Tuple getCoveredTuple(Tuple entry) {
+        return IndexEntries.coveredTupleOf(tableId, Database.getCatalog().getTupleDesc(tableId), entry, keyField, includedFields);
+    }
+
+    @Override
+    public List<Page> insertEntry(TransactionId tid, Tuple tuple)
+            throws DbException, IOException, TransactionException {
+        return file.insertTuple(tid, IndexEntries.entryOf(file.getTupleDesc(), tuple, keyField, includedFields));
+    }
+
+    @Override
+    public List<Page> deleteEntry(TransactionId tid, Tuple tuple)
+            throws DbException, IOException, TransactionException {
+        return file.deleteTuple(tid, IndexEntries.entryOf(file.getTupleDesc(), tuple, keyField, includedFields));
+    }
+
+    /**
+     * 查找需要读取元数据页面和一个桶的所有页面，桶的平均页面数量根据溢出页面的数量估计，
+     * 满足条件的条目很多时至少需要读取存放这些条目的页面
+     */
+    @Override
+    public double estimateLookupPages(double selectivity) {
+        int bucketPages = Math.max(file.getBucketPagesNum(), HashMetaPage.INITIAL_BUCKETS);
+        int pagesNum = bucketPages + file.getOverflowPagesNum();
+        double chainPages = pagesNum * 1.0 / bucketPages;
+        return 1 + Math.max(chainPages, selectivity * pagesNum);
+    }
+
+    @Override
+    public String toString() {
+        return "hash(" + Database.getCatalog().getTableName(tableId) + "."
+                + IndexEntries.columnsOf(Database.getCatalog().getTupleDesc(tableId), keyField, includedFields) + ")";
+    }
+}
@@ -0,0 +1,113 @@
+package mydb.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * HashFile的元数据页面，位于文件开头，记录魔数、版本、页面大小、索引字段和线性哈希的状态
+ * 线性哈希的桶数量为INITIAL_BUCKETS * 2^level + next，编号小于next的桶已在本轮分裂过，
+ * 它们和分裂产生的新桶使用下一轮（level + 1）的哈希函数寻址
+ */
+public class HashMetaPage extends HashPage {
+
+    /**
+     * 元数据页面的字节数，文件中为其保留HashFile.HEADER_SIZE字节
+     */
+    public static final int PAGE_SIZE = 32;
+
+    /**
+     * 第0轮的桶数量
+     */
+    static final int INITIAL_BUCKETS = 4;
+
+    private final int filePageSize;
+
+    private final int keyField;
+
+    /**
+     * 当前的轮数
+     */
+    private int level;
+
+    /**
+     * 本轮下一个需要分裂的桶
+     */
+    private int next;
+
+    public HashMetaPage(HashPageId id, byte[] data) throws IOException {
+        super(id, data);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (buffer.getInt(0) != HashFile.FILE_MAGIC) {
+            throw new IOException("page " + id + " is not a hash index meta page");
+        }
+        this.filePageSize = buffer.getInt(8);
+        this.keyField = buffer.getInt(12);
+        this.level = buffer.getInt(16);
+        this.next = buffer.getInt(20);
+    }
+
+    /**
+     * @param filePageSize 桶页面和溢出页面的大小
+     * @param keyField 索引字段
+     * @return 返回空索引的元数据页面的字节
+     */
+    static byte[] createEmptyPageData(int filePageSize, int keyField) {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        buffer.putInt(HashFile.FILE_MAGIC);
+        buffer.putInt(HashFile.FILE_VERSION);
+        buffer.putInt(filePageSize);
+        buffer.putInt(keyField);
+        return buffer.array();
+    }
+
+    @Override
+    HashPage copyOf(byte[] data) throws IOException {
+        return new HashMetaPage(pid, data);
+    }
+
+    @Override
+    public synchronized byte[] getPageData() {
+        ByteBuffer buffer = ByteBuffer.wrap(createEmptyPageData(filePageSize, keyField));
+        buffer.putInt(16, level);
+        buffer.putInt(20, next);
+        return buffer.array();
+    }
+
+    /**
+     * @return 返回当前的桶数量
+     */
+    public synchronized int getBucketsNum() {
+        return (INITIAL_BUCKETS << level) + next;
+    }
+
+    /**
+     * @param hash 索引键的哈希值，不小于0
+     * @return 返回该哈希值所在的桶
+     */
+    public synchronized int bucketOf(int hash) {
+        int bucketsNum = INITIAL_BUCKETS << level;
+        int bucket = hash % bucketsNum;
+        if (bucket < next) {
+            bucket = hash % (bucketsNum * 2);
+        }
+        return bucket;
+    }
+
+    /**
+     * @return 返回下一个需要分裂的桶
+     */
+    public synchronized int getNextSplit() {
+        return next;
+    }
+
+    /**
+     * 第next个桶分裂完成，桶数量加1，本轮的桶都分裂后进入下一轮
+     */
+    public synchronized void advanceSplit() {
+        next++;
+        if (next == (INITIAL_BUCKETS << level)) {
+            level++;
+            next = 0;
+        }
+    }
+}
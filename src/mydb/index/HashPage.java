@@ -0,0 +1,70 @@
+package mydb.index;
+
+import mydb.storage.Page;
+import mydb.transaction.TransactionId;
+
+import java.io.IOException;
+
+/**
+ * HashFile中所有页面的父类，负责页面的dirty状态和修改前镜像
+ */
+public abstract class HashPage implements Page {
+
+    final HashPageId pid;
+
+    /**
+     * 修改前镜像的字节，构造时为读入的页面字节，setBeforeImage时更新为当前内容
+     */
+    private byte[] oldData;
+
+    private boolean dirty;
+
+    private TransactionId tid;
+
+    HashPage(HashPageId id, byte[] data) {
+        this.pid = id;
+        this.oldData = data;
+    }
+
+    @Override
+    public HashPageId getId() {
+        return pid;
+    }
+
+    @Override
+    public TransactionId isDirty() {
+        return dirty ? tid : null;
+    }
+
+    @Override
+    public void setDirty(boolean dirty, TransactionId tid) {
+        this.dirty = dirty;
+        this.tid = tid;
+    }
+
+    @Override
+    public HashPage getBeforeImage() {
+        try {
+            byte[] data;
+            synchronized (this) {
+                data = oldData;
+            }
+            return copyOf(data);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        return null;
+    }
+
+    /**
+     * 使用相同的页面ID和页面格式创建一个新页面，用于生成修改前镜像
+     * @param data 新页面的字节
+     */
+    abstract HashPage copyOf(byte[] data) throws IOException;
+
+    @Override
+    public synchronized void setBeforeImage() {
+        oldData = getPageData();
+    }
+}
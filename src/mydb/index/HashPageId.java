@@ -0,0 +1,85 @@
+package mydb.index;
+
+import mydb.storage.PageId;
+
+import java.util.Objects;
+
+/**
+ * HashFile中页面的唯一ID，由表ID、页面编号和页面类型组成
+ * 元数据页面只有一个（编号0），桶页面的编号为桶的编号，溢出页面的编号为其在溢出文件中的位置，
+ * 不同类型的页面编号可能相同，因此判断两个ID是否相同时需要比较页面类型
+ */
+public class HashPageId implements PageId {
+
+    /**
+     * 页面类型：元数据页面、桶页面、溢出页面
+     */
+    public static final int META = 0;
+    public static final int BUCKET = 1;
+    public static final int OVERFLOW = 2;
+
+    private final int tableId;
+
+    private final int pageNo;
+
+    private final int kind;
+
+    /**
+     * 日志恢复时通过serialize()的结果调用该构造函数，因此只有这一个构造函数
+     * @param tableId 所引用的表的ID
+     * @param pageNo 页面编号
+     * @param kind 页面类型
+     */
+    public HashPageId(int tableId, int pageNo, int kind) {
+        this.tableId = tableId;
+        this.pageNo = pageNo;
+        this.kind = kind;
+    }
+
+    @Override
+    public int getTableId() {
+        return tableId;
+    }
+
+    @Override
+    public int getPageIndex() {
+        return pageNo;
+    }
+
+    /**
+     * @return 返回页面类型
+     */
+    public int getKind() {
+        return kind;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(tableId, pageNo, kind);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof HashPageId)) {
+            return false;
+        }
+        HashPageId pid = (HashPageId) o;
+        return tableId == pid.tableId && pageNo == pid.pageNo && kind == pid.kind;
+    }
+
+    @Override
+    public String toString() {
+        String kindName = switch (kind) {
+            case META -> "META";
+            case BUCKET -> "BUCKET";
+            case OVERFLOW -> "OVERFLOW";
+            default -> "UNKNOWN";
+        };
+        return "(" + tableId + ", " + pageNo + ", " + kindName + ")";
+    }
+
+    @Override
+    public int[] serialize() {
+        return new int[] {tableId, pageNo, kind};
+    }
+}
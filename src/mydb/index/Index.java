@@ -0,0 +1,97 @@
+package mydb.index;
+
+import mydb.common.DbException;
+import mydb.execution.Predicate;
+import mydb.storage.*;
+import mydb.transaction.TransactionException;
+import mydb.transaction.TransactionId;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 表上某一列的索引，索引文件中的每个条目（entry）对应表中的一个元组
+ * 非聚簇索引的条目记录索引键、包含列和元组的RecordId，表中的元组通过RecordId读取，
+ * 聚簇索引（按索引键存放元组的BTreeFile表）的条目就是表中的元组。
+ * 索引通过Catalog.addIndex注册，之后BufferPool插入和删除元组时同时维护表的所有索引，
+ * 唯一索引（如主键索引）中不能有两个索引键相同的条目，BufferPool插入元组之前会通过lookup检查
+ * @see BTreeIndex
+ */
+public interface Index {
+
+    /**
+     * @return 返回被索引的表的ID
+     */
+    int getTableId();
+
+    /**
+     * @return 返回索引键在表中的列索引
+     */
+    int getKeyField();
+
+    /**
+     * @return 返回存放索引条目的文件
+     */
+    DbFile getFile();
+
+    /**
+     * @return 条目就是表中的元组时返回true
+     */
+    boolean isClustered();
+
+    /**
+     * @return 索引键不能重复时返回true
+     */
+    boolean isUnique();
+
+    /**
+     * @param op 谓词操作符
+     * @return 索引可以用于查找满足该操作符的元组时返回true
+     */
+    boolean supports(Predicate.Op op);
+
+    /**
+     * @param predicate 索引键需要满足的谓词，操作符需要被supports支持
+     * @return 返回满足谓词的条目的迭代器
+     */
+    DbFileIterator lookup(TransactionId tid, IndexPredicate predicate);
+
+    /**
+     * @param entry lookup返回的条目
+     * @return 返回条目对应的元组在表中的RecordId
+     */
+    RecordId getRecordId(Tuple entry);
+
+    /**
+     * @param field 表中的列索引
+     * @return 只读取条目就可以得到元组中该列的值时返回true，即该列为索引键或包含列，聚簇索引包含所有列
+     */
+    boolean covers(int field);
+
+    /**
+     * 只使用条目中的字段构造表中的元组，用于不读取表页面的仅索引扫描（index-only scan）
+     * @param entry lookup返回的条目
+     * @return 返回元组描述与表相同、带有RecordId的元组，covers返回false的列为null
+     */
+    Tuple getCoveredTuple(Tuple entry);
+
+    /**
+     * 为新插入表中的元组添加条目
+     * @param tuple 已插入表中的元组，需要有RecordId
+     * @return 返回修改了的页面列表
+     */
+    List<Page> insertEntry(TransactionId tid, Tuple tuple) throws DbException, IOException, TransactionException;
+
+    /**
+     * 删除即将从表中删除的元组的条目
+     * @param tuple 表中的元组，需要有RecordId
+     * @return 返回修改了的页面列表
+     */
+    List<Page> deleteEntry(TransactionId tid, Tuple tuple) throws DbException, IOException, TransactionException;
+
+    /**
+     * @param selectivity 谓词的选择度
+     * @return 返回查找满足谓词的条目需要读取的索引页面数量
+     */
+    double estimateLookupPages(double selectivity);
+}
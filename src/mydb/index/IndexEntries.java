@@ -0,0 +1,119 @@
+package mydb.index;
+
+import mydb.common.Type;
+import mydb.storage.*;
+
+/**
+ * 非聚簇索引条目的格式：索引键、包含列、元组所在的页面编号、元组所在的槽，相同的索引键按RecordId区分
+ * 包含列（included columns）只保存在条目中而不参与查找，查询只用到索引键和包含列时不需要读取表页面
+ */
+final class IndexEntries {
+
+    private IndexEntries() {
+    }
+
+    /**
+     * @param tableDesc 被索引的表的元组描述
+     * @param keyField 索引键在表中的列索引
+     * @param includedFields 包含列在表中的列索引
+     * @return 返回条目的元组描述，索引键为条目的第0个字段
+     */
+    static TupleDesc entryDesc(TupleDesc tableDesc, int keyField, int[] includedFields) {
+        int fieldsNum = includedFields.length + 3;
+        Type[] types = new Type[fieldsNum];
+        String[] names = new String[fieldsNum];
+        types[0] = tableDesc.getFieldType(keyField);
+        names[0] = tableDesc.getFieldName(keyField);
+        for (int i=0; i<includedFields.length; i++) {
+            types[i + 1] = tableDesc.getFieldType(includedFields[i]);
+            names[i + 1] = tableDesc.getFieldName(includedFields[i]);
+        }
+        types[fieldsNum - 2] = Type.INT_TYPE;
+        names[fieldsNum - 2] = "page";
+        types[fieldsNum - 1] = Type.INT_TYPE;
+        names[fieldsNum - 1] = "slot";
+        return new TupleDesc(types, names);
+    }
+
+    /**
+     * @param entryDesc 条目的元组描述
+     * @param tuple 表中的元组，需要有RecordId
+     * @param keyField 索引键在表中的列索引
+     * @param includedFields 包含列在表中的列索引
+     * @return 返回元组对应的条目
+     */
+    static Tuple entryOf(TupleDesc entryDesc, Tuple tuple, int keyField, int[] includedFields) {
+        RecordId rid = tuple.getRecordId();
+        Tuple entry = new Tuple(entryDesc);
+        entry.setField(0, tuple.getField(keyField));
+        for (int i=0; i<includedFields.length; i++) {
+            entry.setField(i + 1, tuple.getField(includedFields[i]));
+        }
+        entry.setField(includedFields.length + 1, new IntField(rid.getPageId().getPageIndex()));
+        entry.setField(includedFields.length + 2, new IntField(rid.getTupleNo()));
+        return entry;
+    }
+
+    /**
+     * @param tableId 被索引的表的ID
+     * @param entry 索引条目
+     * @return 返回条目指向的元组的RecordId
+     */
+    static RecordId recordIdOf(int tableId, Tuple entry) {
+        int fieldsNum = entry.getTupleDesc().getFieldsNum();
+        int pageNo = ((IntField) entry.getField(fieldsNum - 2)).getValue();
+        int slot = ((IntField) entry.getField(fieldsNum - 1)).getValue();
+        return new RecordId(new HeapPageId(tableId, pageNo), slot);
+    }
+
+    /**
+     * @param keyField 索引键在表中的列索引
+     * @param includedFields 包含列在表中的列索引
+     * @param field 表中的列索引
+     * @return 该列为索引键或包含列时返回true
+     */
+    static boolean covers(int keyField, int[] includedFields, int field) {
+        if (field == keyField) {
+            return true;
+        }
+        for (int included: includedFields) {
+            if (included == field) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 只使用条目中的字段构造表中的元组，不是索引键或包含列的字段为null
+     * @param tableId 被索引的表的ID
+     * @param tableDesc 被索引的表的元组描述
+     * @param entry 索引条目
+     * @param keyField 索引键在表中的列索引
+     * @param includedFields 包含列在表中的列索引
+     * @return 返回带有RecordId的元组
+     */
+    static Tuple coveredTupleOf(int tableId, TupleDesc tableDesc, Tuple entry, int keyField, int[] includedFields) {
+        Tuple tuple = new Tuple(tableDesc);
+        tuple.setField(keyField, entry.getField(0));
+        for (int i=0; i<includedFields.length; i++) {
+            tuple.setField(includedFields[i], entry.getField(i + 1));
+        }
+        tuple.setRecordId(recordIdOf(tableId, entry));
+        return tuple;
+    }
+
+    /**
+     * @param tableDesc 被索引的表的元组描述
+     * @param keyField 索引键在表中的列索引
+     * @param includedFields 包含列在表中的列索引
+     * @return 返回索引的列名，如“b+a+c”
+     */
+    static String columnsOf(TupleDesc tableDesc, int keyField, int[] includedFields) {
+        StringBuilder columns = new StringBuilder(tableDesc.getFieldName(keyField));
+        for (int included: includedFields) {
+            columns.append('+').append(tableDesc.getFieldName(included));
+        }
+        return columns.toString();
+    }
+}
@@ -0,0 +1,50 @@
+package mydb.index;
+
+import mydb.execution.Predicate;
+import mydb.storage.Field;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * 索引上的谓词，表示索引键与常量的比较，用于在B+树上进行范围查找
+ */
+public class IndexPredicate implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final Predicate.Op op;
+
+    private final Field field;
+
+    /**
+     * @param op 比较操作符
+     * @param field 与索引键比较的常量
+     */
+    public IndexPredicate(Predicate.Op op, Field field) {
+        this.op = op;
+        this.field = field;
+    }
+
+    public Predicate.Op getOp() {
+        return op;
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * @param key 索引键
+     * @return 返回索引键是否满足该谓词
+     */
+    public boolean matches(Field key) {
+        return key.compare(op, field);
+    }
+
+    @Override
+    public String toString() {
+        return op + " " + field;
+    }
+}
@@ -0,0 +1,86 @@
+package mydb.optimizer;
+
+import mydb.execution.Predicate;
+import mydb.storage.StringDictionary;
+import mydb.storage.StringField;
+import mydb.common.Type;
+
+import java.util.Arrays;
+
+/**
+ * 字典编码的字符串列的直方图，记录字典中每个编码出现的次数
+ * 字典编码的列取值较少，每个不同的值就是一个桶，因此可以得到精确的选择度，
+ * 而不是像StrHistogram一样只根据字符串的前4个字符估计
+ */
+public class DictHistogram {
+
+    private final StringDictionary dictionary;
+
+    /**
+     * 每个编码出现的次数，下标为编码
+     */
+    private int[] counts;
+
+    /**
+     * 添加的值的总数
+     */
+    private int total;
+
+    /**
+     * @param dictionary 该列的字典
+     */
+    public DictHistogram(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+        this.counts = new int[Math.max(dictionary.size(), 1)];
+    }
+
+    /**
+     * 将一个编码添加到该直方图中
+     * @param code 字符串在字典中的编码
+     */
+    public void addCode(int code) {
+        if (code >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(code + 1, counts.length * 2));
+        }
+        counts[code]++;
+        total++;
+    }
+
+    /**
+     * 给定谓词和字符串计算选择度，对每个出现过的值进行比较
+     * @param op 谓词操作符（Predicate.Op）
+     * @param str 需要进行谓词比较的字符串
+     * @return 返回选择度
+     */
+    public double estimateSelectivity(Predicate.Op op, String str) {
+        if (total == 0) {
+            return 0.0;
+        }
+        if (op == Predicate.Op.EQUALS || op == Predicate.Op.NOT_EQUALS) {
+            int code = dictionary.lookup(str);
+            double selectivity = (code >= 0 && code < counts.length) ? counts[code] * 1.0 / total : 0.0;
+            return (op == Predicate.Op.EQUALS) ? selectivity : 1.0 - selectivity;
+        }
+        StringField constant = new StringField(str, Type.STRING_LEN);
+        int matched = 0;
+        for (int code=0; code<counts.length; code++) {
+            if (counts[code] > 0 && new StringField(dictionary.decode(code), Type.STRING_LEN).compare(op, constant)) {
+                matched += counts[code];
+            }
+        }
+        return matched * 1.0 / total;
+    }
+
+    /**
+     * @return 返回该直方图的平均选择度，即不同值数量的倒数
+     */
+    public double avgSelectivity() {
+        int distinct = 0;
+        for (int count: counts) {
+            if (count > 0) {
+                distinct++;
+            }
+        }
+        return (distinct == 0) ? 1.0 : 1.0 / distinct;
+    }
+}
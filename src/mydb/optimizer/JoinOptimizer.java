@@ -3,6 +3,9 @@ package mydb.optimizer;
 import mydb.ParsingException;
 import mydb.common.Database;
 import mydb.execution.*;
+import mydb.index.Index;
+import mydb.index.IndexPredicate;
+import mydb.transaction.TransactionId;
 
 import java.util.*;
 
@@ -71,6 +74,73 @@ public class JoinOptimizer {
         return joinResult;
     }
 
+    /**
+     * 根据成本选择连接的实现，右孩子是基本表的扫描（及其上的Filter）且右表的连接字段上有可用的索引时，
+     * 比较索引嵌套循环连接与bestJoin(joinNode, plan1, plan2)选择的连接的成本，
+     * 选择索引嵌套循环连接时将右孩子中的扫描替换为通过该索引查找的IndexScan
+     * @param tid 执行查询计划的事务ID
+     * @param joinNode 连接操作结点
+     * @param plan1 joinNode的左孩子（子查询计划）
+     * @param plan2 joinNode的右孩子（子查询计划）
+     * @param cardinality1 左孩子的基数
+     * @param cardinality2 右孩子的基数
+     * @param cost1 左孩子的成本
+     * @param cost2 右孩子的成本
+     * @param stats 统计信息Map，表名（而不是别名）作为Key
+     * @return 返回成本最低的连接结果
+     */
+    public OpIterator bestJoin(TransactionId tid, LogicalJoinNode joinNode, OpIterator plan1, OpIterator plan2,
+                               int cardinality1, int cardinality2, double cost1, double cost2,
+                               Map<String, TableStats> stats) throws ParsingException {
+        OpIterator joinResult = bestJoin(joinNode, plan1, plan2);
+        SeqScan scan = findBaseScan(plan2);
+        if (joinNode instanceof LogicalSubplanJoinNode || scan == null
+                || !scan.getTableAlias().equals(joinNode.rightTableAlias)) {
+            return joinResult;
+        }
+        Index index = findJoinIndex(joinNode, stats);
+        if (index == null) {
+            return joinResult;
+        }
+        double cost = (joinResult instanceof HashEqJoin)
+                ? estimateHashJoinCost(cardinality1, cardinality2, cost1, cost2)
+                : estimateNestedLoopJoinCost(cardinality1, cardinality2, cost1, cost2);
+        if (estimateIndexJoinCost(joinNode, cardinality1, cost1, stats) >= cost) {
+            return joinResult;
+        }
+        JoinPredicate joinPredicate = ((joinResult instanceof HashEqJoin hashEqJoin))
+                ? hashEqJoin.getJoinPredicate() : ((Join) joinResult).getJoinPredicate();
+        // IndexScan的查找键在连接时由外表元组设置
+        Predicate.Op probeOp = IndexNestedLoopJoin.mirror(joinNode.op);
+        IndexScan probe = new IndexScan(tid, index, scan.getTableAlias(), new IndexPredicate(probeOp, null));
+        return new IndexNestedLoopJoin(joinPredicate, plan1, replaceBaseScan(plan2, probe), probe);
+    }
+
+    /**
+     * @return 返回子查询计划中Filter之下的基本表扫描，计划中有其它操作符或扫描只返回部分列时返回null
+     */
+    private static SeqScan findBaseScan(OpIterator plan) {
+        while (plan instanceof Filter filter) {
+            plan = filter.getChildren()[0];
+        }
+        if (plan instanceof IndexScan || (plan != null && plan.getClass() == SeqScan.class)) {
+            return (SeqScan) plan;
+        }
+        return null;
+    }
+
+    /**
+     * 将子查询计划中Filter之下的基本表扫描替换为scan
+     * @return 返回替换后的子查询计划
+     */
+    private static OpIterator replaceBaseScan(OpIterator plan, SeqScan scan) {
+        if (!(plan instanceof Filter filter)) {
+            return scan;
+        }
+        filter.setChildren(new OpIterator[] {replaceBaseScan(filter.getChildren()[0], scan)});
+        return filter;
+    }
+
     /**
      * 估计JOIN的成本（IO cost + CPU cost，谓词比较成本为1）
      * @param joinNode JOIN在逻辑查询计划中的结点
@@ -86,12 +156,95 @@ public class JoinOptimizer {
         if (joinNode instanceof LogicalSubplanJoinNode) {
             // 估计子查询的成本
             return cardinality1 + cost1 + cost2;
-        } else {
-            // leftTable JOIN rightTable
-            // 连接成本为：scanCost(leftTable) + tupleTotalNum(leftTable) * scanCost(rightTable) // IO成本
-            //           + tupleTotalNum(leftTable) * tupleTotalNum(rightTable) // CPU成本
-            return cost1 + cardinality1 * cost2 + cardinality1 * cardinality2;
         }
+        return estimateNestedLoopJoinCost(cardinality1, cardinality2, cost1, cost2);
+    }
+
+    /**
+     * leftTable JOIN rightTable
+     * 连接成本为：scanCost(leftTable) + tupleTotalNum(leftTable) * scanCost(rightTable) // IO成本
+     *           + tupleTotalNum(leftTable) * tupleTotalNum(rightTable) // CPU成本
+     */
+    private static double estimateNestedLoopJoinCost(int cardinality1, int cardinality2, double cost1, double cost2) {
+        return cost1 + cardinality1 * cost2 + (double) cardinality1 * cardinality2;
+    }
+
+    /**
+     * 哈希连接扫描左右孩子各一次，用右孩子建立哈希表，左孩子的每个元组查找一次哈希表
+     */
+    private static double estimateHashJoinCost(int cardinality1, int cardinality2, double cost1, double cost2) {
+        return cost1 + cost2 + cardinality1 + cardinality2;
+    }
+
+    /**
+     * 估计索引嵌套循环连接的成本：扫描左孩子（外表）一次，对外表的每个元组通过右表连接字段上的索引查找匹配的元组
+     * 每次查找的选择度由连接的基数估计得到，外表的每个元组平均与joinCardinality / cardinality1个右表元组匹配
+     * @param joinNode JOIN在逻辑查询计划中的结点，右表为内表
+     * @param cardinality1 左孩子的基数
+     * @param cost1 对左孩子扫描的成本
+     * @param stats 统计信息Map，表名作为Key
+     * @return 返回估计的成本，右表的连接字段上没有可用的索引时返回Double.MAX_VALUE
+     */
+    public double estimateIndexJoinCost(LogicalJoinNode joinNode, int cardinality1, double cost1,
+                                        Map<String, TableStats> stats) {
+        Index index = findJoinIndex(joinNode, stats);
+        if (index == null) {
+            return Double.MAX_VALUE;
+        }
+        TableStats innerStats = stats.get(Database.getCatalog().getTableName(index.getTableId()));
+        double selectivity = estimateProbeSelectivity(joinNode, cardinality1, innerStats, stats);
+        double matches = selectivity * innerStats.getTuplesTotalNum();
+        return cost1 + cardinality1 * (innerStats.estimateIndexScanCost(index, selectivity) + matches);
+    }
+
+    /**
+     * @return 返回外表的一个元组在右表中查找匹配元组的选择度
+     */
+    private double estimateProbeSelectivity(LogicalJoinNode joinNode, int cardinality1,
+                                            TableStats innerStats, Map<String, TableStats> stats) {
+        int innerTuplesNum = innerStats.getTuplesTotalNum();
+        if (innerTuplesNum == 0) {
+            return 0.0;
+        }
+        int outerTuplesNum = Math.max(cardinality1, 1);
+        // 索引查找不经过右表上的过滤条件，使用右表的元组总数估计连接的基数
+        int cardinality = estimateJoinCardinality(joinNode, outerTuplesNum, innerTuplesNum,
+                isPrimaryKey(joinNode.leftTableAlias, joinNode.leftTableFieldName),
+                isPrimaryKey(joinNode.rightTableAlias, joinNode.rightTableFieldName), stats);
+        return Math.min(1.0, cardinality * 1.0 / outerTuplesNum / innerTuplesNum);
+    }
+
+    /**
+     * 查找右表连接字段上可以用于该连接谓词的索引，有多个索引时返回查找一个索引键读取页面最少的索引
+     * @param joinNode JOIN在逻辑查询计划中的结点
+     * @param stats 统计信息Map，表名作为Key
+     * @return 返回找到的索引，右表不是基本表或没有可用的索引时返回null
+     */
+    Index findJoinIndex(LogicalJoinNode joinNode, Map<String, TableStats> stats) {
+        if (joinNode instanceof LogicalSubplanJoinNode || joinNode.rightTableAlias == null) {
+            return null;
+        }
+        Integer tableId = logicalPlan.getTableId(joinNode.rightTableAlias);
+        if (tableId == null || stats.get(Database.getCatalog().getTableName(tableId)) == null) {
+            return null;
+        }
+        int field;
+        try {
+            field = Database.getCatalog().getTupleDesc(tableId).fieldNameToIndex(joinNode.rightTableFieldName);
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+        Predicate.Op probeOp = IndexNestedLoopJoin.mirror(joinNode.op);
+        Index best = null;
+        for (Index index: Database.getCatalog().getIndexes(tableId)) {
+            if (index.getKeyField() != field || !index.supports(probeOp)) {
+                continue;
+            }
+            if (best == null || index.estimateLookupPages(0.0) < best.estimateLookupPages(0.0)) {
+                best = index;
+            }
+        }
+        return best;
     }
 
     /**
@@ -391,7 +544,7 @@ public class JoinOptimizer {
      * @param tableAlias 表名（或别名）
      * @param fieldName 字段名
      */
-    private boolean isPrimaryKey(String tableAlias, String fieldName) {
+    boolean isPrimaryKey(String tableAlias, String fieldName) {
         int tableId = logicalPlan.getTableId(tableAlias);
         String primaryKeyName = Database.getCatalog().getPrimaryKey(tableId);
         return fieldName.equals(primaryKeyName);
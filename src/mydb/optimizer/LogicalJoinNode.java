@@ -53,7 +53,7 @@ public class LogicalJoinNode {
         if (temps.length > 1) {
             this.rightTableFieldName = temps[temps.length - 1];
         } else {
-            this.rightTableFieldName = leftJoinField;
+            this.rightTableFieldName = rightJoinField;
         }
         this.op = op;
         this.leftTableFieldCompleteName = leftTableAlias + "." + leftTableFieldName;
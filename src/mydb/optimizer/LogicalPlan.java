@@ -4,6 +4,8 @@ import mydb.ParsingException;
 import mydb.common.Database;
 import mydb.common.Type;
 import mydb.execution.*;
+import mydb.index.Index;
+import mydb.index.IndexPredicate;
 import mydb.storage.*;
 import mydb.transaction.Transaction;
 import mydb.transaction.TransactionId;
@@ -300,18 +302,35 @@ public class LogicalPlan {
         Map<String, String> equivMap = new HashMap<>(); //
         Map<String, Double> filterSelectivitiesMap = new HashMap<>(); // 过滤选择性
         Map<String, TableStats> statsMap = new HashMap<>();
+        Map<String, Double> costMap = new HashMap<>(); // 每个表选择的访问路径的估计成本
         // 遍历查询计划的每个表，把需要查询的每个表添加到subplan
         while (tableIterator.hasNext()) {
             LogicalScanNode table = tableIterator.next();
             SeqScan seqScan = null; // 创建一个全表扫描的操作符
             try {
-                seqScan = new SeqScan(tid, Database.getCatalog().getDbFile(table.tableId).getId(), table.tableAlias);
+                DbFile dbFile = Database.getCatalog().getDbFile(table.tableId);
+                int[] columns = (dbFile instanceof PaxFile) ? getReferencedColumns(table) : null;
+                if (columns != null) {
+                    // 按列存放的表只扫描查询引用的列
+                    seqScan = new ProjectedScan(tid, dbFile.getId(), table.tableAlias, columns);
+                } else {
+                    seqScan = new SeqScan(tid, dbFile.getId(), table.tableAlias);
+                }
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown table " + table.tableId);
             }
+            String tableName = Database.getCatalog().getTableName(table.tableId);
+            IndexScan indexScan = chooseIndexScan(tid, table, tableStats.get(tableName), costMap);
+            if (indexScan != null) {
+                // 通过索引只读取满足过滤条件的元组，过滤条件仍然由之后的Filter检查
+                seqScan = indexScan;
+                if (explain) {
+                    System.out.println("Using " + (indexScan.isIndexOnly() ? "index-only " : "") + indexScan.getIndex()
+                            + " on " + table.tableAlias + " for " + indexScan.getPredicate());
+                }
+            }
             // 添加一个子查询
             this.subplanMap.put(table.tableAlias, seqScan);
-            String tableName = Database.getCatalog().getTableName(table.tableId);
             statsMap.put(tableName, tableStats.get(tableName));
             // 暂时对每个表的过滤选择性设置为1.0
             filterSelectivitiesMap.put(table.tableAlias, 1.0);
@@ -334,12 +353,7 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field in filter expression " + filterNode.fieldCompleteName);
             }
-            if (fieldType.equals(Type.INT_TYPE)) {
-                field = new IntField(Integer.parseInt(filterNode.constant));
-            } else {
-                // string type
-                field = new StringField(filterNode.constant, Type.STRING_LEN);
-            }
+            field = parseConstant(filterNode.constant, fieldType);
             Predicate predicate = null;
             try {
                 int index = subplan.getTupleDesc().fieldNameToIndex(filterNode.fieldCompleteName);
@@ -349,13 +363,24 @@ public class LogicalPlan {
             }
             subplanMap.put(filterNode.tableAlias, new Filter(predicate, subplan));
             TableStats stats = statsMap.get(Database.getCatalog().getTableName(this.getTableId(filterNode.tableAlias)));
-            int index = subplan.getTupleDesc().fieldNameToIndex(filterNode.fieldCompleteName);
+            // 统计信息使用字段在表中的索引，扫描只返回部分列时与subplan中的索引不同
+            int index = Database.getCatalog().getTupleDesc(this.getTableId(filterNode.tableAlias))
+                    .fieldNameToIndex(filterNode.fieldName);
             double selectivity = stats.estimateSelectivity(index, filterNode.op, field); // 选择性估计
             filterSelectivitiesMap.put(filterNode.tableAlias, selectivity);
         }
 
         // 连接优化器
         JoinOptimizer joinOptimizer = new JoinOptimizer(this, joins);
+        // 各个子查询计划估计的基数，成本在选择访问路径时已经存入costMap，用于选择连接的实现
+        Map<String, Integer> cardinalityMap = new HashMap<>();
+        for (LogicalScanNode table: tables) {
+            TableStats stats = statsMap.get(Database.getCatalog().getTableName(table.tableId));
+            if (stats != null) {
+                cardinalityMap.put(table.tableAlias,
+                        stats.estimateTableCardinality(filterSelectivitiesMap.get(table.tableAlias)));
+            }
+        }
 
         for (LogicalJoinNode join: joins) {
             OpIterator plan1, plan2;
@@ -389,9 +414,38 @@ public class LogicalPlan {
                 throw new ParsingException("Unknown table in WHERE clause " +
                         join.rightTableAlias);
             }
-            // 由JoinOptimizer获得最佳的连接顺序
-            OpIterator j = JoinOptimizer.bestJoin(join, plan1, plan2);
-            subplanMap.put(rightTableName, j);
+            // 由JoinOptimizer获得最佳的连接实现
+            OpIterator j;
+            if (!isSubplanJoin && cardinalityMap.containsKey(leftTableName)
+                    && cardinalityMap.containsKey(rightTableName)) {
+                int cardinality1 = cardinalityMap.get(leftTableName);
+                int cardinality2 = cardinalityMap.get(rightTableName);
+                double cost1 = costMap.get(leftTableName);
+                double cost2 = costMap.get(rightTableName);
+                j = joinOptimizer.bestJoin(tid, join, plan1, plan2,
+                        cardinality1, cardinality2, cost1, cost2, tableStats);
+                double cost;
+                if (j instanceof IndexNestedLoopJoin indexJoin) {
+                    cost = joinOptimizer.estimateIndexJoinCost(join, cardinality1, cost1, tableStats);
+                    if (explain) {
+                        System.out.println("Using index nested loop join with " + indexJoin.getProbe().getIndex()
+                                + " for " + join.leftTableFieldCompleteName + " " + join.op + " "
+                                + join.rightTableFieldCompleteName);
+                    }
+                } else {
+                    cost = joinOptimizer.estimateJoinCost(join, cardinality1, cardinality2, cost1, cost2);
+                }
+                cardinalityMap.put(leftTableName, joinOptimizer.estimateJoinCardinality(join,
+                        cardinality1, cardinality2,
+                        joinOptimizer.isPrimaryKey(join.leftTableAlias, join.leftTableFieldName),
+                        joinOptimizer.isPrimaryKey(join.rightTableAlias, join.rightTableFieldName),
+                        tableStats));
+                costMap.put(leftTableName, cost);
+            } else {
+                j = JoinOptimizer.bestJoin(join, plan1, plan2);
+            }
+            // 连接的结果替换左孩子的子查询计划
+            subplanMap.put(leftTableName, j);
 
             if (!isSubplanJoin) {
                 subplanMap.remove(rightTableName);
@@ -486,4 +540,166 @@ public class LogicalPlan {
         // 将逻辑查询计划转换为物理查询计划，返回投影（Project）结点为最终SELECT输出的元组
         return new Project(outFields, outTypes, node);
     }
+
+    /**
+     * @param constant 过滤条件中的常量
+     * @param fieldType 进行过滤操作的字段类型
+     * @return 返回与字段类型相同的常量字段
+     */
+    private Field parseConstant(String constant, Type fieldType) {
+        if (fieldType.equals(Type.INT_TYPE)) {
+            return new IntField(Integer.parseInt(constant));
+        } else {
+            // string type
+            return new StringField(constant, Type.STRING_LEN);
+        }
+    }
+
+    /**
+     * 为表选择访问路径：对每个可以使用索引的过滤条件，根据直方图估计的选择度比较索引扫描与顺序扫描的成本
+     * 查询引用的该表的所有列都被非聚簇索引覆盖（索引键和包含列）时使用仅索引扫描，不需要读取表页面
+     * @param table 表的scan结点
+     * @param stats 表的统计信息
+     * @param costMap 存放选择的访问路径（索引扫描或顺序扫描一遍）的估计成本，没有统计信息时不存放
+     * @return 返回成本最低的索引扫描，没有可用的索引或顺序扫描的成本更低时返回null
+     */
+    private IndexScan chooseIndexScan(TransactionId tid, LogicalScanNode table, TableStats stats,
+                                      Map<String, Double> costMap) {
+        if (stats == null) {
+            return null;
+        }
+        double bestCost = stats.estimateSeqScanCost();
+        costMap.put(table.tableAlias, bestCost);
+        List<Index> indexes = Database.getCatalog().getIndexes(table.tableId);
+        if (indexes.isEmpty()) {
+            return null;
+        }
+        TupleDesc tupleDesc = Database.getCatalog().getTupleDesc(table.tableId);
+        boolean[] referenced = getReferencedFlags(table);
+        IndexScan best = null;
+        for (LogicalFilterNode filterNode: filters) {
+            if (!filterNode.tableAlias.equals(table.tableAlias)) {
+                continue;
+            }
+            int column;
+            Field constant;
+            try {
+                column = tupleDesc.fieldNameToIndex(filterNode.fieldName);
+                constant = parseConstant(filterNode.constant, tupleDesc.getFieldType(column));
+            } catch (NoSuchElementException | NumberFormatException e) {
+                // 错误的过滤条件在生成Filter时报错
+                continue;
+            }
+            for (Index index: indexes) {
+                if (index.getKeyField() != column || !index.supports(filterNode.op)) {
+                    continue;
+                }
+                boolean indexOnly = !index.isClustered() && covers(index, referenced);
+                double selectivity = stats.estimateSelectivity(column, filterNode.op, constant);
+                double cost = stats.estimateIndexScanCost(index, selectivity, indexOnly);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    best = new IndexScan(tid, index, table.tableAlias, new IndexPredicate(filterNode.op, constant), indexOnly);
+                }
+            }
+        }
+        costMap.put(table.tableAlias, bestCost);
+        return best;
+    }
+
+    /**
+     * @param index 表上的索引
+     * @param referenced getReferencedFlags返回的被引用的列
+     * @return 被引用的列都可以只从索引条目中得到时返回true
+     */
+    private static boolean covers(Index index, boolean[] referenced) {
+        if (referenced == null) {
+            return false;
+        }
+        for (int i=0; i<referenced.length; i++) {
+            if (referenced[i] && !index.covers(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 获得查询中引用的某个表的列，包括SELECT列表、WHERE子句、JOIN、GROUP BY、聚合和ORDER BY中的字段
+     * @param table 表的scan结点
+     * @return 返回被引用的列在表中的索引（按表中的顺序），查询需要该表的所有列（如SELECT *）时返回null
+     */
+    private int[] getReferencedColumns(LogicalScanNode table) {
+        boolean[] referenced = getReferencedFlags(table);
+        if (referenced == null) {
+            return null;
+        }
+        int referencedNum = 0;
+        for (boolean flag: referenced) {
+            if (flag) {
+                referencedNum++;
+            }
+        }
+        if (referencedNum == 0 || referencedNum == referenced.length) {
+            return null;
+        }
+        int[] columns = new int[referencedNum];
+        for (int i=0, j=0; i<referenced.length; i++) {
+            if (referenced[i]) {
+                columns[j++] = i;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * 标记查询中引用的某个表的列，包括SELECT列表、WHERE子句、JOIN、GROUP BY、聚合和ORDER BY中的字段
+     * @param table 表的scan结点
+     * @return 返回下标为列索引的数组，被引用的列为true，查询需要该表的所有列（如SELECT *）或有未知字段时返回null
+     */
+    private boolean[] getReferencedFlags(LogicalScanNode table) {
+        List<String> fieldNames = new ArrayList<>();
+        for (LogicalSelectListNode select: selectList) {
+            fieldNames.add(select.fieldName);
+        }
+        for (LogicalFilterNode filter: filters) {
+            fieldNames.add(filter.fieldCompleteName);
+        }
+        for (LogicalJoinNode join: joins) {
+            fieldNames.add(join.leftTableFieldCompleteName);
+            fieldNames.add(join.rightTableFieldCompleteName);
+        }
+        if (groupByField != null) {
+            fieldNames.add(groupByField);
+        }
+        if (aggregateField != null) {
+            fieldNames.add(aggregateField);
+        }
+        if (orderByField != null) {
+            fieldNames.add(orderByField);
+        }
+        TupleDesc tupleDesc = Database.getCatalog().getTupleDesc(table.tableId);
+        boolean[] referenced = new boolean[tupleDesc.getFieldsNum()];
+        String prefix = table.tableAlias + ".";
+        for (String fieldName: fieldNames) {
+            if (fieldName == null) {
+                continue;
+            }
+            if (fieldName.endsWith("*")) {
+                return null;
+            }
+            if (!fieldName.startsWith(prefix)) {
+                continue;
+            }
+            int index;
+            try {
+                index = tupleDesc.fieldNameToIndex(fieldName.substring(prefix.length()));
+            } catch (NoSuchElementException e) {
+                // 未知字段在生成物理计划时报错
+                return null;
+            }
+            referenced[index] = true;
+        }
+        return referenced;
+    }
 }
@@ -6,6 +6,8 @@ import mydb.common.DbException;
 import mydb.common.Type;
 import mydb.execution.Predicate;
 import mydb.execution.SeqScan;
+import mydb.index.BTreeFile;
+import mydb.index.Index;
 import mydb.storage.*;
 import mydb.transaction.Transaction;
 import mydb.transaction.TransactionException;
@@ -78,6 +80,8 @@ public class TableStats {
     // 记录表中每个字段的直方图
     private Map<Integer, IntHistogram> intHistogramMap;
     private Map<Integer, StrHistogram> strHistogramMap;
+    // 字典编码的字符串字段使用字典统计每个值的精确频率
+    private Map<Integer, DictHistogram> dictHistogramMap;
 
     /**
      * 表的页面数量
@@ -100,9 +104,14 @@ public class TableStats {
         this.tuplesTotalNum = 0;
         this.intHistogramMap = new ConcurrentHashMap<>();
         this.strHistogramMap = new ConcurrentHashMap<>();
+        this.dictHistogramMap = new ConcurrentHashMap<>();
         // 根据tableId获得对应的数据库文件
         DbFile dbFile = Database.getCatalog().getDbFile(tableId);
-        this.pageNum = ((HeapFile) dbFile).getPagesNum();
+        if (dbFile instanceof BTreeFile btreeFile) {
+            this.pageNum = btreeFile.getPagesNum();
+        } else {
+            this.pageNum = ((HeapFile) dbFile).getPagesNum();
+        }
         this.tupleDesc = dbFile.getTupleDesc();
         // 获得表的DbFile，然后进行全表扫描（不止一次扫描），计算所需要的统计信息
         try {
@@ -140,6 +149,10 @@ public class TableStats {
                     minMap.put(i, Math.min(minValue, field.getValue()));
                     Integer maxValue = maxMap.getOrDefault(i, Integer.MIN_VALUE);
                     maxMap.put(i, Math.max(maxValue, field.getValue()));
+                } else if (tuple.getField(i) instanceof DictionaryField field) {
+                    // 字典编码的str类型
+                    this.dictHistogramMap.computeIfAbsent(i, k -> new DictHistogram(field.getDictionary()))
+                            .addCode(field.getCode());
                 } else {
                     // str类型
                     StrHistogram histogram = this.strHistogramMap.getOrDefault(i, new StrHistogram(HIST_BUCKETS_NUM));
@@ -190,6 +203,41 @@ public class TableStats {
         return pageNum * ioCostPerPage * 2;
     }
 
+    /**
+     * 估计执行查询时顺序扫描一遍该表的成本，与索引扫描的成本比较时使用
+     * estimateScanCost包含了建立统计信息时的两次扫描，不是执行时的成本
+     * @return 返回顺序扫描一遍该表的估计成本
+     */
+    public double estimateSeqScanCost() {
+        return pageNum * ioCostPerPage;
+    }
+
+    /**
+     * 估计通过索引查找满足谓词的元组的成本
+     * 需要从根结点向下读取索引页面并读取满足谓词的条目，非聚簇索引还需要为每个满足谓词的元组随机读取一个表页面
+     * @param index 表上的索引
+     * @param selectivity 谓词的选择度
+     * @return 返回使用索引扫描该表的估计成本
+     */
+    public double estimateIndexScanCost(Index index, double selectivity) {
+        return estimateIndexScanCost(index, selectivity, false);
+    }
+
+    /**
+     * 估计通过索引查找满足谓词的元组的成本，仅索引扫描不需要读取表页面
+     * @param index 表上的索引
+     * @param selectivity 谓词的选择度
+     * @param indexOnly 是否只读取索引
+     * @return 返回使用索引扫描该表的估计成本
+     */
+    public double estimateIndexScanCost(Index index, double selectivity, boolean indexOnly) {
+        double pages = index.estimateLookupPages(selectivity);
+        if (!index.isClustered() && !indexOnly) {
+            pages += selectivity * tuplesTotalNum;
+        }
+        return pages * ioCostPerPage;
+    }
+
     /**
      * 给定某个谓词的选择度（selectivity），估计一个关系的元组数量（基数）
      * @param selectivity 某个谓词得到的选择度（selectivity）
@@ -209,6 +257,8 @@ public class TableStats {
         Type type = this.tupleDesc.getFieldType(fieldIndex);
         if (type.equals(Type.INT_TYPE)) {
             return intHistogramMap.get(fieldIndex).avgSelectivity();
+        } else if (dictHistogramMap.containsKey(fieldIndex)) {
+            return dictHistogramMap.get(fieldIndex).avgSelectivity();
         } else {
             return strHistogramMap.get(fieldIndex).avgSelectivity();
         }
@@ -226,6 +276,9 @@ public class TableStats {
         if (type.equals(Type.INT_TYPE)) {
             return intHistogramMap.get(fieldIndex).estimateSelectivity(
                     op, ((IntField) constant).getValue());
+        } else if (dictHistogramMap.containsKey(fieldIndex)) {
+            return dictHistogramMap.get(fieldIndex).estimateSelectivity(
+                    op, ((StringField) constant).getValue());
         } else {
             return strHistogramMap.get(fieldIndex).estimateSelectivity(
                     op, ((StringField) constant).getValue());
@@ -0,0 +1,186 @@
+package mydb.storage;
+
+import mydb.storage.evict.EvictStrategy;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 缓冲池分区（partition）。BufferPool根据PageId的哈希值将页面划分到多个分区中，
+ * 每个分区拥有独立的页面缓存、驱逐策略和闩锁（latch），访问不同分区的页面不会互相竞争
+ * 分区中的所有方法都需要在持有latch的情况下调用
+ * @see BufferPool
+ */
+class BufferPartition {
+
+    /**
+     * 该分区最多可以缓存的页面数量
+     */
+    private final int capacity;
+
+    /**
+     * 该分区缓存的页面
+     */
+    private final Map<PageId, Page> cache;
+
+    /**
+     * 该分区的页面驱逐策略
+     */
+    private final EvictStrategy evictStrategy;
+
+    /**
+     * 堆外缓冲池模式下页面帧所在的内存区，堆内模式为null
+     */
+    private final PageArena arena;
+
+    /**
+     * 分区闩锁，保护cache、evictStrategy和version
+     */
+    final ReentrantLock latch = new ReentrantLock();
+
+    /**
+     * 该分区的页面写回磁盘、被丢弃或被替换的次数。
+     * 预读不持有页面锁，读取页面前后version不变才说明磁盘上的页面没有被修改，可以放入缓冲池
+     */
+    long version;
+
+    /**
+     * @param capacity 该分区最多可以缓存的页面数量
+     * @param evictStrategy 该分区使用的驱逐策略
+     * @param arena 页面帧所在的堆外内存区，堆内模式为null
+     */
+    BufferPartition(int capacity, EvictStrategy evictStrategy, PageArena arena) {
+        this.capacity = capacity;
+        this.cache = new HashMap<>(capacity * 2);
+        this.evictStrategy = evictStrategy;
+        this.arena = arena;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 获取缓存的页面，并将其记录为最近访问
+     * @param pid 页面ID
+     * @return 返回缓存的页面，不存在则返回null
+     */
+    Page get(PageId pid) {
+        Page page = cache.get(pid);
+        if (page != null) {
+            evictStrategy.modifyData(pid);
+            markAccessed(page);
+        }
+        return page;
+    }
+
+    /**
+     * 记录页面已经被缓冲池交给调用者，需要在持有latch时调用，保证页面不会在记录之前被驱逐
+     */
+    void markAccessed(Page page) {
+        if (arena != null && page instanceof TuplePage tuplePage) {
+            tuplePage.markAccessed();
+        }
+    }
+
+    /**
+     * 获取缓存的页面，不会影响驱逐策略
+     */
+    Page peek(PageId pid) {
+        return cache.get(pid);
+    }
+
+    /**
+     * 将页面放入该分区，分区已满时会先驱逐一个不dirty的页面
+     * @param page 需要缓存的页面
+     * @return 放入成功返回true；分区已满并且所有页面都dirty时返回false，此时页面不会被放入
+     */
+    boolean put(Page page) {
+        PageId pid = page.getId();
+        if (!cache.containsKey(pid) && cache.size() >= capacity && !evictClean()) {
+            return false;
+        }
+        release(cache.put(pid, page), page);
+        evictStrategy.modifyData(pid);
+        return true;
+    }
+
+    /**
+     * 替换已缓存的页面（用于事务回滚），页面不在该分区中则不做处理
+     */
+    void replace(Page page) {
+        release(cache.replace(page.getId(), page), page);
+    }
+
+    /**
+     * 从该分区中删除指定页面
+     */
+    Page remove(PageId pid) {
+        evictStrategy.removePage(pid);
+        Page page = cache.remove(pid);
+        release(page, null);
+        return page;
+    }
+
+    /**
+     * @return 返回该分区缓存页面的快照
+     */
+    List<Page> pages() {
+        return new ArrayList<>(cache.values());
+    }
+
+    /**
+     * 从该分区中驱逐一个不dirty的页面（NO STEAL），dirty的页面会被重新放回驱逐策略中
+     * @return 成功驱逐页面返回true，所有页面都dirty则返回false
+     */
+    private boolean evictClean() {
+        int size = cache.size();
+        for (int i=0; i<size; i++) {
+            PageId evictPageId = evictStrategy.getEvictPageId();
+            if (evictPageId == null) {
+                break;
+            }
+            Page page = cache.get(evictPageId);
+            if (page == null) {
+                continue;
+            }
+            if (page.isDirty() != null) {
+                evictStrategy.skipPage(evictPageId);
+            } else {
+                // 有不dirty的页面，可以进行驱逐
+                release(cache.remove(evictPageId), null);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按照驱逐策略选出一个页面（可能dirty）并将其移出该分区（STEAL），
+     * 调用者需要负责将返回的dirty页面写回磁盘
+     * @return 返回被移出的页面，分区为空时返回null
+     */
+    Page evictAny() {
+        PageId evictPageId;
+        while ((evictPageId = evictStrategy.getEvictPageId()) != null) {
+            Page page = cache.remove(evictPageId);
+            if (page != null) {
+                // 页面数据拷贝到堆内后仍可以写回磁盘
+                release(page, null);
+                return page;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 页面离开该分区时归还其占用的堆外帧
+     * @param page 离开分区的页面，可以为null
+     * @param replacement 取代该页面的页面，与page相同时不做处理
+     */
+    void release(Page page, Page replacement) {
+        if (arena != null && page != null && page != replacement) {
+            arena.release(page);
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package mydb.storage;
 
+import mydb.common.Config;
 import mydb.common.Database;
 import mydb.common.DbException;
 import mydb.common.Permissions;
+import mydb.execution.Predicate;
+import mydb.index.BTreeIndex;
+import mydb.index.Index;
+import mydb.index.IndexPredicate;
 import mydb.storage.lock.LockManager;
 import mydb.storage.lock.PageLock;
 import mydb.transaction.Transaction;
@@ -10,29 +15,38 @@ import mydb.transaction.TransactionException;
 import mydb.transaction.TransactionId;
 
 import mydb.storage.evict.EvictStrategy;
-import mydb.storage.evict.LRU;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.Map;
 import java.util.Random;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 缓冲池用于管理页面（Page）读写
  * 缓冲池也负责锁的功能，当一个事务需要获取页面时，缓冲池需要检查锁
+ * 缓冲池被划分为多个分区（BufferPartition），页面根据PageId的哈希值映射到分区，
+ * 每个分区有自己的缓存、驱逐策略和闩锁，访问不同分区的页面不会互相竞争
  */
 public class BufferPool {
 
     /**
-     * 缓冲池的默认页面大小（字节数）
+     * 缓冲池的默认页面大小（字节数），也是未记录页面大小的旧HeapFile使用的页面大小
      */
-    private static final int DEFAULT_PAGE_SIZE = 4096;
+    public static final int DEFAULT_PAGE_SIZE = 4096;
 
     /**
-     * 缓冲池实际使用的页面大小，默认为4096bytes
+     * 页面大小的最小值和最大值（字节数）
      */
-    private static int pageSize = DEFAULT_PAGE_SIZE;
+    public static final int MIN_PAGE_SIZE = 4096;
+    public static final int MAX_PAGE_SIZE = 65536;
+
+    /**
+     * 新建HeapFile时使用的页面大小，启动时从配置（mydb.pageSize）中读取，默认为4096bytes
+     */
+    private static int pageSize = checkPageSize(Config.get().getPageSize());
 
     /**
      * 缓冲池管理缓存的默认最大页面数量
@@ -40,40 +54,281 @@ public class BufferPool {
     public static final int DEFAULT_PAGES_NUM = 50;
 
     /**
-     * 该缓冲池实际管理缓存的最大页面数量
+     * 缓冲池的默认最大分区数量
      */
-    private int pagesNum = DEFAULT_PAGES_NUM;
+    public static final int DEFAULT_PARTITIONS_NUM = 16;
 
     /**
-     * cache缓存该BufferPool管理维护的页面
+     * 每个分区至少缓存的页面数量，避免分区过小导致频繁驱逐
      */
-    private Map<PageId, Page> cache;
+    private static final int MIN_PAGES_PER_PARTITION = 8;
 
     /**
-     * 页面驱逐策略使用LRU（less recent used）
+     * 默认的页面驱逐策略
      */
-    private EvictStrategy evictStrategy;
+    public static final String DEFAULT_EVICT_POLICY = "lru";
+
+    /**
+     * 该缓冲池实际管理缓存的最大页面数量
+     */
+    private int pagesNum = DEFAULT_PAGES_NUM;
+
+    /**
+     * 缓冲池分区，页面由PageId的哈希值决定所在分区
+     */
+    private final BufferPartition[] partitions;
 
     /**
      * 管理缓冲池中页面的锁
      */
     private LockManager lockManager;
 
+    /**
+     * 页面命中和未命中的次数，用于统计缓冲池命中率
+     */
+    private final LongAdder hitsNum = new LongAdder();
+    private final LongAdder missesNum = new LongAdder();
+
+    /**
+     * 因分区中所有页面都dirty而被窃取（STEAL）写回磁盘的页面数量
+     */
+    private final LongAdder stolenPagesNum = new LongAdder();
+
+    /**
+     * 后台刷脏线程，在前台事务需要驱逐页面之前提前将脏页写回磁盘
+     */
+    private final PageCleaner pageCleaner;
+
+    /**
+     * 堆外缓冲池模式下存放页面帧的内存区，堆内模式为null
+     */
+    private final PageArena arena;
+
+    /**
+     * 预读线程数量和等待执行的预读请求的最大数量
+     */
+    private static final int READ_AHEAD_THREADS = 2;
+    private static final int READ_AHEAD_QUEUE_SIZE = 256;
+
+    /**
+     * 顺序扫描最多预读的页面数量，不超过缓冲池容量的1/4，避免预读的页面驱逐还未访问的页面
+     */
+    private final int maxReadAheadPages;
+
+    /**
+     * 执行异步预读的线程池
+     */
+    private final ExecutorService readAheadExecutor;
+
+    /**
+     * 正在预读的页面，getPage未命中时等待正在进行的预读，避免重复读取
+     */
+    private final Map<PageId, CompletableFuture<Void>> prefetchingPages = new ConcurrentHashMap<>();
+
+    /**
+     * 通过预读放入缓冲池的页面数量
+     */
+    private final LongAdder prefetchedPagesNum = new LongAdder();
+
+    /**
+     * 每个未完成的事务修改过的页面，事务提交或回滚时只需要处理这些页面，而不需要遍历整个缓冲池
+     */
+    private final Map<TransactionId, Set<PageId>> modifiedPages = new ConcurrentHashMap<>();
+
     /**
      * 创建缓冲池，最大可以缓存pagesNum数量的页面（Pages）
+     * 分区数量根据页面数量和CPU核数自动选择
      * @param pagesNum 该缓冲池可以缓存的最大页面数量
      */
     public BufferPool(int pagesNum) {
+        this(pagesNum, defaultPartitionsNum(pagesNum));
+    }
+
+    /**
+     * 创建缓冲池，最大可以缓存pagesNum数量的页面（Pages），并划分为partitionsNum个分区
+     * @param pagesNum 该缓冲池可以缓存的最大页面数量
+     * @param partitionsNum 分区数量，不能超过pagesNum
+     */
+    public BufferPool(int pagesNum, int partitionsNum) {
+        this(pagesNum, partitionsNum, DEFAULT_EVICT_POLICY);
+    }
+
+    /**
+     * 创建缓冲池，最大可以缓存pagesNum数量的页面（Pages），划分为partitionsNum个分区，
+     * 每个分区使用evictPolicy指定的驱逐策略
+     * @param pagesNum 该缓冲池可以缓存的最大页面数量
+     * @param partitionsNum 分区数量，不能超过pagesNum
+     * @param evictPolicy 驱逐策略名称（lru、clock、2q）
+     */
+    public BufferPool(int pagesNum, int partitionsNum, String evictPolicy) {
+        this(pagesNum, partitionsNum, evictPolicy, false);
+    }
+
+    /**
+     * 创建缓冲池，offHeap为true时页面数据存放在堆外内存区中，
+     * 页面大小与getPageSize()不同的HeapFile以及帧用完时仍使用堆内页面
+     * @param pagesNum 该缓冲池可以缓存的最大页面数量
+     * @param partitionsNum 分区数量，不能超过pagesNum
+     * @param evictPolicy 驱逐策略名称（lru、clock、2q）
+     * @param offHeap 是否将页面帧存放在堆外内存中
+     */
+    public BufferPool(int pagesNum, int partitionsNum, String evictPolicy, boolean offHeap) {
+        if (pagesNum <= 0 || partitionsNum <= 0 || partitionsNum > pagesNum) {
+            throw new IllegalArgumentException(
+                    "invalid buffer pool size " + pagesNum + " with " + partitionsNum + " partitions");
+        }
         this.pagesNum = pagesNum;
-        this.cache = new ConcurrentHashMap<>();
-        this.evictStrategy = new LRU(pagesNum);
+        this.arena = offHeap ? new PageArena(pagesNum, pageSize) : null;
+        this.partitions = new BufferPartition[partitionsNum];
+        for (int i=0; i<partitionsNum; i++) {
+            // 将页面数量均匀分配到各个分区
+            int capacity = pagesNum / partitionsNum + (i < pagesNum % partitionsNum ? 1 : 0);
+            partitions[i] = new BufferPartition(capacity, EvictStrategy.create(evictPolicy, capacity), arena);
+        }
         this.lockManager = new LockManager();
+        this.pageCleaner = new PageCleaner(this);
+        this.pageCleaner.start();
+        this.maxReadAheadPages = Math.max(0, Math.min(Config.get().getReadAheadPages(), pagesNum / 4));
+        this.readAheadExecutor = new ThreadPoolExecutor(READ_AHEAD_THREADS, READ_AHEAD_THREADS,
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(READ_AHEAD_QUEUE_SIZE), runnable -> {
+                    Thread thread = new Thread(runnable, "read-ahead");
+                    thread.setDaemon(true); // 不阻止JVM退出
+                    return thread;
+                });
+    }
+
+    /**
+     * @return 根据页面数量和CPU核数计算默认分区数量
+     */
+    public static int defaultPartitionsNum(int pagesNum) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int num = Math.min(DEFAULT_PARTITIONS_NUM, Math.max(1, cores));
+        return Math.max(1, Math.min(num, pagesNum / MIN_PAGES_PER_PARTITION));
+    }
+
+    /**
+     * @return 返回该缓冲池最多可以缓存的页面数量
+     */
+    public int getPagesNum() {
+        return pagesNum;
+    }
+
+    /**
+     * @return 页面帧存放在堆外内存中则返回true
+     */
+    public boolean isOffHeap() {
+        return arena != null;
+    }
+
+    /**
+     * 为即将读入缓冲池的页面分配堆外帧
+     * @param size 页面大小
+     * @return 返回分配的帧；堆内模式、页面大小不匹配或者帧已用完时返回null，此时应使用堆内页面
+     */
+    ByteBuffer allocateFrame(int size) {
+        return arena == null ? null : arena.allocate(size);
+    }
+
+    /**
+     * 归还allocateFrame分配但没有使用的帧
+     */
+    void freeFrame(ByteBuffer frame) {
+        arena.free(frame);
+    }
+
+    /**
+     * @return 返回该缓冲池的分区数量
+     */
+    public int getPartitionsNum() {
+        return partitions.length;
+    }
+
+    /**
+     * @return 返回getPage在缓冲池中命中页面的次数
+     */
+    public long getHitsNum() {
+        return hitsNum.sum();
+    }
+
+    /**
+     * @return 返回getPage需要从磁盘读取页面的次数
+     */
+    public long getMissesNum() {
+        return missesNum.sum();
+    }
+
+    /**
+     * @return 返回被窃取（STEAL）写回磁盘的脏页数量
+     */
+    public long getStolenPagesNum() {
+        return stolenPagesNum.sum();
+    }
+
+    /**
+     * @return 返回通过预读放入缓冲池的页面数量
+     */
+    public long getPrefetchedPagesNum() {
+        return prefetchedPagesNum.sum();
+    }
+
+    /**
+     * 重置命中率统计
+     */
+    public void resetHitStats() {
+        hitsNum.reset();
+        missesNum.reset();
+        stolenPagesNum.reset();
+        prefetchedPagesNum.reset();
+    }
+
+    /**
+     * @return 返回指定页面所在的分区
+     */
+    private BufferPartition partitionOf(PageId pid) {
+        return partitions[partitionIndexOf(pid)];
+    }
+
+    /**
+     * @return 返回指定页面所在分区的下标
+     */
+    private int partitionIndexOf(PageId pid) {
+        int h = pid.hashCode();
+        h ^= (h >>> 16); // 打散哈希值的高位
+        return Math.floorMod(h, partitions.length);
     }
 
     public static int getPageSize() {
         return pageSize;
     }
 
+    /**
+     * 设置新建HeapFile时使用的页面大小，已存在的HeapFile仍使用其文件中记录的页面大小
+     * @param size 页面大小，范围为4096~65536且为2的幂
+     */
+    public static void setPageSize(int size) {
+        pageSize = checkPageSize(size);
+    }
+
+    /**
+     * 恢复页面大小为默认值
+     */
+    public static void resetPageSize() {
+        pageSize = DEFAULT_PAGE_SIZE;
+    }
+
+    /**
+     * @param size 需要检查的页面大小
+     * @return 页面大小合法则将其返回
+     * @throws IllegalArgumentException 页面大小不在4096~65536范围内或者不是2的幂
+     */
+    public static int checkPageSize(int size) {
+        if (size < MIN_PAGE_SIZE || size > MAX_PAGE_SIZE || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Invalid page size " + size
+                    + ", it should be a power of 2 between " + MIN_PAGE_SIZE + " and " + MAX_PAGE_SIZE);
+        }
+        return size;
+    }
+
     /**
      * 根据事务ID和页面ID获得具体页面信息，需要有相关权限（Permissions）
      * 多个事务对同一个页面操作时可能需要上锁，阻塞其它事务
@@ -107,19 +362,233 @@ public class BufferPool {
             }
         }
         // 此时事务成功获取了一个页面
-        if (!cache.containsKey(pid)) {
-            // 缓冲池中不存在该页面，添加新页面
-            DbFile dbFile = Database.getCatalog().getDbFile(pid.getTableId());
-            Page page = dbFile.readPage(pid);
-            evictStrategy.modifyData(pid);
-            if (cache.size() == pagesNum) {
-                // 缓冲池存放页面已满，需对其中一个页面进行驱逐
-                PageId evictPageId = evictStrategy.getEvictPageId();
-                cache.remove(evictPageId);
+        return fetchPage(pid);
+    }
+
+    /**
+     * 不等待地尝试获取页面，其它事务持有冲突的锁时立即返回null，而不是像getPage一样等待直到超时
+     * @param tid 事务ID
+     * @param pid 页面ID
+     * @param perm 在该页面的操作权限
+     * @return 返回页面，无法立即加锁时返回null
+     */
+    public Page tryGetPage(TransactionId tid, PageId pid, Permissions perm) throws DbException {
+        int pageType = (perm == Permissions.READ_WRITE) ? PageLock.EXCLUSIVE : PageLock.SHARE;
+        if (!lockManager.tryLock(pid, tid, pageType)) {
+            return null;
+        }
+        return fetchPage(pid);
+    }
+
+    /**
+     * 不获取页面锁地返回页面，缓冲池中没有时从磁盘读取。
+     * 只用于由页面自身的闩锁保护、修改者持有排他锁的页面（如哈希索引的元数据页面），
+     * 读到的内容可能包含未提交的修改，调用者需要在加锁其它页面之后重新检查
+     * @param pid 页面ID
+     */
+    public Page getPageWithoutLock(PageId pid) throws DbException {
+        return fetchPage(pid);
+    }
+
+    /**
+     * 返回事务已经加锁的页面，缓冲池中没有时从磁盘读取
+     */
+    private Page fetchPage(PageId pid) throws DbException {
+        BufferPartition partition = partitionOf(pid);
+        Page cached = getCachedPage(partition, pid);
+        if (cached == null) {
+            CompletableFuture<Void> prefetching = prefetchingPages.get(pid);
+            if (prefetching != null) {
+                // 该页面正在被预读，等待预读完成
+                prefetching.join();
+                cached = getCachedPage(partition, pid);
+            }
+        }
+        if (cached != null) {
+            hitsNum.increment();
+            return cached;
+        }
+        missesNum.increment();
+        // 缓冲池中不存在该页面，不持有latch从磁盘读取页面，避免IO阻塞该分区的其它页面访问
+        DbFile dbFile = Database.getCatalog().getDbFile(pid.getTableId());
+        Page newPage = dbFile.readPage(pid);
+        // 读取页面期间其它事务可能已将该页面加入缓冲池，此时返回已缓存的页面
+        Page page = installPage(partition, newPage, false);
+        if (page != newPage) {
+            // 读入的页面没有放入缓冲池，归还其占用的帧
+            partition.release(newPage, page);
+        }
+        return page;
+    }
+
+    /**
+     * @return 返回缓存的页面并将其记录为最近访问，不存在则返回null
+     */
+    private Page getCachedPage(BufferPartition partition, PageId pid) {
+        partition.latch.lock();
+        try {
+            return partition.get(pid);
+        } finally {
+            partition.latch.unlock();
+        }
+    }
+
+    /**
+     * @return 返回顺序扫描最多预读的页面数量，0表示不预读
+     */
+    public int getMaxReadAheadPages() {
+        return maxReadAheadPages;
+    }
+
+    /**
+     * 异步地将页面读入缓冲池，不获取页面锁，事务访问该页面时仍需通过getPage获取锁。
+     * 页面已缓存或正在预读时不做处理，预读线程繁忙时放弃本次预读
+     * @param pid 需要预读的页面ID
+     */
+    public void prefetchPage(PageId pid) {
+        BufferPartition partition = partitionOf(pid);
+        partition.latch.lock();
+        try {
+            if (partition.peek(pid) != null) {
+                return;
             }
-            cache.put(pid, page);
+        } finally {
+            partition.latch.unlock();
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (prefetchingPages.putIfAbsent(pid, future) != null) {
+            return;
+        }
+        try {
+            readAheadExecutor.execute(() -> {
+                try {
+                    loadPage(partition, pid);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                } finally {
+                    prefetchingPages.remove(pid, future);
+                    future.complete(null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            prefetchingPages.remove(pid, future);
+            future.complete(null);
         }
-        return cache.get(pid);
+    }
+
+    /**
+     * 由预读线程从磁盘读取页面并放入缓冲池
+     * 读取期间若分区中有页面写回磁盘、被丢弃或被替换（version改变），则读到的页面可能已过时，放弃该页面。
+     * 预读只会驱逐不dirty的页面，不会窃取（STEAL）脏页
+     */
+    private void loadPage(BufferPartition partition, PageId pid) {
+        long version;
+        partition.latch.lock();
+        try {
+            if (partition.peek(pid) != null) {
+                return;
+            }
+            version = partition.version;
+        } finally {
+            partition.latch.unlock();
+        }
+        DbFile dbFile = Database.getCatalog().getDbFile(pid.getTableId());
+        Page page = dbFile.readPage(pid);
+        if (page == null) {
+            return;
+        }
+        boolean installed = false;
+        partition.latch.lock();
+        try {
+            if (partition.version == version && partition.peek(pid) == null) {
+                installed = partition.put(page);
+            }
+        } finally {
+            partition.latch.unlock();
+        }
+        if (installed) {
+            prefetchedPagesNum.increment();
+        } else {
+            partition.release(page, null);
+        }
+    }
+
+    /**
+     * 将页面放入其所在分区，分区已满时驱逐一个页面。
+     * 若分区中所有页面都dirty，则窃取（STEAL）一个脏页：先写日志（WAL）再将其写回磁盘后驱逐
+     * @param partition 页面所在的分区
+     * @param page 需要放入缓冲池的页面
+     * @param replace true则替换已缓存的同ID页面，false则保留已缓存的页面
+     * @return 返回缓冲池中该页面ID对应的页面
+     */
+    private Page installPage(BufferPartition partition, Page page, boolean replace)
+            throws DbException {
+        PageId pid = page.getId();
+        partition.latch.lock();
+        try {
+            Page cached = partition.get(pid);
+            if (cached != null && !replace) {
+                return cached;
+            }
+            if (partition.put(page)) {
+                partition.markAccessed(page);
+                return page;
+            }
+        } finally {
+            partition.latch.unlock();
+        }
+        // 写脏页按照“分区latch->日志文件”的顺序加锁，与日志回滚（rollback）保持一致，只阻塞该分区
+        partition.latch.lock();
+        try {
+            Page cached = partition.get(pid);
+            if (cached != null && !replace) {
+                return cached;
+            }
+            while (!partition.put(page)) {
+                Page victim = partition.evictAny();
+                if (victim == null) {
+                    throw new DbException("No page can be evicted.");
+                }
+                writePages(partition, List.of(victim));
+                stolenPagesNum.increment();
+            }
+            partition.markAccessed(page);
+            return page;
+        } catch (IOException e) {
+            throw new DbException("Failed to write the evicted dirty page: " + e.getMessage());
+        } finally {
+            partition.latch.unlock();
+            // 前台事务发生了窃取，唤醒后台刷脏线程提前写回脏页
+            pageCleaner.wakeUp();
+        }
+    }
+
+    /**
+     * 按分区下标的顺序获取所有分区的latch，期间其它线程不能访问、驱逐或写回缓冲池中的页面。
+     * 用于日志回滚、恢复和检查点等需要同时修改磁盘页面和缓冲池的操作。
+     * 缓冲池的加锁顺序为“分区latch（按分区下标）->日志文件”，持有日志文件的监视器时不能再调用该方法
+     * @see LogFile#rollback(TransactionId)
+     */
+    void latchAllPartitions() {
+        for (BufferPartition partition: partitions) {
+            partition.latch.lock();
+        }
+    }
+
+    /**
+     * 释放latchAllPartitions获取的所有分区latch
+     */
+    void unlatchAllPartitions() {
+        for (int i=partitions.length-1; i>=0; i--) {
+            partitions[i].latch.unlock();
+        }
+    }
+
+    /**
+     * 释放所有事务持有的页面锁（如计算完统计信息后）
+     */
+    public void resetLocks() {
+        this.lockManager = new LockManager();
     }
 
     /**
@@ -136,7 +605,7 @@ public class BufferPool {
      * @param tid 事务ID
      */
     public void transactionComplete(TransactionId tid) {
-        // TOD        transactionComplete(tid, true);
+        transactionComplete(tid, true);
     }
 
     /**
@@ -162,17 +631,27 @@ public class BufferPool {
 
     /**
      * 事务异常终止，需要回滚操作，从磁盘中重新加载脏页
+     * 日志回滚（LogFile.logAbort）在持有所有分区latch时调用，使回滚与重新加载之间后台刷脏线程
+     * 或窃取不会把该事务的脏页写回磁盘
      * @param tid 事务ID
      */
-    private synchronized void recoverPages(TransactionId tid) {
-        for (Map.Entry<PageId, Page> entry: cache.entrySet()) {
-            PageId pid = entry.getKey();
-            Page page = entry.getValue();
-            if (page.isDirty().equals(tid)) {
-                int tableId = pid.getTableId();
-                DbFile dbFile = Database.getCatalog().getDbFile(tableId);
-                Page dirtyPage = dbFile.readPage(pid);
-                cache.put(pid, dirtyPage);
+    void recoverPages(TransactionId tid) {
+        Set<PageId> pids = modifiedPages.remove(tid);
+        if (pids == null) {
+            return;
+        }
+        for (PageId pid: pids) {
+            BufferPartition partition = partitionOf(pid);
+            partition.latch.lock();
+            try {
+                Page page = partition.peek(pid);
+                if (page != null && tid.equals(page.isDirty())) {
+                    DbFile dbFile = Database.getCatalog().getDbFile(pid.getTableId());
+                    partition.replace(dbFile.readPage(pid));
+                    partition.version++;
+                }
+            } finally {
+                partition.latch.unlock();
             }
         }
     }
@@ -193,13 +672,12 @@ public class BufferPool {
      * @param tid 对页面进行操作的事务ID
      */
     private void updatePages(List<Page> pages, TransactionId tid) throws DbException {
+        Set<PageId> pids = modifiedPages.computeIfAbsent(tid, k -> ConcurrentHashMap.newKeySet());
         for (Page page: pages) {
+            pids.add(page.getId());
             page.setDirty(true, tid);
-            if (cache.size() == pagesNum) {
-                // 缓冲池存放页面数量已满，驱逐页面
-                evictPage();
-            }
-            cache.put(page.getId(), page);
+            // 分区已满时会驱逐页面
+            installPage(partitionOf(page.getId()), page, true);
         }
     }
 
@@ -213,7 +691,15 @@ public class BufferPool {
         throws DbException, IOException, TransactionException {
         // 获取需要插入元组的表
         DbFile dbFile = Database.getCatalog().getDbFile(tableId);
+        // 插入之前检查唯一索引，索引键重复时表和索引都不会被修改
+        for (Index index: Database.getCatalog().getIndexes(tableId)) {
+            checkUnique(tid, index, tuple);
+        }
         updatePages(dbFile.insertTuple(tid, tuple), tid);
+        // 元组插入后才有RecordId，再为其添加索引条目
+        for (Index index: Database.getCatalog().getIndexes(tableId)) {
+            updatePages(index.insertEntry(tid, tuple), tid);
+        }
     }
 
     /**
@@ -223,90 +709,257 @@ public class BufferPool {
      */
     public void deleteTuple(TransactionId tid, Tuple tuple)
         throws DbException, IOException, TransactionException {
-        DbFile dbFile = Database.getCatalog().getDbFile(
-                tuple.getRecordId().getPageId().getTableId());
+        int tableId = tuple.getRecordId().getPageId().getTableId();
+        DbFile dbFile = Database.getCatalog().getDbFile(tableId);
+        // 删除元组时页面中的字节会被清零，先删除索引条目
+        for (Index index: Database.getCatalog().getIndexes(tableId)) {
+            updatePages(index.deleteEntry(tid, tuple), tid);
+        }
         updatePages(dbFile.deleteTuple(tid, tuple), tid);
     }
 
+    /**
+     * 为表中已有的所有元组添加索引条目，用于在已有数据的表上新建索引
+     * 空的B+树索引排序后批量建立，只顺序写一遍索引文件，其它索引逐条插入条目
+     * @param tid 事务ID
+     * @param index 已通过Catalog.addIndex注册的空索引
+     */
+    public void buildIndex(TransactionId tid, Index index)
+        throws DbException, IOException, TransactionException {
+        if (index instanceof BTreeIndex btreeIndex && btreeIndex.canBulkLoad()) {
+            try {
+                btreeIndex.bulkLoad(tid);
+            } finally {
+                // 批量建立时直接替换文件，丢弃缓冲池中之前读到的该文件的所有页面
+                discardPages(btreeIndex.getFile().getId());
+            }
+            return;
+        }
+        DbFileIterator iterator = Database.getCatalog().getDbFile(index.getTableId()).iterator(tid);
+        iterator.open();
+        while (iterator.hasNext()) {
+            Tuple tuple = iterator.next();
+            checkUnique(tid, index, tuple);
+            updatePages(index.insertEntry(tid, tuple), tid);
+        }
+        iterator.close();
+    }
+
+    /**
+     * 检查唯一索引中是否已有相同索引键的条目，只需要在索引中查找，不需要扫描表
+     * 查找时获取的共享锁会保留到事务结束，其它事务之后插入相同的索引键时无法获取排他锁
+     * @param index 表上的索引，不是唯一索引时不做检查
+     * @param tuple 需要插入的元组
+     * @throws DbException 索引键重复时抛出
+     */
+    private void checkUnique(TransactionId tid, Index index, Tuple tuple)
+        throws DbException, TransactionException {
+        if (!index.isUnique()) {
+            return;
+        }
+        Field key = tuple.getField(index.getKeyField());
+        DbFileIterator entries = index.lookup(tid, new IndexPredicate(Predicate.Op.EQUALS, key));
+        entries.open();
+        boolean exists = entries.hasNext();
+        entries.close();
+        if (exists) {
+            throw new DbException("duplicate key " + key + " for unique index " + index);
+        }
+    }
+
     /**
      * 刷新磁盘中的一个指定页面，将其写入磁盘，使之不dirty
      * @param pid 页面ID
      */
-    public synchronized void flushPage(PageId pid) throws IOException {
-        Page flushPage = cache.get(pid); // 获得需要刷新的页面
-        // 通过tableId得到对应的DbFIle，将page写入对应的DbFile中
-        int tableId = pid.getTableId();
-        DbFile dbFile = Database.getCatalog().getDbFile(tableId);
-        // 获得上一个对该页面操作的事务ID
-        TransactionId tid = flushPage.isDirty();
-        if (tid != null) {
-            // 保存修改前后的页面映像到日志文件中
-            Database.getLogFile().logUpdate(tid, flushPage.getBeforeImage(), flushPage);
+    public void flushPage(PageId pid) throws IOException {
+        BufferPartition partition = partitionOf(pid);
+        partition.latch.lock();
+        try {
+            Page flushPage = partition.peek(pid); // 获得需要刷新的页面
+            if (flushPage != null) {
+                writePages(partition, List.of(flushPage));
+            }
+        } finally {
+            partition.latch.unlock();
+        }
+    }
+
+    /**
+     * 将同一批页面写入对应的DbFile，调用时需持有这些页面所在分区的latch。
+     * dirty页面需要先写日志（WAL）：先记录所有页面的修改前后映像，只强制刷新一次日志，再写回页面
+     * @param partition 页面所在的分区，页面来自多个分区时为null，由调用者更新各个分区的version
+     * @param pages 需要写回的页面
+     */
+    private void writePages(BufferPartition partition, Collection<Page> pages) throws IOException {
+        boolean logged = false;
+        for (Page page: pages) {
+            // 获得上一个对该页面操作的事务ID
+            TransactionId tid = page.isDirty();
+            if (tid != null) {
+                // 保存修改前后的页面映像到日志文件中
+                Database.getLogFile().logUpdate(tid, page.getBeforeImage(), page);
+                logged = true;
+            }
+        }
+        if (logged) {
             Database.getLogFile().force();
         }
-        dbFile.writePage(flushPage);
-        flushPage.setDirty(false, null);
+        for (Page page: pages) {
+            // 通过tableId得到对应的DbFile，将page写入对应的DbFile中
+            DbFile dbFile = Database.getCatalog().getDbFile(page.getId().getTableId());
+            dbFile.writePage(page);
+            page.setDirty(false, null);
+        }
+        if (partition != null) {
+            partition.version++;
+        }
     }
 
     /**
      * 刷新磁盘中所有的脏页，将它们写入到磁盘，使这些页面不dirty
+     * 逐个分区写回，每个分区只强制刷新一次日志
      */
-    public synchronized void flushAllPages() throws IOException {
-        for (Map.Entry<PageId, Page> entry: cache.entrySet()) {
-            Page page = entry.getValue();
+    public void flushAllPages() throws IOException {
+        for (BufferPartition partition: partitions) {
+            partition.latch.lock();
+            try {
+                List<Page> dirtyPages = dirtyPagesOf(partition);
+                if (!dirtyPages.isEmpty()) {
+                    writePages(partition, dirtyPages);
+                }
+            } finally {
+                partition.latch.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return 返回分区中的脏页，调用时需持有分区的latch
+     */
+    private static List<Page> dirtyPagesOf(BufferPartition partition) {
+        List<Page> dirtyPages = new ArrayList<>();
+        for (Page page: partition.pages()) {
             if (page.isDirty() != null) {
-                // 页面dirty
-                flushPage(page.getId());
+                dirtyPages.add(page);
             }
         }
+        return dirtyPages;
     }
 
     /**
-     * 刷新指定事务对应的所有页面
+     * 刷新指定事务修改过的所有页面，并将这些页面的当前内容作为之后修改的修改前镜像
+     * 只处理该事务修改过的页面（包括已被后台刷脏线程写回的页面），提交的开销与缓冲池大小无关。
+     * 按分区下标的顺序获取涉及的分区的latch，所有页面的日志只强制刷新一次
      * @param tid 事务ID
      */
-    public synchronized void flushPages(TransactionId tid) throws IOException {
-        for (Map.Entry<PageId, Page> entry: cache.entrySet()) {
-            Page page = entry.getValue();
-            page.setBeforeImage(); // 保存页面映像
-            if (page.isDirty() == tid) {
-                // 只刷新指定事务的相应页面
-                flushPage(page.getId());
+    public void flushPages(TransactionId tid) throws IOException {
+        Set<PageId> pids = modifiedPages.remove(tid);
+        if (pids == null) {
+            return;
+        }
+        // 按分区下标排序，与latchAllPartitions的加锁顺序一致
+        SortedMap<Integer, List<PageId>> pidsByPartition = new TreeMap<>();
+        for (PageId pid: pids) {
+            pidsByPartition.computeIfAbsent(partitionIndexOf(pid), k -> new ArrayList<>()).add(pid);
+        }
+        List<BufferPartition> latched = new ArrayList<>();
+        try {
+            List<Page> pages = new ArrayList<>();
+            List<Page> dirtyPages = new ArrayList<>();
+            for (Map.Entry<Integer, List<PageId>> entry: pidsByPartition.entrySet()) {
+                BufferPartition partition = partitions[entry.getKey()];
+                partition.latch.lock();
+                latched.add(partition);
+                for (PageId pid: entry.getValue()) {
+                    Page page = partition.peek(pid);
+                    if (page == null) {
+                        // 页面已被窃取（STEAL）写回磁盘，重新读入时没有修改前镜像
+                        continue;
+                    }
+                    pages.add(page);
+                    if (tid.equals(page.isDirty())) {
+                        dirtyPages.add(page);
+                    }
+                }
+            }
+            // 写日志时需要使用修改前镜像
+            writePages(null, dirtyPages);
+            for (Page page: pages) {
+                page.setBeforeImage(); // 保存页面映像
+            }
+        } finally {
+            for (int i=latched.size()-1; i>=0; i--) {
+                BufferPartition partition = latched.get(i);
+                partition.version++;
+                partition.latch.unlock();
             }
         }
     }
 
+    /**
+     * 对脏页比例达到阈值的分区提前写回脏页（由后台刷脏线程调用）。
+     * 每次只持有一个分区的latch，写回前先记录该分区所有脏页修改前后的映像到日志（WAL）并强制刷新一次，
+     * 事务回滚时可以通过日志恢复
+     * @param dirtyRatio 分区中脏页数量占分区容量的比例达到该值时才会写回
+     * @return 返回写回磁盘的页面数量
+     */
+    int cleanDirtyPages(double dirtyRatio) throws IOException {
+        int cleanedNum = 0;
+        for (BufferPartition partition: partitions) {
+            partition.latch.lock();
+            try {
+                List<Page> dirtyPages = dirtyPagesOf(partition);
+                if (dirtyPages.isEmpty() || dirtyPages.size() < partition.getCapacity() * dirtyRatio) {
+                    continue;
+                }
+                writePages(partition, dirtyPages);
+                cleanedNum += dirtyPages.size();
+            } finally {
+                partition.latch.unlock();
+            }
+        }
+        return cleanedNum;
+    }
+
+    /**
+     * 停止后台刷脏线程
+     */
+    public void shutdownPageCleaner() {
+        pageCleaner.shutdown();
+    }
+
     /**
      * 从缓冲池中删除一个指定页面
      * @param pid 页面ID
      */
-    public synchronized void discardPage(PageId pid) {
-        cache.remove(pid);
+    public void discardPage(PageId pid) {
+        BufferPartition partition = partitionOf(pid);
+        partition.latch.lock();
+        try {
+            partition.remove(pid);
+            partition.version++;
+        } finally {
+            partition.latch.unlock();
+        }
     }
 
     /**
-     * 从缓冲池中驱逐一个页面，需要刷新磁盘中的页面以确保脏页已更新
+     * 从缓冲池中删除一个文件的所有页面，不写回磁盘，用于文件被直接替换之后
+     * @param tableId 文件的ID
      */
-    private synchronized void evictPage() throws DbException {
-        PageId evictPageId = null;
-        Page page = null;
-        boolean isAllDirty = true;
-        for (int i=0; i<cache.size(); i++) {
-            evictPageId = evictStrategy.getEvictPageId();
-            page = cache.get(evictPageId);
-            if (page.isDirty() != null) {
-                evictStrategy.modifyData(evictPageId);
-            } else {
-                // 有不dirty的页面，可以进行驱逐
-                isAllDirty = false;
-                discardPage(evictPageId); // 从cache中删除该页面
-                break;
+    public void discardPages(int tableId) {
+        for (BufferPartition partition: partitions) {
+            partition.latch.lock();
+            try {
+                for (Page page: partition.pages()) {
+                    if (page.getId().getTableId() == tableId) {
+                        partition.remove(page.getId());
+                    }
+                }
+                partition.version++;
+            } finally {
+                partition.latch.unlock();
             }
         }
-        if (isAllDirty) {
-            // 所有页面都dirty
-            // TODO 随机选择一个页面进行驱逐
-            throw new DbException("All the pages are dirty.");
-        }
     }
 }
@@ -0,0 +1,60 @@
+package mydb.storage;
+
+import mydb.common.Type;
+import mydb.execution.Predicate;
+
+import java.io.Serial;
+
+/**
+ * 从字典编码的列中读取的字符串字段，同时保存字符串和它在字典中的编码
+ * 与同一字典的DictionaryField进行等值比较时直接比较编码
+ * @see StringDictionary
+ */
+public class DictionaryField extends StringField {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 字符串所在的字典，字典不会被序列化
+     */
+    private final transient StringDictionary dictionary;
+
+    private final int code;
+
+    /**
+     * @param dictionary 字符串所在的字典
+     * @param code 字符串在字典中的编码
+     */
+    public DictionaryField(StringDictionary dictionary, int code) {
+        super(dictionary.decode(code), Type.STRING_LEN);
+        this.dictionary = dictionary;
+        this.code = code;
+    }
+
+    /**
+     * @return 返回字符串所在的字典
+     */
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return 返回字符串在字典中的编码
+     */
+    public int getCode() {
+        return code;
+    }
+
+    @Override
+    public boolean compare(Predicate.Op op, Field value) {
+        if (value instanceof DictionaryField other && dictionary != null && other.dictionary == dictionary) {
+            if (op == Predicate.Op.EQUALS) {
+                return code == other.code;
+            } else if (op == Predicate.Op.NOT_EQUALS) {
+                return code != other.code;
+            }
+        }
+        return super.compare(op, value);
+    }
+}
@@ -1,6 +1,7 @@
 package mydb.storage;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import mydb.execution.Predicate;
 import mydb.common.Type;
 
@@ -15,6 +16,13 @@ public interface Field extends Serializable {
      */
     void serialize(DataOutputStream dos) throws IOException;
 
+    /**
+     * 将该字段的字节写入字节缓冲区的指定位置，写入的格式与serialize(DataOutputStream)相同，不会改变缓冲区的position
+     * @param buffer 字节缓冲区
+     * @param offset 写入的起始位置
+     */
+    void serialize(ByteBuffer buffer, int offset);
+
     boolean compare(Predicate.Op op, Field value);
 
     Type getType();
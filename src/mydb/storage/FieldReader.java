@@ -0,0 +1,15 @@
+package mydb.storage;
+
+/**
+ * 可以按槽和字段索引直接从页面字节中解析单个字段的页面，用于元组字段的延迟解析
+ * @see Tuple
+ */
+interface FieldReader {
+
+    /**
+     * @param slotId 元组所在的槽
+     * @param fieldIndex 字段索引
+     * @return 返回解析得到的字段
+     */
+    Field readField(int slotId, int fieldIndex);
+}
@@ -0,0 +1,107 @@
+package mydb.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * DbFile的文件通道缓存，每个文件只打开一个FileChannel并在表的生命周期内保持打开，
+ * 避免每次读写页面都重新打开和关闭文件
+ * 页面读写使用带位置参数的read/write，不依赖也不修改通道的position，多个线程可以并发读取同一个文件
+ * Catalog.clear()时关闭所有通道
+ */
+public class FileChannelPool {
+
+    /**
+     * 文件到已打开通道的映射
+     */
+    private final Map<File, FileChannel> channels = new ConcurrentHashMap<>();
+
+    /**
+     * 获取文件的通道，第一次访问文件时以读写方式打开（文件不存在会被创建）
+     * 通道被关闭后（如读写线程被中断）会重新打开
+     * @param file 数据库文件
+     * @return 返回该文件的通道
+     */
+    public FileChannel get(File file) throws IOException {
+        File key = file.getAbsoluteFile();
+        FileChannel channel = channels.get(key);
+        if (channel != null && channel.isOpen()) {
+            return channel;
+        }
+        synchronized (this) {
+            channel = channels.get(key);
+            if (channel == null || !channel.isOpen()) {
+                channel = FileChannel.open(key.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channels.put(key, channel);
+            }
+            return channel;
+        }
+    }
+
+    /**
+     * 关闭并移除指定文件的通道
+     */
+    public synchronized void close(File file) {
+        FileChannel channel = channels.remove(file.getAbsoluteFile());
+        closeQuietly(channel);
+    }
+
+    /**
+     * 关闭所有通道
+     */
+    public synchronized void closeAll() {
+        for (FileChannel channel: channels.values()) {
+            closeQuietly(channel);
+        }
+        channels.clear();
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 从position位置读满buffer的剩余空间，超出文件末尾的部分用0填充
+     * @param channel 文件通道
+     * @param buffer 读取的目标缓冲区，读取后position位于limit
+     * @param position 在文件中开始读取的位置
+     */
+    public static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position() - start);
+            if (n < 0) {
+                break;
+            }
+        }
+        while (buffer.hasRemaining()) {
+            // 缓冲区可能残留其它页面的数据
+            buffer.put((byte) 0);
+        }
+    }
+
+    /**
+     * 将buffer的剩余数据全部写到文件的position位置
+     * @param channel 文件通道
+     * @param buffer 需要写入的数据
+     * @param position 在文件中开始写入的位置
+     */
+    public static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position() - start);
+        }
+    }
+}
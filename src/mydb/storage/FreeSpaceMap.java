@@ -0,0 +1,148 @@
+package mydb.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+import java.util.function.IntSupplier;
+
+/**
+ * 空闲空间映射（free-space map），记录HeapFile中哪些页面还有空槽，使插入元组时可以直接找到有空间的页面，
+ * 而不需要从第一个页面开始逐个获取页面和锁
+ * 空闲空间映射存放在数据文件旁的.fsm文件中：开头4字节为已记录的页面数量，之后为位图，第i位为1表示第i个页面有空槽。
+ * 空闲空间映射只是提示（hint），不写日志：插入前仍需检查页面是否有空槽，发现不一致时修正对应的位。
+ * .fsm文件不存在或者没有记录的页面会在第一次使用时读取页面进行检查，
+ * .fsm文件记录的页面数量超过数据文件的页面数量时（数据文件被重新创建）会重新检查所有页面
+ * @see HeapFile
+ */
+class FreeSpaceMap {
+
+    /**
+     * 位图在.fsm文件中的偏移量
+     */
+    private static final int BITMAP_OFFSET = 4;
+
+    private final File file;
+
+    private final FileChannelPool channelPool;
+
+    /**
+     * 返回数据文件当前的页面数量
+     */
+    private final IntSupplier filePagesNum;
+
+    /**
+     * 检查页面是否有空槽，用于初始化没有记录的页面
+     */
+    private final IntPredicate probe;
+
+    /**
+     * 有空槽的页面，第一次使用时从.fsm文件中读取
+     */
+    private BitSet freePages;
+
+    /**
+     * 已记录的页面数量
+     */
+    private int pagesNum;
+
+    /**
+     * @param file .fsm文件
+     * @param channelPool 数据库文件的通道缓存
+     * @param filePagesNum 返回数据文件当前的页面数量
+     * @param probe 根据页面索引检查页面是否有空槽
+     */
+    FreeSpaceMap(File file, FileChannelPool channelPool, IntSupplier filePagesNum, IntPredicate probe) {
+        this.file = file;
+        this.channelPool = channelPool;
+        this.filePagesNum = filePagesNum;
+        this.probe = probe;
+    }
+
+    /**
+     * @return 返回数据文件对应的.fsm文件
+     */
+    static File fileOf(File dataFile) {
+        return new File(dataFile.getPath() + ".fsm");
+    }
+
+    /**
+     * 查找索引不小于from的第一个有空槽的页面
+     * @param from 开始查找的页面索引
+     * @return 返回页面索引，不存在有空槽的页面则返回-1
+     */
+    synchronized int nextFreePage(int from) throws IOException {
+        load();
+        int pageIndex = freePages.nextSetBit(from);
+        return (pageIndex < 0 || pageIndex >= pagesNum) ? -1 : pageIndex;
+    }
+
+    /**
+     * 记录页面是否有空槽，只有发生变化时才会写入.fsm文件
+     * @param pageIndex 页面索引
+     * @param hasSpace 页面有空槽则为true
+     */
+    synchronized void setHasSpace(int pageIndex, boolean hasSpace) throws IOException {
+        load();
+        if (pageIndex >= pagesNum || freePages.get(pageIndex) == hasSpace) {
+            return;
+        }
+        freePages.set(pageIndex, hasSpace);
+        writeBits(pageIndex / 8, pageIndex / 8 + 1);
+    }
+
+    /**
+     * 第一次使用时读取.fsm文件，并检查.fsm文件中还没有记录的页面
+     */
+    private void load() throws IOException {
+        FileChannel channel = channelPool.get(file);
+        int filePagesNum = this.filePagesNum.getAsInt();
+        if (freePages == null) {
+            freePages = new BitSet();
+            pagesNum = 0;
+            if (channel.size() >= BITMAP_OFFSET) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+                FileChannelPool.readFully(channel, buffer, 0);
+                pagesNum = buffer.getInt(0);
+                freePages = BitSet.valueOf(buffer.position(BITMAP_OFFSET));
+                // 清除超出记录范围的位
+                freePages.clear(pagesNum, Math.max(pagesNum, freePages.length()));
+            }
+            if (pagesNum > filePagesNum) {
+                // 数据文件被重新创建，记录已失效
+                freePages.clear();
+                pagesNum = 0;
+            }
+        }
+        if (filePagesNum <= pagesNum) {
+            return;
+        }
+        int oldPagesNum = pagesNum;
+        for (int i=oldPagesNum; i<filePagesNum; i++) {
+            freePages.set(i, probe.test(i));
+        }
+        pagesNum = filePagesNum;
+        writeBits(oldPagesNum / 8, (pagesNum + 7) / 8);
+        ByteBuffer header = ByteBuffer.allocate(BITMAP_OFFSET);
+        header.putInt(0, pagesNum);
+        FileChannelPool.writeFully(channel, header, 0);
+    }
+
+    /**
+     * 将位图中[fromByte, toByte)范围的字节写入.fsm文件
+     */
+    private void writeBits(int fromByte, int toByte) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(toByte - fromByte);
+        for (int i=fromByte; i<toByte; i++) {
+            byte b = 0;
+            for (int bit=0; bit<8; bit++) {
+                if (freePages.get(i * 8 + bit)) {
+                    b |= (byte) (1 << bit);
+                }
+            }
+            buffer.put(b);
+        }
+        FileChannelPool.writeFully(channelPool.get(file), buffer.flip(), BITMAP_OFFSET + fromByte);
+    }
+}
@@ -1,32 +1,306 @@
 package mydb.storage;
 
+import mydb.common.Config;
 import mydb.common.Database;
 import mydb.common.DbException;
 import mydb.common.Permissions;
+import mydb.common.Type;
 import mydb.transaction.TransactionException;
 import mydb.transaction.TransactionId;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 /**
  * HeapFile（堆文件）实现了DbFile接口，用于存储元组（Tuple）集合
- * 元组存放在页面中，每个页面都是固定大小（4096B）。HeapFile是HeapPage的集合
+ * 元组存放在页面中，同一个文件的页面都是固定大小。HeapFile是HeapPage的集合
+ * 文件格式：文件头（HEADER_SIZE字节，记录魔数、版本、页面大小、页面格式、压缩方式和字典编码的列），之后依次存放各个页面。
+ * 没有文件头的旧格式文件从偏移0开始存放页面，页面大小为BufferPool.DEFAULT_PAGE_SIZE
+ * 压缩存储的文件中页面变为变长的区段，页面的位置由.pmap文件中的页面目录（PageDirectory）记录
+ * 页面的创建由createPage决定，子类（如SlottedFile、PaxFile）可以使用其它格式的页面
  */
 public class HeapFile implements DbFile {
 
+    /**
+     * 文件头的魔数（"MYDB"），用于区分记录了页面大小的文件和旧格式的文件
+     */
+    static final int FILE_MAGIC = 0x4D594442;
+
+    static final int FILE_VERSION = 1;
+
+    /**
+     * 文件头中记录的页面格式：定长槽的HeapPage
+     */
+    static final int PAGE_FORMAT_HEAP = 0;
+
+    /**
+     * 文件头中记录的页面格式：变长记录的SlottedPage
+     */
+    static final int PAGE_FORMAT_SLOTTED = 1;
+
+    /**
+     * 文件头中记录的页面格式：按列存放字段的PaxPage
+     */
+    static final int PAGE_FORMAT_PAX = 2;
+
+    /**
+     * 文件头中记录的压缩方式：不压缩
+     */
+    static final int COMPRESSION_NONE = 0;
+
+    /**
+     * 文件头中记录的压缩方式：页面用Lz4Codec压缩
+     */
+    static final int COMPRESSION_LZ4 = 1;
+
+    /**
+     * 文件头中用一个int的各位记录哪些列使用字典编码，因此只有前32列可以使用字典编码
+     */
+    private static final int MAX_DICTIONARY_COLUMN = 32;
+
+    /**
+     * 文件头的大小，取最小页面大小使各个页面在文件中保持4KB对齐
+     */
+    public static final int HEADER_SIZE = BufferPool.MIN_PAGE_SIZE;
+
+    /**
+     * 内存映射模式下每个映射区域的大小，是所有合法页面大小的整数倍，页面不会跨越两个区域
+     */
+    private static final long MAP_REGION_SIZE = 64L << 20;
+
     private final File file;
     private final TupleDesc tupleDesc;
     private final BufferPool bufferPool;
 
+    /**
+     * 该文件的页面大小
+     */
+    private final int pageSize;
+
+    /**
+     * 第一个页面在文件中的偏移量（旧格式文件为0）
+     */
+    private final int headerSize;
+
+    /**
+     * 该文件的页面格式，新文件写入文件头时记录
+     */
+    private final int pageFormat;
+
+    /**
+     * 该文件的压缩方式
+     */
+    private final int compression;
+
+    /**
+     * 压缩存储时记录各个页面位置的页面目录，不压缩的文件为null
+     */
+    private final PageDirectory pageDirectory;
+
+    /**
+     * 字典编码的列（第i位为1表示第i列使用字典编码），新文件写入文件头时记录
+     */
+    private final int dictionaryMask;
+
+    /**
+     * 各列的字典，下标为列索引，不使用字典编码的列为null
+     */
+    private final StringDictionary[] dictionaries;
+
+    /**
+     * 为true时通过内存映射读取页面，由配置mydb.mmap决定
+     */
+    private final boolean mmap;
+
+    /**
+     * 该文件的通道由数据库的FileChannelPool统一缓存和关闭
+     */
+    private final FileChannelPool channelPool;
+
+    /**
+     * 内存映射模式下已映射的区域，第i个区域从第一个页面之后的i * MAP_REGION_SIZE字节开始
+     */
+    private MappedByteBuffer[] regions = new MappedByteBuffer[0];
+
+    /**
+     * 记录哪些页面有空槽，插入元组时直接找到有空间的页面
+     */
+    private final FreeSpaceMap freeSpaceMap;
+
     /**
      * HeapFile构造函数，存放再特定文件中
+     * 已存在的文件使用文件头中记录的页面大小，新文件使用BufferPool.getPageSize()
      * @param file 磁盘中的文件，用于存放HeapFile
      */
     public HeapFile(File file, TupleDesc tupleDesc) {
+        this(file, tupleDesc, false);
+    }
+
+    /**
+     * @param file 磁盘中的文件，用于存放HeapFile
+     * @param tupleDesc 元组描述
+     * @param compressed 新文件是否压缩存储页面，已存在的文件使用文件头中记录的压缩方式
+     */
+    public HeapFile(File file, TupleDesc tupleDesc, boolean compressed) {
+        this(file, tupleDesc, compressed, new int[0]);
+    }
+
+    /**
+     * @param file 磁盘中的文件，用于存放HeapFile
+     * @param tupleDesc 元组描述
+     * @param compressed 新文件是否压缩存储页面，已存在的文件使用文件头中记录的压缩方式
+     * @param dictionaryColumns 新文件中使用字典编码的字符串列，已存在的文件使用文件头中记录的列
+     */
+    public HeapFile(File file, TupleDesc tupleDesc, boolean compressed, int[] dictionaryColumns) {
+        this(file, tupleDesc, PAGE_FORMAT_HEAP, compressed, dictionaryColumns);
+    }
+
+    /**
+     * @param file 磁盘中的文件
+     * @param tupleDesc 元组描述
+     * @param pageFormat 页面格式，需要与已存在文件的文件头中记录的页面格式一致
+     * @param compressed 新文件是否压缩存储页面，已存在的文件使用文件头中记录的压缩方式
+     * @param dictionaryColumns 新文件中使用字典编码的字符串列，已存在的文件使用文件头中记录的列
+     * @throws IllegalStateException 已存在文件的页面格式不同时抛出
+     * @throws IllegalArgumentException 字典编码的列不是前32列中的字符串列时抛出
+     */
+    protected HeapFile(File file, TupleDesc tupleDesc, int pageFormat, boolean compressed, int[] dictionaryColumns) {
         this.file = file;
         this.tupleDesc = tupleDesc;
         this.bufferPool = Database.getBufferPool();
+        this.channelPool = Database.getFileChannelPool();
+        int size = BufferPool.getPageSize();
+        int offset = HEADER_SIZE;
+        int format = pageFormat;
+        int compression = compressed ? COMPRESSION_LZ4 : COMPRESSION_NONE;
+        int mask = 0;
+        for (int column: dictionaryColumns) {
+            if (column < 0 || column >= Math.min(tupleDesc.getFieldsNum(), MAX_DICTIONARY_COLUMN)
+                    || tupleDesc.getFieldType(column) != Type.STRING_TYPE) {
+                throw new IllegalArgumentException("column " + column + " can not be dictionary encoded");
+            }
+            mask |= 1 << column;
+        }
+        if (file.length() > 0) {
+            // 读取已存在文件的文件头
+            try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+                if (file.length() >= HEADER_SIZE && dis.readInt() == FILE_MAGIC) {
+                    dis.readInt(); // 版本号
+                    size = BufferPool.checkPageSize(dis.readInt());
+                    format = dis.readInt(); // 没有记录页面格式的文件该位置为0，即PAGE_FORMAT_HEAP
+                    compression = dis.readInt();
+                    mask = dis.readInt();
+                } else {
+                    // 旧格式文件
+                    size = BufferPool.DEFAULT_PAGE_SIZE;
+                    offset = 0;
+                    format = PAGE_FORMAT_HEAP;
+                    compression = COMPRESSION_NONE;
+                    mask = 0;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (format != pageFormat) {
+            throw new IllegalStateException(String.format("file %s is stored in page format %d, expected %d",
+                    file.getPath(), format, pageFormat));
+        }
+        this.pageSize = size;
+        this.headerSize = offset;
+        this.pageFormat = pageFormat;
+        this.compression = compression;
+        this.dictionaryMask = mask;
+        this.dictionaries = new StringDictionary[tupleDesc.getFieldsNum()];
+        for (int i=0; i<dictionaries.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                dictionaries[i] = new StringDictionary(StringDictionary.fileOf(file, i), channelPool);
+            }
+        }
+        this.pageDirectory = (compression == COMPRESSION_NONE) ? null :
+                new PageDirectory(PageDirectory.fileOf(file), file, channelPool, size, offset);
+        // 压缩的页面需要解压，不使用内存映射
+        this.mmap = Config.get().isMmap() && pageDirectory == null;
+        this.freeSpaceMap = new FreeSpaceMap(FreeSpaceMap.fileOf(file), channelPool,
+                this::getPagesNum, this::hasFreeSpace);
+    }
+
+    /**
+     * 写入HeapFile的文件头，文件头之后为页面数据
+     * @param os 文件输出流，需要位于文件起始位置
+     * @param pageSize 该文件的页面大小
+     */
+    public static void writeHeader(OutputStream os, int pageSize) throws IOException {
+        os.write(createHeader(pageSize, PAGE_FORMAT_HEAP, COMPRESSION_NONE, 0).array());
+    }
+
+    /**
+     * @return 返回记录了页面大小、页面格式、压缩方式和字典编码的列的文件头
+     */
+    static ByteBuffer createHeader(int pageSize, int pageFormat, int compression, int dictionaryMask) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE); // 剩余部分用0填充
+        header.putInt(FILE_MAGIC);
+        header.putInt(FILE_VERSION);
+        header.putInt(BufferPool.checkPageSize(pageSize));
+        header.putInt(pageFormat);
+        header.putInt(compression);
+        header.putInt(dictionaryMask);
+        return header.clear();
+    }
+
+    /**
+     * @param column 列索引
+     * @return 返回该列的字典，该列不使用字典编码时返回null
+     */
+    public StringDictionary getDictionary(int column) {
+        return dictionaries[column];
+    }
+
+    /**
+     * 页面根据表的字典解析和写入字典编码的列
+     * @param tableId 表ID
+     * @return 返回各列的字典（下标为列索引，不使用字典编码的列为null），表不是HeapFile时返回null
+     */
+    static StringDictionary[] getDictionaries(int tableId) {
+        DbFile dbFile = Database.getCatalog().getDbFile(tableId);
+        return (dbFile instanceof HeapFile heapFile) ? heapFile.dictionaries : null;
+    }
+
+    /**
+     * @return 该文件压缩存储页面则返回true
+     */
+    public boolean isCompressed() {
+        return pageDirectory != null;
+    }
+
+    /**
+     * 根据页面数据创建该文件格式的页面，LogFile恢复页面时也使用页面类的(PageId, byte[])构造函数
+     * @param pid 页面ID
+     * @param data 页面数据
+     * @return 返回创建的页面
+     */
+    protected TuplePage createPage(HeapPageId pid, byte[] data) throws IOException {
+        return new HeapPage(pid, data);
+    }
+
+    /**
+     * 创建存放在缓冲池堆外帧中的页面，页面数据已经读入帧中
+     * @param pid 页面ID
+     * @param frame 缓冲池分配的堆外帧
+     * @return 返回创建的页面
+     */
+    protected TuplePage createPage(HeapPageId pid, ByteBuffer frame) {
+        return new HeapPage(pid, frame);
+    }
+
+    /**
+     * @return 返回该文件的页面大小
+     */
+    public int getPageSize() {
+        return pageSize;
     }
 
     /**
@@ -52,53 +326,164 @@ public class HeapFile implements DbFile {
     @Override
     public Page readPage(PageId pid) {
         // 计算Page的偏移量
-        int pageSize = BufferPool.getPageSize();
         int pageIndex = pid.getPageIndex();
-        int offset = pageSize * pageIndex;
-        Page page = null;
-        // 用于访问文件数据，只有RandomAccessFile才有seek方法
-        RandomAccessFile randomAccessFile = null;
+        long offset = headerSize + (long) pageSize * pageIndex;
+        if (mmap) {
+            return readMappedPage((HeapPageId) pid);
+        }
+        ByteBuffer frame = bufferPool.allocateFrame(pageSize);
         try {
-            randomAccessFile = new RandomAccessFile(file, "r");
+            if (pageDirectory != null) {
+                if (frame != null) {
+                    // 堆外缓冲池模式，页面直接解压到堆外帧中
+                    pageDirectory.readPage(pageIndex, frame);
+                    return createPage((HeapPageId) pid, frame);
+                }
+                byte[] data = new byte[pageSize];
+                pageDirectory.readPage(pageIndex, data);
+                return createPage((HeapPageId) pid, data);
+            }
+            FileChannel channel = channelPool.get(file);
+            if (frame != null) {
+                // 堆外缓冲池模式，页面数据直接读入堆外帧
+                FileChannelPool.readFully(channel, frame.duplicate().clear(), offset);
+                return createPage((HeapPageId) pid, frame);
+            }
             byte[] data = new byte[pageSize];
-            randomAccessFile.seek(offset);
-            randomAccessFile.read(data);
-            page = new HeapPage((HeapPageId) pid, data) ;
+            FileChannelPool.readFully(channel, ByteBuffer.wrap(data), offset);
+            return createPage((HeapPageId) pid, data);
         } catch (IOException e) {
+            if (frame != null) {
+                bufferPool.freeFrame(frame);
+            }
             e.printStackTrace();
-        } finally {
-            try {
-                assert randomAccessFile != null;
-                randomAccessFile.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 从内存映射区域中拷贝页面数据，文件中不存在的页面返回全0页面
+     */
+    private Page readMappedPage(HeapPageId pid) {
+        long position = (long) pageSize * pid.getPageIndex();
+        ByteBuffer frame = bufferPool.allocateFrame(pageSize);
+        try {
+            MappedByteBuffer region = mappedRegion(position + pageSize);
+            int regionOffset = (int) (position % MAP_REGION_SIZE);
+            if (frame != null) {
+                if (region == null) {
+                    frame.put(0, HeapPage.createEmptyPageData(pageSize));
+                } else {
+                    frame.put(0, region, regionOffset, pageSize);
+                }
+                return createPage(pid, frame);
+            }
+            byte[] data = HeapPage.createEmptyPageData(pageSize);
+            if (region != null) {
+                region.get(regionOffset, data);
+            }
+            return createPage(pid, data);
+        } catch (IOException e) {
+            if (frame != null) {
+                bufferPool.freeFrame(frame);
+            }
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 返回包含页面数据前end个字节的映射区域，文件增长后重新映射该区域
+     * @param end 需要的数据末尾相对第一个页面的偏移量
+     * @return 返回映射区域，文件长度不足时返回null
+     */
+    private synchronized MappedByteBuffer mappedRegion(long end) throws IOException {
+        FileChannel channel = channelPool.get(file);
+        int index = (int) ((end - 1) / MAP_REGION_SIZE);
+        long start = index * MAP_REGION_SIZE;
+        if (index >= regions.length) {
+            regions = Arrays.copyOf(regions, index + 1);
+        }
+        MappedByteBuffer region = regions[index];
+        if (region == null || start + region.capacity() < end) {
+            long fileLength = channel.size() - headerSize;
+            if (fileLength < end) {
+                return null;
             }
+            // 文件增长后重新映射整个区域，旧的映射由GC回收
+            long size = Math.min(MAP_REGION_SIZE, fileLength - start);
+            region = channel.map(FileChannel.MapMode.READ_ONLY, headerSize + start, size);
+            regions[index] = region;
         }
-        return page;
+        return region;
     }
 
     @Override
     public void writePage(Page page) throws IOException {
-        int pageSize = BufferPool.getPageSize();
         int pageIndex = page.getId().getPageIndex();
-        int offset = pageSize * pageIndex;
-        RandomAccessFile randomAccessFile = null;
+        if (pageDirectory != null) {
+            pageDirectory.writePage(pageIndex, page.getPageData());
+            return;
+        }
+        long offset = headerSize + (long) pageSize * pageIndex;
+        FileChannelPool.writeFully(channelPool.get(file), ByteBuffer.wrap(page.getPageData()), offset);
+    }
+
+    /**
+     * 直接读取磁盘上的页面检查是否还有空间，用于初始化空闲空间映射
+     */
+    private boolean hasFreeSpace(int pageIndex) {
         try {
-            randomAccessFile = new RandomAccessFile(file, "rw");
-            randomAccessFile.seek(offset);
-            randomAccessFile.write(page.getPageData());
-        } finally {
-            assert randomAccessFile != null;
-            randomAccessFile.close();
+            byte[] data = new byte[pageSize];
+            if (pageDirectory != null) {
+                pageDirectory.readPage(pageIndex, data);
+            } else {
+                long offset = headerSize + (long) pageSize * pageIndex;
+                FileChannelPool.readFully(channelPool.get(file), ByteBuffer.wrap(data), offset);
+            }
+            return createPage(new HeapPageId(getId(), pageIndex), data).hasFreeSpace();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return true;
         }
     }
 
+    /**
+     * 在文件末尾添加一个空页面，新文件会先写入文件头
+     * 多个事务同时扩展文件时需要互斥，保证每个事务得到不同的新页面
+     * @return 返回新页面的索引
+     */
+    private synchronized int appendEmptyPage() throws IOException {
+        FileChannel channel = channelPool.get(file);
+        if (channel.size() == 0 && headerSize > 0) {
+            FileChannelPool.writeFully(channel, createHeader(pageSize, pageFormat, compression, dictionaryMask), 0);
+        }
+        if (pageDirectory != null) {
+            return pageDirectory.appendEmptyPage();
+        }
+        int pageIndex = getPagesNum();
+        long offset = headerSize + (long) pageSize * pageIndex;
+        FileChannelPool.writeFully(channel, ByteBuffer.wrap(HeapPage.createEmptyPageData(pageSize)), offset);
+        return pageIndex;
+    }
+
     /**
      * @return 返回存放在该文件的Page数量
      */
     public int getPagesNum() {
-        long fileLength = this.file.length();
-        int pagesNum = (int) Math.ceil(fileLength * 1.0 / BufferPool.getPageSize());
+        if (pageDirectory != null) {
+            try {
+                return pageDirectory.getPagesNum();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return 0;
+            }
+        }
+        long fileLength = this.file.length() - headerSize;
+        if (fileLength <= 0) {
+            return 0;
+        }
+        int pagesNum = (int) Math.ceil(fileLength * 1.0 / pageSize);
         return pagesNum;
     }
 
@@ -112,35 +497,37 @@ public class HeapFile implements DbFile {
     public List<Page> insertTuple(TransactionId tid, Tuple tuple)
             throws DbException, IOException, TransactionException {
         List<Page> modifiedPages = new ArrayList<>(); // 由于插入了新的元组而将会被修改的页面列表
-        int pagesNum = getPagesNum();
-        for (int i=0; i<pagesNum; i++) {
-            HeapPage page = (HeapPage) bufferPool.getPage(
+        // 通过空闲空间映射找到有空间的页面
+        int i = freeSpaceMap.nextFreePage(0);
+        while (i >= 0) {
+            TuplePage page = (TuplePage) bufferPool.getPage(
                     tid, new HeapPageId(this.getId(), i), Permissions.READ_WRITE
             );
-            // 页面没有空槽
-            if (page.getEmptySlotsNum() == 0) {
-                // 页面已满，该事务寻找下一个可以插入元组的页面
+            // 页面没有空间
+            if (!page.hasFreeSpace()) {
+                // 空闲空间映射已过时，修正后寻找下一个可以插入元组的页面
+                freeSpaceMap.setHasSpace(i, false);
                 // 页面已满需要释放该事务在页面上的锁，允许其它事务获取该页面，避免死锁
                 bufferPool.releasePage(tid, page.getId());
+                i = freeSpaceMap.nextFreePage(i + 1);
                 continue;
             }
             page.insertTuple(tuple);
+            if (!page.hasFreeSpace()) {
+                freeSpaceMap.setHasSpace(i, false);
+            }
             modifiedPages.add(page);
             return modifiedPages;
         }
-        // 缓冲池中的页面都满了，需要创建新的页面并写入文件
-        BufferedOutputStream outputStream = new BufferedOutputStream(
-                new FileOutputStream(file, true));
-        byte[] emptyPageData = HeapPage.createEmptyPageData();
-        // 向文件末尾添加数据
-        outputStream.write(emptyPageData);
-        outputStream.close();
+        // 所有页面都满了，需要创建新的页面并写入文件
+        int pageIndex = appendEmptyPage();
         // 将创建的空页面数据加载到cache中
-        HeapPage page = (HeapPage) bufferPool.getPage(
+        TuplePage page = (TuplePage) bufferPool.getPage(
                 tid,
-                new HeapPageId(this.getId(), getPagesNum() - 1),
+                new HeapPageId(this.getId(), pageIndex),
                 Permissions.READ_WRITE);
         page.insertTuple(tuple);
+        freeSpaceMap.setHasSpace(pageIndex, page.hasFreeSpace());
         modifiedPages.add(page);
         return modifiedPages;
     }
@@ -154,16 +541,32 @@ public class HeapFile implements DbFile {
     @Override
     public List<Page> deleteTuple(TransactionId tid, Tuple tuple)
             throws DbException, IOException, TransactionException {
-        HeapPage page = (HeapPage) bufferPool.getPage(
+        TuplePage page = (TuplePage) bufferPool.getPage(
                 tid,
                 tuple.getRecordId().getPageId(),
                 Permissions.READ_WRITE);
         page.deleteTuple(tuple);
+        freeSpaceMap.setHasSpace(page.getId().getPageIndex(), true);
         ArrayList<Page> modifiedPages = new ArrayList<>();
         modifiedPages.add(page);
         return modifiedPages;
     }
 
+    /**
+     * 根据RecordId读取元组，用于通过索引查找到的RecordId访问表中的元组
+     * @param tid 事务ID
+     * @param recordId 元组的RecordId
+     * @return 返回元组，元组已被删除时返回null
+     */
+    public Tuple getTuple(TransactionId tid, RecordId recordId) throws DbException, TransactionException {
+        PageId pid = recordId.getPageId();
+        if (pid.getTableId() != getId() || pid.getPageIndex() < 0 || pid.getPageIndex() >= getPagesNum()) {
+            return null;
+        }
+        TuplePage page = (TuplePage) bufferPool.getPage(tid, pid, Permissions.READ_ONLY);
+        return page.getTuple(recordId.getTupleNo());
+    }
+
     @Override
     public DbFileIterator iterator(TransactionId tid) {
         return new HeapFileIterator(this, tid);
@@ -179,24 +582,35 @@ public class HeapFile implements DbFile {
         private Iterator<Tuple> iterator;
         private int pageIndex;
 
+        /**
+         * 顺序扫描时异步预读后续页面
+         */
+        private final ReadAhead readAhead;
+
         public HeapFileIterator(HeapFile heapFile, TransactionId tid) {
             this.heapFile = heapFile;
             this.tid = tid;
+            this.readAhead = new ReadAhead(Database.getBufferPool(),
+                    index -> new HeapPageId(heapFile.getId(), index));
         }
 
         private Iterator<Tuple> getPageTuples(int pageIndex) throws DbException, TransactionException {
-            if (pageIndex < 0 || pageIndex >= heapFile.getPagesNum()) {
+            int pagesNum = heapFile.getPagesNum();
+            if (pageIndex < 0 || pageIndex >= pagesNum) {
                 String errorMsg = String.format("page %d do not exists in heap file %d", pageIndex, heapFile.getId());
                 throw new DbException(errorMsg);
             }
+            // 先发出预读请求，使后续页面的读取与当前页面的读取和处理重叠
+            readAhead.onAccess(pageIndex, pagesNum);
             HeapPageId pid = new HeapPageId(heapFile.getId(), pageIndex);
-            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+            TuplePage page = (TuplePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
             return page.iterator();
         }
 
         @Override
         public void open() throws DbException, TransactionException {
             this.pageIndex = 0;
+            readAhead.reset();
             this.iterator = getPageTuples(pageIndex);
         }
 
@@ -0,0 +1,284 @@
+package mydb.storage;
+
+import mydb.common.Type;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.*;
+
+/**
+ * 批量导入：将类csv文本文件转换为HeapFile（定长槽的HeapPage格式），输出与HeapFileEncoder相同
+ * 输入文件按块（CHUNK_SIZE字节，在换行处切分）读取，各块由多个线程并行解析为定长的记录，
+ * 调用线程按输入顺序将各块的记录交给HeapPageWriter组装为页面并批量顺序写入。
+ * 同时最多有2*threads个块在解析或等待组装，内存占用与输入文件大小无关
+ * @see HeapFileEncoder
+ * @see HeapPageWriter
+ */
+public class HeapFileLoader {
+
+    /**
+     * 每个输入块的字节数，块在最后一个换行处截断，剩余部分拼接到下一个块
+     */
+    private static final int CHUNK_SIZE = 4 << 20;
+
+    private final Type[] types;
+
+    private final int pageSize;
+
+    private final byte fieldSeparator;
+
+    private final int threads;
+
+    /**
+     * 每条记录（元组）的字节数
+     */
+    private final int recordSize;
+
+
+    /**
+     * @param types 字段类型数组
+     * @param pageSize 输出文件的页面大小
+     * @param fieldSeparator 用于分隔字段的符号，如逗号
+     * @param threads 解析输入的线程数量
+     * @throws IllegalArgumentException 一个页面放不下一条记录时抛出
+     */
+    public HeapFileLoader(Type[] types, int pageSize, char fieldSeparator, int threads) {
+        this.types = types.clone();
+        this.pageSize = BufferPool.checkPageSize(pageSize);
+        this.fieldSeparator = (byte) fieldSeparator;
+        this.threads = Math.max(1, threads);
+        int size = 0;
+        for (Type type: types) {
+            size += type.getLen();
+        }
+        this.recordSize = size;
+        if (HeapPageWriter.slotsNum(pageSize, recordSize) == 0) {
+            throw new IllegalArgumentException("record of " + recordSize + " bytes does not fit in a page");
+        }
+    }
+
+    /**
+     * 使用所有CPU核解析输入
+     */
+    public HeapFileLoader(Type[] types, int pageSize, char fieldSeparator) {
+        this(types, pageSize, fieldSeparator, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 将文本输入文件转换为HeapFile，输入文件的每一行表示一个元组，空行被忽略
+     * @param inFile 文本输入文件
+     * @param outFile 输出文件，已存在时被覆盖
+     * @return 返回导入的元组数量
+     * @throws IOException 读写文件失败，或者某一行的字段数量与types不一致时抛出
+     */
+    public long load(File inFile, File outFile) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-load");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FileChannel in = FileChannel.open(inFile.toPath(), StandardOpenOption.READ);
+             FileChannel out = HeapPageWriter.create(outFile)) {
+            HeapPageWriter writer = new HeapPageWriter(out, pageSize, recordSize);
+            Deque<Future<Chunk>> pending = new ArrayDeque<>();
+            byte[] carry = new byte[0];
+            long position = 0;
+            boolean eof = false;
+            while (!eof) {
+                byte[] block = Arrays.copyOf(carry, carry.length + CHUNK_SIZE);
+                int readBytes = readBlock(in, block, carry.length, position);
+                position += readBytes;
+                int length = carry.length + readBytes;
+                eof = readBytes < CHUNK_SIZE;
+                int end = eof ? length : lastLineEnd(block, length);
+                if (end == 0) {
+                    // 一行比整个块还长，与下一个块拼接后再切分
+                    carry = Arrays.copyOf(block, length);
+                    continue;
+                }
+                carry = Arrays.copyOfRange(block, end, length);
+                pending.add(executor.submit(() -> parse(block, end)));
+                if (pending.size() >= threads * 2) {
+                    append(writer, await(pending.poll()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                append(writer, await(pending.poll()));
+            }
+            writer.finish();
+            return writer.getRecordsNum();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 从position开始读取输入，直到填满block或者到达文件末尾
+     * @return 返回读取的字节数
+     */
+    private static int readBlock(FileChannel in, byte[] block, int offset, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(block, offset, block.length - offset);
+        while (buffer.hasRemaining()) {
+            int n = in.read(buffer, position + buffer.position() - offset);
+            if (n < 0) {
+                break;
+            }
+        }
+        return buffer.position() - offset;
+    }
+
+    /**
+     * @return 返回最后一个换行符之后的位置，没有换行符时返回0
+     */
+    private static int lastLineEnd(byte[] block, int length) {
+        for (int i=length-1; i>=0; i--) {
+            if (block[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static void append(HeapPageWriter writer, Chunk chunk) throws IOException {
+        writer.append(chunk.records, chunk.recordsNum);
+    }
+
+    private static Chunk await(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("bulk load is interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * 一个输入块解析得到的记录，记录依次存放，每条recordSize字节
+     */
+    private static class Chunk {
+        final byte[] records;
+        final int recordsNum;
+
+        Chunk(byte[] records, int recordsNum) {
+            this.records = records;
+            this.recordsNum = recordsNum;
+        }
+    }
+
+    /**
+     * 将输入块[0, length)中的各行解析为HeapPage槽中的记录格式
+     */
+    private Chunk parse(byte[] block, int length) throws IOException {
+        byte[] records = new byte[recordSize * 1024];
+        int recordsNum = 0;
+        int pos = 0;
+        while (pos < length) {
+            int lineEnd = pos;
+            while (lineEnd < length && block[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int end = lineEnd;
+            if (end > pos && block[end - 1] == '\r') {
+                end--;
+            }
+            if (end > pos) {
+                if ((recordsNum + 1) * recordSize > records.length) {
+                    records = Arrays.copyOf(records, records.length * 2);
+                }
+                parseLine(block, pos, end, records, recordsNum * recordSize);
+                recordsNum++;
+            }
+            pos = lineEnd + 1;
+        }
+        return new Chunk(records, recordsNum);
+    }
+
+    /**
+     * 解析一行[start, end)，将各个字段写入records的offset位置（记录的其余字节已经为0）
+     */
+    private void parseLine(byte[] block, int start, int end, byte[] records, int offset) throws IOException {
+        int fieldStart = start;
+        for (int i=0; i<types.length; i++) {
+            int fieldEnd = fieldStart;
+            while (fieldEnd < end && block[fieldEnd] != fieldSeparator) {
+                fieldEnd++;
+            }
+            if (fieldEnd == end && i < types.length - 1) {
+                throw new IOException("line has fewer than " + types.length + " fields: " + line(block, start, end));
+            }
+            // 去除首尾空格
+            int from = fieldStart;
+            int to = fieldEnd;
+            while (from < to && block[from] <= ' ') {
+                from++;
+            }
+            while (to > from && block[to - 1] <= ' ') {
+                to--;
+            }
+            if (types[i] == Type.INT_TYPE) {
+                putInt(records, offset, parseInt(block, from, to));
+            } else {
+                // 字符串字段超过STRING_LEN的部分被截断，其余字节用0填充
+                int len = Math.min(to - from, Type.STRING_LEN);
+                putInt(records, offset, len);
+                System.arraycopy(block, from, records, offset + 4, len);
+            }
+            offset += types[i].getLen();
+            fieldStart = fieldEnd + 1;
+        }
+        if (fieldStart <= end) {
+            throw new IOException("line has more than " + types.length + " fields: " + line(block, start, end));
+        }
+    }
+
+    private static int parseInt(byte[] block, int from, int to) {
+        int i = from;
+        boolean negative = (i < to && block[i] == '-');
+        if (negative) {
+            i++;
+        }
+        long value = 0;
+        boolean valid = i < to && to - i <= 10;
+        for (; valid && i<to; i++) {
+            int digit = block[i] - '0';
+            if (digit < 0 || digit > 9) {
+                valid = false;
+            } else {
+                value = value * 10 + digit;
+            }
+        }
+        value = negative ? -value : value;
+        if (valid && value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return (int) value;
+        }
+        // 非常见格式（如"+1"）交给Integer.parseInt处理
+        String str = line(block, from, to);
+        try {
+            return Integer.parseInt(str);
+        } catch (NumberFormatException e) {
+            System.out.println("wrong line: " + str);
+            return 0;
+        }
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static String line(byte[] block, int start, int end) {
+        return new String(block, start, end - start, java.nio.charset.StandardCharsets.ISO_8859_1);
+    }
+}
@@ -2,32 +2,76 @@ package mydb.storage;
 
 import mydb.common.Database;
 import mydb.common.DbException;
+import mydb.common.Type;
 import mydb.transaction.TransactionId;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 
 /**
  * 每个HeapPage实例都存放了HeapFiles的一个页面的数据
+ * 页面的原始字节（header位图和各个槽）是页面内容的唯一来源，元组只在访问时才从字节中解析（lazy），
+ * 缓存的页面不会持有Tuple、Field等对象。getInt、getString等方法可以直接读取指定槽的单个字段，
+ * 迭代器返回的元组也只在访问字段时才解析该字段。页面字节可以位于堆内数组中，
+ * 也可以位于缓冲池堆外内存区（PageArena）的帧（frame）中。
+ * 字典编码的字符串列在槽中只占4字节，存放字符串在表的字典（StringDictionary）中的编码
  * @see HeapFile
  * @see BufferPool
  */
-public class HeapPage implements Page {
+public class HeapPage implements TuplePage, FieldReader {
 
     final HeapPageId pid;
 
     final TupleDesc tupleDesc;
 
     /**
-     * HeapPage的header本质是一个位图（bitmap），用于标记哪些槽（slot）为空或已使用
+     * 各列的字典，不使用字典编码的列为null
      */
-    final byte[] header;
+    private final StringDictionary[] dictionaries;
 
     /**
-     * 存放在该页面的元组
+     * 页面的原始字节，开头为header位图（bitmap），用于标记哪些槽（slot）为空或已使用，之后依次为各个槽
+     * 页面从堆外帧中移出缓冲池时会被替换为堆内的拷贝（见detach），因此使用volatile
      */
-    final Tuple[] tuples;
+    private volatile ByteBuffer data;
+
+    /**
+     * 页面所在的堆外帧，堆内页面为null
+     */
+    private ByteBuffer frame;
+
+    /**
+     * 页面是否已经被缓冲池交给调用者，决定页面离开缓冲池时是否需要拷贝其数据
+     */
+    private volatile boolean accessed;
+
+    /**
+     * 页面大小（字节数），由所在HeapFile决定
+     */
+    final int pageSize;
+
+    /**
+     * 每个元组所占字节数
+     */
+    final int tupleSize;
+
+    /**
+     * header的字节数，即第一个槽在页面中的偏移量
+     */
+    final int headerSize;
+
+    /**
+     * 每个字段在元组中的偏移量
+     */
+    final int[] fieldOffsets;
+
+    /**
+     * 每个字段在页面中占用的字节数，字典编码的列为4
+     */
+    final int[] fieldLengths;
 
     /**
      * 槽的数量
@@ -38,8 +82,11 @@ public class HeapPage implements Page {
      */
     int emptySlotsNum;
 
+    /**
+     * 页面修改前的镜像（写时复制）：页面第一次被修改时才拷贝修改前的字节，
+     * 为null表示页面自上次setBeforeImage以来没有被修改，修改前的镜像即为当前内容
+     */
     byte[] oldData;
-    private final Byte oldDataLock = (byte) 0;
 
     /**
      * 用于标记该页面是否dirty
@@ -52,38 +99,54 @@ public class HeapPage implements Page {
     TransactionId tid;
 
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data), null);
+    }
+
+    /**
+     * 创建存放在堆外帧中的页面，页面数据已经读入帧中
+     * @param id 页面ID
+     * @param frame 缓冲池分配的堆外帧
+     */
+    HeapPage(HeapPageId id, ByteBuffer frame) {
+        this(id, frame, frame);
+    }
+
+    HeapPage(HeapPageId id, ByteBuffer data, ByteBuffer frame) {
         this.pid = id;
         this.tupleDesc = Database.getCatalog().getTupleDesc(id.getTableId());
-        this.slotsNum = getTuplesNum();
-        this.emptySlotsNum = slotsNum;
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
-        // 对该页面的头部槽进行分配并读取
-        this.header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++) {
-            header[i] = dis.readByte();
+        StringDictionary[] tableDictionaries = HeapFile.getDictionaries(id.getTableId());
+        this.dictionaries = (tableDictionaries != null) ?
+                tableDictionaries : new StringDictionary[tupleDesc.getFieldsNum()];
+        this.data = data;
+        this.frame = frame;
+        this.pageSize = data.capacity();
+        this.fieldOffsets = new int[tupleDesc.getFieldsNum()];
+        this.fieldLengths = new int[tupleDesc.getFieldsNum()];
+        int size = 0;
+        for (int i=0; i<fieldOffsets.length; i++) {
+            fieldOffsets[i] = size;
+            fieldLengths[i] = (dictionaries[i] != null) ? 4 : tupleDesc.getFieldType(i).getLen();
+            size += fieldLengths[i];
         }
-        this.tuples = new Tuple[slotsNum];
-        try {
-            // 为该页面的元组分配空间并读取
-            for (int i=0; i<tuples.length; i++) {
-                tuples[i] = readNextTuple(dis, i);
-            }
-        } catch (NoSuchElementException e) {
-            e.printStackTrace();
+        this.tupleSize = size;
+        this.slotsNum = getTuplesNum();
+        this.headerSize = getHeaderSize();
+        int usedSlotsNum = 0;
+        for (int i=0; i<headerSize; i++) {
+            usedSlotsNum += Integer.bitCount(data.get(i) & 0xFF);
         }
-        dis.close();
+        this.emptySlotsNum = slotsNum - usedSlotsNum;
         this.dirty = false;
         this.tid = null;
-        setBeforeImage(); // 拷贝一份旧数据
+        this.oldData = null; // 修改前的镜像在第一次修改时才拷贝
     }
 
     /**
      * @return 返回该页面的元组（tuple）数量
      */
     private int getTuplesNum() {
-        int pageSize = BufferPool.getPageSize(); // 页面字节大小
-        // tupleDesc.getSize()为每个元组所占字节数量
-        int tuplesNum = (int) Math.floor(pageSize * 8 * 1.0 / (tupleDesc.getSize() * 8 + 1));
+        // tupleSize为每个元组所占字节数量
+        int tuplesNum = (int) Math.floor(pageSize * 8 * 1.0 / (tupleSize * 8 + 1));
         return tuplesNum;
     }
 
@@ -105,69 +168,24 @@ public class HeapPage implements Page {
     /**
      * 获得一个字节数组用于表示该页面的内容数据，用于对该页面序列化到磁盘
      * 可以将getPageData生成的字节数组传递给HeapPage构造函数，让它生成一个相同的HeapPage对象
+     * 后台刷脏线程可能在事务修改页面时序列化该页面，因此与insertTuple、deleteTuple互斥
      * @return 返回一个字节数组
      */
     @Override
-    public byte[] getPageData() {
-        int pageSize = BufferPool.getPageSize(); // 缓冲池使用的页面大小
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(pageSize);
-        DataOutputStream dos = new DataOutputStream(baos);
-        // 创建该页面的头部header
-        for (byte b: header) {
-            try {
-                dos.writeByte(b);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        // 创建tuples
-        for (int i=0; i<tuples.length; i++) {
-            // 空槽
-            if (!isSlotUsed(i)) {
-                for (int j=0; j<tupleDesc.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
-                continue;
-            }
-            // 非空槽
-            for (int j=0; j<tupleDesc.getFieldsNum(); j++) {
-                Field field = tuples[i].getField(j);
-                try {
-                    field.serialize(dos);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-        // 填补
-        // pageSize - slotNum * tupleDesc.getSize()
-        int zeroLen = BufferPool.getPageSize() - (header.length + tupleDesc.getSize() * tuples.length);
-        byte[] zeros = new byte[zeroLen];
-        try {
-            dos.write(zeros, 0, zeroLen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        try {
-            // 数据写入完毕，将缓冲数据立即写到目标输出流中，不在缓冲区继续等待
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return baos.toByteArray();
+    public synchronized byte[] getPageData() {
+        // 页面字节即为磁盘格式（空槽和末尾的填补都为0），直接拷贝即可
+        byte[] pageData = new byte[pageSize];
+        data.get(0, pageData);
+        return pageData;
     }
 
     /**
      * 用于添加新的空页面到文件中
      * 可以将该方法的返回结果传递到HeapFile的构造函数中用于创建空页面
+     * @param pageSize 页面大小
      * @return 返回空页面的全0字节数组
      */
-    public static byte[] createEmptyPageData() {
-        int pageSize = BufferPool.getPageSize();
+    public static byte[] createEmptyPageData(int pageSize) {
         return new byte[pageSize]; // 空页面用全0填充
     }
 
@@ -176,15 +194,24 @@ public class HeapPage implements Page {
      * @param tuple 需要删除的元组
      * @throws DbException 若该元组不在页面中，或元组对应的槽为空，会抛出数据库异常
      */
-    public void deleteTuple(Tuple tuple) throws DbException {
+    @Override
+    public synchronized void deleteTuple(Tuple tuple) throws DbException {
         RecordId recordId = tuple.getRecordId();
         int slotIndex = recordId.getTupleNo();
-        if (recordId.getPageId() != this.pid || !isSlotUsed(slotIndex)) {
+        if (!this.pid.equals(recordId.getPageId()) || !isSlotUsed(slotIndex)) {
             throw new DbException("tuple is not in this page");
         }
-        // 成功删除元组，对应的槽设置为未使用
+        // 槽的字节将被清零，先解析该元组尚未解析的字段
+        tuple.materialize();
+        copyOnWrite();
+        // 成功删除元组，对应的槽设置为未使用，空槽的字节清零以保持磁盘格式不变
         setSlotUsed(slotIndex, false);
-        tuples[slotIndex] = null;
+        for (int i=0; i<fieldLengths.length; i++) {
+            int offset = valueOffset(slotIndex, i);
+            for (int j=0; j<fieldLengths[i]; j++) {
+                data.put(offset + j, (byte) 0);
+            }
+        }
         emptySlotsNum++;
     }
 
@@ -193,7 +220,8 @@ public class HeapPage implements Page {
      * @param tuple 需要新增的元组
      * @throws DbException 若页面已满（无空槽），或者TupleDesc不匹配会抛出异常
      */
-    public void insertTuple(Tuple tuple) throws DbException {
+    @Override
+    public synchronized void insertTuple(Tuple tuple) throws DbException {
         TupleDesc tempTupleDesc = tuple.getTupleDesc();
         if (getEmptySlotsNum() == 0) {
             throw new DbException("this page is full");
@@ -201,12 +229,15 @@ public class HeapPage implements Page {
         if (!tempTupleDesc.equals(this.tupleDesc)) {
             throw new DbException("the tupleDesc is not matched");
         }
+        // 修改页面之前先获取字典编码，写入字典失败时页面保持不变
+        int[] codes = encode(dictionaries, tuple);
         // 找一个空的槽插入新元组
         for (int i=0; i<slotsNum; i++) {
             if (!isSlotUsed(i)) {
+                copyOnWrite();
                 setSlotUsed(i, true);
                 tuple.setRecordId(new RecordId(this.pid, i));
-                this.tuples[i] = tuple;
+                writeTuple(i, tuple, codes);
                 this.emptySlotsNum--;
                 return;
             }
@@ -233,35 +264,131 @@ public class HeapPage implements Page {
     }
 
     /**
-     * 从源文件中获取下一个元组
+     * @return 返回指定槽在页面中的偏移量
+     */
+    private int slotOffset(int slotId) {
+        return headerSize + slotId * tupleSize;
+    }
+
+    /**
+     * 指定槽的指定字段在页面中的偏移量，不检查槽是否已使用。
+     * HeapPage中同一元组的字段连续存放，子类可以改变字段在页面中的排列（见PaxPage）
+     * @return 返回字段在页面中的偏移量
+     */
+    int valueOffset(int slotId, int fieldIndex) {
+        return slotOffset(slotId) + fieldOffsets[fieldIndex];
+    }
+
+    /**
+     * 创建指定槽的元组，字段在访问时才从页面字节中解析
+     * @param slotId 槽的索引，对应的槽需要已被使用
+     * @return 返回新创建的元组对象
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // 如果未设置关联位，则向前读取下一个元组，并返回null
+    private Tuple readTuple(int slotId) {
+        Tuple tuple = new Tuple(tupleDesc, this, slotId);
+        tuple.setRecordId(new RecordId(pid, slotId));
+        return tuple;
+    }
+
+    /**
+     * @return 返回指定槽的指定字段在页面中的偏移量
+     * @throws IllegalArgumentException 槽为空时抛出
+     */
+    private int fieldOffset(int slotId, int fieldIndex) {
         if (!isSlotUsed(slotId)) {
-            // 遍历tupleDesc的字节
-            for (int i=0; i<tupleDesc.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
+            throw new IllegalArgumentException("slot " + slotId + " is empty");
+        }
+        return valueOffset(slotId, fieldIndex);
+    }
+
+    /**
+     * 从页面字节中解析指定槽的单个字段，不会解析该元组的其它字段
+     * @param slotId 已使用的槽的索引
+     * @param fieldIndex 字段索引
+     * @return 返回解析得到的字段
+     */
+    @Override
+    public synchronized Field readField(int slotId, int fieldIndex) {
+        if (dictionaries[fieldIndex] != null) {
+            return new DictionaryField(dictionaries[fieldIndex], data.getInt(fieldOffset(slotId, fieldIndex)));
+        }
+        return tupleDesc.getFieldType(fieldIndex).parse(data, fieldOffset(slotId, fieldIndex));
+    }
+
+    /**
+     * 直接读取指定槽的int字段，不创建Field对象
+     * @param slotId 已使用的槽的索引
+     * @param fieldIndex int类型字段的索引
+     * @return 返回字段的值
+     */
+    public synchronized int getInt(int slotId, int fieldIndex) {
+        checkFieldType(fieldIndex, Type.INT_TYPE);
+        return data.getInt(fieldOffset(slotId, fieldIndex));
+    }
+
+    /**
+     * 直接读取指定槽的字符串字段，不创建Field对象
+     * @param slotId 已使用的槽的索引
+     * @param fieldIndex 字符串类型字段的索引
+     * @return 返回字段的值
+     */
+    public synchronized String getString(int slotId, int fieldIndex) {
+        checkFieldType(fieldIndex, Type.STRING_TYPE);
+        int offset = fieldOffset(slotId, fieldIndex);
+        if (dictionaries[fieldIndex] != null) {
+            return dictionaries[fieldIndex].decode(data.getInt(offset));
+        }
+        int length = Math.min(data.getInt(offset), Type.STRING_LEN);
+        byte[] bytes = new byte[length];
+        data.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private void checkFieldType(int fieldIndex, Type type) {
+        if (tupleDesc.getFieldType(fieldIndex) != type) {
+            throw new IllegalArgumentException("field " + fieldIndex + " is not of type " + type);
+        }
+    }
+
+    /**
+     * 将元组的各个字段写入指定槽，字典编码的列写入字符串的编码
+     * @param codes 字典编码的列的编码，见encode
+     */
+    private void writeTuple(int slotId, Tuple tuple, int[] codes) {
+        for (int i=0; i<fieldOffsets.length; i++) {
+            if (dictionaries[i] != null) {
+                data.putInt(valueOffset(slotId, i), codes[i]);
+            } else {
+                tuple.getField(i).serialize(data, valueOffset(slotId, i));
             }
-            return null;
         }
-        // 读取tuple中的字段（fields）
-        Tuple tuple = new Tuple(tupleDesc);
-        RecordId recordId = new RecordId(pid, slotId);
-        tuple.setRecordId(recordId);
-        try {
-            for (int i=0; i<tupleDesc.getFieldsNum(); i++) {
-                Field field = tupleDesc.getFieldType(i).parse(dis);
-                tuple.setField(i, field);
+    }
+
+    /**
+     * 获取元组中字典编码的列的编码，字段来自同一字典时直接使用其编码，否则在字典中查找或分配编码
+     * @param dictionaries 各列的字典
+     * @param tuple 需要写入页面的元组
+     * @return 返回各列的编码，不使用字典编码的列为0
+     * @throws DbException 写入字典文件失败时抛出
+     */
+    static int[] encode(StringDictionary[] dictionaries, Tuple tuple) throws DbException {
+        int[] codes = new int[dictionaries.length];
+        for (int i=0; i<dictionaries.length; i++) {
+            if (dictionaries[i] == null) {
+                continue;
+            }
+            Field field = tuple.getField(i);
+            if (field instanceof DictionaryField dictionaryField && dictionaryField.getDictionary() == dictionaries[i]) {
+                codes[i] = dictionaryField.getCode();
+                continue;
+            }
+            try {
+                codes[i] = dictionaries[i].encode(((StringField) field).getValue());
+            } catch (IOException e) {
+                throw new DbException("failed to write dictionary: " + e.getMessage());
             }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("field parse error");
         }
-        return tuple;
+        return codes;
     }
 
     /**
@@ -271,6 +398,11 @@ public class HeapPage implements Page {
         return this.emptySlotsNum;
     }
 
+    @Override
+    public boolean hasFreeSpace() {
+        return emptySlotsNum > 0;
+    }
+
     /**
      * @param index 槽的索引
      * @return 若对应索引的槽已被使用则返回true，否则返回false
@@ -279,7 +411,7 @@ public class HeapPage implements Page {
         // 找到槽在bitmap中对应的位置
         int byteIndex = index / 8;
         int bitIndex = index % 8;
-        int isUsed = (header[byteIndex] >> bitIndex) & 1;
+        int isUsed = (data.get(byteIndex) >> bitIndex) & 1;
         return (isUsed == 1);
     }
 
@@ -289,39 +421,102 @@ public class HeapPage implements Page {
      * @param value true为将该槽设置为被使用，false为设置为空槽
      */
     private void setSlotUsed(int index, boolean value) {
-        byte b = header[Math.floorDiv(index, 8)]; // 得到bitmap所在的一行字节
+        int byteIndex = Math.floorDiv(index, 8);
+        byte b = data.get(byteIndex); // 得到bitmap所在的一行字节
         byte mask = (byte) (1 << (index % 8));
         if (value) {
             // 将该槽设置为被使用
-            header[Math.floorDiv(index, 8)] = (byte) (b | mask);
+            data.put(byteIndex, (byte) (b | mask));
         } else {
             // 设置为空槽
-            header[Math.floorDiv(index, 8)] = (byte) (b & (~mask));
+            data.put(byteIndex, (byte) (b & (~mask)));
         }
     }
 
     /**
+     * 元组在迭代时才从页面字节中解析，迭代器本身不持有页面的元组
      * @return 返回该页面所有元组的迭代器（不能返回空槽中的元组）
      */
+    @Override
     public Iterator<Tuple> iterator() {
-        List<Tuple> tupleList = new ArrayList<>();
-        // 将非空的槽对应元组加入到迭代器中
-        for (int i=0; i<slotsNum; i++) {
-            if (isSlotUsed(i)) {
-                tupleList.add(this.tuples[i]);
+        return new Iterator<>() {
+            private int slotId = nextUsedSlot(0);
+
+            @Override
+            public boolean hasNext() {
+                return slotId < slotsNum;
             }
+
+            @Override
+            public Tuple next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Tuple tuple = readTuple(slotId);
+                slotId = nextUsedSlot(slotId + 1);
+                return tuple;
+            }
+        };
+    }
+
+    @Override
+    public synchronized Tuple getTuple(int slotId) {
+        if (slotId < 0 || slotId >= slotsNum || !isSlotUsed(slotId)) {
+            return null;
+        }
+        return readTuple(slotId);
+    }
+
+    /**
+     * @return 返回从start开始的第一个已使用的槽，不存在则返回slotsNum
+     */
+    private int nextUsedSlot(int start) {
+        int slotId = start;
+        while (slotId < slotsNum && !isSlotUsed(slotId)) {
+            slotId++;
+        }
+        return slotId;
+    }
+
+    @Override
+    public void markAccessed() {
+        accessed = true;
+    }
+
+    /**
+     * 页面离开缓冲池时将其数据从堆外帧拷贝到堆内，使仍引用该页面的事务、迭代器和延迟解析的元组可以继续访问，
+     * 之后缓冲池可以将帧分配给其它页面
+     * @return 返回页面原先所在的帧，堆内页面返回null
+     */
+    @Override
+    public synchronized ByteBuffer detach() {
+        ByteBuffer oldFrame = frame;
+        if (oldFrame != null) {
+            // 没有被访问过的页面不会再被任何对象引用，直接丢弃其数据
+            data = accessed ? ByteBuffer.wrap(getPageData()) : null;
+            frame = null;
+        }
+        return oldFrame;
+    }
+
+    /**
+     * 修改页面字节前调用，页面自上次setBeforeImage以来第一次被修改时拷贝修改前的字节
+     */
+    private void copyOnWrite() {
+        if (oldData == null) {
+            oldData = getPageData();
         }
-        return tupleList.iterator();
     }
 
     @Override
     public HeapPage getBeforeImage() {
         try {
             byte[] tempOldData = null;
-            synchronized (oldDataLock) {
-                tempOldData = oldData;
+            synchronized (this) {
+                // 页面没有被修改过，修改前的镜像就是当前内容
+                tempOldData = (oldData != null) ? oldData : getPageData();
             }
-            return new HeapPage(pid, tempOldData);
+            return copyOf(tempOldData);
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(1);
@@ -329,10 +524,20 @@ public class HeapPage implements Page {
         return null;
     }
 
+    /**
+     * 根据页面字节创建与该页面格式相同的新页面，用于生成修改前的镜像
+     * @param pageData 页面的字节
+     * @return 返回新创建的页面
+     */
+    HeapPage copyOf(byte[] pageData) throws IOException {
+        return new HeapPage(pid, pageData);
+    }
+
+    /**
+     * 将页面的当前内容作为之后修改的修改前镜像，只需丢弃已拷贝的字节，不需要复制页面
+     */
     @Override
-    public void setBeforeImage() {
-        synchronized (oldDataLock) {
-            oldData = getPageData().clone();
-        }
+    public synchronized void setBeforeImage() {
+        oldData = null;
     }
 }
@@ -0,0 +1,162 @@
+package mydb.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 将定长记录按顺序组装为HeapPage格式的页面并写入新的HeapFile，用于批量导入（HeapFileLoader、TupleSink）
+ * 页面在复用的堆外缓冲区中组装，攒满WRITE_PAGES个页面后通过FileChannel一次顺序写入，不经过缓冲池和日志
+ */
+class HeapPageWriter {
+
+    /**
+     * 页面缓冲区中的页面数量，即每次写入文件的最大页面数量
+     */
+    private static final int WRITE_PAGES = 256;
+
+    private final FileChannel out;
+
+    private final int pageSize;
+
+    private final int recordSize;
+
+    /**
+     * 每个页面的槽数量和header字节数，与HeapPage相同
+     */
+    private final int slotsNum;
+    private final int headerSize;
+
+    private final ByteBuffer buffer;
+
+    private final byte[] emptyPage;
+
+    /**
+     * 页面缓冲区中的页面数量（包括正在填充的页面）
+     */
+    private int bufferedPagesNum = 0;
+
+    /**
+     * 正在填充的页面中已使用的槽数量
+     */
+    private int slot;
+
+    /**
+     * 下一次写入在文件中的位置
+     */
+    private long filePosition = HeapFile.HEADER_SIZE;
+
+    private long recordsNum = 0;
+
+    private long pagesNum = 0;
+
+    /**
+     * 写入文件头，之后的页面从HEADER_SIZE开始写入
+     * @param out 输出文件的通道，文件内容被覆盖
+     * @param pageSize 页面大小
+     * @param recordSize 每条记录（元组）的字节数
+     */
+    HeapPageWriter(FileChannel out, int pageSize, int recordSize) throws IOException {
+        this.out = out;
+        this.pageSize = pageSize;
+        this.recordSize = recordSize;
+        this.slotsNum = slotsNum(pageSize, recordSize);
+        this.headerSize = (int) Math.ceil(slotsNum * 1.0 / 8);
+        this.slot = slotsNum;
+        this.buffer = ByteBuffer.allocateDirect(WRITE_PAGES * pageSize);
+        this.emptyPage = new byte[pageSize];
+        FileChannelPool.writeFully(out, HeapFile.createHeader(pageSize, HeapFile.PAGE_FORMAT_HEAP,
+                HeapFile.COMPRESSION_NONE, 0), 0);
+    }
+
+    /**
+     * 创建（或覆盖）输出文件，并清空它的空闲空间映射
+     * @param outFile 输出文件
+     * @return 返回可以写入的文件通道
+     */
+    static FileChannel create(File outFile) throws IOException {
+        // 重新生成的文件与旧的空闲空间映射不再对应，清空（而不是删除）使已打开的通道也能看到
+        File fsmFile = FreeSpaceMap.fileOf(outFile);
+        if (fsmFile.exists()) {
+            new FileOutputStream(fsmFile).close();
+        }
+        return FileChannel.open(outFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * @return 返回每个页面的槽数量，与HeapPage.getTuplesNum相同
+     */
+    static int slotsNum(int pageSize, int recordSize) {
+        return (pageSize * 8) / (recordSize * 8 + 1);
+    }
+
+    /**
+     * 将记录依次放入页面的空槽中
+     * @param records 依次存放的记录，每条recordSize字节，格式与HeapPage的槽相同
+     * @param n 记录数量
+     */
+    void append(byte[] records, int n) throws IOException {
+        int i = 0;
+        while (i < n) {
+            if (slot == slotsNum) {
+                nextPage();
+            }
+            // 连续的槽一次拷贝
+            int count = Math.min(n - i, slotsNum - slot);
+            int pageStart = (bufferedPagesNum - 1) * pageSize;
+            buffer.put(pageStart + headerSize + slot * recordSize, records, i * recordSize, count * recordSize);
+            for (int s=slot; s<slot+count; s++) {
+                int index = pageStart + s / 8;
+                buffer.put(index, (byte) (buffer.get(index) | (1 << (s % 8))));
+            }
+            slot += count;
+            i += count;
+        }
+        recordsNum += n;
+    }
+
+    private void nextPage() throws IOException {
+        if (bufferedPagesNum == WRITE_PAGES) {
+            flush();
+        }
+        // 缓冲区被复用，新页面需要先清零
+        buffer.put(bufferedPagesNum * pageSize, emptyPage);
+        bufferedPagesNum++;
+        pagesNum++;
+        slot = 0;
+    }
+
+    private void flush() throws IOException {
+        buffer.limit(bufferedPagesNum * pageSize).position(0);
+        FileChannelPool.writeFully(out, buffer, filePosition);
+        filePosition += (long) bufferedPagesNum * pageSize;
+        buffer.clear();
+        bufferedPagesNum = 0;
+    }
+
+    /**
+     * 写入缓冲区中剩余的页面并刷盘
+     */
+    void finish() throws IOException {
+        if (bufferedPagesNum > 0) {
+            flush();
+        }
+        out.force(false);
+    }
+
+    /**
+     * @return 返回已写入的记录数量
+     */
+    long getRecordsNum() {
+        return recordsNum;
+    }
+
+    /**
+     * @return 返回已写入的页面数量
+     */
+    long getPagesNum() {
+        return pagesNum;
+    }
+}
@@ -4,6 +4,7 @@ import mydb.execution.Predicate;
 import mydb.common.Type;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * 存储单个integer的字段的实例
@@ -49,6 +50,10 @@ public class IntField implements Field {
         dos.writeInt(value);
     }
 
+    public void serialize(ByteBuffer buffer, int offset) {
+        buffer.putInt(offset, value);
+    }
+
     @Override
     public boolean compare(Predicate.Op op, Field value) {
         IntField intField = (IntField) value;
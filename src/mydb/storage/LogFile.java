@@ -89,12 +89,16 @@ public class LogFile {
      * @param tid 发生了abort的事务ID
      */
     public void logAbort(TransactionId tid) throws IOException {
-        // 由于需要ROLLBACK，处理前首先用缓冲池锁住该过程
-        synchronized (Database.getBufferPool()) {
+        // 由于需要ROLLBACK，处理前首先锁住缓冲池的所有分区，加锁顺序与缓冲池写回脏页时的“分区latch->日志文件”一致
+        BufferPool bufferPool = Database.getBufferPool();
+        bufferPool.latchAllPartitions();
+        try {
             synchronized (this) {
                 preprocess();
                 // abort进行回滚
                 rollback(tid);
+                // 释放分区latch之前丢弃该事务仍然dirty的页面，否则刷脏线程可能在回滚之后把这些页面写回磁盘
+                bufferPool.recoverPages(tid);
                 // 记录ABORT的事务以及存放在日志文件中的指针位置
                 logFile.writeInt(ABORT_RECORD);
                 logFile.writeLong(tid.getId());
@@ -104,6 +108,8 @@ public class LogFile {
                 force();
                 tidToFirstLogRecordMap.remove(tid.getId());
             }
+        } finally {
+            bufferPool.unlatchAllPartitions();
         }
     }
 
@@ -161,9 +167,11 @@ public class LogFile {
     /**
      * 将CHECKPOINT日志记录写入日志文件
      */
-    public synchronized void logCheckpoint() throws IOException {
-        // 确保已经对缓冲池上锁
-        synchronized (Database.getBufferPool()) {
+    public void logCheckpoint() throws IOException {
+        // 确保已经对缓冲池上锁，先获取所有分区的latch再获取日志文件的监视器
+        BufferPool bufferPool = Database.getBufferPool();
+        bufferPool.latchAllPartitions();
+        try {
             synchronized (this) {
                 preprocess();
                 long startCheckpointOffset; // 检查点开始位置
@@ -191,6 +199,8 @@ public class LogFile {
                 logFile.writeLong(currentOffset);
                 currentOffset = logFile.getFilePointer();
             }
+        } finally {
+            bufferPool.unlatchAllPartitions();
         }
         logTruncate(); // 截断日志文件
     }
@@ -313,7 +323,8 @@ public class LogFile {
                 pidArgs[i] = raf.readInt();
             }
             pid = (PageId) pidConstructors[0].newInstance(pidArgs);
-            Constructor<?>[] pageConstructors = pageClass.getDeclaredConstructors();
+            // 页面可能有多个构造函数，使用Page(PageId id, byte[] data)
+            Constructor<?> pageConstructor = pageClass.getDeclaredConstructor(pidClass, byte[].class);
             int pageSize = raf.readInt();
             byte[] pageData = new byte[pageSize];
             raf.read(pageData);
@@ -321,8 +332,8 @@ public class LogFile {
             pageArgs[0] = pid;
             pageArgs[1] = pageData;
             // 将构造函数的参数传入newInstance方法以创建Page实例化对象
-            page = (Page) pageConstructors[0].newInstance(pageArgs);
-        } catch (ClassNotFoundException | InvocationTargetException |
+            page = (Page) pageConstructor.newInstance(pageArgs);
+        } catch (ClassNotFoundException | InvocationTargetException | NoSuchMethodException |
                 IllegalAccessException | InstantiationException e) {
             e.printStackTrace();
             throw new IOException();
@@ -337,7 +348,9 @@ public class LogFile {
      */
     public void rollback(TransactionId tid)
             throws IOException, NoSuchElementException {
-        synchronized (Database.getBufferPool()) {
+        BufferPool bufferPool = Database.getBufferPool();
+        bufferPool.latchAllPartitions();
+        try {
             synchronized (this) {
                 preprocess();
                 // 获取该事务对应最近日志记录的偏移量
@@ -360,10 +373,11 @@ public class LogFile {
                         // 如果已进行回滚则无需重复回滚
                         if (transactionId == tid.getId() && !pageIdSet.contains(beforePageId)) {
                             pageIdSet.add(beforePageId);
-                            // 丢弃BufferPool中该pageId（视为未操作该页面）
-                            Database.getBufferPool().discardPage(beforePageId);
                             // 将beforePage写回数据库（回滚）
                             Database.getCatalog().getDbFile(beforePageId.getTableId()).writePage(beforePage);
+                            // 丢弃BufferPool中该pageId（视为未操作该页面），
+                            // 写回之后再丢弃，使写回期间预读到的旧页面也会被丢弃
+                            Database.getBufferPool().discardPage(beforePageId);
                         }
                     } else if (logRecordType == CHECKPOINT_RECORD) {
                         // 回滚CHECKPOINT日志记录（放弃该检查点）
@@ -372,23 +386,28 @@ public class LogFile {
                             logFile.readLong(); // 事务ID
                             logFile.readLong(); // 对应的日志记录偏移
                         }
-                        logFile.readLong();
                     }
+                    // 每条日志记录末尾都是该记录的起始偏移量
+                    logFile.readLong();
                 }
                 // 重新移动logFile文件指针的位置
                 logFile.seek(logFile.length());
             }
+        } finally {
+            bufferPool.unlatchAllPartitions();
         }
     }
 
     /**
      * 关闭日志系统，并保存所需要的状态信息以便可以快速重新启动
      */
-    public synchronized void shutdown() {
+    public void shutdown() {
         try {
-            // 保存关闭日志系统时的检查点
+            // 保存关闭日志系统时的检查点，检查点需要先锁住缓冲池，不能在持有日志文件的监视器时调用
             logCheckpoint();
-            logFile.close();
+            synchronized (this) {
+                logFile.close();
+            }
         } catch (IOException e) {
             System.out.println("Error shutting down the log system");
             e.printStackTrace();
@@ -399,7 +418,9 @@ public class LogFile {
      * 恢复数据库系统，以确保数据库系统的一致性（已提交的事务会更新到磁盘，未提交的事务不会更新）
      */
     public void recover() throws IOException {
-        synchronized (Database.getBufferPool()) {
+        BufferPool bufferPool = Database.getBufferPool();
+        bufferPool.latchAllPartitions();
+        try {
             synchronized (this) {
                 // 需要进行数据库恢复
                 whetherToRecover = true;
@@ -449,9 +470,13 @@ public class LogFile {
                 for (Long tid: beforePages.keySet()) {
                     if (!commitIdSet.contains(tid)) {
                         List<Page> pages = beforePages.get(tid); // 未提交事务处理的页面集合
-                        // 恢复到操作前的页面
+                        // 与rollback相同，每个页面只恢复到第一条记录的操作前页面，
+                        // 之后记录的操作前页面可能是被换出（STEAL）后重新读入的未提交数据
+                        Set<PageId> pageIdSet = new HashSet<>();
                         for (Page page: pages) {
-                            Database.getCatalog().getDbFile(page.getId().getTableId()).writePage(page);
+                            if (pageIdSet.add(page.getId())) {
+                                Database.getCatalog().getDbFile(page.getId().getTableId()).writePage(page);
+                            }
                         }
                     }
                 }
@@ -466,6 +491,8 @@ public class LogFile {
                     }
                 }
             }
+        } finally {
+            bufferPool.unlatchAllPartitions();
         }
     }
 
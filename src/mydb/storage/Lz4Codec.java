@@ -0,0 +1,223 @@
+package mydb.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 纯Java实现的LZ4块格式（block format）压缩和解压，用于压缩存储的页面
+ * 压缩数据由若干序列组成，每个序列为：1字节token（高4位为字面量长度，低4位为匹配长度-4）、
+ * 字面量长度的扩展字节、字面量、2字节小端序的匹配距离、匹配长度的扩展字节；最后一个序列只有字面量。
+ * 定长页面中大量的0填充和重复的记录会被压缩为很短的匹配
+ * @see PageDirectory
+ */
+final class Lz4Codec {
+
+    /**
+     * 最短的匹配长度
+     */
+    private static final int MIN_MATCH = 4;
+
+    /**
+     * 哈希表大小的对数，哈希表记录每个4字节序列最近出现的位置
+     */
+    private static final int HASH_LOG = 12;
+
+    /**
+     * 数据末尾的这些字节总是作为字面量
+     */
+    private static final int LAST_LITERALS = 5;
+
+    /**
+     * 匹配的起始位置与数据末尾之间至少需要的字节数
+     */
+    private static final int MF_LIMIT = 12;
+
+    /**
+     * 匹配距离的最大值（2字节）
+     */
+    private static final int MAX_DISTANCE = 65535;
+
+    /**
+     * 连续这么多次查找没有匹配后，查找的步长加1，使难以压缩的数据更快地被跳过
+     */
+    private static final int SKIP_TRIGGER = 6;
+
+    private Lz4Codec() {
+    }
+
+    /**
+     * @return 返回压缩length字节的数据最多需要的字节数
+     */
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * 压缩src的前srcLength个字节
+     * @param src 需要压缩的数据
+     * @param srcLength 数据长度
+     * @param dst 压缩数据的输出缓冲区，长度至少为maxCompressedLength(srcLength)
+     * @return 返回压缩数据的字节数
+     */
+    static int compress(byte[] src, int srcLength, byte[] dst) {
+        int[] hashTable = new int[1 << HASH_LOG];
+        int anchor = 0; // 尚未输出的字面量的起始位置
+        int op = 0;
+        int matchLimit = srcLength - LAST_LITERALS;
+        int mfLimit = srcLength - MF_LIMIT;
+        int ip = 0;
+        int searchNum = 1 << SKIP_TRIGGER;
+        while (ip < mfLimit) {
+            int sequence = readInt(src, ip);
+            int h = hash(sequence);
+            int ref = hashTable[h];
+            hashTable[h] = ip;
+            if (ref >= ip || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                ip += searchNum++ >>> SKIP_TRIGGER;
+                continue;
+            }
+            searchNum = 1 << SKIP_TRIGGER;
+            // 向前扩展匹配
+            while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+                ip--;
+                ref--;
+            }
+            // 向后扩展匹配
+            int matchLength = MIN_MATCH;
+            while (ip + matchLength < matchLimit && src[ref + matchLength] == src[ip + matchLength]) {
+                matchLength++;
+            }
+            op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dst, op);
+            ip += matchLength;
+            anchor = ip;
+            if (ip - 2 >= 0 && ip - 2 < mfLimit) {
+                hashTable[hash(readInt(src, ip - 2))] = ip - 2;
+            }
+        }
+        // 最后的字面量
+        int literalLength = srcLength - anchor;
+        int token = Math.min(literalLength, 15) << 4;
+        dst[op++] = (byte) token;
+        op = writeLength(literalLength, dst, op);
+        System.arraycopy(src, anchor, dst, op, literalLength);
+        return op + literalLength;
+    }
+
+    /**
+     * 输出一个包含字面量和匹配的序列
+     * @return 返回输出后的位置
+     */
+    private static int writeSequence(byte[] src, int literalStart, int literalLength,
+                                     int distance, int matchLength, byte[] dst, int op) {
+        int token = (Math.min(literalLength, 15) << 4) | Math.min(matchLength - MIN_MATCH, 15);
+        dst[op++] = (byte) token;
+        op = writeLength(literalLength, dst, op);
+        System.arraycopy(src, literalStart, dst, op, literalLength);
+        op += literalLength;
+        dst[op++] = (byte) distance;
+        dst[op++] = (byte) (distance >>> 8);
+        return writeLength(matchLength - MIN_MATCH, dst, op);
+    }
+
+    /**
+     * 长度不小于15时，token中的4位为15，剩余部分用若干个255和最后一个小于255的字节表示
+     */
+    private static int writeLength(int length, byte[] dst, int op) {
+        if (length < 15) {
+            return op;
+        }
+        length -= 15;
+        while (length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    /**
+     * 解压数据
+     * @param src 压缩数据所在的数组
+     * @param srcOffset 压缩数据的起始位置
+     * @param srcLength 压缩数据的字节数
+     * @param dst 解压数据的输出数组
+     * @param dstLength 解压后应有的字节数
+     * @throws IOException 压缩数据损坏时抛出
+     */
+    static void decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstLength)
+            throws IOException {
+        decompress(src, srcOffset, srcLength, ByteBuffer.wrap(dst), dstLength);
+    }
+
+    /**
+     * 将数据解压到缓冲区中，缓冲池的堆外帧可以直接作为输出，不需要先解压到堆内数组再拷贝
+     * @param src 压缩数据所在的数组
+     * @param srcOffset 压缩数据的起始位置
+     * @param srcLength 压缩数据的字节数
+     * @param dst 解压数据的输出缓冲区，从位置0开始写入（不改变其position）
+     * @param dstLength 解压后应有的字节数
+     * @throws IOException 压缩数据损坏时抛出
+     */
+    static void decompress(byte[] src, int srcOffset, int srcLength, ByteBuffer dst, int dstLength)
+            throws IOException {
+        int ip = srcOffset;
+        int end = srcOffset + srcLength;
+        int op = 0;
+        try {
+            while (ip < end) {
+                int token = src[ip++] & 0xFF;
+                int literalLength = token >>> 4;
+                if (literalLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literalLength += b;
+                    } while (b == 255);
+                }
+                if (ip + literalLength > end || op + literalLength > dstLength) {
+                    throw new IOException("corrupted compressed data");
+                }
+                dst.put(op, src, ip, literalLength);
+                ip += literalLength;
+                op += literalLength;
+                if (ip >= end) {
+                    break;
+                }
+                int distance = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+                ip += 2;
+                int matchLength = token & 0x0F;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                int ref = op - distance;
+                if (distance == 0 || ref < 0 || op + matchLength > dstLength) {
+                    throw new IOException("corrupted compressed data");
+                }
+                // 匹配可能与输出重叠（如连续的0），需要逐字节拷贝
+                for (int i=0; i<matchLength; i++) {
+                    dst.put(op + i, dst.get(ref + i));
+                }
+                op += matchLength;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("corrupted compressed data", e);
+        }
+        if (op != dstLength) {
+            throw new IOException("corrupted compressed data");
+        }
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8)
+                | ((bytes[offset + 2] & 0xFF) << 16) | ((bytes[offset + 3] & 0xFF) << 24);
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
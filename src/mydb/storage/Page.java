@@ -39,7 +39,7 @@ public interface Page {
     Page getBeforeImage();
 
     /**
-     * 用于事务对该页面修改前复制该页面内容
+     * 将该页面的当前内容作为之后修改的修改前镜像（如修改该页面的事务提交后）
      */
     void setBeforeImage();
 
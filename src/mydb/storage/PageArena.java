@@ -0,0 +1,106 @@
+package mydb.storage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 缓冲池的堆外内存区（arena），由若干块直接内存（direct ByteBuffer）组成，每块划分为固定大小的帧（frame）
+ * 堆外缓冲池模式下HeapFile将页面直接读入帧中，缓存的页面数据不占用Java堆，也不会增加GC的扫描和拷贝开销
+ * 帧按块（chunk）在需要时才分配，帧用完后分配失败，调用者退回到堆内页面
+ * @see BufferPool
+ * @see TuplePage
+ */
+class PageArena {
+
+    /**
+     * 每块直接内存包含的帧数量
+     */
+    private static final int FRAMES_PER_CHUNK = 1024;
+
+    /**
+     * 每个帧的字节数，即缓冲池的页面大小
+     */
+    private final int frameSize;
+
+    /**
+     * 该内存区最多可以分配的帧数量
+     */
+    private final int framesNum;
+
+    /**
+     * 已分配的直接内存块，保持对块的引用直到缓冲池被回收
+     */
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+
+    /**
+     * 空闲的帧
+     */
+    private final ArrayDeque<ByteBuffer> freeFrames = new ArrayDeque<>();
+
+    /**
+     * 已经从直接内存块中划分出的帧数量
+     */
+    private int allocatedNum;
+
+    /**
+     * @param framesNum 最多可以分配的帧数量
+     * @param frameSize 每个帧的字节数
+     */
+    PageArena(int framesNum, int frameSize) {
+        this.framesNum = framesNum;
+        this.frameSize = frameSize;
+    }
+
+    /**
+     * 分配一个帧，帧中的数据是不确定的
+     * @param size 需要的字节数（页面大小）
+     * @return 返回分配的帧；页面大小与帧大小不同，或者帧已经用完时返回null
+     */
+    synchronized ByteBuffer allocate(int size) {
+        if (size != frameSize) {
+            return null;
+        }
+        if (freeFrames.isEmpty()) {
+            grow();
+        }
+        return freeFrames.poll();
+    }
+
+    /**
+     * 归还一个帧
+     */
+    synchronized void free(ByteBuffer frame) {
+        freeFrames.push(frame);
+    }
+
+    /**
+     * 页面离开缓冲池时归还其所在的帧，被访问过的页面的数据会被拷贝到堆内
+     * @param page 被驱逐、删除或替换的页面
+     */
+    void release(Page page) {
+        if (page instanceof TuplePage tuplePage) {
+            ByteBuffer frame = tuplePage.detach();
+            if (frame != null) {
+                free(frame);
+            }
+        }
+    }
+
+    /**
+     * 分配一块新的直接内存，并将其划分为帧
+     */
+    private void grow() {
+        int num = Math.min(FRAMES_PER_CHUNK, framesNum - allocatedNum);
+        if (num <= 0) {
+            return;
+        }
+        ByteBuffer chunk = ByteBuffer.allocateDirect(num * frameSize);
+        chunks.add(chunk);
+        for (int i=0; i<num; i++) {
+            freeFrames.add(chunk.slice(i * frameSize, frameSize));
+        }
+        allocatedNum += num;
+    }
+}
@@ -0,0 +1,66 @@
+package mydb.storage;
+
+import java.io.IOException;
+
+/**
+ * 后台刷脏线程（page cleaner）
+ * 定期检查缓冲池的各个分区，脏页比例达到阈值时提前将脏页写回磁盘（写回前先写日志），
+ * 使前台事务驱逐页面时通常可以找到不dirty的页面，而无需等待IO
+ * @see BufferPool
+ */
+class PageCleaner extends Thread {
+
+    /**
+     * 检查缓冲池的时间间隔（毫秒）
+     */
+    static final long CLEAN_INTERVAL = 100;
+
+    /**
+     * 分区脏页数量达到分区容量的该比例时进行写回
+     */
+    static final double DIRTY_RATIO = 0.5;
+
+    private final BufferPool bufferPool;
+
+    private volatile boolean running = true;
+
+    PageCleaner(BufferPool bufferPool) {
+        super("page-cleaner");
+        this.bufferPool = bufferPool;
+        setDaemon(true); // 不阻止JVM退出
+    }
+
+    /**
+     * 唤醒刷脏线程立即检查缓冲池
+     */
+    synchronized void wakeUp() {
+        notifyAll();
+    }
+
+    /**
+     * 停止刷脏线程
+     */
+    void shutdown() {
+        running = false;
+        wakeUp();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                synchronized (this) {
+                    wait(CLEAN_INTERVAL);
+                }
+                if (running) {
+                    bufferPool.cleanDirtyPages(DIRTY_RATIO);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                // 刷脏失败不影响前台事务，下次检查时重试
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package mydb.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * 压缩存储的HeapFile的页面目录，记录每个页面压缩后的数据在数据文件中的位置
+ * 页面写入时用Lz4Codec压缩，压缩后不小于页面大小时直接存放原始数据。每个页面在数据文件中占用一个区段（extent），
+ * 压缩数据不超过区段容量时原地覆盖（长度可能改变），否则在文件末尾分配新的区段（容量至少翻倍，减少页面增长时的迁移次数），
+ * 旧区段成为无法回收的空洞，直到表被重新生成。还没有写入过的页面不占用区段，读取时为全0页面。
+ * 写入页面和读取区段数据都持有目录的锁，读者不会读到正在被覆盖的区段。
+ * 页面目录存放在数据文件旁的.pmap文件中：开头4字节为页面数量，之后每个页面ENTRY_SIZE字节：
+ * 区段偏移量（8字节）、数据长度（4字节，等于页面大小表示未压缩）和区段容量（4字节）
+ * @see HeapFile
+ * @see Lz4Codec
+ */
+class PageDirectory {
+
+    /**
+     * 目录项在.pmap文件中的起始偏移量
+     */
+    private static final int ENTRIES_OFFSET = 4;
+
+    /**
+     * 每个目录项的字节数
+     */
+    private static final int ENTRY_SIZE = 16;
+
+    /**
+     * 区段容量的分配单位
+     */
+    private static final int ALLOCATION_UNIT = 256;
+
+    private final File file;
+
+    private final File dataFile;
+
+    private final FileChannelPool channelPool;
+
+    private final int pageSize;
+
+    /**
+     * 数据文件中第一个区段的偏移量，即数据文件头的大小
+     */
+    private final int dataStart;
+
+    /**
+     * 各个页面区段的偏移量、数据长度和容量，第一次使用时从.pmap文件中读取
+     */
+    private long[] offsets;
+    private int[] lengths;
+    private int[] capacities;
+
+    /**
+     * 页面数量
+     */
+    private int pagesNum = -1;
+
+    /**
+     * 数据文件的末尾，新的区段从这里开始分配
+     */
+    private long dataEnd;
+
+    /**
+     * @param file .pmap文件
+     * @param dataFile 存放压缩页面的数据文件
+     * @param channelPool 数据库文件的通道缓存
+     * @param pageSize 页面大小
+     * @param dataStart 数据文件头的大小
+     */
+    PageDirectory(File file, File dataFile, FileChannelPool channelPool, int pageSize, int dataStart) {
+        this.file = file;
+        this.dataFile = dataFile;
+        this.channelPool = channelPool;
+        this.pageSize = pageSize;
+        this.dataStart = dataStart;
+    }
+
+    /**
+     * @return 返回数据文件对应的.pmap文件
+     */
+    static File fileOf(File dataFile) {
+        return new File(dataFile.getPath() + ".pmap");
+    }
+
+    /**
+     * @return 返回页面数量
+     */
+    synchronized int getPagesNum() throws IOException {
+        load();
+        return pagesNum;
+    }
+
+    /**
+     * 读取并解压页面
+     * @param pageIndex 页面索引
+     * @param page 解压后的页面数据，长度为页面大小
+     */
+    void readPage(int pageIndex, byte[] page) throws IOException {
+        readPage(pageIndex, ByteBuffer.wrap(page));
+    }
+
+    /**
+     * 读取并解压页面，页面数据直接写入缓冲区（如缓冲池的堆外帧）的前pageSize个字节
+     * @param pageIndex 页面索引
+     * @param page 存放页面数据的缓冲区，容量至少为页面大小
+     */
+    void readPage(int pageIndex, ByteBuffer page) throws IOException {
+        int length;
+        byte[] compressed = null;
+        // 没有迁移的页面在原来的区段中原地覆盖，读取区段数据时需要持有锁，避免读到写了一半的数据，
+        // 解压不需要持有锁
+        synchronized (this) {
+            load();
+            if (pageIndex >= pagesNum) {
+                throw new IllegalArgumentException("page " + pageIndex + " does not exist");
+            }
+            long offset = offsets[pageIndex];
+            length = lengths[pageIndex];
+            if (length == pageSize) {
+                // 未压缩的页面直接读入缓冲区
+                FileChannelPool.readFully(channelPool.get(dataFile), page.duplicate().clear().limit(pageSize), offset);
+            } else if (length != 0) {
+                compressed = new byte[length];
+                FileChannelPool.readFully(channelPool.get(dataFile), ByteBuffer.wrap(compressed), offset);
+            }
+        }
+        if (length == 0) {
+            for (int i=0; i<pageSize; i++) {
+                page.put(i, (byte) 0);
+            }
+        } else if (compressed != null) {
+            Lz4Codec.decompress(compressed, 0, length, page, pageSize);
+        }
+    }
+
+    /**
+     * 压缩并写入页面，压缩数据放不下时为页面分配新的区段
+     * @param pageIndex 页面索引
+     * @param page 页面数据
+     */
+    synchronized void writePage(int pageIndex, byte[] page) throws IOException {
+        load();
+        if (pageIndex >= pagesNum) {
+            throw new IllegalArgumentException("page " + pageIndex + " does not exist");
+        }
+        byte[] compressed = new byte[Lz4Codec.maxCompressedLength(pageSize)];
+        int length = Lz4Codec.compress(page, pageSize, compressed);
+        if (length >= pageSize) {
+            // 压缩没有收益，存放原始数据
+            compressed = page;
+            length = pageSize;
+        }
+        FileChannel channel = channelPool.get(dataFile);
+        boolean relocated = length > capacities[pageIndex];
+        if (relocated) {
+            int capacity = Math.max(length, capacities[pageIndex] * 2);
+            capacity = Math.min((capacity + ALLOCATION_UNIT - 1) / ALLOCATION_UNIT * ALLOCATION_UNIT, pageSize);
+            // 先写入数据再更新目录项，目录项不会指向尚未写入的区段
+            FileChannelPool.writeFully(channel, ByteBuffer.wrap(compressed, 0, length), dataEnd);
+            offsets[pageIndex] = dataEnd;
+            capacities[pageIndex] = capacity;
+            dataEnd += capacity;
+        } else {
+            FileChannelPool.writeFully(channel, ByteBuffer.wrap(compressed, 0, length), offsets[pageIndex]);
+        }
+        if (relocated || lengths[pageIndex] != length) {
+            lengths[pageIndex] = length;
+            writeEntry(pageIndex);
+        }
+    }
+
+    /**
+     * 在目录末尾添加一个空页面，空页面不占用区段
+     * @return 返回新页面的索引
+     */
+    synchronized int appendEmptyPage() throws IOException {
+        load();
+        int pageIndex = pagesNum;
+        if (pageIndex == offsets.length) {
+            int capacity = Math.max(16, pageIndex * 2);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            capacities = Arrays.copyOf(capacities, capacity);
+        }
+        offsets[pageIndex] = 0;
+        lengths[pageIndex] = 0;
+        capacities[pageIndex] = 0;
+        pagesNum++;
+        writeEntry(pageIndex);
+        ByteBuffer header = ByteBuffer.allocate(ENTRIES_OFFSET);
+        header.putInt(0, pagesNum);
+        FileChannelPool.writeFully(channelPool.get(file), header, 0);
+        return pageIndex;
+    }
+
+    /**
+     * 第一次使用时读取.pmap文件
+     * 数据文件只有文件头（重新创建的文件）时，旧的页面目录已失效
+     */
+    private void load() throws IOException {
+        if (pagesNum >= 0) {
+            return;
+        }
+        FileChannel channel = channelPool.get(file);
+        long dataLength = channelPool.get(dataFile).size();
+        pagesNum = 0;
+        if (channel.size() >= ENTRIES_OFFSET && dataLength > dataStart) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            FileChannelPool.readFully(channel, buffer, 0);
+            pagesNum = Math.min(buffer.getInt(0), (buffer.capacity() - ENTRIES_OFFSET) / ENTRY_SIZE);
+        } else if (channel.size() > 0) {
+            channel.truncate(0);
+        }
+        int capacity = Math.max(16, pagesNum);
+        offsets = new long[capacity];
+        lengths = new int[capacity];
+        capacities = new int[capacity];
+        dataEnd = Math.max(dataLength, dataStart);
+        if (pagesNum > 0) {
+            ByteBuffer buffer = ByteBuffer.allocate(pagesNum * ENTRY_SIZE);
+            FileChannelPool.readFully(channel, buffer, ENTRIES_OFFSET);
+            buffer.flip();
+            for (int i=0; i<pagesNum; i++) {
+                offsets[i] = buffer.getLong();
+                lengths[i] = buffer.getInt();
+                capacities[i] = buffer.getInt();
+                dataEnd = Math.max(dataEnd, offsets[i] + capacities[i]);
+            }
+        }
+    }
+
+    /**
+     * 将页面的目录项写入.pmap文件
+     */
+    private void writeEntry(int pageIndex) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        entry.putLong(offsets[pageIndex]);
+        entry.putInt(lengths[pageIndex]);
+        entry.putInt(capacities[pageIndex]);
+        FileChannelPool.writeFully(channelPool.get(file), entry.flip(), ENTRIES_OFFSET + (long) pageIndex * ENTRY_SIZE);
+    }
+}
@@ -0,0 +1,53 @@
+package mydb.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * 使用按列存放字段的PAX页面（PaxPage）的HeapFile，适合经常只访问少数列的分析型表，
+ * 页面数量与HeapFile相同，扫描部分列时页面内的访问更集中（见ProjectedScan）。
+ * 文件头、空闲空间映射、预读等与HeapFile相同，文件头中记录的页面格式为PAGE_FORMAT_PAX
+ * @see PaxPage
+ */
+public class PaxFile extends HeapFile {
+
+    /**
+     * @param file 磁盘中的文件，用于存放PaxFile
+     * @param tupleDesc 元组描述
+     * @throws IllegalStateException 已存在的文件不是PAX页面格式时抛出
+     */
+    public PaxFile(File file, TupleDesc tupleDesc) {
+        this(file, tupleDesc, false);
+    }
+
+    /**
+     * @param file 磁盘中的文件，用于存放PaxFile
+     * @param tupleDesc 元组描述
+     * @param compressed 新文件是否压缩存储页面，已存在的文件使用文件头中记录的压缩方式
+     * @throws IllegalStateException 已存在的文件不是PAX页面格式时抛出
+     */
+    public PaxFile(File file, TupleDesc tupleDesc, boolean compressed) {
+        this(file, tupleDesc, compressed, new int[0]);
+    }
+
+    /**
+     * @param file 磁盘中的文件，用于存放PaxFile
+     * @param tupleDesc 元组描述
+     * @param compressed 新文件是否压缩存储页面，已存在的文件使用文件头中记录的压缩方式
+     * @param dictionaryColumns 新文件中使用字典编码的字符串列，已存在的文件使用文件头中记录的列
+     * @throws IllegalStateException 已存在的文件不是PAX页面格式时抛出
+     */
+    public PaxFile(File file, TupleDesc tupleDesc, boolean compressed, int[] dictionaryColumns) {
+        super(file, tupleDesc, PAGE_FORMAT_PAX, compressed, dictionaryColumns);
+    }
+
+    @Override
+    protected TuplePage createPage(HeapPageId pid, byte[] data) throws IOException {
+        return new PaxPage(pid, data);
+    }
+
+    @Override
+    protected TuplePage createPage(HeapPageId pid, ByteBuffer frame) {
+        return new PaxPage(pid, frame);
+    }
+}
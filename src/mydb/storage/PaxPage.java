@@ -0,0 +1,52 @@
+package mydb.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * PAX（Partition Attributes Across）格式的页面，槽的数量、header位图和每个元组所占字节数都与HeapPage相同，
+ * 但字段按列存放：header之后依次为第0列所有槽的值、第1列所有槽的值……（mini-page）。
+ * 扫描只访问部分列时（见ProjectedScan），读取的字节集中在这些列的连续区域中，
+ * 不会像HeapPage一样在每个槽中跳过其它列的字节。页面仍然整体读写，磁盘I/O与HeapPage相同
+ * @see PaxFile
+ */
+public class PaxPage extends HeapPage {
+
+    /**
+     * 每一列的第一个值在页面中的偏移量
+     */
+    private final int[] columnStarts;
+
+    public PaxPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data), null);
+    }
+
+    /**
+     * 创建存放在堆外帧中的页面，页面数据已经读入帧中
+     * @param id 页面ID
+     * @param frame 缓冲池分配的堆外帧
+     */
+    PaxPage(HeapPageId id, ByteBuffer frame) {
+        this(id, frame, frame);
+    }
+
+    private PaxPage(HeapPageId id, ByteBuffer data, ByteBuffer frame) {
+        super(id, data, frame);
+        this.columnStarts = new int[fieldLengths.length];
+        int offset = headerSize;
+        for (int i=0; i<columnStarts.length; i++) {
+            columnStarts[i] = offset;
+            offset += slotsNum * fieldLengths[i];
+        }
+    }
+
+    @Override
+    int valueOffset(int slotId, int fieldIndex) {
+        return columnStarts[fieldIndex] + slotId * fieldLengths[fieldIndex];
+    }
+
+    @Override
+    HeapPage copyOf(byte[] pageData) throws IOException {
+        return new PaxPage(pid, pageData);
+    }
+}
@@ -0,0 +1,80 @@
+package mydb.storage;
+
+import java.util.function.IntFunction;
+
+/**
+ * 一个扫描流的预读状态，由HeapFileIterator等按页面顺序访问文件的迭代器持有
+ * 每次访问页面时检测访问是否连续：连续访问时预读窗口从INITIAL_WINDOW开始倍增，直到缓冲池允许的最大预读页面数量；
+ * 非连续访问则关闭预读。预读通过BufferPool.prefetchPage异步进行，使扫描当前页面的同时读取后续页面
+ * @see BufferPool#prefetchPage(PageId)
+ */
+class ReadAhead {
+
+    /**
+     * 检测到顺序访问后的初始预读窗口
+     */
+    private static final int INITIAL_WINDOW = 2;
+
+    private final BufferPool bufferPool;
+
+    /**
+     * 根据页面索引创建页面ID
+     */
+    private final IntFunction<PageId> pageIdFactory;
+
+    /**
+     * 上一次访问的页面索引
+     */
+    private int lastPageIndex = -1;
+
+    /**
+     * 当前的预读窗口，0表示不预读
+     */
+    private int window;
+
+    /**
+     * 已经请求预读的最大页面索引
+     */
+    private int prefetchedIndex = -1;
+
+    /**
+     * @param bufferPool 预读页面放入的缓冲池
+     * @param pageIdFactory 根据页面索引创建页面ID
+     */
+    ReadAhead(BufferPool bufferPool, IntFunction<PageId> pageIdFactory) {
+        this.bufferPool = bufferPool;
+        this.pageIdFactory = pageIdFactory;
+    }
+
+    /**
+     * 记录一次页面访问，连续访问时预读其后窗口内的页面
+     * @param pageIndex 正在访问的页面索引
+     * @param pagesNum 文件的页面数量，不会预读超出文件的页面
+     */
+    void onAccess(int pageIndex, int pagesNum) {
+        int maxWindow = bufferPool.getMaxReadAheadPages();
+        if (pageIndex == lastPageIndex + 1) {
+            // 顺序访问（从第一个页面开始的扫描也视为顺序访问）
+            window = (window == 0) ? INITIAL_WINDOW : window * 2;
+        } else {
+            window = 0;
+            prefetchedIndex = pageIndex;
+        }
+        window = Math.min(window, maxWindow);
+        lastPageIndex = pageIndex;
+        int end = Math.min(pageIndex + window, pagesNum - 1);
+        for (int i=Math.max(prefetchedIndex + 1, pageIndex + 1); i<=end; i++) {
+            bufferPool.prefetchPage(pageIdFactory.apply(i));
+        }
+        prefetchedIndex = Math.max(prefetchedIndex, end);
+    }
+
+    /**
+     * 重新开始扫描时清空预读状态
+     */
+    void reset() {
+        lastPageIndex = -1;
+        window = 0;
+        prefetchedIndex = -1;
+    }
+}
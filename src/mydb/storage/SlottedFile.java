@@ -0,0 +1,53 @@
+package mydb.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * 使用变长记录分槽页面（SlottedPage）的HeapFile
+ * 字符串字段只占用实际长度，字符串较短的表占用的页面数量和扫描时读取的页面数量都会大幅减少。
+ * 文件头、空闲空间映射、预读等与HeapFile相同，文件头中记录的页面格式为PAGE_FORMAT_SLOTTED
+ * @see SlottedPage
+ */
+public class SlottedFile extends HeapFile {
+
+    /**
+     * @param file 磁盘中的文件，用于存放SlottedFile
+     * @param tupleDesc 元组描述
+     * @throws IllegalStateException 已存在的文件不是分槽页面格式时抛出
+     */
+    public SlottedFile(File file, TupleDesc tupleDesc) {
+        this(file, tupleDesc, false);
+    }
+
+    /**
+     * @param file 磁盘中的文件，用于存放SlottedFile
+     * @param tupleDesc 元组描述
+     * @param compressed 新文件是否压缩存储页面，已存在的文件使用文件头中记录的压缩方式
+     * @throws IllegalStateException 已存在的文件不是分槽页面格式时抛出
+     */
+    public SlottedFile(File file, TupleDesc tupleDesc, boolean compressed) {
+        this(file, tupleDesc, compressed, new int[0]);
+    }
+
+    /**
+     * @param file 磁盘中的文件，用于存放SlottedFile
+     * @param tupleDesc 元组描述
+     * @param compressed 新文件是否压缩存储页面，已存在的文件使用文件头中记录的压缩方式
+     * @param dictionaryColumns 新文件中使用字典编码的字符串列，已存在的文件使用文件头中记录的列
+     * @throws IllegalStateException 已存在的文件不是分槽页面格式时抛出
+     */
+    public SlottedFile(File file, TupleDesc tupleDesc, boolean compressed, int[] dictionaryColumns) {
+        super(file, tupleDesc, PAGE_FORMAT_SLOTTED, compressed, dictionaryColumns);
+    }
+
+    @Override
+    protected TuplePage createPage(HeapPageId pid, byte[] data) throws IOException {
+        return new SlottedPage(pid, data);
+    }
+
+    @Override
+    protected TuplePage createPage(HeapPageId pid, ByteBuffer frame) {
+        return new SlottedPage(pid, frame);
+    }
+}
@@ -0,0 +1,519 @@
+package mydb.storage;
+
+import mydb.common.Database;
+import mydb.common.DbException;
+import mydb.common.Type;
+import mydb.transaction.TransactionId;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 变长记录的分槽页面（slotted page），由SlottedFile使用
+ * HeapPage的每个槽都是定长的，字符串字段总是占用STRING_LEN+4个字节；SlottedPage中每条记录只占用实际需要的字节：
+ * int字段和字典编码的字符串字段占4个字节，其它字符串字段为2字节的长度和字符串的字节。
+ * 页面格式：
+ * 开头为页面头（PAGE_HEADER_SIZE字节）：槽的数量、记录区的起始偏移量（0表示页面末尾，使全0页面为空页面）；
+ * 之后为槽目录（slot directory），每个槽SLOT_SIZE字节：记录在页面中的偏移量和记录长度（各2字节），偏移量为0表示空槽；
+ * 记录从页面末尾向前存放，槽目录和记录区之间为空闲空间。
+ * 删除记录只清空对应的槽，记录区中留下的空洞在空闲空间不足时通过页内整理（compaction）回收，
+ * 整理只移动记录而不改变槽号，因此RecordId保持不变。
+ * 与HeapPage一样，页面字节是页面内容的唯一来源，元组只在访问字段时才从字节中解析
+ * @see SlottedFile
+ * @see HeapPage
+ */
+public class SlottedPage implements TuplePage, FieldReader {
+
+    /**
+     * 页面头的字节数：槽的数量和记录区的起始偏移量
+     */
+    static final int PAGE_HEADER_SIZE = 8;
+
+    /**
+     * 槽目录中每个槽的字节数
+     */
+    static final int SLOT_SIZE = 4;
+
+    /**
+     * 字符串字段长度的字节数
+     */
+    private static final int STRING_LEN_SIZE = 2;
+
+    final HeapPageId pid;
+
+    final TupleDesc tupleDesc;
+
+    /**
+     * 各列的字典，不使用字典编码的列为null
+     */
+    private final StringDictionary[] dictionaries;
+
+    /**
+     * 页面的原始字节，页面从堆外帧中移出缓冲池时会被替换为堆内的拷贝（见detach），因此使用volatile
+     */
+    private volatile ByteBuffer data;
+
+    /**
+     * 页面所在的堆外帧，堆内页面为null
+     */
+    private ByteBuffer frame;
+
+    /**
+     * 页面是否已经被缓冲池交给调用者，决定页面离开缓冲池时是否需要拷贝其数据
+     */
+    private volatile boolean accessed;
+
+    /**
+     * 页面大小（字节数），由所在SlottedFile决定
+     */
+    final int pageSize;
+
+    /**
+     * 一条记录最多占用的字节数
+     */
+    final int maxRecordSize;
+
+    /**
+     * 槽目录中槽的数量（包括空槽）
+     */
+    int slotsNum;
+
+    /**
+     * 记录区的起始偏移量，小于该偏移量的空间为空闲空间
+     */
+    int freeEnd;
+
+    /**
+     * 已使用的槽的数量
+     */
+    int usedSlotsNum;
+
+    /**
+     * 所有记录占用的字节数，不包括删除记录留下的空洞
+     */
+    int liveBytes;
+
+    /**
+     * 页面修改前的镜像（写时复制），为null表示页面自上次setBeforeImage以来没有被修改
+     */
+    byte[] oldData;
+
+    /**
+     * 用于标记该页面是否dirty
+     */
+    boolean dirty;
+
+    /**
+     * 正在对该页面进行操作的事务ID
+     */
+    TransactionId tid;
+
+    public SlottedPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data), null);
+    }
+
+    /**
+     * 创建存放在堆外帧中的页面，页面数据已经读入帧中
+     * @param id 页面ID
+     * @param frame 缓冲池分配的堆外帧
+     */
+    SlottedPage(HeapPageId id, ByteBuffer frame) {
+        this(id, frame, frame);
+    }
+
+    private SlottedPage(HeapPageId id, ByteBuffer data, ByteBuffer frame) {
+        this.pid = id;
+        this.tupleDesc = Database.getCatalog().getTupleDesc(id.getTableId());
+        StringDictionary[] tableDictionaries = HeapFile.getDictionaries(id.getTableId());
+        this.dictionaries = (tableDictionaries != null) ?
+                tableDictionaries : new StringDictionary[tupleDesc.getFieldsNum()];
+        this.data = data;
+        this.frame = frame;
+        this.pageSize = data.capacity();
+        this.maxRecordSize = getMaxRecordSize();
+        this.slotsNum = data.getInt(0);
+        int end = data.getInt(4);
+        this.freeEnd = (end == 0) ? pageSize : end;
+        for (int i=0; i<slotsNum; i++) {
+            int length = recordLength(i);
+            if (length > 0) {
+                usedSlotsNum++;
+                liveBytes += length;
+            }
+        }
+        this.dirty = false;
+        this.tid = null;
+        this.oldData = null;
+    }
+
+    /**
+     * @return 若第i列为变长的字符串列则返回true，int列和字典编码的列都是4字节
+     */
+    private boolean isVariable(int i) {
+        return tupleDesc.getFieldType(i) == Type.STRING_TYPE && dictionaries[i] == null;
+    }
+
+    /**
+     * @return 返回一条记录最多占用的字节数
+     */
+    private int getMaxRecordSize() {
+        int size = 0;
+        for (int i=0; i<tupleDesc.getFieldsNum(); i++) {
+            size += isVariable(i) ? STRING_LEN_SIZE + Type.STRING_LEN : 4;
+        }
+        return size;
+    }
+
+    @Override
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /**
+     * 获得页面内容的拷贝，用于写入磁盘。与insertTuple、deleteTuple互斥
+     * @return 返回一个字节数组
+     */
+    @Override
+    public synchronized byte[] getPageData() {
+        byte[] pageData = new byte[pageSize];
+        data.get(0, pageData);
+        return pageData;
+    }
+
+    /**
+     * @return 返回槽目录之后到记录区之前的连续空闲字节数
+     */
+    private int contiguousFreeSpace() {
+        return freeEnd - PAGE_HEADER_SIZE - slotsNum * SLOT_SIZE;
+    }
+
+    /**
+     * @return 返回整理后可用的空闲字节数
+     */
+    private int freeSpace() {
+        return pageSize - PAGE_HEADER_SIZE - slotsNum * SLOT_SIZE - liveBytes;
+    }
+
+    /**
+     * 页面至少还能存放一条最长的记录和一个新槽时才认为有空间，使空闲空间映射中标记的页面一定可以插入元组
+     */
+    @Override
+    public boolean hasFreeSpace() {
+        return freeSpace() >= maxRecordSize + SLOT_SIZE;
+    }
+
+    /**
+     * @return 返回页面中元组的数量
+     */
+    public int getTuplesNum() {
+        return usedSlotsNum;
+    }
+
+    private int slotPosition(int slotId) {
+        return PAGE_HEADER_SIZE + slotId * SLOT_SIZE;
+    }
+
+    private int recordOffset(int slotId) {
+        return data.getShort(slotPosition(slotId)) & 0xFFFF;
+    }
+
+    private int recordLength(int slotId) {
+        return data.getShort(slotPosition(slotId) + 2) & 0xFFFF;
+    }
+
+    private void setSlot(int slotId, int offset, int length) {
+        data.putShort(slotPosition(slotId), (short) offset);
+        data.putShort(slotPosition(slotId) + 2, (short) length);
+    }
+
+    /**
+     * @param slotId 槽的索引
+     * @return 若对应索引的槽已被使用则返回true，否则返回false
+     */
+    public boolean isSlotUsed(int slotId) {
+        return slotId >= 0 && slotId < slotsNum && recordOffset(slotId) != 0;
+    }
+
+    /**
+     * 写入页面头
+     */
+    private void writePageHeader() {
+        data.putInt(0, slotsNum);
+        data.putInt(4, freeEnd == pageSize ? 0 : freeEnd);
+    }
+
+    /**
+     * @return 返回元组序列化为记录后的字节数
+     */
+    private int recordSize(Tuple tuple) {
+        int size = 0;
+        for (int i=0; i<tupleDesc.getFieldsNum(); i++) {
+            if (isVariable(i)) {
+                String value = ((StringField) tuple.getField(i)).getValue();
+                size += STRING_LEN_SIZE + Math.min(value.length(), Type.STRING_LEN);
+            } else {
+                size += 4;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 将元组的各个字段写到页面的offset位置
+     * @param codes 字典编码的列的编码
+     */
+    private void writeRecord(int offset, Tuple tuple, int[] codes) {
+        for (int i=0; i<tupleDesc.getFieldsNum(); i++) {
+            Field field = tuple.getField(i);
+            if (dictionaries[i] != null) {
+                data.putInt(offset, codes[i]);
+                offset += 4;
+            } else if (tupleDesc.getFieldType(i) == Type.STRING_TYPE) {
+                String value = ((StringField) field).getValue();
+                int length = Math.min(value.length(), Type.STRING_LEN);
+                data.putShort(offset, (short) length);
+                offset += STRING_LEN_SIZE;
+                for (int j=0; j<length; j++) {
+                    data.put(offset++, (byte) value.charAt(j));
+                }
+            } else {
+                data.putInt(offset, ((IntField) field).getValue());
+                offset += 4;
+            }
+        }
+    }
+
+    /**
+     * 将指定的元组插入该页面，优先复用空槽，连续空闲空间不足时先整理页面
+     * @param tuple 需要新增的元组
+     * @throws DbException 若页面空间不足，或者TupleDesc不匹配会抛出异常
+     */
+    @Override
+    public synchronized void insertTuple(Tuple tuple) throws DbException {
+        if (!tuple.getTupleDesc().equals(this.tupleDesc)) {
+            throw new DbException("the tupleDesc is not matched");
+        }
+        int size = recordSize(tuple);
+        boolean newSlot = usedSlotsNum == slotsNum;
+        int required = size + (newSlot ? SLOT_SIZE : 0);
+        if (freeSpace() < required) {
+            throw new DbException("this page is full");
+        }
+        // 修改页面之前先获取字典编码，写入字典失败时页面保持不变
+        int[] codes = HeapPage.encode(dictionaries, tuple);
+        copyOnWrite();
+        if (contiguousFreeSpace() < required) {
+            compact();
+        }
+        int slotId = slotsNum;
+        if (newSlot) {
+            slotsNum++;
+        } else {
+            slotId = 0;
+            while (isSlotUsed(slotId)) {
+                slotId++;
+            }
+        }
+        freeEnd -= size;
+        writeRecord(freeEnd, tuple, codes);
+        setSlot(slotId, freeEnd, size);
+        writePageHeader();
+        usedSlotsNum++;
+        liveBytes += size;
+        tuple.setRecordId(new RecordId(pid, slotId));
+    }
+
+    /**
+     * 从该页面中删除指定的元组，记录的字节清零，末尾的空槽会从槽目录中移除
+     * @param tuple 需要删除的元组
+     * @throws DbException 若该元组不在页面中，或元组对应的槽为空，会抛出数据库异常
+     */
+    @Override
+    public synchronized void deleteTuple(Tuple tuple) throws DbException {
+        RecordId recordId = tuple.getRecordId();
+        int slotId = recordId.getTupleNo();
+        if (!this.pid.equals(recordId.getPageId()) || !isSlotUsed(slotId)) {
+            throw new DbException("tuple is not in this page");
+        }
+        // 记录的字节将被清零，先解析该元组尚未解析的字段
+        tuple.materialize();
+        copyOnWrite();
+        int offset = recordOffset(slotId);
+        int length = recordLength(slotId);
+        for (int i=0; i<length; i++) {
+            data.put(offset + i, (byte) 0);
+        }
+        setSlot(slotId, 0, 0);
+        if (offset == freeEnd) {
+            // 删除的是记录区最前面的记录，直接归还给空闲空间
+            freeEnd += length;
+        }
+        while (slotsNum > 0 && !isSlotUsed(slotsNum - 1)) {
+            slotsNum--;
+        }
+        usedSlotsNum--;
+        liveBytes -= length;
+        if (usedSlotsNum == 0) {
+            freeEnd = pageSize;
+        }
+        writePageHeader();
+    }
+
+    /**
+     * 页内整理：将所有记录紧密地移到页面末尾，消除删除记录留下的空洞，槽号保持不变
+     */
+    private void compact() {
+        byte[] pageData = getPageData();
+        int end = pageSize;
+        for (int i=0; i<slotsNum; i++) {
+            if (!isSlotUsed(i)) {
+                continue;
+            }
+            int length = recordLength(i);
+            end -= length;
+            data.put(end, pageData, recordOffset(i), length);
+            setSlot(i, end, length);
+        }
+        // 空闲空间保持全0
+        int directoryEnd = PAGE_HEADER_SIZE + slotsNum * SLOT_SIZE;
+        for (int i=directoryEnd; i<end; i++) {
+            data.put(i, (byte) 0);
+        }
+        freeEnd = end;
+        writePageHeader();
+    }
+
+    /**
+     * 从页面字节中解析指定槽的单个字段，需要跳过该字段之前的变长字段
+     * @param slotId 已使用的槽的索引
+     * @param fieldIndex 字段索引
+     * @return 返回解析得到的字段
+     */
+    @Override
+    public synchronized Field readField(int slotId, int fieldIndex) {
+        if (!isSlotUsed(slotId)) {
+            throw new IllegalArgumentException("slot " + slotId + " is empty");
+        }
+        int offset = recordOffset(slotId);
+        for (int i=0; i<fieldIndex; i++) {
+            offset += isVariable(i) ? STRING_LEN_SIZE + (data.getShort(offset) & 0xFFFF) : 4;
+        }
+        if (dictionaries[fieldIndex] != null) {
+            return new DictionaryField(dictionaries[fieldIndex], data.getInt(offset));
+        }
+        if (tupleDesc.getFieldType(fieldIndex) == Type.STRING_TYPE) {
+            int length = data.getShort(offset) & 0xFFFF;
+            byte[] bytes = new byte[length];
+            data.get(offset + STRING_LEN_SIZE, bytes);
+            return new StringField(new String(bytes, StandardCharsets.ISO_8859_1), Type.STRING_LEN);
+        }
+        return new IntField(data.getInt(offset));
+    }
+
+    /**
+     * 元组在迭代时才从页面字节中解析，迭代器本身不持有页面的元组
+     * @return 返回该页面所有元组的迭代器
+     */
+    @Override
+    public Iterator<Tuple> iterator() {
+        return new Iterator<>() {
+            private int slotId = nextUsedSlot(0);
+
+            @Override
+            public boolean hasNext() {
+                return slotId >= 0;
+            }
+
+            @Override
+            public Tuple next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Tuple tuple = new Tuple(tupleDesc, SlottedPage.this, slotId);
+                tuple.setRecordId(new RecordId(pid, slotId));
+                slotId = nextUsedSlot(slotId + 1);
+                return tuple;
+            }
+        };
+    }
+
+    @Override
+    public synchronized Tuple getTuple(int slotId) {
+        if (!isSlotUsed(slotId)) {
+            return null;
+        }
+        Tuple tuple = new Tuple(tupleDesc, this, slotId);
+        tuple.setRecordId(new RecordId(pid, slotId));
+        return tuple;
+    }
+
+    /**
+     * @return 返回从start开始的第一个已使用的槽，不存在则返回-1
+     */
+    private synchronized int nextUsedSlot(int start) {
+        for (int slotId=start; slotId<slotsNum; slotId++) {
+            if (isSlotUsed(slotId)) {
+                return slotId;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public TransactionId isDirty() {
+        return dirty ? tid: null;
+    }
+
+    @Override
+    public void setDirty(boolean dirty, TransactionId tid) {
+        this.dirty = dirty;
+        this.tid = tid;
+    }
+
+    @Override
+    public void markAccessed() {
+        accessed = true;
+    }
+
+    @Override
+    public synchronized ByteBuffer detach() {
+        ByteBuffer oldFrame = frame;
+        if (oldFrame != null) {
+            // 没有被访问过的页面不会再被任何对象引用，直接丢弃其数据
+            data = accessed ? ByteBuffer.wrap(getPageData()) : null;
+            frame = null;
+        }
+        return oldFrame;
+    }
+
+    /**
+     * 修改页面字节前调用，页面自上次setBeforeImage以来第一次被修改时拷贝修改前的字节
+     */
+    private void copyOnWrite() {
+        if (oldData == null) {
+            oldData = getPageData();
+        }
+    }
+
+    @Override
+    public SlottedPage getBeforeImage() {
+        try {
+            byte[] tempOldData;
+            synchronized (this) {
+                tempOldData = (oldData != null) ? oldData : getPageData();
+            }
+            return new SlottedPage(pid, tempOldData);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void setBeforeImage() {
+        oldData = null;
+    }
+}
@@ -0,0 +1,150 @@
+package mydb.storage;
+
+import mydb.common.Type;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 字典编码（dictionary encoding）字符串列的字典，将列中出现过的每个不同的字符串映射为一个int编码
+ * 页面中只存放4字节的编码而不是STRING_LEN+4字节的字符串，适合取值较少的列（如国家、状态、类别）。
+ * 编码按字符串第一次出现的顺序从0开始分配，分配后不会改变也不会删除，因此相同的字符串在整个表中总是相同的编码，
+ * 等值比较可以直接比较编码（见DictionaryField）。
+ * 字典存放在数据文件旁的.dict<列索引>文件中，依次为每个编码的字符串（2字节长度和字符串的字节），
+ * 新编码在写入页面之前就追加到文件中并刷盘，磁盘上的页面不会引用字典中不存在的编码
+ * @see DictionaryField
+ * @see HeapFile
+ */
+public class StringDictionary {
+
+    private final File file;
+
+    private final FileChannelPool channelPool;
+
+    /**
+     * 编码到字符串的映射，下标为编码。扩容时替换为新数组，读取编码不需要加锁
+     */
+    private volatile String[] values;
+
+    /**
+     * 已分配的编码数量
+     */
+    private volatile int size;
+
+    /**
+     * 字符串到编码的映射
+     */
+    private final Map<String, Integer> codes = new HashMap<>();
+
+    /**
+     * 字典文件的长度，新编码追加到该位置
+     */
+    private long fileLength;
+
+    /**
+     * 读取字典文件，文件不存在时为空字典
+     * @param file 字典文件
+     * @param channelPool 数据库文件的通道缓存
+     */
+    StringDictionary(File file, FileChannelPool channelPool) {
+        this.file = file;
+        this.channelPool = channelPool;
+        this.values = new String[16];
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            FileChannel channel = channelPool.get(file);
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            FileChannelPool.readFully(channel, buffer, 0);
+            buffer.flip();
+            // 末尾不完整的记录（写入时崩溃）被忽略并在之后被覆盖
+            while (buffer.remaining() >= 2) {
+                int length = buffer.getShort(buffer.position()) & 0xFFFF;
+                if (buffer.remaining() < 2 + length) {
+                    break;
+                }
+                buffer.getShort();
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                add(new String(bytes, StandardCharsets.ISO_8859_1));
+            }
+            fileLength = buffer.position();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return 返回数据文件第column列对应的字典文件
+     */
+    static File fileOf(File dataFile, int column) {
+        return new File(dataFile.getPath() + ".dict" + column);
+    }
+
+    /**
+     * 获取字符串的编码，字典中不存在时分配新的编码并写入字典文件
+     * @param value 字符串，超过STRING_LEN的部分被截断（与StringField相同）
+     * @return 返回字符串的编码
+     */
+    public synchronized int encode(String value) throws IOException {
+        if (value.length() > Type.STRING_LEN) {
+            value = value.substring(0, Type.STRING_LEN);
+        }
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        ByteBuffer record = ByteBuffer.allocate(2 + value.length());
+        record.putShort((short) value.length());
+        for (int i=0; i<value.length(); i++) {
+            record.put((byte) value.charAt(i));
+        }
+        FileChannel channel = channelPool.get(file);
+        FileChannelPool.writeFully(channel, record.flip(), fileLength);
+        // 页面可能在字典文件之前落盘，新编码需要先持久化
+        channel.force(false);
+        fileLength += record.capacity();
+        return add(value);
+    }
+
+    /**
+     * @param value 字符串
+     * @return 返回字符串的编码，字典中不存在时返回-1
+     */
+    public synchronized int lookup(String value) {
+        return codes.getOrDefault(value, -1);
+    }
+
+    /**
+     * @param code 字典中已存在的编码
+     * @return 返回编码对应的字符串
+     */
+    public String decode(int code) {
+        return values[code];
+    }
+
+    /**
+     * @return 返回字典中不同字符串的数量，编码的范围为[0, size)
+     */
+    public int size() {
+        return size;
+    }
+
+    private int add(String value) {
+        int code = size;
+        if (code == values.length) {
+            String[] newValues = new String[code * 2];
+            System.arraycopy(values, 0, newValues, 0, code);
+            values = newValues;
+        }
+        values[code] = value;
+        codes.put(value, code);
+        size = code + 1;
+        return code;
+    }
+}
@@ -4,6 +4,7 @@ import mydb.common.Type;
 import mydb.execution.Predicate;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * 存储单个固定长度的String的字段实例
@@ -66,6 +67,22 @@ public class StringField implements Field {
             dos.write((byte) 0);
     }
 
+    /**
+     * 将字符串写到buffer的offset位置，与serialize(DataOutputStream)一样总会写maxSize+4个字节
+     */
+    public void serialize(ByteBuffer buffer, int offset) {
+        int len = Math.min(value.length(), maxSize);
+        buffer.putInt(offset, len);
+        offset += 4;
+        for (int i=0; i<len; i++) {
+            // 与DataOutputStream.writeBytes相同，只保留字符的低8位
+            buffer.put(offset + i, (byte) value.charAt(i));
+        }
+        for (int i=len; i<maxSize; i++) {
+            buffer.put(offset + i, (byte) 0);
+        }
+    }
+
     /**
      * 用于比较指定字段和该字段的值
      */
@@ -1,5 +1,7 @@
 package mydb.storage;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.Arrays;
@@ -7,7 +9,8 @@ import java.util.Iterator;
 
 /**
  * Tuple类用于维护元组（tuple）信息
- * Tuple由字段（Field）集合组成
+ * Tuple由字段（Field）集合组成。从页面中读取的元组只在第一次访问某个字段时才从页面字节中解析该字段，
+ * 只访问部分字段的算子（如Filter）不会为其它字段创建对象
  */
 public class Tuple implements Serializable {
 
@@ -18,6 +21,12 @@ public class Tuple implements Serializable {
     private Field[] fields;
     private RecordId recordId;
 
+    /**
+     * 尚未解析的字段的来源页面，所有字段都已解析后为null
+     */
+    private transient FieldReader reader;
+    private transient int slotId;
+
     /**
      * Tuple构造函数
      * @param td 该元组（tuple）的模式（schema）。TupleDesc应至少有一个字段（field）
@@ -27,6 +36,18 @@ public class Tuple implements Serializable {
         this.fields = new Field[td.getFieldsNum()];
     }
 
+    /**
+     * 创建字段延迟解析的元组
+     * @param td 该元组的模式
+     * @param reader 元组所在的页面
+     * @param slotId 元组所在的槽
+     */
+    Tuple(TupleDesc td, FieldReader reader, int slotId) {
+        this(td);
+        this.reader = reader;
+        this.slotId = slotId;
+    }
+
     /**
      * @return 返回该元组（tuple）的TupleDesc模式（schema）
      */
@@ -54,7 +75,12 @@ public class Tuple implements Serializable {
      * @return 返回第index个字段（field）的值
      */
     public Field getField(int index) {
-        return fields[index];
+        Field field = fields[index];
+        if (field == null && reader != null) {
+            field = reader.readField(slotId, index);
+            fields[index] = field;
+        }
+        return field;
     }
 
     /**
@@ -72,6 +98,7 @@ public class Tuple implements Serializable {
      */
     @Override
     public String toString() {
+        materialize();
         StringBuilder str = new StringBuilder();
         int n = fields.length;
         for (int i=0; i<n; i++) {
@@ -86,9 +113,29 @@ public class Tuple implements Serializable {
      * @return 该元组的字段集合的迭代器（Iterator）
      */
     public Iterator<Field> fields() {
+        materialize();
         return Arrays.asList(this.fields).iterator();
     }
 
+    /**
+     * 解析所有尚未解析的字段，之后该元组不再依赖页面（如页面中的元组即将被删除）
+     */
+    void materialize() {
+        if (reader == null) {
+            return;
+        }
+        for (int i=0; i<fields.length; i++) {
+            getField(i);
+        }
+        reader = null;
+    }
+
+    @Serial
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        materialize();
+        out.defaultWriteObject();
+    }
+
     /**
      * 重新设置该元组的TupleDesc
      */
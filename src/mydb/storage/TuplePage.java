@@ -0,0 +1,55 @@
+package mydb.storage;
+
+import mydb.common.DbException;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * 存放元组的页面，HeapFile通过该接口访问不同格式的页面
+ * @see HeapPage
+ * @see SlottedPage
+ */
+interface TuplePage extends Page {
+
+    /**
+     * 将指定的元组插入该页面，并设置元组的RecordId
+     * @param tuple 需要新增的元组
+     * @throws DbException 页面没有足够的空间，或者TupleDesc不匹配时抛出
+     */
+    void insertTuple(Tuple tuple) throws DbException;
+
+    /**
+     * 从该页面中删除指定的元组
+     * @param tuple 需要删除的元组
+     * @throws DbException 元组不在该页面中时抛出
+     */
+    void deleteTuple(Tuple tuple) throws DbException;
+
+    /**
+     * @return 返回该页面所有元组的迭代器
+     */
+    Iterator<Tuple> iterator();
+
+    /**
+     * @param slotId 槽的索引
+     * @return 返回指定槽中的元组，槽为空或不存在时返回null
+     */
+    Tuple getTuple(int slotId);
+
+    /**
+     * @return 页面一定可以再插入一个元组时返回true
+     */
+    boolean hasFreeSpace();
+
+    /**
+     * 记录页面已经被缓冲池交给调用者，调用者及其读出的元组可能在页面离开缓冲池后继续访问该页面
+     */
+    void markAccessed();
+
+    /**
+     * 页面离开缓冲池时将其数据从堆外帧拷贝到堆内，从未被交给调用者的页面（如预读后没有被访问的页面）不需要拷贝
+     * @return 返回页面原先所在的帧，堆内页面返回null
+     */
+    ByteBuffer detach();
+}
@@ -0,0 +1,188 @@
+package mydb.storage;
+
+import mydb.common.Database;
+import mydb.common.Type;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * 将元组直接写成新的HeapFile（定长槽的HeapPage格式），用于程序中批量导入数据和生成测试数据
+ * 元组在内存中编码为槽的格式后由HeapPageWriter组装为页面并批量写入，不经过临时文本文件、缓冲池和日志。
+ * 写完后调用close，或者调用register关闭并将文件注册到Catalog中：
+ * <pre>
+ * try (TupleSink sink = new TupleSink(file, tupleDesc)) {
+ *     sink.add(1, 2);
+ *     sink.add(tuple);
+ * }
+ * </pre>
+ * @see HeapPageWriter
+ */
+public class TupleSink implements Closeable {
+
+    /**
+     * 攒够该数量的记录后交给HeapPageWriter
+     */
+    private static final int BATCH_RECORDS = 1024;
+
+    private final File file;
+
+    private final TupleDesc tupleDesc;
+
+    /**
+     * 每个字段在记录中的偏移量
+     */
+    private final int[] fieldOffsets;
+
+    private final int recordSize;
+
+    private final FileChannel channel;
+
+    private final HeapPageWriter writer;
+
+    /**
+     * 尚未交给writer的记录
+     */
+    private final ByteBuffer records;
+
+    private int bufferedNum = 0;
+
+    private boolean closed = false;
+
+    /**
+     * 使用默认页面大小（BufferPool.getPageSize）创建文件
+     * @param file 输出文件，已存在时被覆盖
+     * @param tupleDesc 元组描述
+     */
+    public TupleSink(File file, TupleDesc tupleDesc) throws IOException {
+        this(file, tupleDesc, BufferPool.getPageSize());
+    }
+
+    /**
+     * @param file 输出文件，已存在时被覆盖
+     * @param tupleDesc 元组描述
+     * @param pageSize 页面大小
+     * @throws IllegalArgumentException 一个页面放不下一个元组时抛出
+     */
+    public TupleSink(File file, TupleDesc tupleDesc, int pageSize) throws IOException {
+        this.file = file;
+        this.tupleDesc = tupleDesc;
+        this.fieldOffsets = new int[tupleDesc.getFieldsNum()];
+        int size = 0;
+        for (int i=0; i<fieldOffsets.length; i++) {
+            fieldOffsets[i] = size;
+            size += tupleDesc.getFieldType(i).getLen();
+        }
+        this.recordSize = size;
+        if (HeapPageWriter.slotsNum(BufferPool.checkPageSize(pageSize), recordSize) == 0) {
+            throw new IllegalArgumentException("tuple of " + recordSize + " bytes does not fit in a page");
+        }
+        this.records = ByteBuffer.allocate(BATCH_RECORDS * recordSize);
+        this.channel = HeapPageWriter.create(file);
+        this.writer = new HeapPageWriter(channel, pageSize, recordSize);
+    }
+
+    /**
+     * 写入一个元组
+     * @param tuple 元组，字段类型需要与tupleDesc一致
+     * @throws IllegalArgumentException 元组的字段数量或类型与tupleDesc不一致时抛出
+     */
+    public void add(Tuple tuple) throws IOException {
+        checkOpen();
+        if (tuple.getTupleDesc().getFieldsNum() != fieldOffsets.length) {
+            throw new IllegalArgumentException("tuple has " + tuple.getTupleDesc().getFieldsNum()
+                    + " fields, expected " + fieldOffsets.length);
+        }
+        int offset = bufferedNum * recordSize;
+        for (int i=0; i<fieldOffsets.length; i++) {
+            Field field = tuple.getField(i);
+            if (field == null || field.getType() != tupleDesc.getFieldType(i)) {
+                throw new IllegalArgumentException("field " + i + " of " + tuple + " does not match " + tupleDesc);
+            }
+            field.serialize(records, offset + fieldOffsets[i]);
+        }
+        added();
+    }
+
+    /**
+     * 写入一个只有int字段的元组
+     * @param values 各个字段的值
+     * @throws IllegalArgumentException 值的数量与tupleDesc不一致，或者tupleDesc中有非int字段时抛出
+     */
+    public void add(int... values) throws IOException {
+        checkOpen();
+        if (values.length != fieldOffsets.length) {
+            throw new IllegalArgumentException("row has " + values.length + " values, expected " + fieldOffsets.length);
+        }
+        int offset = bufferedNum * recordSize;
+        for (int i=0; i<values.length; i++) {
+            if (tupleDesc.getFieldType(i) != Type.INT_TYPE) {
+                throw new IllegalArgumentException("field " + i + " of " + tupleDesc + " is not an int");
+            }
+            records.putInt(offset + fieldOffsets[i], values[i]);
+        }
+        added();
+    }
+
+    private void added() throws IOException {
+        bufferedNum++;
+        if (bufferedNum == BATCH_RECORDS) {
+            flushRecords();
+        }
+    }
+
+    private void flushRecords() throws IOException {
+        writer.append(records.array(), bufferedNum);
+        bufferedNum = 0;
+        // 字段不一定写满它所占的字节（如maxSize小于STRING_LEN的StringField），复用前需要清零
+        Arrays.fill(records.array(), (byte) 0);
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("tuple sink of " + file + " is closed");
+        }
+    }
+
+    /**
+     * @return 返回已写入的元组数量
+     */
+    public long getTuplesNum() {
+        return writer.getRecordsNum() + bufferedNum;
+    }
+
+    /**
+     * 写入剩余的元组并关闭文件，重复调用不会产生影响
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (bufferedNum > 0) {
+                flushRecords();
+            }
+            writer.finish();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * 关闭文件，并将其作为HeapFile注册到Catalog中，指定了主键时为已写入的元组建立主键上的唯一索引
+     * @param tableName 表名
+     * @param primaryKeyName 主键字段名，没有主键时为空字符串
+     * @return 返回注册的HeapFile
+     * @throws IllegalStateException 写入的元组主键重复时抛出
+     */
+    public HeapFile register(String tableName, String primaryKeyName) throws IOException {
+        close();
+        HeapFile heapFile = new HeapFile(file, tupleDesc);
+        Database.getCatalog().addTable(heapFile, tableName, primaryKeyName);
+        return heapFile;
+    }
+}
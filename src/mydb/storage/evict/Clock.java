@@ -0,0 +1,130 @@
+package mydb.storage.evict;
+
+import mydb.storage.PageId;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CLOCK驱逐策略（second chance）
+ * 页面存放在固定大小的帧（frame）数组中，每个帧有一个引用位（reference bit）。
+ * 页面命中时只需要设置引用位，驱逐时时钟指针（hand）扫描帧数组：
+ * 引用位为1的帧清零后跳过（给予第二次机会），遇到引用位为0的帧则驱逐该页面
+ */
+public class Clock implements EvictStrategy {
+
+    /**
+     * 帧数组，存放页面ID，空帧为null
+     */
+    private PageId[] frames;
+
+    /**
+     * 每个帧对应的引用位
+     */
+    private boolean[] referenced;
+
+    /**
+     * 页面ID到帧索引的映射
+     */
+    private final Map<PageId, Integer> frameIndexMap;
+
+    /**
+     * 时钟指针，指向下一个需要检查的帧
+     */
+    private int hand;
+
+    /**
+     * 空帧的索引栈，用于快速找到可以放置新页面的帧
+     */
+    private int[] freeFrames;
+    private int freeFramesNum;
+
+    public Clock(int pagesNum) {
+        int capacity = Math.max(1, pagesNum);
+        frames = new PageId[capacity];
+        referenced = new boolean[capacity];
+        frameIndexMap = new HashMap<>(capacity * 2);
+        freeFrames = new int[capacity];
+        for (int i=0; i<capacity; i++) {
+            // 从低位的帧开始使用
+            freeFrames[i] = capacity - 1 - i;
+        }
+        freeFramesNum = capacity;
+        hand = 0;
+    }
+
+    /**
+     * 页面被访问时设置其引用位，新页面则放入一个空帧
+     * @param pid 进行修改的页面ID
+     */
+    @Override
+    public void modifyData(PageId pid) {
+        Integer index = frameIndexMap.get(pid);
+        if (index != null) {
+            referenced[index] = true;
+            return;
+        }
+        if (freeFramesNum == 0) {
+            // 帧数组已满（缓冲池通常会先驱逐页面），扩容帧数组
+            grow();
+        }
+        int frame = freeFrames[--freeFramesNum];
+        frames[frame] = pid;
+        referenced[frame] = true;
+        frameIndexMap.put(pid, frame);
+    }
+
+    /**
+     * 移动时钟指针寻找引用位为0的帧，返回该帧的页面ID并释放该帧
+     * @return 返回需要被驱逐的页面的ID，没有页面时返回null
+     */
+    @Override
+    public PageId getEvictPageId() {
+        if (frameIndexMap.isEmpty()) {
+            return null;
+        }
+        // 最多扫描两圈：第一圈清除引用位，第二圈必然找到引用位为0的帧
+        for (int i=0; i<frames.length * 2; i++) {
+            int frame = hand;
+            hand = (hand + 1) % frames.length;
+            if (frames[frame] == null) {
+                continue;
+            }
+            if (referenced[frame]) {
+                referenced[frame] = false;
+                continue;
+            }
+            PageId pid = frames[frame];
+            releaseFrame(frame);
+            return pid;
+        }
+        return null;
+    }
+
+    @Override
+    public void removePage(PageId pid) {
+        Integer index = frameIndexMap.get(pid);
+        if (index != null) {
+            releaseFrame(index);
+        }
+    }
+
+    private void releaseFrame(int frame) {
+        frameIndexMap.remove(frames[frame]);
+        frames[frame] = null;
+        referenced[frame] = false;
+        freeFrames[freeFramesNum++] = frame;
+    }
+
+    private void grow() {
+        int oldCapacity = frames.length;
+        int newCapacity = oldCapacity * 2;
+        frames = Arrays.copyOf(frames, newCapacity);
+        referenced = Arrays.copyOf(referenced, newCapacity);
+        freeFrames = Arrays.copyOf(freeFrames, newCapacity);
+        for (int i=newCapacity-1; i>=oldCapacity; i--) {
+            freeFrames[freeFramesNum++] = i;
+        }
+    }
+}
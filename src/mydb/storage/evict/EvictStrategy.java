@@ -7,6 +7,27 @@ import mydb.storage.PageId;
  */
 public interface EvictStrategy {
 
+    /**
+     * 根据策略名称创建驱逐策略，可选的策略：lru、clock、2q
+     * @param policy 驱逐策略名称（不区分大小写）
+     * @param pagesNum 使用该策略管理的最大页面数量
+     * @throws IllegalArgumentException 未知的驱逐策略会抛出异常
+     */
+    static EvictStrategy create(String policy, int pagesNum) {
+        switch (policy.toLowerCase()) {
+            case "lru" -> {
+                return new LRU(pagesNum);
+            }
+            case "clock" -> {
+                return new Clock(pagesNum);
+            }
+            case "2q" -> {
+                return new TwoQueue(pagesNum);
+            }
+        }
+        throw new IllegalArgumentException("Unknown evict policy " + policy);
+    }
+
     /**
      * 修改指定页面的数据后需要进行的策略
      * @param pid 进行修改的页面ID
@@ -17,4 +38,18 @@ public interface EvictStrategy {
      * 获取将要驱逐的页面Id
      */
     PageId getEvictPageId();
+
+    /**
+     * getEvictPageId选出的页面不能驱逐（如dirty）时，将其放回策略中，不视为一次访问
+     * @param pid getEvictPageId返回的页面ID
+     */
+    default void skipPage(PageId pid) {
+        modifyData(pid);
+    }
+
+    /**
+     * 页面被移出缓冲池（如discardPage）时，从驱逐策略中删除该页面
+     * @param pid 被移出的页面ID
+     */
+    void removePage(PageId pid);
 }
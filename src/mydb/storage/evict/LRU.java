@@ -112,7 +112,19 @@ public class LRU implements EvictStrategy {
     @Override
     public PageId getEvictPageId() {
         PageNode node = tail.prev;
+        if (node == head) {
+            // 没有可以驱逐的页面
+            return null;
+        }
         removeTail();
         return node.pid;
     }
+
+    @Override
+    public void removePage(PageId pid) {
+        PageNode node = pageNodeMap.get(pid);
+        if (node != null) {
+            removeNode(node);
+        }
+    }
 }
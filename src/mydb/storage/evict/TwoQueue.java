@@ -0,0 +1,129 @@
+package mydb.storage.evict;
+
+import mydb.storage.PageId;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * 2Q驱逐策略，可以抵抗顺序扫描（sequential scan）对缓冲池的冲刷
+ * 页面第一次被访问时进入FIFO队列A1in，从A1in驱逐的页面ID会记录在历史队列A1out中（只记录ID，不缓存页面）。
+ * 若A1out中的页面再次被访问，说明该页面是热点页面，会进入LRU队列Am。
+ * 全表扫描只访问一次的页面只会在A1in中停留并被优先驱逐，而不会把Am中的热点页面挤出缓冲池
+ */
+public class TwoQueue implements EvictStrategy {
+
+    /**
+     * A1in队列占缓存页面数量的比例
+     */
+    private static final double IN_RATIO = 0.25;
+
+    /**
+     * A1out历史队列可以记录的页面数量占缓存页面数量的比例
+     */
+    private static final double OUT_RATIO = 0.5;
+
+    /**
+     * 只被访问过一次的页面（FIFO），迭代顺序的第一个元素最早进入队列
+     */
+    private final LinkedHashSet<PageId> in;
+
+    /**
+     * 最近从A1in驱逐的页面ID（FIFO），不对应缓存的页面
+     */
+    private final LinkedHashSet<PageId> out;
+
+    /**
+     * 被多次访问的热点页面（LRU），迭代顺序的第一个元素最近最少使用
+     */
+    private final LinkedHashSet<PageId> hot;
+
+    private final int inCapacity;
+    private final int outCapacity;
+
+    /**
+     * 最近一次getEvictPageId从A1in中选出的页面，不能驱逐时需要放回A1in
+     */
+    private PageId lastInVictim;
+
+    public TwoQueue(int pagesNum) {
+        this.inCapacity = Math.max(1, (int) (pagesNum * IN_RATIO));
+        this.outCapacity = Math.max(1, (int) (pagesNum * OUT_RATIO));
+        this.in = new LinkedHashSet<>();
+        this.out = new LinkedHashSet<>();
+        this.hot = new LinkedHashSet<>();
+    }
+
+    /**
+     * 页面被访问时根据其所在的队列调整位置
+     * @param pid 进行修改的页面ID
+     */
+    @Override
+    public void modifyData(PageId pid) {
+        if (hot.contains(pid)) {
+            // 热点页面移至LRU队列的末尾（最近使用）
+            hot.remove(pid);
+            hot.add(pid);
+        } else if (in.contains(pid)) {
+            // 短时间内的重复访问（如同一次扫描读取同一页面的多个元组）不视为热点
+        } else if (out.remove(pid)) {
+            // 页面被驱逐后再次被访问，进入热点队列
+            hot.add(pid);
+        } else {
+            in.add(pid);
+        }
+    }
+
+    /**
+     * A1in超过其容量时优先驱逐A1in中最早的页面，否则驱逐Am中最近最少使用的页面
+     * @return 返回需要被驱逐的页面的ID，没有页面时返回null
+     */
+    @Override
+    public PageId getEvictPageId() {
+        lastInVictim = null;
+        if (in.size() > inCapacity || (hot.isEmpty() && !in.isEmpty())) {
+            // 上一次选出的页面已经确认被驱逐，此时再淘汰多余的记录，skipPage撤销记录时不会丢失其它记录
+            while (out.size() > outCapacity) {
+                removeFirst(out);
+            }
+            PageId pid = removeFirst(in);
+            // 记录被驱逐的页面ID
+            out.add(pid);
+            lastInVictim = pid;
+            return pid;
+        }
+        if (!hot.isEmpty()) {
+            return removeFirst(hot);
+        }
+        return null;
+    }
+
+    /**
+     * 不能驱逐的页面放回其原来所在队列的末尾，从A1in选出的页面撤销A1out中的记录，
+     * 否则dirty页面再次被访问时会被误认为热点页面
+     */
+    @Override
+    public void skipPage(PageId pid) {
+        if (pid.equals(lastInVictim)) {
+            out.remove(pid);
+            in.add(pid);
+        } else {
+            hot.add(pid);
+        }
+        lastInVictim = null;
+    }
+
+    @Override
+    public void removePage(PageId pid) {
+        if (!in.remove(pid)) {
+            hot.remove(pid);
+        }
+    }
+
+    private static PageId removeFirst(LinkedHashSet<PageId> queue) {
+        Iterator<PageId> iterator = queue.iterator();
+        PageId pid = iterator.next();
+        iterator.remove();
+        return pid;
+    }
+}
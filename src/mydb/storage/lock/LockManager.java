@@ -17,10 +17,24 @@ public class LockManager {
      */
     private Map<PageId, Map<TransactionId, PageLock>> pageLocks;
 
+    /**
+     * ÿҳ棬ʱֻҪͷЩҳϵҪҳ
+     */
+    private final Map<TransactionId, Set<PageId>> lockedPages = new HashMap<>();
+
     public LockManager() {
         pageLocks = new ConcurrentHashMap<PageId, Map<TransactionId, PageLock>>();
     }
 
+    /**
+     * ¼ڸҳϳ
+     * @return true
+     */
+    private boolean granted(PageId pid, TransactionId tid) {
+        lockedPages.computeIfAbsent(tid, k -> new HashSet<>()).add(pid);
+        return true;
+    }
+
     /**
      * ָԶָҳ
      * @param pid ҳID
@@ -37,14 +51,14 @@ public class LockManager {
             locks = new ConcurrentHashMap<>();
             locks.put(tid, pageLock);
             pageLocks.put(pid, locks);
-            return true;
+            return granted(pid, tid);
         }
         PageLock pageLock = locks.get(tid);
         // ڸҳ
         if (pageLock != null) {
             // 
             if (lockType == PageLock.SHARE) {
-                return true;
+                return granted(pid, tid);
             }
             // д
             if (lockType == PageLock.EXCLUSIVE) {
@@ -55,14 +69,14 @@ public class LockManager {
                 if (locks.size() == 1) {
                     if (pageLock.getType() == PageLock.EXCLUSIVE) {
                         // ڸҳһдɹ
-                        return true;
+                        return granted(pid, tid);
                     }
                     if (pageLock.getType() == PageLock.SHARE) {
                         // ڸҳѾһֱΪддɹ
                         pageLock.setType(PageLock.EXCLUSIVE);
                         locks.put(tid, pageLock);
                         pageLocks.put(pid, locks);
-                        return true;
+                        return granted(pid, tid);
                     }
                 }
             }
@@ -74,7 +88,7 @@ public class LockManager {
                     pageLock = new PageLock(lockType, tid);
                     locks.put(tid, pageLock);
                     pageLocks.put(pid, locks);
-                    return true;
+                    return granted(pid, tid);
                 }
                 PageLock tmpLock = null;
                 for (PageLock pl: locks.values()) {
@@ -86,7 +100,7 @@ public class LockManager {
                         pageLock = new PageLock(lockType, tid);
                         locks.put(tid, pageLock);
                         pageLocks.put(pid, locks);
-                        return true;
+                        return granted(pid, tid);
                     }
                     if (tmpLock.getType() == PageLock.EXCLUSIVE) {
                         wait(50);
@@ -106,13 +120,43 @@ public class LockManager {
                     pageLock = new PageLock(lockType, tid);
                     locks.put(tid, pageLock);
                     pageLocks.put(pid, locks);
-                    return true;
+                    return granted(pid, tid);
                 }
             }
         }
        return false;
     }
 
+    /**
+     * ȴسԶָҳгͻʱfalse
+     * ڿԷĲϣƳٷͰȴֱʱ
+     * @param pid ҳID
+     * @param tid ID
+     * @param lockType ͣSHAREEXCLUSIVE
+     * @return ɹtrue
+     */
+    public synchronized boolean tryLock(PageId pid, TransactionId tid, int lockType) {
+        Map<TransactionId, PageLock> locks = pageLocks.get(pid);
+        if (locks == null) {
+            locks = new ConcurrentHashMap<>();
+            pageLocks.put(pid, locks);
+        }
+        for (Map.Entry<TransactionId, PageLock> entry: locks.entrySet()) {
+            if (!entry.getKey().equals(tid)
+                    && (lockType == PageLock.EXCLUSIVE || entry.getValue().getType() == PageLock.EXCLUSIVE)) {
+                // гͻ
+                return false;
+            }
+        }
+        PageLock pageLock = locks.get(tid);
+        if (pageLock == null) {
+            locks.put(tid, new PageLock(lockType, tid));
+        } else if (lockType == PageLock.EXCLUSIVE) {
+            pageLock.setType(PageLock.EXCLUSIVE);
+        }
+        return granted(pid, tid);
+    }
+
     /**
      * ӦڶӦҳͷ
      * @param pid ҳID
@@ -134,6 +178,13 @@ public class LockManager {
             // ҳûκ
             pageLocks.remove(pid);
         }
+        Set<PageId> pids = lockedPages.get(tid);
+        if (pids != null) {
+            pids.remove(pid);
+            if (pids.isEmpty()) {
+                lockedPages.remove(tid);
+            }
+        }
         this.notifyAll(); // ߳
     }
 
@@ -152,9 +203,13 @@ public class LockManager {
 
     /**
      * ͷŸҳϳе
+     * ֻҳ棬ԼأĴС޹
      */
     public synchronized void unlockAll(TransactionId tid) {
-        Set<PageId> pageIdSet = pageLocks.keySet();
+        Set<PageId> pageIdSet = lockedPages.remove(tid);
+        if (pageIdSet == null) {
+            return;
+        }
         for (PageId pid: pageIdSet) {
             unlock(pid, tid);
         }
@@ -0,0 +1,148 @@
+package mydb;
+
+import mydb.common.Database;
+import mydb.index.Index;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 测试用例的基类，仓库不依赖测试框架，由TestRunner执行
+ * 子类中以test开头的public无参方法为测试方法，每个测试方法在新的临时目录中运行，
+ * 结束后从缓冲池中丢弃该测试所有表和索引的页面、清空Catalog并删除临时目录
+ * @see TestRunner
+ */
+public abstract class TestCase {
+
+    /**
+     * 当前测试方法使用的临时目录
+     */
+    protected File tempDir;
+
+    /**
+     * 每个测试方法执行之前调用
+     */
+    protected void setUp() throws Exception {
+    }
+
+    /**
+     * 每个测试方法执行之后调用，测试失败时也会调用
+     */
+    protected void tearDown() throws Exception {
+    }
+
+    /**
+     * @return 返回临时目录中指定名称的文件
+     */
+    protected File tempFile(String name) {
+        return new File(tempDir, name);
+    }
+
+    /**
+     * 丢弃缓冲池中所有表和索引的页面，并清空Catalog，之后可以重新打开磁盘上的文件
+     * 调用之前需要提交或回滚所有事务，并将页面写回磁盘
+     */
+    protected static void forgetAllTables() {
+        Iterator<Integer> tableIds = Database.getCatalog().tableIdIterator();
+        while (tableIds.hasNext()) {
+            int tableId = tableIds.next();
+            for (Index index: Database.getCatalog().getIndexes(tableId)) {
+                Database.getBufferPool().discardPages(index.getFile().getId());
+            }
+            Database.getBufferPool().discardPages(tableId);
+        }
+        Database.getCatalog().clear();
+    }
+
+    protected static void assertTrue(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    protected static void assertEquals(long expected, long actual, String message) {
+        if (expected != actual) {
+            throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    protected static void assertEquals(Object expected, Object actual, String message) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    protected static void fail(String message) {
+        throw new AssertionError(message);
+    }
+
+    /**
+     * 执行测试类中的所有测试方法，并输出每个方法的结果
+     * @param testClass 测试类，需要有public无参构造函数
+     * @return 返回失败的测试方法数量
+     */
+    public static int run(Class<? extends TestCase> testClass) throws ReflectiveOperationException {
+        List<Method> methods = new ArrayList<>();
+        for (Method method: testClass.getMethods()) {
+            if (method.getName().startsWith("test") && method.getParameterCount() == 0
+                    && !Modifier.isStatic(method.getModifiers())) {
+                methods.add(method);
+            }
+        }
+        methods.sort((a, b) -> a.getName().compareTo(b.getName()));
+        int failures = 0;
+        for (Method method: methods) {
+            TestCase test = testClass.getDeclaredConstructor().newInstance();
+            String name = testClass.getSimpleName() + "." + method.getName();
+            long start = System.nanoTime();
+            Throwable error = null;
+            try {
+                test.tempDir = Files.createTempDirectory("mydb-test").toFile();
+                test.setUp();
+                try {
+                    method.invoke(test);
+                } finally {
+                    test.tearDown();
+                }
+            } catch (InvocationTargetException e) {
+                error = e.getCause();
+            } catch (Exception | AssertionError e) {
+                error = e;
+            } finally {
+                forgetAllTables();
+                deleteRecursively(test.tempDir);
+            }
+            long ms = (System.nanoTime() - start) / 1000000;
+            if (error == null) {
+                System.out.println("PASS " + name + " (" + ms + " ms)");
+            } else {
+                failures++;
+                System.out.println("FAIL " + name + " (" + ms + " ms)");
+                error.printStackTrace(System.out);
+            }
+        }
+        return failures;
+    }
+
+    private static void deleteRecursively(File file) {
+        if (file == null) {
+            return;
+        }
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child: children) {
+                deleteRecursively(child);
+            }
+        }
+        if (!file.delete() && file.exists()) {
+            System.out.println("cannot delete " + file);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package mydb;
+
+import mydb.index.BTreeFileTest;
+import mydb.index.HashFileTest;
+import mydb.storage.Lz4CodecTest;
+import mydb.storage.PageDirectoryTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 执行测试用例，参数为测试类的完整类名，没有参数时执行所有测试类
+ * 数据库的日志文件创建在当前目录中，建议在临时目录中运行：
+ * <pre>
+ * java -cp out:test-out mydb.TestRunner [mydb.index.BTreeFileTest ...]
+ * </pre>
+ * 有测试失败时以状态码1退出
+ * @see TestCase
+ */
+public class TestRunner {
+
+    /**
+     * 所有的测试类
+     */
+    private static final List<Class<? extends TestCase>> ALL_TESTS = List.of(
+            BTreeFileTest.class,
+            HashFileTest.class,
+            Lz4CodecTest.class,
+            PageDirectoryTest.class
+    );
+
+    public static void main(String[] args) throws ReflectiveOperationException {
+        List<Class<? extends TestCase>> testClasses = new ArrayList<>();
+        if (args.length == 0) {
+            testClasses.addAll(ALL_TESTS);
+        }
+        for (String name: args) {
+            testClasses.add(Class.forName(name).asSubclass(TestCase.class));
+        }
+        int failures = 0;
+        for (Class<? extends TestCase> testClass: testClasses) {
+            failures += TestCase.run(testClass);
+        }
+        System.out.println(failures == 0 ? "OK" : failures + " test(s) failed");
+        // 缓冲池的后台线程不会自动结束
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
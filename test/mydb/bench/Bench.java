@@ -0,0 +1,124 @@
+package mydb.bench;
+
+import mydb.common.Database;
+import mydb.common.Type;
+import mydb.storage.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试的公共方法
+ * 数据库的缓冲池在第一次使用Database时根据启动配置创建，之后不能更换，所以每个配置在单独的JVM中测量：
+ * 基准测试的main方法在临时目录中为每个配置启动一个子进程（使用相同的classpath，配置通过系统属性传入），
+ * 子进程输出一行结果，同一次运行的所有子进程共享临时目录中的表文件
+ */
+final class Bench {
+
+    /**
+     * 测试表的元组描述，两个int字段
+     */
+    static final TupleDesc TUPLE_DESC = new TupleDesc(
+            new Type[] {Type.INT_TYPE, Type.INT_TYPE}, new String[] {"a", "b"});
+
+    private Bench() {
+    }
+
+    /**
+     * @return 返回默认页面大小的页面可以存放的测试表元组数量，与HeapPage的槽数量相同
+     */
+    static int tuplesPerPage() {
+        return (BufferPool.getPageSize() * 8) / (TUPLE_DESC.getSize() * 8 + 1);
+    }
+
+    /**
+     * 创建所有页面都已满的测试表文件，已存在且页面数量相同时不重新创建
+     * 第一个字段为元组序号，第二个字段为序号对1000取模
+     * @param file 表文件
+     * @param pagesNum 页面数量
+     */
+    static void createTableFile(File file, int pagesNum) throws IOException {
+        long length = HeapFile.HEADER_SIZE + (long) pagesNum * BufferPool.getPageSize();
+        if (file.length() == length) {
+            return;
+        }
+        int tuplesNum = pagesNum * tuplesPerPage();
+        try (TupleSink sink = new TupleSink(file, TUPLE_DESC)) {
+            for (int i=0; i<tuplesNum; i++) {
+                sink.add(i, i % 1000);
+            }
+        }
+    }
+
+    /**
+     * 打开表文件并添加到Catalog中
+     */
+    static HeapFile openTable(File file, String name) {
+        HeapFile heapFile = new HeapFile(file, TUPLE_DESC);
+        Database.getCatalog().addTable(heapFile, name, "");
+        return heapFile;
+    }
+
+    static Tuple tuple(int a, int b) {
+        Tuple tuple = new Tuple(TUPLE_DESC);
+        tuple.setField(0, new IntField(a));
+        tuple.setField(1, new IntField(b));
+        return tuple;
+    }
+
+    /**
+     * 读取以逗号分隔的整数列表形式的系统属性，如-Dthreads=1,2,4
+     */
+    static List<Integer> intList(String property, String defaults) {
+        List<Integer> values = new ArrayList<>();
+        for (String value: System.getProperty(property, defaults).split(",")) {
+            values.add(Integer.parseInt(value.trim()));
+        }
+        return values;
+    }
+
+    static File createTempDir() throws IOException {
+        return Files.createTempDirectory("mydb-bench").toFile();
+    }
+
+    /**
+     * 在工作目录dir中启动子进程执行mainClass，子进程的输出直接输出到当前进程的标准输出
+     * @param dir 子进程的工作目录，数据库的日志文件创建在这里
+     * @param mainClass 子进程执行的类
+     * @param properties 子进程的系统属性，形如mydb.pages=1000
+     * @param args 子进程main方法的参数
+     * @throws IOException 子进程执行失败时抛出
+     */
+    static void fork(File dir, Class<?> mainClass, List<String> properties, String... args)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.add("-Xmx" + System.getProperty("bench.heap", "1g"));
+        for (String property: properties) {
+            command.add("-D" + property);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass.getName());
+        command.addAll(List.of(args));
+        Process process = new ProcessBuilder(command).directory(dir).inheritIO().start();
+        int status = process.waitFor();
+        if (status != 0) {
+            throw new IOException(mainClass.getSimpleName() + " " + String.join(" ", args)
+                    + " exited with status " + status);
+        }
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child: children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,91 @@
+package mydb.bench;
+
+import mydb.common.Database;
+import mydb.common.Permissions;
+import mydb.storage.BufferPool;
+import mydb.storage.HeapFile;
+import mydb.storage.HeapPageId;
+import mydb.transaction.Transaction;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 提交延迟与缓冲池大小关系的基准测试：先用另一个表的干净页面填满缓冲池，再测量只修改少量页面的事务的提交时间
+ * 提交只处理该事务修改过的页面，前像在第一次修改页面时才保存，提交延迟不随缓冲池中缓存的页面数量增长
+ * 提交时间包括强制写日志，主要取决于磁盘的fsync延迟
+ * 运行方式：
+ * <pre>
+ * java -cp out:test-out -Dpools=1000,4000,16000,32000 -Dtransactions=200 mydb.bench.CommitLatencyBench
+ * </pre>
+ */
+public class CommitLatencyBench {
+
+    /**
+     * 每个事务插入的元组数量
+     */
+    private static final int TUPLES_PER_TRANSACTION = 10;
+
+    private static final String FILL_FILE = "fill.dat";
+
+    private static final String TARGET_FILE = "target.dat";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            run(Integer.parseInt(args[0]));
+            return;
+        }
+        List<Integer> pools = Bench.intList("pools", "1000,4000,16000,32000");
+        String transactions = System.getProperty("transactions", "200");
+        File dir = Bench.createTempDir();
+        try {
+            Bench.createTableFile(new File(dir, FILL_FILE), pools.stream().max(Integer::compare).orElse(0));
+            System.out.printf("%d tuples inserted per transaction%n", TUPLES_PER_TRANSACTION);
+            System.out.printf("%10s %14s %12s %12s%n", "pool pages", "cached pages", "median us", "p99 us");
+            for (int pool: pools) {
+                // 每个缓冲池大小使用新的目标表，插入的位置相同
+                Bench.createTableFile(new File(dir, TARGET_FILE), 0);
+                new File(dir, TARGET_FILE + ".fsm").delete();
+                Bench.fork(dir, CommitLatencyBench.class, List.of("mydb.pages=" + pool), transactions);
+            }
+        } finally {
+            Bench.deleteRecursively(dir);
+        }
+    }
+
+    /**
+     * 在子进程中测量一个缓冲池大小
+     * @param transactionsNum 测量的事务数量
+     */
+    private static void run(int transactionsNum) throws Exception {
+        BufferPool bufferPool = Database.getBufferPool();
+        HeapFile fill = Bench.openTable(new File(FILL_FILE), "fill");
+        HeapFile target = Bench.openTable(new File(TARGET_FILE), "target");
+        // 用干净页面填满缓冲池，为目标表的页面留出少量空间
+        int cachedPages = Math.min(fill.getPagesNum(), bufferPool.getPagesNum() - 16);
+        Transaction warmUp = new Transaction();
+        warmUp.start();
+        for (int i=0; i<cachedPages; i++) {
+            bufferPool.getPage(warmUp.getId(), new HeapPageId(fill.getId(), i), Permissions.READ_ONLY);
+        }
+        warmUp.commit();
+
+        long[] latencies = new long[transactionsNum];
+        for (int t=0; t<transactionsNum; t++) {
+            Transaction transaction = new Transaction();
+            transaction.start();
+            for (int i=0; i<TUPLES_PER_TRANSACTION; i++) {
+                bufferPool.insertTuple(transaction.getId(), target.getId(), Bench.tuple(t, i));
+            }
+            long start = System.nanoTime();
+            transaction.commit();
+            latencies[t] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%10d %14d %12.0f %12.0f%n", bufferPool.getPagesNum(), cachedPages,
+                latencies[transactionsNum / 2] / 1e3, latencies[Math.min(transactionsNum - 1, transactionsNum * 99 / 100)] / 1e3);
+        // 缓冲池的后台线程不会自动结束
+        System.exit(0);
+    }
+}
@@ -0,0 +1,118 @@
+package mydb.bench;
+
+import mydb.common.Database;
+import mydb.common.Permissions;
+import mydb.execution.SeqScan;
+import mydb.storage.BufferPool;
+import mydb.storage.HeapFile;
+import mydb.storage.HeapPageId;
+import mydb.transaction.Transaction;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 驱逐策略的命中率基准测试：反复对比缓冲池大得多的表进行全表扫描，扫描期间穿插对一个小于缓冲池的热点表的点查询
+ * LRU中两次访问同一个热点页面之间扫描的页面超过缓冲池容量时热点页面被驱逐，
+ * 2Q中只访问一次的扫描页面留在A1in中先被驱逐，被再次访问的热点页面进入Am之后不会被扫描挤出缓冲池
+ * 通过缓冲池的命中和未命中计数分别统计点查询和扫描的命中率，关闭预读，避免预读的页面被计为命中
+ * 运行方式：
+ * <pre>
+ * java -cp out:test-out -Dpolicies=lru,clock,2q -Drounds=10 mydb.bench.EvictionHitRatioBench
+ * </pre>
+ */
+public class EvictionHitRatioBench {
+
+    private static final int POOL_PAGES = 1000;
+
+    private static final int HOT_PAGES = 400;
+
+    private static final int SCAN_PAGES = 3000;
+
+    /**
+     * 扫描每读取这么多页面的元组进行一次点查询
+     */
+    private static final int SCAN_PAGES_PER_LOOKUP = 2;
+
+    private static final int WARM_UP_ROUNDS = 2;
+
+    private static final String HOT_FILE = "hot.dat";
+
+    private static final String SCAN_FILE = "scan.dat";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            run(Integer.parseInt(args[0]));
+            return;
+        }
+        String rounds = System.getProperty("rounds", "10");
+        File dir = Bench.createTempDir();
+        try {
+            Bench.createTableFile(new File(dir, HOT_FILE), HOT_PAGES);
+            Bench.createTableFile(new File(dir, SCAN_FILE), SCAN_PAGES);
+            System.out.printf("pool of %d pages, %d hot pages, scans of %d pages, a lookup every %d scanned pages%n",
+                    POOL_PAGES, HOT_PAGES, SCAN_PAGES, SCAN_PAGES_PER_LOOKUP);
+            System.out.printf("%6s %12s %12s %12s%n", "policy", "lookup hits", "scan hits", "all hits");
+            for (String policy: System.getProperty("policies", "lru,clock,2q").split(",")) {
+                // 单个分区，各个策略管理同一组页面
+                Bench.fork(dir, EvictionHitRatioBench.class,
+                        List.of("mydb.pages=" + POOL_PAGES, "mydb.partitions=1", "mydb.readAhead=0",
+                                "mydb.evict=" + policy.trim()),
+                        rounds);
+            }
+        } finally {
+            Bench.deleteRecursively(dir);
+        }
+    }
+
+    /**
+     * 在子进程中测量一个驱逐策略
+     * @param rounds 测量的轮数，每轮为一次穿插点查询的全表扫描，之前另有WARM_UP_ROUNDS轮预热
+     */
+    private static void run(int rounds) throws Exception {
+        HeapFile hot = Bench.openTable(new File(HOT_FILE), "hot");
+        HeapFile scanned = Bench.openTable(new File(SCAN_FILE), "scanned");
+        BufferPool bufferPool = Database.getBufferPool();
+        Random random = new Random(3);
+        int tuplesPerLookup = Bench.tuplesPerPage() * SCAN_PAGES_PER_LOOKUP;
+        long lookupHits = 0;
+        long lookupMisses = 0;
+        for (int round=0; round<WARM_UP_ROUNDS + rounds; round++) {
+            if (round == WARM_UP_ROUNDS) {
+                bufferPool.resetHitStats();
+                lookupHits = 0;
+                lookupMisses = 0;
+            }
+            Transaction transaction = new Transaction();
+            transaction.start();
+            SeqScan scan = new SeqScan(transaction.getId(), scanned.getId());
+            scan.open();
+            for (int i=1; scan.hasNext(); i++) {
+                scan.next();
+                if (i % tuplesPerLookup == 0) {
+                    // 点查询前后的计数之差即为点查询的命中和未命中
+                    long hits = bufferPool.getHitsNum();
+                    long misses = bufferPool.getMissesNum();
+                    HeapPageId pid = new HeapPageId(hot.getId(), random.nextInt(HOT_PAGES));
+                    bufferPool.getPage(transaction.getId(), pid, Permissions.READ_ONLY);
+                    lookupHits += bufferPool.getHitsNum() - hits;
+                    lookupMisses += bufferPool.getMissesNum() - misses;
+                }
+            }
+            scan.close();
+            transaction.commit();
+        }
+        long scanHits = bufferPool.getHitsNum() - lookupHits;
+        long scanMisses = bufferPool.getMissesNum() - lookupMisses;
+        System.out.printf("%6s %11.1f%% %11.1f%% %11.1f%%%n", System.getProperty("mydb.evict"),
+                ratio(lookupHits, lookupMisses), ratio(scanHits, scanMisses),
+                ratio(bufferPool.getHitsNum(), bufferPool.getMissesNum()));
+        // 缓冲池的后台线程不会自动结束
+        System.exit(0);
+    }
+
+    private static double ratio(long hits, long misses) {
+        return hits + misses == 0 ? 0 : hits * 100.0 / (hits + misses);
+    }
+}
@@ -0,0 +1,86 @@
+package mydb.bench;
+
+import mydb.common.Database;
+import mydb.storage.HeapFile;
+import mydb.transaction.Transaction;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * 插入吞吐量与表大小关系的基准测试：向所有页面都已满的表中插入元组，
+ * 空闲空间映射使插入直接找到有空槽的页面，吞吐量不随表的页面数量下降
+ * 表文件由TupleSink生成，没有.fsm文件，第一次插入需要检查所有页面以建立空闲空间映射，单独计时
+ * 运行方式：
+ * <pre>
+ * java -cp out:test-out -Dsizes=100,1000,10000,40000 -Dtransactions=20 mydb.bench.InsertThroughputBench
+ * </pre>
+ */
+public class InsertThroughputBench {
+
+    private static final int POOL_PAGES = 1000;
+
+    /**
+     * 每个事务插入的元组数量
+     */
+    private static final int TUPLES_PER_TRANSACTION = 500;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            run(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+            return;
+        }
+        List<Integer> sizes = Bench.intList("sizes", "100,1000,10000,40000");
+        String transactions = System.getProperty("transactions", "20");
+        File dir = Bench.createTempDir();
+        try {
+            System.out.printf("%d tuples per transaction, pool of %d pages%n", TUPLES_PER_TRANSACTION, POOL_PAGES);
+            System.out.printf("%8s %16s %12s%n", "pages", "first insert ms", "tuples/s");
+            for (int size: sizes) {
+                Bench.createTableFile(new File(dir, fileName(size)), size);
+                Bench.fork(dir, InsertThroughputBench.class, List.of("mydb.pages=" + POOL_PAGES),
+                        String.valueOf(size), transactions);
+            }
+        } finally {
+            Bench.deleteRecursively(dir);
+        }
+    }
+
+    private static String fileName(int size) {
+        return "insert" + size + ".dat";
+    }
+
+    /**
+     * 在子进程中测量一个表大小
+     * @param size 表的页面数量
+     * @param transactionsNum 测量的事务数量
+     */
+    private static void run(int size, int transactionsNum) throws Exception {
+        HeapFile table = Bench.openTable(new File(fileName(size)), "insert");
+        long start = System.nanoTime();
+        insert(table, 1, -1);
+        long firstInsert = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i=0; i<transactionsNum; i++) {
+            insert(table, TUPLES_PER_TRANSACTION, i);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%8d %16.1f %12.0f%n", size, firstInsert / 1e6,
+                (double) transactionsNum * TUPLES_PER_TRANSACTION * 1e9 / elapsed);
+        // 缓冲池的后台线程不会自动结束
+        System.exit(0);
+    }
+
+    /**
+     * 在一个事务中插入n个元组并提交
+     */
+    private static void insert(HeapFile table, int n, int value) throws Exception {
+        Transaction transaction = new Transaction();
+        transaction.start();
+        for (int i=0; i<n; i++) {
+            Database.getBufferPool().insertTuple(transaction.getId(), table.getId(), Bench.tuple(i, value));
+        }
+        transaction.commit();
+    }
+}
@@ -0,0 +1,119 @@
+package mydb.bench;
+
+import mydb.common.Database;
+import mydb.common.Permissions;
+import mydb.storage.BufferPool;
+import mydb.storage.HeapFile;
+import mydb.storage.HeapPageId;
+import mydb.transaction.Transaction;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓冲池分区的基准测试：多个线程随机读取已经全部缓存在缓冲池中的页面，测量不同线程数量和分区数量下的吞吐量
+ * 每个线程使用自己的只读事务，页面命中只需要获取页面锁和页面所在分区的闩锁，分区越多，不同线程之间的竞争越少
+ * 运行方式（系统属性可选，threads和partitions为逗号分隔的列表）：
+ * <pre>
+ * java -cp out:test-out -Dthreads=1,2,4,8,16,32 -Dpartitions=1,4,16 -Dseconds=2 mydb.bench.PoolScalingBench
+ * </pre>
+ * 输出每个配置每秒读取的页面数量，机器的CPU核数少于线程数量时吞吐量不会继续增长
+ */
+public class PoolScalingBench {
+
+    /**
+     * 表的页面数量，小于缓冲池容量，预热之后所有读取都命中
+     */
+    private static final int TABLE_PAGES = 2000;
+
+    private static final int POOL_PAGES = 4096;
+
+    private static final String TABLE_FILE = "scaling.dat";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            run(Integer.parseInt(args[0]), Double.parseDouble(args[1]));
+            return;
+        }
+        List<Integer> threads = Bench.intList("threads", "1,2,4,8,16,32");
+        List<Integer> partitions = Bench.intList("partitions", "1,4,16");
+        String seconds = System.getProperty("seconds", "2");
+        File dir = Bench.createTempDir();
+        try {
+            Bench.createTableFile(new File(dir, TABLE_FILE), TABLE_PAGES);
+            System.out.printf("%d pages in a pool of %d pages, %d cores%n",
+                    TABLE_PAGES, POOL_PAGES, Runtime.getRuntime().availableProcessors());
+            System.out.printf("%10s %8s %14s%n", "partitions", "threads", "pages/s");
+            for (int partitionsNum: partitions) {
+                for (int threadsNum: threads) {
+                    Bench.fork(dir, PoolScalingBench.class,
+                            List.of("mydb.pages=" + POOL_PAGES, "mydb.partitions=" + partitionsNum, "mydb.readAhead=0"),
+                            String.valueOf(threadsNum), seconds);
+                }
+            }
+        } finally {
+            Bench.deleteRecursively(dir);
+        }
+    }
+
+    /**
+     * 在子进程中测量一个配置
+     * @param threadsNum 读取页面的线程数量
+     * @param seconds 测量时间（秒），之前另有1秒预热
+     */
+    private static void run(int threadsNum, double seconds) throws Exception {
+        HeapFile table = Bench.openTable(new File(TABLE_FILE), "scaling");
+        BufferPool bufferPool = Database.getBufferPool();
+        // 预热：将所有页面读入缓冲池
+        Transaction warmUp = new Transaction();
+        warmUp.start();
+        for (int i=0; i<TABLE_PAGES; i++) {
+            bufferPool.getPage(warmUp.getId(), new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+        }
+        warmUp.commit();
+
+        AtomicBoolean measuring = new AtomicBoolean(false);
+        AtomicBoolean stopped = new AtomicBoolean(false);
+        LongAdder reads = new LongAdder();
+        Thread[] threads = new Thread[threadsNum];
+        for (int t=0; t<threadsNum; t++) {
+            int seed = t;
+            threads[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                Transaction transaction = new Transaction();
+                transaction.start();
+                try {
+                    while (!stopped.get()) {
+                        HeapPageId pid = new HeapPageId(table.getId(), random.nextInt(TABLE_PAGES));
+                        bufferPool.getPage(transaction.getId(), pid, Permissions.READ_ONLY);
+                        if (measuring.get()) {
+                            reads.increment();
+                        }
+                    }
+                    transaction.commit();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            threads[t].start();
+        }
+        Thread.sleep(1000);
+        bufferPool.resetHitStats();
+        long start = System.nanoTime();
+        measuring.set(true);
+        Thread.sleep((long) (seconds * 1000));
+        measuring.set(false);
+        long elapsed = System.nanoTime() - start;
+        stopped.set(true);
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        System.out.printf("%10d %8d %14.0f%n", bufferPool.getPartitionsNum(), threadsNum,
+                reads.sum() * 1e9 / elapsed);
+        // 缓冲池的后台线程不会自动结束
+        System.exit(0);
+    }
+}
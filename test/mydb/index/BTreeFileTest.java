@@ -0,0 +1,457 @@
+package mydb.index;
+
+import mydb.TestCase;
+import mydb.common.Database;
+import mydb.common.Permissions;
+import mydb.common.Type;
+import mydb.execution.Predicate;
+import mydb.storage.*;
+import mydb.transaction.Transaction;
+import mydb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * BTreeFile的测试：重复键、删除后的合并与重新分配、各种谓词的范围迭代器、事务回滚和重新打开文件
+ * 索引键为字符串，内部结点只能存放约30个索引键，几千个元组就可以建立三层的B+树
+ */
+public class BTreeFileTest extends TestCase {
+
+    private static final TupleDesc TUPLE_DESC = new TupleDesc(
+            new Type[] {Type.STRING_TYPE, Type.INT_TYPE}, new String[] {"k", "v"});
+
+    private File file;
+
+    private BTreeFile btreeFile;
+
+    @Override
+    protected void setUp() {
+        file = tempFile("bt.dat");
+        btreeFile = open();
+    }
+
+    private BTreeFile open() {
+        BTreeFile btreeFile = new BTreeFile(file, TUPLE_DESC, 0);
+        Database.getCatalog().addTable(btreeFile, "bt");
+        return btreeFile;
+    }
+
+    private static String key(int i) {
+        return String.format("k%06d", i);
+    }
+
+    private static Tuple tuple(String key, int value) {
+        Tuple tuple = new Tuple(TUPLE_DESC);
+        tuple.setField(0, new StringField(key, Type.STRING_LEN));
+        tuple.setField(1, new IntField(value));
+        return tuple;
+    }
+
+    private static String format(Tuple tuple) {
+        return ((StringField) tuple.getField(0)).getValue() + ":" + ((IntField) tuple.getField(1)).getValue();
+    }
+
+    private void insert(TransactionId tid, String key, int value, List<String> model) throws Exception {
+        Database.getBufferPool().insertTuple(tid, btreeFile.getId(), tuple(key, value));
+        model.add(key + ":" + value);
+    }
+
+    /**
+     * 按字段值删除元组，RecordId只用于确定元组所在的表，页面号0使BTreeFile从根结点查找该元组
+     */
+    private void delete(TransactionId tid, String key, int value, List<String> model) throws Exception {
+        Tuple tuple = tuple(key, value);
+        tuple.setRecordId(new RecordId(btreeFile.getRootPtrId(), 0));
+        Database.getBufferPool().deleteTuple(tid, tuple);
+        assertTrue(model.remove(key + ":" + value), "deleted tuple " + key + ":" + value + " is in the model");
+    }
+
+    private static List<Tuple> scan(DbFileIterator iterator) throws Exception {
+        List<Tuple> tuples = new ArrayList<>();
+        iterator.open();
+        while (iterator.hasNext()) {
+            tuples.add(iterator.next());
+        }
+        iterator.close();
+        return tuples;
+    }
+
+    /**
+     * 检查迭代器返回的元组按索引键有序，并且与期望的元组相同（不考虑相同索引键的元组之间的顺序）
+     */
+    private static void assertTuples(List<String> expected, List<Tuple> actual, String message) {
+        List<String> formatted = new ArrayList<>();
+        for (int i=0; i<actual.size(); i++) {
+            formatted.add(format(actual.get(i)));
+            if (i > 0) {
+                String previous = ((StringField) actual.get(i - 1).getField(0)).getValue();
+                String current = ((StringField) actual.get(i).getField(0)).getValue();
+                assertTrue(previous.compareTo(current) <= 0, message + ": " + previous + " before " + current);
+            }
+        }
+        List<String> sortedExpected = new ArrayList<>(expected);
+        Collections.sort(sortedExpected);
+        Collections.sort(formatted);
+        assertEquals(sortedExpected.size(), formatted.size(), message + " size");
+        assertEquals(sortedExpected, formatted, message);
+    }
+
+    private void assertContent(List<String> model) throws Exception {
+        Transaction transaction = new Transaction();
+        transaction.start();
+        assertTuples(model, scan(btreeFile.iterator(transaction.getId())), "full scan");
+        TreeShape shape = checkTree(transaction.getId());
+        assertEquals(model.size(), shape.tuplesNum, "tuples in leaves");
+        transaction.commit();
+    }
+
+    /**
+     * B+树的形状
+     */
+    private static class TreeShape {
+        int height;
+        int tuplesNum;
+        final List<BTreeLeafPage> leaves = new ArrayList<>();
+    }
+
+    /**
+     * 从根结点开始检查B+树的结构：父结点指针、结点内的索引键有序、子树的索引键在父结点分隔键的范围内、
+     * 非根结点至少半满、所有叶子结点深度相同，以及叶子结点之间的兄弟指针
+     */
+    private TreeShape checkTree(TransactionId tid) throws Exception {
+        TreeShape shape = new TreeShape();
+        BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) Database.getBufferPool()
+                .getPage(tid, btreeFile.getRootPtrId(), Permissions.READ_ONLY);
+        if (rootPtr.getRootId() == null) {
+            return shape;
+        }
+        shape.height = checkNode(tid, rootPtr.getRootId(), rootPtr.getId(), null, null, shape);
+        for (int i=0; i<shape.leaves.size(); i++) {
+            BTreeLeafPage leaf = shape.leaves.get(i);
+            BTreePageId left = i > 0 ? shape.leaves.get(i - 1).getId() : null;
+            BTreePageId right = i + 1 < shape.leaves.size() ? shape.leaves.get(i + 1).getId() : null;
+            assertEquals(left, leaf.getLeftSiblingId(), "left sibling of " + leaf.getId());
+            assertEquals(right, leaf.getRightSiblingId(), "right sibling of " + leaf.getId());
+        }
+        return shape;
+    }
+
+    /**
+     * @param low 子树中索引键的下界（包含），没有下界时为null
+     * @param high 子树中索引键的上界（包含），没有上界时为null
+     * @return 返回子树的高度
+     */
+    private int checkNode(TransactionId tid, BTreePageId pid, BTreePageId parentId, Field low, Field high,
+                          TreeShape shape) throws Exception {
+        BTreeNodePage node = (BTreeNodePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+        assertEquals(parentId, node.getParentId(), "parent of " + pid);
+        boolean isRoot = parentId.getCategory() == BTreePageId.ROOT_PTR;
+        if (node instanceof BTreeLeafPage leaf) {
+            if (!isRoot) {
+                assertTrue(leaf.getTuplesNum() >= leaf.maxTuples / 2,
+                        "leaf " + pid + " has " + leaf.getTuplesNum() + " of " + leaf.maxTuples + " tuples");
+            }
+            for (int i=0; i<leaf.getTuplesNum(); i++) {
+                checkKey(leaf.getKey(i), i > 0 ? leaf.getKey(i - 1) : null, low, high, pid);
+            }
+            shape.tuplesNum += leaf.getTuplesNum();
+            shape.leaves.add(leaf);
+            return 1;
+        }
+        BTreeInternalPage internal = (BTreeInternalPage) node;
+        assertEquals(internal.getKeysNum() + 1, internal.getChildrenNum(), "children of " + pid);
+        assertTrue(internal.getKeysNum() >= (isRoot ? 1 : internal.maxKeys / 2 - 1),
+                "internal " + pid + " has " + internal.getKeysNum() + " of " + internal.maxKeys + " keys");
+        int height = -1;
+        for (int i=0; i<internal.getChildrenNum(); i++) {
+            Field childLow = i > 0 ? internal.getKey(i - 1) : low;
+            Field childHigh = i < internal.getKeysNum() ? internal.getKey(i) : high;
+            if (i < internal.getKeysNum()) {
+                checkKey(internal.getKey(i), i > 0 ? internal.getKey(i - 1) : null, low, high, pid);
+            }
+            int childHeight = checkNode(tid, internal.getChildId(i), pid, childLow, childHigh, shape);
+            if (height >= 0) {
+                assertEquals(height, childHeight, "height of children of " + pid);
+            }
+            height = childHeight;
+        }
+        return height + 1;
+    }
+
+    private static void checkKey(Field key, Field previous, Field low, Field high, BTreePageId pid) {
+        assertTrue(previous == null || !previous.compare(Predicate.Op.GREATER_THAN, key),
+                "keys out of order in " + pid + ": " + previous + " > " + key);
+        assertTrue(low == null || !low.compare(Predicate.Op.GREATER_THAN, key),
+                "key " + key + " in " + pid + " is below " + low);
+        assertTrue(high == null || !high.compare(Predicate.Op.LESS_THAN, key),
+                "key " + key + " in " + pid + " is above " + high);
+    }
+
+    private TreeShape shape() throws Exception {
+        Transaction transaction = new Transaction();
+        transaction.start();
+        TreeShape shape = checkTree(transaction.getId());
+        transaction.commit();
+        return shape;
+    }
+
+    public void testDuplicateKeys() throws Exception {
+        List<String> model = new ArrayList<>();
+        Random random = new Random(19);
+        // 30个索引键各200个元组，相同索引键的元组跨越多个叶子结点
+        for (int batch=0; batch<3; batch++) {
+            Transaction transaction = new Transaction();
+            transaction.start();
+            for (int i=0; i<2000; i++) {
+                insert(transaction.getId(), key(random.nextInt(30)), batch * 2000 + i, model);
+            }
+            transaction.commit();
+        }
+        assertContent(model);
+        assertTrue(shape().height >= 2, "duplicates span several leaves");
+
+        Transaction transaction = new Transaction();
+        transaction.start();
+        for (int k=0; k<30; k++) {
+            String key = key(k);
+            List<String> expected = new ArrayList<>();
+            for (String entry: model) {
+                if (entry.startsWith(key + ":")) {
+                    expected.add(entry);
+                }
+            }
+            IndexPredicate predicate = new IndexPredicate(Predicate.Op.EQUALS, new StringField(key, Type.STRING_LEN));
+            assertTuples(expected, scan(btreeFile.indexIterator(transaction.getId(), predicate)), "equals " + key);
+        }
+        // 通过迭代器返回的元组（RecordId有效）删除索引键7的一半元组，
+        // 再通过新建的元组（没有RecordId，需要从根结点查找并沿兄弟指针移动）删除索引键8的所有元组
+        IndexPredicate seven = new IndexPredicate(Predicate.Op.EQUALS, new StringField(key(7), Type.STRING_LEN));
+        List<Tuple> sevens = scan(btreeFile.indexIterator(transaction.getId(), seven));
+        for (int i=0; i<sevens.size(); i+=2) {
+            Database.getBufferPool().deleteTuple(transaction.getId(), sevens.get(i));
+            model.remove(format(sevens.get(i)));
+        }
+        for (String entry: new ArrayList<>(model)) {
+            if (entry.startsWith(key(8) + ":")) {
+                delete(transaction.getId(), key(8), Integer.parseInt(entry.substring(entry.indexOf(':') + 1)), model);
+            }
+        }
+        transaction.commit();
+        assertContent(model);
+    }
+
+    public void testRangeIterators() throws Exception {
+        List<String> model = new ArrayList<>();
+        Transaction transaction = new Transaction();
+        transaction.start();
+        // 偶数索引键，10的倍数各有两个元组
+        for (int i=0; i<3000; i+=2) {
+            insert(transaction.getId(), key(i), i, model);
+            if (i % 10 == 0) {
+                insert(transaction.getId(), key(i), -i, model);
+            }
+        }
+        transaction.commit();
+        assertTrue(shape().height >= 3, "tree has internal levels");
+
+        String[] operands = {key(0), key(1000), key(1001), key(2998), key(2999), "a", "z", "k0010"};
+        transaction = new Transaction();
+        transaction.start();
+        for (Predicate.Op op: Predicate.Op.values()) {
+            for (String operand: operands) {
+                List<String> expected = new ArrayList<>();
+                for (String entry: model) {
+                    String key = entry.substring(0, entry.indexOf(':'));
+                    int cmp = key.compareTo(operand);
+                    boolean matches = switch (op) {
+                        case EQUALS -> cmp == 0;
+                        case NOT_EQUALS -> cmp != 0;
+                        case GREATER_THAN -> cmp > 0;
+                        case GREATER_THAN_OR_EQ -> cmp >= 0;
+                        case LESS_THAN -> cmp < 0;
+                        case LESS_THAN_OR_EQ -> cmp <= 0;
+                        case LIKE -> key.contains(operand);
+                    };
+                    if (matches) {
+                        expected.add(entry);
+                    }
+                }
+                IndexPredicate predicate = new IndexPredicate(op, new StringField(operand, Type.STRING_LEN));
+                DbFileIterator iterator = btreeFile.indexIterator(transaction.getId(), predicate);
+                assertTuples(expected, scan(iterator), op + " " + operand);
+                // rewind之后重新返回相同的元组
+                iterator.open();
+                int count = 0;
+                while (iterator.hasNext()) {
+                    iterator.next();
+                    count++;
+                }
+                iterator.rewind();
+                while (iterator.hasNext()) {
+                    iterator.next();
+                    count--;
+                }
+                iterator.close();
+                assertEquals(0, count, "rewind " + op + " " + operand);
+            }
+        }
+        transaction.commit();
+    }
+
+    public void testDeleteMergesAndRedistributes() throws Exception {
+        List<String> model = new ArrayList<>();
+        int n = 6000;
+        Transaction transaction = new Transaction();
+        transaction.start();
+        // 顺序插入，除最后一个之外的叶子结点都恰好半满
+        for (int i=0; i<n; i++) {
+            insert(transaction.getId(), key(i), i, model);
+        }
+        transaction.commit();
+        TreeShape shape = shape();
+        assertTrue(shape.height >= 3, "height " + shape.height);
+        int leavesNum = shape.leaves.size();
+        int pagesNum = btreeFile.getPagesNum();
+        BTreeLeafPage first = shape.leaves.get(0);
+        int maxTuples = first.maxTuples;
+        assertEquals(maxTuples / 2, first.getTuplesNum(), "sequentially split leaf");
+
+        // 重新分配：填满第一个叶子结点，再从第二个叶子结点删除一个元组，两者的元组之和放不进一个结点
+        transaction = new Transaction();
+        transaction.start();
+        for (int i=first.getTuplesNum(); i<maxTuples; i++) {
+            insert(transaction.getId(), key(0) + (char) ('a' + i % 26) + i, -i, model);
+        }
+        String secondKey = ((StringField) shape.leaves.get(1).getKey(0)).getValue();
+        delete(transaction.getId(), secondKey, Integer.parseInt(secondKey.substring(1)), model);
+        transaction.commit();
+        shape = shape();
+        assertEquals(leavesNum, shape.leaves.size(), "leaves after redistribution");
+        int left = shape.leaves.get(0).getTuplesNum();
+        int right = shape.leaves.get(1).getTuplesNum();
+        assertEquals(maxTuples + maxTuples / 2 - 1, left + right, "tuples in the two leaves");
+        assertTrue(Math.abs(left - right) <= 1, "redistributed evenly: " + left + " and " + right);
+        assertContent(model);
+
+        // 合并：第四个叶子结点少于半满时与同样半满的第三个叶子结点合并
+        transaction = new Transaction();
+        transaction.start();
+        String fourthKey = ((StringField) shape.leaves.get(3).getKey(0)).getValue();
+        delete(transaction.getId(), fourthKey, Integer.parseInt(fourthKey.substring(1)), model);
+        transaction.commit();
+        shape = shape();
+        assertEquals(leavesNum - 1, shape.leaves.size(), "leaves after merge");
+        assertEquals(maxTuples / 2 * 2 - 1, shape.leaves.get(2).getTuplesNum(), "merged leaf");
+        assertContent(model);
+
+        // 随机删除90%的元组，合并和重新分配会向上传递到内部结点
+        Random random = new Random(7);
+        List<String> shuffled = new ArrayList<>(model);
+        Collections.shuffle(shuffled, random);
+        int deleted = 0;
+        transaction = new Transaction();
+        transaction.start();
+        for (String entry: shuffled.subList(0, shuffled.size() * 9 / 10)) {
+            int colon = entry.indexOf(':');
+            delete(transaction.getId(), entry.substring(0, colon), Integer.parseInt(entry.substring(colon + 1)), model);
+            if (++deleted % 1000 == 0) {
+                transaction.commit();
+                transaction = new Transaction();
+                transaction.start();
+            }
+        }
+        transaction.commit();
+        assertContent(model);
+        assertTrue(shape().leaves.size() < leavesNum / 5, "leaves merged: " + shape().leaves.size());
+
+        // 删除剩下的元组，根结点退化为叶子结点
+        transaction = new Transaction();
+        transaction.start();
+        for (String entry: new ArrayList<>(model).subList(0, model.size() - 5)) {
+            int colon = entry.indexOf(':');
+            delete(transaction.getId(), entry.substring(0, colon), Integer.parseInt(entry.substring(colon + 1)), model);
+        }
+        transaction.commit();
+        assertContent(model);
+        assertEquals(1, shape().height, "height after deleting almost everything");
+
+        // 释放的页面被重新使用，文件不会增长
+        transaction = new Transaction();
+        transaction.start();
+        for (int i=0; i<n; i++) {
+            insert(transaction.getId(), key(n + i), i, model);
+        }
+        transaction.commit();
+        assertContent(model);
+        assertTrue(btreeFile.getPagesNum() <= pagesNum + 1,
+                "pages after reinsertion " + btreeFile.getPagesNum() + ", before " + pagesNum);
+    }
+
+    public void testAbortRestoresTree() throws Exception {
+        List<String> model = new ArrayList<>();
+        Transaction transaction = new Transaction();
+        transaction.start();
+        for (int i=0; i<3000; i++) {
+            insert(transaction.getId(), key(i * 2), i, model);
+        }
+        transaction.commit();
+
+        // 回滚的事务插入的元组使叶子结点和内部结点分裂，删除的元组使结点合并
+        transaction = new Transaction();
+        transaction.start();
+        List<String> aborted = new ArrayList<>(model);
+        for (int i=0; i<3000; i++) {
+            insert(transaction.getId(), key(i * 2 + 1), -i, aborted);
+        }
+        for (int i=0; i<1500; i++) {
+            delete(transaction.getId(), key(i * 2), i, aborted);
+        }
+        assertTuples(aborted, scan(btreeFile.iterator(transaction.getId())), "before abort");
+        transaction.rollback();
+        assertContent(model);
+
+        // 回滚后可以继续修改
+        transaction = new Transaction();
+        transaction.start();
+        for (int i=0; i<3000; i++) {
+            insert(transaction.getId(), key(i * 2 + 1), i, model);
+        }
+        transaction.commit();
+        assertContent(model);
+    }
+
+    public void testReopen() throws Exception {
+        List<String> model = new ArrayList<>();
+        Transaction transaction = new Transaction();
+        transaction.start();
+        for (int i=0; i<4000; i++) {
+            insert(transaction.getId(), key(i % 1000), i, model);
+        }
+        transaction.commit();
+        int height = shape().height;
+        Database.getBufferPool().flushAllPages();
+        forgetAllTables();
+
+        // 重新打开时使用文件头中记录的页面大小，而不是缓冲池当前的页面大小
+        int pageSize = BufferPool.getPageSize();
+        BufferPool.setPageSize(pageSize == BufferPool.MAX_PAGE_SIZE ? BufferPool.MIN_PAGE_SIZE : pageSize * 2);
+        try {
+            btreeFile = open();
+        } finally {
+            BufferPool.setPageSize(pageSize);
+        }
+        assertEquals(height, shape().height, "height after reopen");
+        assertContent(model);
+
+        transaction = new Transaction();
+        transaction.start();
+        IndexPredicate predicate = new IndexPredicate(Predicate.Op.EQUALS, new StringField(key(500), Type.STRING_LEN));
+        assertEquals(4, scan(btreeFile.indexIterator(transaction.getId(), predicate)).size(), "equals after reopen");
+        for (int i=0; i<1000; i++) {
+            insert(transaction.getId(), key(i), -i, model);
+        }
+        transaction.commit();
+        assertContent(model);
+    }
+}
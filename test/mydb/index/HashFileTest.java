@@ -0,0 +1,319 @@
+package mydb.index;
+
+import mydb.TestCase;
+import mydb.common.Database;
+import mydb.common.Permissions;
+import mydb.common.Type;
+import mydb.storage.*;
+import mydb.transaction.Transaction;
+import mydb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * HashFile的测试：线性哈希的分裂、被推迟的分裂之后补上、回滚分裂和重新打开文件
+ * 条目为（整数索引键，字符串），每个页面只能存放约30个条目，几千个条目就会产生上百个桶
+ */
+public class HashFileTest extends TestCase {
+
+    private static final TupleDesc TUPLE_DESC = new TupleDesc(
+            new Type[] {Type.INT_TYPE, Type.STRING_TYPE}, new String[] {"k", "v"});
+
+    private File file;
+
+    private HashFile hashFile;
+
+    @Override
+    protected void setUp() {
+        file = tempFile("hx.dat");
+        hashFile = open();
+    }
+
+    private HashFile open() {
+        HashFile hashFile = new HashFile(file, TUPLE_DESC, 0);
+        Database.getCatalog().addTable(hashFile, "hx");
+        return hashFile;
+    }
+
+    private static Tuple tuple(int key, int value) {
+        Tuple tuple = new Tuple(TUPLE_DESC);
+        tuple.setField(0, new IntField(key));
+        tuple.setField(1, new StringField("v" + value, Type.STRING_LEN));
+        return tuple;
+    }
+
+    private static String format(Tuple tuple) {
+        return ((IntField) tuple.getField(0)).getValue() + ":" + ((StringField) tuple.getField(1)).getValue();
+    }
+
+    private void insert(TransactionId tid, int key, int value, List<String> model) throws Exception {
+        Database.getBufferPool().insertTuple(tid, hashFile.getId(), tuple(key, value));
+        model.add(key + ":v" + value);
+    }
+
+    /**
+     * 按字段值删除条目，RecordId只用于确定条目所在的表，HashFile根据索引键查找该条目
+     */
+    private void delete(TransactionId tid, int key, int value, List<String> model) throws Exception {
+        Tuple tuple = tuple(key, value);
+        tuple.setRecordId(new RecordId(new HashPageId(hashFile.getId(), 0, HashPageId.BUCKET), 0));
+        Database.getBufferPool().deleteTuple(tid, tuple);
+        assertTrue(model.remove(key + ":v" + value), "deleted entry " + key + ":v" + value + " is in the model");
+    }
+
+    private static List<String> scan(DbFileIterator iterator) throws Exception {
+        List<String> entries = new ArrayList<>();
+        iterator.open();
+        while (iterator.hasNext()) {
+            entries.add(format(iterator.next()));
+        }
+        iterator.close();
+        return entries;
+    }
+
+    /**
+     * 不考虑顺序地比较条目
+     */
+    private static void assertEntries(List<String> expected, List<String> actual, String message) {
+        List<String> sortedExpected = new ArrayList<>(expected);
+        List<String> sortedActual = new ArrayList<>(actual);
+        Collections.sort(sortedExpected);
+        Collections.sort(sortedActual);
+        assertEquals(sortedExpected.size(), sortedActual.size(), message + " size");
+        assertEquals(sortedExpected, sortedActual, message);
+    }
+
+    private HashMetaPage meta() throws Exception {
+        return (HashMetaPage) Database.getBufferPool().getPageWithoutLock(hashFile.getMetaId());
+    }
+
+    private int bucketsNum() throws Exception {
+        return meta().getBucketsNum();
+    }
+
+    /**
+     * 没有被推迟的分裂时，每个溢出页面对应一次分裂
+     */
+    private int targetBucketsNum() {
+        return HashMetaPage.INITIAL_BUCKETS + hashFile.getOverflowPagesNum();
+    }
+
+    /**
+     * 检查全表扫描和每个索引键的等值查找的结果，以及每个桶（及其溢出页面）中的条目都属于该桶
+     */
+    private void assertContent(List<String> model) throws Exception {
+        Transaction transaction = new Transaction();
+        transaction.start();
+        TransactionId tid = transaction.getId();
+        assertEntries(model, scan(hashFile.iterator(tid)), "full scan");
+
+        Map<Integer, List<String>> byKey = new HashMap<>();
+        for (String entry: model) {
+            int key = Integer.parseInt(entry.substring(0, entry.indexOf(':')));
+            byKey.computeIfAbsent(key, k -> new ArrayList<>()).add(entry);
+        }
+        for (Map.Entry<Integer, List<String>> entry: byKey.entrySet()) {
+            assertEntries(entry.getValue(), scan(hashFile.lookupIterator(tid, new IntField(entry.getKey()))),
+                    "lookup " + entry.getKey());
+        }
+        assertEquals(0, scan(hashFile.lookupIterator(tid, new IntField(-1))).size(), "lookup of an absent key");
+
+        HashMetaPage meta = meta();
+        int entriesNum = 0;
+        for (int bucket=0; bucket<meta.getBucketsNum(); bucket++) {
+            HashPageId pid = new HashPageId(hashFile.getId(), bucket, HashPageId.BUCKET);
+            while (pid != null) {
+                HashBucketPage page = (HashBucketPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+                Iterator<Tuple> entries = page.iterator(null, 0);
+                while (entries.hasNext()) {
+                    Field key = entries.next().getField(0);
+                    assertEquals(bucket, meta.bucketOf(HashFile.hashOf(key)), "bucket of key " + key + " in " + pid);
+                    entriesNum++;
+                }
+                pid = page.getNextId();
+            }
+        }
+        assertEquals(model.size(), entriesNum, "entries in buckets");
+        transaction.commit();
+    }
+
+    /**
+     * @return 返回一个当前映射到指定桶的索引键
+     */
+    private int keyInBucket(int bucket) throws Exception {
+        HashMetaPage meta = meta();
+        for (int key=0; ; key++) {
+            if (meta.bucketOf(HashFile.hashOf(new IntField(key))) == bucket) {
+                return key;
+            }
+        }
+    }
+
+    public void testSplitsKeepEntriesInTheirBuckets() throws Exception {
+        List<String> model = new ArrayList<>();
+        Random random = new Random(21);
+        for (int batch=0; batch<4; batch++) {
+            Transaction transaction = new Transaction();
+            transaction.start();
+            for (int i=0; i<2000; i++) {
+                // 索引键有重复，相同索引键的条目必须留在同一个桶中
+                insert(transaction.getId(), random.nextInt(3000), batch * 2000 + i, model);
+            }
+            transaction.commit();
+            assertEquals(targetBucketsNum(), bucketsNum(), "buckets after batch " + batch);
+        }
+        assertTrue(bucketsNum() > 100, "buckets " + bucketsNum());
+        // 桶的数量不是2的幂时，前next个桶已经分裂到下一轮
+        assertContent(model);
+
+        // 删除一半的条目，桶不会合并
+        int buckets = bucketsNum();
+        Transaction transaction = new Transaction();
+        transaction.start();
+        List<String> shuffled = new ArrayList<>(model);
+        Collections.shuffle(shuffled, random);
+        for (String entry: shuffled.subList(0, shuffled.size() / 2)) {
+            int colon = entry.indexOf(':');
+            delete(transaction.getId(), Integer.parseInt(entry.substring(0, colon)),
+                    Integer.parseInt(entry.substring(colon + 2)), model);
+        }
+        transaction.commit();
+        assertEquals(buckets, bucketsNum(), "buckets after deletion");
+        assertContent(model);
+    }
+
+    /**
+     * 读者持有下一个需要分裂的桶的共享锁时，插入不等待该锁而是推迟分裂，
+     * 放弃的分裂不保留元数据页面的锁，锁释放之后其它事务的插入补上所有推迟的分裂
+     */
+    public void testDeferredSplitsCatchUp() throws Exception {
+        List<String> model = new ArrayList<>();
+        assertEquals(0, meta().getNextSplit(), "next split of an empty file");
+        int blockedKey = keyInBucket(0);
+        Transaction reader = new Transaction();
+        reader.start();
+        assertEquals(0, scan(hashFile.lookupIterator(reader.getId(), new IntField(blockedKey))).size(),
+                "lookup before insertion");
+
+        // 桶0一直是下一个需要分裂的桶，桶的映射不会改变，跳过映射到桶0的索引键，插入不会与读者冲突
+        Transaction writer = new Transaction();
+        writer.start();
+        HashMetaPage meta = meta();
+        long slowest = 0;
+        int inserted = 0;
+        for (int key=0; inserted<3000; key++) {
+            if (meta.bucketOf(HashFile.hashOf(new IntField(key))) == 0) {
+                continue;
+            }
+            long start = System.nanoTime();
+            insert(writer.getId(), key, key, model);
+            slowest = Math.max(slowest, System.nanoTime() - start);
+            inserted++;
+        }
+        assertEquals(HashMetaPage.INITIAL_BUCKETS, bucketsNum(), "buckets while the reader holds bucket 0");
+        assertTrue(hashFile.getOverflowPagesNum() > 50, "overflow pages " + hashFile.getOverflowPagesNum());
+        // 等待锁的超时时间至少为1秒，插入不应该等待锁
+        assertTrue(slowest < 1000000000L, "slowest insert took " + slowest / 1000000 + " ms");
+
+        // 读者提交后，另一个事务插入到桶0即可分裂桶0，说明写者放弃分裂时没有保留元数据页面的锁
+        reader.commit();
+        Transaction catchUp = new Transaction();
+        catchUp.start();
+        insert(catchUp.getId(), blockedKey, -1, model);
+        assertEquals(HashMetaPage.INITIAL_BUCKETS + 1, bucketsNum(), "buckets while the writer is running");
+
+        // 写者提交后其它桶也可以分裂，每次插入最多补上4次分裂
+        writer.commit();
+        int deficit = targetBucketsNum() - bucketsNum();
+        int inserts = 0;
+        while (bucketsNum() < targetBucketsNum()) {
+            assertTrue(inserts <= deficit / 4 + 10, "buckets " + bucketsNum() + " of " + targetBucketsNum()
+                    + " after " + inserts + " inserts");
+            insert(catchUp.getId(), blockedKey, inserts, model);
+            inserts++;
+        }
+        assertTrue(inserts >= deficit / 4, inserts + " inserts for " + deficit + " splits");
+        catchUp.commit();
+        assertContent(model);
+    }
+
+    /**
+     * 回滚的事务中的插入引起的分裂被撤销，溢出文件不会缩小，之后的插入补上这些分裂
+     */
+    public void testAbortedSplitsAreUndone() throws Exception {
+        List<String> model = new ArrayList<>();
+        Transaction transaction = new Transaction();
+        transaction.start();
+        for (int i=0; i<1000; i++) {
+            insert(transaction.getId(), i, i, model);
+        }
+        transaction.commit();
+        int buckets = bucketsNum();
+        int nextSplit = meta().getNextSplit();
+
+        transaction = new Transaction();
+        transaction.start();
+        List<String> aborted = new ArrayList<>(model);
+        for (int i=0; i<3000; i++) {
+            insert(transaction.getId(), 1000 + i, i, aborted);
+        }
+        for (int i=0; i<500; i++) {
+            delete(transaction.getId(), i, i, aborted);
+        }
+        assertTrue(bucketsNum() > buckets + 50, "buckets before abort " + bucketsNum());
+        assertEntries(aborted, scan(hashFile.iterator(transaction.getId())), "before abort");
+        transaction.rollback();
+        assertEquals(buckets, bucketsNum(), "buckets after abort");
+        assertEquals(nextSplit, meta().getNextSplit(), "next split after abort");
+        assertContent(model);
+
+        // 回滚后可以继续插入，新桶中回滚的分裂残留的条目被清除
+        transaction = new Transaction();
+        transaction.start();
+        for (int i=0; i<1000; i++) {
+            insert(transaction.getId(), 5000 + i, i, model);
+        }
+        transaction.commit();
+        assertEquals(targetBucketsNum(), bucketsNum(), "buckets after reinsertion");
+        assertContent(model);
+    }
+
+    public void testReopen() throws Exception {
+        List<String> model = new ArrayList<>();
+        Transaction transaction = new Transaction();
+        transaction.start();
+        for (int i=0; i<4000; i++) {
+            insert(transaction.getId(), i % 1000, i, model);
+        }
+        transaction.commit();
+        int buckets = bucketsNum();
+        int overflowPages = hashFile.getOverflowPagesNum();
+        Database.getBufferPool().flushAllPages();
+        forgetAllTables();
+
+        // 重新打开时使用文件头中记录的页面大小，而不是缓冲池当前的页面大小
+        int pageSize = BufferPool.getPageSize();
+        BufferPool.setPageSize(pageSize == BufferPool.MAX_PAGE_SIZE ? BufferPool.MIN_PAGE_SIZE : pageSize * 2);
+        try {
+            hashFile = open();
+        } finally {
+            BufferPool.setPageSize(pageSize);
+        }
+        assertEquals(pageSize, hashFile.getPageSize(), "page size after reopen");
+        assertEquals(buckets, bucketsNum(), "buckets after reopen");
+        assertEquals(overflowPages, hashFile.getOverflowPagesNum(), "overflow pages after reopen");
+        assertContent(model);
+
+        transaction = new Transaction();
+        transaction.start();
+        assertEquals(4, scan(hashFile.lookupIterator(transaction.getId(), new IntField(500))).size(),
+                "lookup after reopen");
+        for (int i=0; i<2000; i++) {
+            insert(transaction.getId(), 1000 + i, i, model);
+        }
+        transaction.commit();
+        assertEquals(targetBucketsNum(), bucketsNum(), "buckets after insertion");
+        assertContent(model);
+    }
+}
@@ -0,0 +1,148 @@
+package mydb.storage;
+
+import mydb.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Lz4Codec的测试：随机数据、大部分为0的数据和不可压缩的数据在4K到64K的页面大小下压缩再解压，
+ * 分别解压到数组、堆内缓冲区和堆外缓冲区，以及损坏的压缩数据
+ */
+public class Lz4CodecTest extends TestCase {
+
+    private static final int[] PAGE_SIZES = {4096, 8192, 16384, 32768, 65536};
+
+    /**
+     * 页面中分散着少量非0字节，类似只插入了几个元组的页面
+     */
+    static byte[] zeroHeavyPage(int pageSize, Random random) {
+        byte[] page = new byte[pageSize];
+        for (int i=0; i<pageSize / 64; i++) {
+            page[random.nextInt(pageSize)] = (byte) random.nextInt(256);
+        }
+        return page;
+    }
+
+    /**
+     * 由少量字节组成的随机数据，有重复的短序列，可以压缩但不像全0页面那样容易
+     */
+    static byte[] randomPage(int pageSize, Random random) {
+        byte[] page = new byte[pageSize];
+        for (int i=0; i<pageSize; i++) {
+            page[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return page;
+    }
+
+    static byte[] incompressiblePage(int pageSize, Random random) {
+        byte[] page = new byte[pageSize];
+        random.nextBytes(page);
+        return page;
+    }
+
+    /**
+     * 压缩数据，再分别解压到数组、堆内缓冲区和堆外缓冲区，检查与原始数据相同
+     * 压缩数据放在数组中间，检查解压使用的起始位置
+     * @return 返回压缩数据的字节数
+     */
+    private static int roundTrip(byte[] data, String message) throws IOException {
+        byte[] compressed = new byte[Lz4Codec.maxCompressedLength(data.length)];
+        int length = Lz4Codec.compress(data, data.length, compressed);
+        assertTrue(length > 0 && length <= compressed.length, message + ": compressed length " + length);
+        byte[] shifted = new byte[length + 20];
+        System.arraycopy(compressed, 0, shifted, 7, length);
+
+        byte[] array = new byte[data.length];
+        Lz4Codec.decompress(shifted, 7, length, array, data.length);
+        assertTrue(Arrays.equals(data, array), message + ": decompressed to an array");
+
+        for (ByteBuffer buffer: new ByteBuffer[] {ByteBuffer.allocate(data.length + 8),
+                ByteBuffer.allocateDirect(data.length + 8)}) {
+            // 缓冲区中原有的内容被覆盖，position不变
+            buffer.put(0, (byte) 1).position(3);
+            Lz4Codec.decompress(shifted, 7, length, buffer, data.length);
+            assertEquals(3, buffer.position(), message + ": position of the buffer");
+            byte[] decompressed = new byte[data.length];
+            buffer.get(0, decompressed);
+            assertTrue(Arrays.equals(data, decompressed),
+                    message + ": decompressed to a " + (buffer.isDirect() ? "direct" : "heap") + " buffer");
+        }
+        return length;
+    }
+
+    public void testRoundTrip() throws Exception {
+        Random random = new Random(14);
+        for (int pageSize: PAGE_SIZES) {
+            int zeros = roundTrip(new byte[pageSize], "zero page of " + pageSize);
+            assertTrue(zeros < pageSize / 100, "zero page of " + pageSize + " compressed to " + zeros);
+            int zeroHeavy = roundTrip(zeroHeavyPage(pageSize, random), "zero-heavy page of " + pageSize);
+            assertTrue(zeroHeavy < pageSize / 4, "zero-heavy page of " + pageSize + " compressed to " + zeroHeavy);
+            int randomLength = roundTrip(randomPage(pageSize, random), "random page of " + pageSize);
+            assertTrue(randomLength < pageSize, "random page of " + pageSize + " compressed to " + randomLength);
+            // 不可压缩的数据变长，但不超过maxCompressedLength
+            int incompressible = roundTrip(incompressiblePage(pageSize, random), "incompressible page of " + pageSize);
+            assertTrue(incompressible >= pageSize, "incompressible page of " + pageSize + " compressed to " + incompressible);
+        }
+    }
+
+    /**
+     * 短于最小匹配长度的数据、超过64K的匹配距离和超过255字节的字面量与匹配长度
+     */
+    public void testEdgeCases() throws Exception {
+        Random random = new Random(15);
+        for (int length=0; length<=32; length++) {
+            roundTrip(incompressiblePage(length, random), "random data of " + length + " bytes");
+            roundTrip(new byte[length], "zeros of " + length + " bytes");
+        }
+        // 相同的4K数据块相隔超过64K重复出现，不能作为匹配
+        byte[] block = incompressiblePage(4096, random);
+        byte[] far = new byte[150000];
+        System.arraycopy(block, 0, far, 0, block.length);
+        System.arraycopy(incompressiblePage(70000, random), 0, far, block.length, 70000);
+        System.arraycopy(block, 0, far, 74096, block.length);
+        roundTrip(far, "repeated block beyond the match distance");
+        // 不可压缩的数据后接很长的重复数据
+        byte[] mixed = new byte[65536];
+        System.arraycopy(incompressiblePage(3000, random), 0, mixed, 0, 3000);
+        Arrays.fill(mixed, 3000, mixed.length, (byte) 'x');
+        roundTrip(mixed, "long literal followed by a long match");
+    }
+
+    public void testCorruptedData() throws Exception {
+        Random random = new Random(16);
+        byte[] page = zeroHeavyPage(8192, random);
+        byte[] compressed = new byte[Lz4Codec.maxCompressedLength(page.length)];
+        int length = Lz4Codec.compress(page, page.length, compressed);
+        byte[] output = new byte[page.length];
+        // 压缩数据被截断
+        assertCorrupted(compressed, length / 2, output, page.length, "truncated data");
+        // 解压后的长度与期望的长度不同
+        assertCorrupted(compressed, length, output, page.length - 1, "shorter output");
+        assertCorrupted(compressed, length, new byte[page.length + 1], page.length + 1, "longer output");
+        // 匹配距离指向输出的开头之前
+        byte[] badDistance = {0x14, 'a', (byte) 0xFF, 0x00, 0x00};
+        assertCorrupted(badDistance, badDistance.length, new byte[64], 64, "match before the start");
+        // 随机修改压缩数据不会导致解压之外的异常
+        for (int i=0; i<200; i++) {
+            byte[] damaged = Arrays.copyOf(compressed, length);
+            damaged[random.nextInt(length)] = (byte) random.nextInt(256);
+            try {
+                Lz4Codec.decompress(damaged, 0, length, output, page.length);
+            } catch (IOException e) {
+                // 期望的异常
+            }
+        }
+    }
+
+    private static void assertCorrupted(byte[] src, int length, byte[] dst, int dstLength, String message) {
+        try {
+            Lz4Codec.decompress(src, 0, length, dst, dstLength);
+            fail(message + " is decompressed");
+        } catch (IOException e) {
+            // 期望的异常
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package mydb.storage;
+
+import mydb.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * PageDirectory的测试：不同页面大小下各种页面的写入和读取、页面增长到放不下原区段时迁移、
+ * 页面缩小时原地覆盖，以及重新打开页面目录
+ */
+public class PageDirectoryTest extends TestCase {
+
+    /**
+     * 数据文件头的大小
+     */
+    private static final int DATA_START = HeapFile.HEADER_SIZE;
+
+    private FileChannelPool channelPool;
+
+    private File dataFile;
+
+    private File directoryFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        channelPool = new FileChannelPool();
+        dataFile = tempFile("pd.dat");
+        directoryFile = PageDirectory.fileOf(dataFile);
+        // 数据文件只有文件头时页面目录被视为失效，与HeapFile一样先写入文件头
+        try (RandomAccessFile raf = new RandomAccessFile(dataFile, "rw")) {
+            raf.setLength(DATA_START);
+        }
+    }
+
+    @Override
+    protected void tearDown() {
+        channelPool.closeAll();
+    }
+
+    private PageDirectory open(int pageSize) {
+        return new PageDirectory(directoryFile, dataFile, channelPool, pageSize, DATA_START);
+    }
+
+    /**
+     * 分别读取到数组、堆内缓冲区和堆外缓冲区，检查与期望的页面数据相同
+     */
+    private static void assertPage(PageDirectory directory, int pageIndex, byte[] expected, String message)
+            throws IOException {
+        byte[] array = new byte[expected.length];
+        Arrays.fill(array, (byte) 1);
+        directory.readPage(pageIndex, array);
+        assertTrue(Arrays.equals(expected, array), message + ": page " + pageIndex + " read into an array");
+        for (ByteBuffer buffer: new ByteBuffer[] {ByteBuffer.allocate(expected.length),
+                ByteBuffer.allocateDirect(expected.length)}) {
+            // 缓冲池的帧中残留着之前页面的数据
+            buffer.put(new byte[expected.length]).clear();
+            buffer.put(0, (byte) 1);
+            directory.readPage(pageIndex, buffer);
+            byte[] read = new byte[expected.length];
+            buffer.get(0, read);
+            assertTrue(Arrays.equals(expected, read), message + ": page " + pageIndex + " read into a "
+                    + (buffer.isDirect() ? "direct" : "heap") + " buffer");
+        }
+    }
+
+    /**
+     * 直接读取.pmap文件中页面的区段偏移量
+     */
+    private long extentOffset(int pageIndex) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(directoryFile, "r")) {
+            raf.seek(4 + pageIndex * 16L);
+            return raf.readLong();
+        }
+    }
+
+    private int storedLength(int pageIndex) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(directoryFile, "r")) {
+            raf.seek(4 + pageIndex * 16L + 8);
+            return raf.readInt();
+        }
+    }
+
+    public void testWriteAndRead() throws Exception {
+        Random random = new Random(14);
+        for (int pageSize: new int[] {4096, 16384, 65536}) {
+            deleteFiles();
+            setUp();
+            PageDirectory directory = open(pageSize);
+            assertEquals(0, directory.getPagesNum(), "pages of a new directory");
+            List<byte[]> pages = new ArrayList<>();
+            for (int i=0; i<12; i++) {
+                assertEquals(i, directory.appendEmptyPage(), "index of the appended page");
+                byte[] page = switch (i % 4) {
+                    case 0 -> Lz4CodecTest.zeroHeavyPage(pageSize, random);
+                    case 1 -> Lz4CodecTest.randomPage(pageSize, random);
+                    case 2 -> Lz4CodecTest.incompressiblePage(pageSize, random);
+                    default -> new byte[pageSize];
+                };
+                pages.add(page);
+            }
+            // 还没有写入的页面读取为全0页面
+            assertPage(directory, 5, new byte[pageSize], "unwritten page of " + pageSize);
+            for (int i=0; i<pages.size(); i+=3) {
+                directory.writePage(i, pages.get(i));
+            }
+            for (int i=1; i<pages.size(); i++) {
+                if (i % 3 != 0) {
+                    directory.writePage(i, pages.get(i));
+                }
+            }
+            for (int i=0; i<pages.size(); i++) {
+                assertPage(directory, i, pages.get(i), "page size " + pageSize);
+            }
+            // 不可压缩的页面存放原始数据
+            assertEquals(pageSize, storedLength(2), "stored length of an incompressible page");
+            assertTrue(storedLength(0) < pageSize / 4, "stored length of a zero-heavy page " + storedLength(0));
+
+            // 写入不存在的页面
+            try {
+                directory.writePage(pages.size(), pages.get(0));
+                fail("wrote a page beyond the directory");
+            } catch (IllegalArgumentException e) {
+                // 期望的异常
+            }
+            channelPool.closeAll();
+        }
+    }
+
+    /**
+     * 页面逐渐填满不可压缩的数据，压缩数据超过区段容量时迁移到文件末尾，区段容量至少翻倍，
+     * 迁移不影响其它页面；页面再次变小时在新区段中原地覆盖
+     */
+    public void testGrowingPageIsRelocated() throws Exception {
+        int pageSize = 16384;
+        Random random = new Random(15);
+        PageDirectory directory = open(pageSize);
+        for (int i=0; i<3; i++) {
+            directory.appendEmptyPage();
+        }
+        byte[] page = new byte[pageSize];
+        byte[] neighbour = Lz4CodecTest.randomPage(pageSize, random);
+        directory.writePage(0, page);
+        directory.writePage(1, neighbour);
+        long offset = extentOffset(0);
+        int relocations = 0;
+        for (int filled=0; filled<pageSize; filled+=pageSize / 32) {
+            byte[] chunk = Lz4CodecTest.incompressiblePage(pageSize / 32, random);
+            System.arraycopy(chunk, 0, page, filled, chunk.length);
+            directory.writePage(0, page);
+            assertPage(directory, 0, page, "page filled to " + (filled + chunk.length));
+            assertPage(directory, 1, neighbour, "neighbour of the page filled to " + (filled + chunk.length));
+            if (extentOffset(0) != offset) {
+                assertTrue(extentOffset(0) > offset, "relocated to the end of the data file");
+                offset = extentOffset(0);
+                relocations++;
+            }
+        }
+        assertEquals(pageSize, storedLength(0), "stored length of the filled page");
+        // 初始容量为一个分配单位（256字节），每次迁移至少翻倍
+        assertTrue(relocations >= 2 && relocations <= 7, "relocations " + relocations);
+
+        // 页面变小时原地覆盖
+        long dataLength = dataFile.length();
+        Arrays.fill(page, (byte) 0);
+        directory.writePage(0, page);
+        assertEquals(offset, extentOffset(0), "offset of the shrunk page");
+        assertEquals(dataLength, dataFile.length(), "data file after shrinking a page");
+        assertPage(directory, 0, page, "shrunk page");
+        assertPage(directory, 1, neighbour, "neighbour of the shrunk page");
+        assertPage(directory, 2, new byte[pageSize], "unwritten page");
+    }
+
+    public void testReopen() throws Exception {
+        int pageSize = 8192;
+        Random random = new Random(16);
+        PageDirectory directory = open(pageSize);
+        List<byte[]> pages = new ArrayList<>();
+        for (int i=0; i<40; i++) {
+            directory.appendEmptyPage();
+            byte[] page = (i % 2 == 0) ? Lz4CodecTest.zeroHeavyPage(pageSize, random)
+                    : Lz4CodecTest.incompressiblePage(pageSize, random);
+            pages.add(page);
+            directory.writePage(i, page);
+        }
+        // 迁移一个页面，重新打开后新区段之后仍然可以分配区段
+        byte[] grown = Lz4CodecTest.incompressiblePage(pageSize, random);
+        directory.writePage(0, grown);
+        pages.set(0, grown);
+        channelPool.closeAll();
+
+        directory = open(pageSize);
+        assertEquals(pages.size(), directory.getPagesNum(), "pages after reopen");
+        for (int i=0; i<pages.size(); i++) {
+            assertPage(directory, i, pages.get(i), "after reopen");
+        }
+        directory.appendEmptyPage();
+        byte[] page = Lz4CodecTest.incompressiblePage(pageSize, random);
+        pages.add(page);
+        directory.writePage(pages.size() - 1, page);
+        for (int i=0; i<pages.size(); i++) {
+            assertPage(directory, i, pages.get(i), "after appending to the reopened directory");
+        }
+
+        // 数据文件被重新创建（只有文件头）时，旧的页面目录失效
+        channelPool.closeAll();
+        try (RandomAccessFile raf = new RandomAccessFile(dataFile, "rw")) {
+            raf.setLength(DATA_START);
+        }
+        assertEquals(0, open(pageSize).getPagesNum(), "pages after the data file is recreated");
+    }
+
+    private void deleteFiles() {
+        channelPool.closeAll();
+        dataFile.delete();
+        directoryFile.delete();
+    }
+}